@@ -10,6 +10,7 @@ package com.ca.mas.messaging;
 import android.content.Context;
 import androidx.test.platform.app.InstrumentationRegistry;
 import android.util.Base64;
+import android.util.Log;
 
 import com.ca.mas.MASLoginTestBase;
 
@@ -19,11 +20,15 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 public class MASMessagingTest extends MASLoginTestBase {
+    private static final String TAG = MASMessagingTest.class.getSimpleName();
+    private static final int[] PAYLOAD_SIZES = {1024, 64 * 1024};
     private MASMessage mMessage;
     private String mSenderId = "admin";
     private String mVersion = "1.1";
@@ -242,4 +247,86 @@ public class MASMessagingTest extends MASLoginTestBase {
             throw e;
         }
     }
+
+    @Test
+    public void testCreateMASMessageFromBinary() throws Exception {
+        MASMessage message = MASMessage.newInstance();
+        message.createMASMessageFromBytes(mMessage.createBinaryFromMASMessage());
+
+        assertEquals(message.getVersion(), mVersion);
+        assertEquals(message.getSenderId(), mSenderId);
+        assertEquals(message.getSenderType(), mSenderType.toUpperCase());
+        assertEquals(message.getDisplayName(), mSenderId);
+        assertEquals(message.getSentTime(), mSentTime);
+        assertEquals(message.getContentType(), mContentType);
+        assertEquals(message.getContentEncoding(), mContentEncoding);
+        assertEquals(message.getTopic(), mTopic);
+        assertTrue(Arrays.equals(message.getPayload(), mPayload));
+    }
+
+    @Test
+    public void testCreateMASMessageFromBytesWithJSON() throws Exception {
+        MASMessage message = MASMessage.newInstance();
+        message.createMASMessageFromBytes(mMessage.createJSONStringFromMASMessage(getContext()).getBytes());
+
+        assertEquals(message.getSenderId(), mSenderId);
+        assertEquals(message.getSentTime(), mSentTime);
+        assertEquals(message.getTopic(), mTopic);
+        assertTrue(Arrays.equals(message.getPayload(), mPayload));
+    }
+
+    @Test
+    public void testCreateMASMessageFromBytesWithRawPayload() throws Exception {
+        byte[][] payloads = {
+                mPayload,
+                "{not json".getBytes(),
+                "{\"key\":\"value\"}".getBytes(),
+                //Starts with the magic bytes of the binary envelope but is truncated
+                Arrays.copyOf(mMessage.createBinaryFromMASMessage(), 20)};
+        for (byte[] payload : payloads) {
+            MASMessage message = MASMessage.newInstance();
+            message.createMASMessageFromBytes(payload);
+            assertTrue(Arrays.equals(message.getPayload(), payload));
+            assertNull(message.getSenderId());
+        }
+    }
+
+    @Test
+    public void testEnvelopeBenchmark() throws Exception {
+        int iterations = 200;
+        Random random = new Random(0);
+        for (int size : PAYLOAD_SIZES) {
+            byte[] payload = new byte[size];
+            random.nextBytes(payload);
+            mMessage.setPayload(payload);
+            byte[] json = mMessage.createJSONStringFromMASMessage(getContext()).getBytes();
+            byte[] binary = mMessage.createBinaryFromMASMessage();
+
+            //Warm up
+            for (int i = 0; i < iterations; i++) {
+                MASMessage.newInstance().createMASMessageFromBytes(json);
+                MASMessage.newInstance().createMASMessageFromBytes(binary);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                MASMessage.newInstance().createMASMessageFromBytes(json);
+            }
+            long jsonNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                MASMessage.newInstance().createMASMessageFromBytes(binary);
+            }
+            long binaryNanos = System.nanoTime() - start;
+
+            Log.i(TAG, String.format("Payload %d bytes, on the wire JSON %d bytes binary %d bytes, "
+                            + "decode JSON %d msg/s binary %d msg/s", size, json.length, binary.length,
+                    iterations * 1000000000L / Math.max(1, jsonNanos),
+                    iterations * 1000000000L / Math.max(1, binaryNanos)));
+            //The payload is not Base64 encoded, the binary envelope is at most the payload and the attributes
+            assertTrue(binary.length < json.length);
+            assertTrue(binary.length <= size + 128);
+        }
+    }
 }
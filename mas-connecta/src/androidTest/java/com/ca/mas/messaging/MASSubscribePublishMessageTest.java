@@ -20,6 +20,8 @@ import com.ca.mas.MASLoginTestBase;
 import com.ca.mas.TestUtils;
 import com.ca.mas.connecta.client.MASConnectOptions;
 import com.ca.mas.connecta.client.MASConnectaManager;
+import com.ca.mas.connecta.client.MASMessageListener;
+import com.ca.mas.connecta.client.MASMessageSubscription;
 import com.ca.mas.foundation.MAS;
 import com.ca.mas.foundation.MASUser;
 import com.ca.mas.messaging.topic.MASTopic;
@@ -30,9 +32,16 @@ import junit.framework.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class MASSubscribePublishMessageTest extends MASLoginTestBase {
 
@@ -114,6 +123,309 @@ public class MASSubscribePublishMessageTest extends MASLoginTestBase {
         }
     }
 
+    @Test
+    public void testPublishToRecipients() throws Exception {
+        final int RECIPIENTS = 3;
+        BroadcastReceiver broadcastReceiver = null;
+        try {
+            final CountDownLatch countDownLatch = new CountDownLatch(RECIPIENTS);
+            IntentFilter intentFilter = new IntentFilter();
+            intentFilter.addAction(MessagingConsts.MAS_CONNECTA_BROADCAST_MESSAGE_ARRIVED);
+            broadcastReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    countDownLatch.countDown();
+                }
+            };
+
+            LocalBroadcastManager.getInstance(getContext()).registerReceiver(broadcastReceiver,
+                    intentFilter);
+
+            MASCallbackFuture<Void> connectCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().setConnectOptions(setConnectOptions());
+            MASConnectaManager.getInstance().setClientId(UUID.randomUUID().toString());
+            MASConnectaManager.getInstance().connect(connectCallbackFuture);
+            connectCallbackFuture.get();
+
+            String prefix = "test_fanout_" + UUID.randomUUID();
+            MASTopic allTopics = new MASTopicBuilder()
+                    .setQos(1)
+                    .setCustomTopic(prefix + "/#")
+                    .enforceTopicStructure(false)
+                    .build();
+            MASCallbackFuture<Void> subscribeCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().subscribe(allTopics, subscribeCallbackFuture);
+            subscribeCallbackFuture.get();
+
+            Map<String, MASTopic> recipients = new LinkedHashMap<>();
+            for (int i = 0; i < RECIPIENTS; i++) {
+                recipients.put("user" + i, new MASTopicBuilder()
+                        .setQos(1)
+                        .setCustomTopic(prefix + "/user" + i)
+                        .enforceTopicStructure(false)
+                        .build());
+            }
+
+            MASMessage masMessage = MASMessage.newInstance();
+            masMessage.setContentType(MessagingConsts.DEFAULT_TEXT_PLAIN_CONTENT_TYPE);
+            masMessage.setPayload("Test".getBytes());
+
+            MASCallbackFuture<MASPublishResult> sendCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().publish(recipients, masMessage, sendCallbackFuture);
+            MASPublishResult result = sendCallbackFuture.get();
+            Assert.assertTrue(result.isSuccessful());
+            Assert.assertEquals(RECIPIENTS, result.getDelivered().size());
+
+            Assert.assertTrue(countDownLatch.await(10, TimeUnit.SECONDS));
+
+            MASCallbackFuture<Void> stopCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().disconnect(stopCallbackFuture);
+            stopCallbackFuture.get();
+        } finally {
+            LocalBroadcastManager.getInstance(getContext()).unregisterReceiver(broadcastReceiver);
+        }
+    }
+
+    @Test
+    public void testPublishWhileDisconnected() throws Exception {
+        final int MESSAGES = 3;
+        MASCallbackFuture<Void> disconnectCallbackFuture = new MASCallbackFuture<>();
+        MASConnectaManager.getInstance().disconnect(disconnectCallbackFuture);
+        disconnectCallbackFuture.get();
+
+        MASConnectaManager.getInstance().setConnectOptions(setConnectOptions());
+        MASConnectaManager.getInstance().setClientId(UUID.randomUUID().toString());
+        long replayed = MASConnectaManager.getInstance().getOutboundQueueMetrics().getReplayedCount();
+
+        MASTopic customTopic = new MASTopicBuilder()
+                .setQos(1)
+                .setCustomTopic("test_outbound_" + UUID.randomUUID())
+                .enforceTopicStructure(false)
+                .build();
+
+        //All the messages are queued and published with a single connection
+        List<MASCallbackFuture<Void>> callbacks = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            MASMessage masMessage = MASMessage.newInstance();
+            masMessage.setContentType(MessagingConsts.DEFAULT_TEXT_PLAIN_CONTENT_TYPE);
+            masMessage.setPayload(("Test" + i).getBytes());
+            MASCallbackFuture<Void> sendCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().publish(customTopic, masMessage, sendCallbackFuture);
+            callbacks.add(sendCallbackFuture);
+        }
+        for (MASCallbackFuture<Void> callback : callbacks) {
+            callback.get();
+        }
+
+        Assert.assertTrue(MASConnectaManager.getInstance().isConnected());
+        Assert.assertEquals(MESSAGES, MASConnectaManager.getInstance().getOutboundQueueMetrics().getReplayedCount() - replayed);
+        Assert.assertEquals(0, MASConnectaManager.getInstance().getOutboundQueueMetrics().getQueueDepth());
+
+        MASCallbackFuture<Void> stopCallbackFuture = new MASCallbackFuture<>();
+        MASConnectaManager.getInstance().disconnect(stopCallbackFuture);
+        stopCallbackFuture.get();
+    }
+
+    @Test
+    public void testPublishToRecipientsWhileDisconnected() throws Exception {
+        final int RECIPIENTS = 3;
+        MASCallbackFuture<Void> disconnectCallbackFuture = new MASCallbackFuture<>();
+        MASConnectaManager.getInstance().disconnect(disconnectCallbackFuture);
+        disconnectCallbackFuture.get();
+
+        MASConnectaManager.getInstance().setConnectOptions(setConnectOptions());
+        MASConnectaManager.getInstance().setClientId(UUID.randomUUID().toString());
+        long replayed = MASConnectaManager.getInstance().getOutboundQueueMetrics().getReplayedCount();
+
+        String prefix = "test_outbound_fanout_" + UUID.randomUUID();
+        Map<String, MASTopic> recipients = new LinkedHashMap<>();
+        for (int i = 0; i < RECIPIENTS; i++) {
+            recipients.put("user" + i, new MASTopicBuilder()
+                    .setQos(1)
+                    .setCustomTopic(prefix + "/user" + i)
+                    .enforceTopicStructure(false)
+                    .build());
+        }
+
+        MASMessage masMessage = MASMessage.newInstance();
+        masMessage.setContentType(MessagingConsts.DEFAULT_TEXT_PLAIN_CONTENT_TYPE);
+        masMessage.setPayload("Test".getBytes());
+
+        //The message of each recipient is queued and published once connected
+        MASCallbackFuture<MASPublishResult> sendCallbackFuture = new MASCallbackFuture<>();
+        MASConnectaManager.getInstance().publish(recipients, masMessage, sendCallbackFuture);
+        MASPublishResult result = sendCallbackFuture.get();
+        Assert.assertTrue(result.isSuccessful());
+        Assert.assertEquals(RECIPIENTS, result.getDelivered().size());
+
+        Assert.assertTrue(MASConnectaManager.getInstance().isConnected());
+        Assert.assertEquals(RECIPIENTS, MASConnectaManager.getInstance().getOutboundQueueMetrics().getReplayedCount() - replayed);
+        Assert.assertEquals(0, MASConnectaManager.getInstance().getOutboundQueueMetrics().getQueueDepth());
+
+        MASCallbackFuture<Void> stopCallbackFuture = new MASCallbackFuture<>();
+        MASConnectaManager.getInstance().disconnect(stopCallbackFuture);
+        stopCallbackFuture.get();
+    }
+
+    @Test
+    public void testMessageListener() throws Exception {
+        final int MESSAGES = 5;
+        final List<String> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch countDownLatch = new CountDownLatch(MESSAGES);
+        String prefix = "test_listener_" + UUID.randomUUID();
+        MASMessageSubscription subscription = MASConnectaManager.getInstance().addMessageListener(
+                new MASMessageSubscription.Builder(new MASMessageListener() {
+                    @Override
+                    public void onMessages(List<MASMessage> messages) {
+                        for (MASMessage message : messages) {
+                            received.add(new String(message.getPayload()));
+                            countDownLatch.countDown();
+                        }
+                    }
+                })
+                        .topicFilter(prefix + "/+")
+                        .executor(Executors.newSingleThreadExecutor())
+                        .build());
+        MASConnectaManager.getInstance().enableMessageBroadcast(false);
+        try {
+            MASCallbackFuture<Void> connectCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().setConnectOptions(setConnectOptions());
+            MASConnectaManager.getInstance().setClientId(UUID.randomUUID().toString());
+            MASConnectaManager.getInstance().connect(connectCallbackFuture);
+            connectCallbackFuture.get();
+
+            MASTopic allTopics = new MASTopicBuilder()
+                    .setQos(1)
+                    .setCustomTopic(prefix + "/#")
+                    .enforceTopicStructure(false)
+                    .build();
+            MASCallbackFuture<Void> subscribeCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().subscribe(allTopics, subscribeCallbackFuture);
+            subscribeCallbackFuture.get();
+
+            //Not matched by the topic filter of the listener
+            MASTopic otherTopic = new MASTopicBuilder()
+                    .setQos(1)
+                    .setCustomTopic(prefix + "/other/level")
+                    .enforceTopicStructure(false)
+                    .build();
+            MASCallbackFuture<Void> otherCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().publish(otherTopic, "Other".getBytes(), otherCallbackFuture);
+            otherCallbackFuture.get();
+
+            MASTopic topic = new MASTopicBuilder()
+                    .setQos(1)
+                    .setCustomTopic(prefix + "/test")
+                    .enforceTopicStructure(false)
+                    .build();
+            for (int i = 0; i < MESSAGES; i++) {
+                MASMessage masMessage = MASMessage.newInstance();
+                masMessage.setContentType(MessagingConsts.DEFAULT_TEXT_PLAIN_CONTENT_TYPE);
+                masMessage.setPayload(("Test" + i).getBytes());
+                MASCallbackFuture<Void> sendCallbackFuture = new MASCallbackFuture<>();
+                MASConnectaManager.getInstance().publish(topic, masMessage, sendCallbackFuture);
+                sendCallbackFuture.get();
+            }
+
+            Assert.assertTrue(countDownLatch.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < MESSAGES; i++) {
+                Assert.assertEquals("Test" + i, received.get(i));
+            }
+            Assert.assertEquals(MESSAGES, subscription.getDeliveredCount());
+            Assert.assertEquals(0, subscription.getDroppedCount());
+
+            MASCallbackFuture<Void> stopCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().disconnect(stopCallbackFuture);
+            stopCallbackFuture.get();
+        } finally {
+            subscription.cancel();
+            MASConnectaManager.getInstance().enableMessageBroadcast(true);
+        }
+    }
+
+    @Test
+    public void testSubscriptionsRestoredAfterReconnect() throws Exception {
+        final List<String> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch[] latch = {new CountDownLatch(1)};
+        String prefix = "test_registry_" + UUID.randomUUID();
+        MASMessageSubscription subscription = MASConnectaManager.getInstance().addMessageListener(
+                new MASMessageSubscription.Builder(new MASMessageListener() {
+                    @Override
+                    public void onMessages(List<MASMessage> messages) {
+                        for (MASMessage message : messages) {
+                            received.add(new String(message.getPayload()));
+                            latch[0].countDown();
+                        }
+                    }
+                })
+                        .topicFilter(prefix + "/#")
+                        .executor(Executors.newSingleThreadExecutor())
+                        .build());
+        MASConnectaManager.getInstance().enableMessageBroadcast(false);
+        try {
+            MASConnectaManager.getInstance().setConnectOptions(setConnectOptions());
+            MASConnectaManager.getInstance().setClientId(UUID.randomUUID().toString());
+
+            MASTopic topic = new MASTopicBuilder()
+                    .setQos(1)
+                    .setCustomTopic(prefix + "/test")
+                    .enforceTopicStructure(false)
+                    .build();
+            MASTopic allTopics = new MASTopicBuilder()
+                    .setQos(1)
+                    .setCustomTopic(prefix + "/#")
+                    .enforceTopicStructure(false)
+                    .build();
+            //Subscribed together, the topic is covered by the wildcard
+            MASCallbackFuture<Void> topicCallbackFuture = new MASCallbackFuture<>();
+            MASCallbackFuture<Void> topicAgainCallbackFuture = new MASCallbackFuture<>();
+            MASCallbackFuture<Void> allCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().subscribe(topic, topicCallbackFuture);
+            MASConnectaManager.getInstance().subscribe(topic, topicAgainCallbackFuture);
+            MASConnectaManager.getInstance().subscribe(allTopics, allCallbackFuture);
+            topicCallbackFuture.get();
+            topicAgainCallbackFuture.get();
+            allCallbackFuture.get();
+            Assert.assertTrue(MASConnectaManager.getInstance().getSubscribedTopics().contains(prefix + "/test"));
+
+            //Reference counted, the topic stays subscribed
+            MASCallbackFuture<Void> unsubscribeCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().unsubscribe(topic, unsubscribeCallbackFuture);
+            unsubscribeCallbackFuture.get();
+            Assert.assertTrue(MASConnectaManager.getInstance().getSubscribedTopics().contains(prefix + "/test"));
+
+            //The subscriptions are restored with the connection
+            MASCallbackFuture<Void> disconnectCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().disconnect(disconnectCallbackFuture);
+            disconnectCallbackFuture.get();
+            MASCallbackFuture<Void> connectCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().connect(connectCallbackFuture);
+            connectCallbackFuture.get();
+
+            MASCallbackFuture<Void> publishCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().publish(topic, "Restored".getBytes(), publishCallbackFuture);
+            publishCallbackFuture.get();
+            Assert.assertTrue(latch[0].await(10, TimeUnit.SECONDS));
+            Assert.assertEquals("Restored", received.get(0));
+
+            MASCallbackFuture<Void> unsubscribeTopicCallbackFuture = new MASCallbackFuture<>();
+            MASCallbackFuture<Void> unsubscribeAllCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().unsubscribe(topic, unsubscribeTopicCallbackFuture);
+            MASConnectaManager.getInstance().unsubscribe(allTopics, unsubscribeAllCallbackFuture);
+            unsubscribeTopicCallbackFuture.get();
+            unsubscribeAllCallbackFuture.get();
+            Assert.assertFalse(MASConnectaManager.getInstance().getSubscribedTopics().contains(prefix + "/test"));
+            Assert.assertFalse(MASConnectaManager.getInstance().getSubscribedTopics().contains(prefix + "/#"));
+
+            MASCallbackFuture<Void> stopCallbackFuture = new MASCallbackFuture<>();
+            MASConnectaManager.getInstance().disconnect(stopCallbackFuture);
+            stopCallbackFuture.get();
+        } finally {
+            subscription.cancel();
+            MASConnectaManager.getInstance().enableMessageBroadcast(true);
+        }
+    }
+
     public MASConnectOptions setConnectOptions() {
 
         final Uri.Builder uriBuilder = new Uri.Builder()
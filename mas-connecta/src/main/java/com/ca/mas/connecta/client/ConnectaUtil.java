@@ -9,7 +9,6 @@ package com.ca.mas.connecta.client;
 
 import androidx.annotation.NonNull;
 
-import com.ca.mas.messaging.MASMessageException;
 import com.ca.mas.messaging.MASMessage;
 
 import org.eclipse.paho.client.mqttv3.MqttMessage;
@@ -45,20 +44,14 @@ class ConnectaUtil {
     /**
      * <b>Pre-Conditions: </b> Same as {@link ConnectaUtil#createMASMessageFromMqtt}.<br>
      * <b>Description:</b> {@link ConnectaUtil#createMASMessageFromMqtt} - This internal
-     * utility method populates a MASMessage with the payload bytes received from an MQTT message.
+     * utility method populates a MASMessage with the payload bytes received from an MQTT message, the binary
+     * or JSON envelope is sniffed from the bytes, otherwise the bytes are the payload of the message.
      *
      * @param payload The payload of the message
      */
     private static MASMessage initMessageFromPayload(byte[] payload) {
-        String totalPayload = new String(payload);
-
         MASMessage m = MASMessage.newInstance();
-
-        try {
-            m.createMASMessageFromJSONString(totalPayload);
-        } catch (MASMessageException e) {
-            m.setPayload(payload);
-        }
+        m.createMASMessageFromBytes(payload);
         return m;
     }
 
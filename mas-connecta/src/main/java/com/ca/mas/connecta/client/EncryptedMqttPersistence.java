@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.connecta.client;
+
+import com.ca.mas.core.io.Charsets;
+import com.ca.mas.core.io.IoUtils;
+import com.ca.mas.core.security.EncryptionProvider;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.internal.MqttPersistentData;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Persists the in-flight QoS 1 and 2 messages of the MQTT client to disk, encrypted with the
+ * {@link EncryptionProvider}, so that they are delivered after the process restarts when the connection
+ * does not use a clean session.
+ */
+class EncryptedMqttPersistence implements MqttClientPersistence {
+
+    private static final int MAX_SIZE = 1024 * 1024 * 10;
+
+    private final File root;
+    private final EncryptionProvider encryptionProvider;
+    private File directory;
+
+    EncryptedMqttPersistence(File root, EncryptionProvider encryptionProvider) {
+        this.root = root;
+        this.encryptionProvider = encryptionProvider;
+    }
+
+    @Override
+    public void open(String clientId, String serverURI) throws MqttPersistenceException {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            String name = IoUtils.hexDump(md.digest((clientId + "\n" + serverURI).getBytes(Charsets.UTF8)));
+            File dir = new File(root, name);
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Unable to create " + dir);
+            }
+            directory = dir;
+        } catch (Exception e) {
+            throw new MqttPersistenceException(e);
+        }
+    }
+
+    @Override
+    public void close() throws MqttPersistenceException {
+        directory = null;
+    }
+
+    @Override
+    public void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+        OutputStream outputStream = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(persistable.getHeaderLength());
+            out.write(persistable.getHeaderBytes(), persistable.getHeaderOffset(), persistable.getHeaderLength());
+            int payloadLength = persistable.getPayloadBytes() == null ? 0 : persistable.getPayloadLength();
+            out.writeInt(payloadLength);
+            if (payloadLength > 0) {
+                out.write(persistable.getPayloadBytes(), persistable.getPayloadOffset(), payloadLength);
+            }
+            out.flush();
+
+            outputStream = new FileOutputStream(getFile(key));
+            outputStream.write(encryptionProvider.encrypt(bytes.toByteArray()));
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        } finally {
+            IoUtils.closeQuietly(outputStream);
+        }
+    }
+
+    @Override
+    public MqttPersistable get(String key) throws MqttPersistenceException {
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(getFile(key));
+            byte[] data = encryptionProvider.decrypt(IoUtils.slurpStream(inputStream, MAX_SIZE));
+            if (data == null) {
+                throw new IOException("Unable to decrypt " + key);
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            byte[] header = new byte[in.readInt()];
+            in.readFully(header);
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            return new MqttPersistentData(key, header, 0, header.length, payload, 0, payload.length);
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+    }
+
+    @Override
+    public void remove(String key) throws MqttPersistenceException {
+        File file = getFile(key);
+        if (file.exists() && !file.delete()) {
+            throw new MqttPersistenceException();
+        }
+    }
+
+    @Override
+    public Enumeration keys() throws MqttPersistenceException {
+        List<String> keys = new ArrayList<>();
+        File[] files = getDirectory().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                keys.add(file.getName());
+            }
+        }
+        return Collections.enumeration(keys);
+    }
+
+    @Override
+    public void clear() throws MqttPersistenceException {
+        File[] files = getDirectory().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Delete the persisted messages of all the clients, the persistence must not be open.
+     */
+    void deleteAll() {
+        File[] directories = root.listFiles();
+        if (directories != null) {
+            for (File dir : directories) {
+                File[] files = dir.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+                dir.delete();
+            }
+        }
+    }
+
+    @Override
+    public boolean containsKey(String key) throws MqttPersistenceException {
+        return getFile(key).exists();
+    }
+
+    private File getDirectory() throws MqttPersistenceException {
+        if (directory == null) {
+            throw new MqttPersistenceException(MqttPersistenceException.REASON_CODE_CLIENT_NOT_CONNECTED);
+        }
+        return directory;
+    }
+
+    private File getFile(String key) throws MqttPersistenceException {
+        return new File(getDirectory(), key);
+    }
+}
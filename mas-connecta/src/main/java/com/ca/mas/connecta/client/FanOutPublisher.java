@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.connecta.client;
+
+import android.util.Log;
+
+import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.notify.Callback;
+import com.ca.mas.messaging.MASPublishResult;
+import com.ca.mas.messaging.topic.MASTopic;
+
+import org.eclipse.paho.android.service.MqttAndroidClient;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.ca.mas.foundation.MAS.DEBUG;
+import static com.ca.mas.foundation.MAS.TAG;
+
+/**
+ * Publishes the same payload to the topic of each recipient.
+ * <p>
+ * The payload is serialized once by the caller and shared by the messages of all the recipients. At most
+ * {@code maxInflight} messages are published at a time, the next message is published as soon as a
+ * previous one completes, so that the MQTT client in-flight window is not exceeded. The callback is
+ * notified once with the result of every recipient.
+ * <p>
+ * When the client is not connected, or messages are already queued, the message of each recipient is added to
+ * the {@link OutboundQueue} instead, see {@link #enqueue(OutboundQueue, Map, byte[], int, boolean, MASCallback)}.
+ */
+class FanOutPublisher implements IMqttActionListener {
+
+    private final MqttAndroidClient client;
+    private final Iterator<Map.Entry<String, MASTopic>> pending;
+    private final byte[] payload;
+    private final int qos;
+    private final boolean retained;
+    private final int maxInflight;
+    private final MASCallback<MASPublishResult> callback;
+
+    private final List<String> delivered = new ArrayList<>();
+    private final Map<String, Throwable> failed = new LinkedHashMap<>();
+    private int inflight;
+    private boolean completed;
+
+    FanOutPublisher(MqttAndroidClient client, Map<String, MASTopic> recipients, byte[] payload, int qos,
+                    boolean retained, int maxInflight, MASCallback<MASPublishResult> callback) {
+        this.client = client;
+        this.pending = new LinkedHashMap<>(recipients).entrySet().iterator();
+        this.payload = payload;
+        this.qos = qos;
+        this.retained = retained;
+        this.maxInflight = Math.max(1, maxInflight);
+        this.callback = callback;
+    }
+
+    synchronized void start() {
+        publishNext();
+    }
+
+    /**
+     * Add the message of each recipient to the outbound queue, in order. The callback is notified once every
+     * message is published or dropped by the queue.
+     */
+    static void enqueue(OutboundQueue queue, Map<String, MASTopic> recipients, byte[] payload, int qos,
+                        boolean retained, final MASCallback<MASPublishResult> callback) {
+        final List<String> delivered = new ArrayList<>();
+        final Map<String, Throwable> failed = new LinkedHashMap<>();
+        final int[] remaining = {recipients.size()};
+        for (final Map.Entry<String, MASTopic> recipient : recipients.entrySet()) {
+            queue.enqueue(recipient.getValue().toString(), payload, qos, retained, new MASCallback<Void>() {
+                @Override
+                public void onSuccess(Void result) {
+                    completed(null);
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    completed(e);
+                }
+
+                private void completed(Throwable e) {
+                    synchronized (remaining) {
+                        if (e == null) {
+                            delivered.add(recipient.getKey());
+                        } else {
+                            failed.put(recipient.getKey(), e);
+                        }
+                        if (--remaining[0] > 0) {
+                            return;
+                        }
+                    }
+                    Callback.onSuccess(callback, new MASPublishResult(delivered, failed));
+                }
+            });
+        }
+    }
+
+    @Override
+    public synchronized void onSuccess(IMqttToken token) {
+        inflight--;
+        delivered.add((String) token.getUserContext());
+        publishNext();
+    }
+
+    @Override
+    public synchronized void onFailure(IMqttToken token, Throwable exception) {
+        inflight--;
+        if (DEBUG) Log.w(TAG, "Failed to publish to " + token.getUserContext(), exception);
+        failed.put((String) token.getUserContext(), exception);
+        publishNext();
+    }
+
+    /**
+     * Fill the in-flight window, notify the callback once all the messages are completed.
+     */
+    private void publishNext() {
+        while (inflight < maxInflight && pending.hasNext()) {
+            Map.Entry<String, MASTopic> recipient = pending.next();
+            MqttMessage mqttMessage = new MqttMessage(payload);
+            mqttMessage.setQos(qos);
+            mqttMessage.setRetained(retained);
+            inflight++;
+            try {
+                client.publish(recipient.getValue().toString(), mqttMessage, recipient.getKey(), this);
+            } catch (Exception e) {
+                inflight--;
+                failed.put(recipient.getKey(), e);
+            }
+        }
+        if (inflight == 0 && !pending.hasNext() && !completed) {
+            completed = true;
+            Callback.onSuccess(callback, new MASPublishResult(delivered, failed));
+        }
+    }
+}
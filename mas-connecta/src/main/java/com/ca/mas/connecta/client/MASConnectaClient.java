@@ -12,9 +12,12 @@ import androidx.annotation.NonNull;
 
 import com.ca.mas.foundation.MASCallback;
 import com.ca.mas.messaging.MASMessage;
+import com.ca.mas.messaging.MASPublishResult;
 import com.ca.mas.messaging.topic.MASTopic;
 import com.ca.mas.messaging.MessagingConsts;
 
+import java.util.Map;
+
 /**
  * <p>The <b>MASConnectaClient</b> interface enforces the Mobile App Services messaging operations.</p>
  * <p>Besides defining the connection/pub/sub operations this interface contains message type and status data representing
@@ -64,9 +67,14 @@ public interface MASConnectaClient {
 
 
     /**
-     * <b>Pre-Condition:</b> Must have a valid connection.
      * <b>Description:</b> Publish can be accomplished without first subscribing to a topic. If a publish
      * occurs on a topic the caller is subscribed, to, the callbacks for both the sender and receiver will fire.
+     * <p>
+     * If the client is not connected, or messages are already queued, the message is added to the outbound
+     * queue and published in order once connected. The callback of a queued message is only notified once the
+     * message is published, or with an error once it is dropped because it expired after 24 hours, the queue is
+     * full or the queue is cleared, a failed connection does not notify it. The callback is held until then,
+     * it should not reference an Activity.
      *
      * @param masTopic
      * @param message
@@ -74,9 +82,10 @@ public interface MASConnectaClient {
     void publish(@NonNull MASTopic masTopic, @NonNull MASMessage message, MASCallback<Void> callback);
 
     /**
-     * <b>Pre-Condition:</b> Must have a valid connection.
      * <b>Description:</b> Publish can be accomplished without first subscribing to a topic. If a publish
      * occurs on a topic the caller is subscribed, to, the callbacks for both the sender and receiver will fire.
+     * The message is queued when the client is not connected, see
+     * {@link #publish(MASTopic, MASMessage, MASCallback)}.
      *
      * @param masTopic
      * @param message
@@ -84,6 +93,17 @@ public interface MASConnectaClient {
 
     void publish(@NonNull final MASTopic masTopic, @NonNull final byte[] message, final MASCallback<Void> callback);
 
+    /**
+     * <b>Description:</b> Publish the same message to several recipients. The message is serialized once and
+     * published to the topic of each recipient, the callback is notified once with the result of every recipient.
+     * The message of each recipient is queued when the client is not connected, the callback is then notified
+     * once every message is published or dropped, see {@link #publish(MASTopic, MASMessage, MASCallback)}.
+     *
+     * @param recipients The topic of each recipient, by recipient id.
+     * @param message    The message to publish.
+     */
+    void publish(@NonNull Map<String, MASTopic> recipients, @NonNull MASMessage message, MASCallback<MASPublishResult> callback);
+
     /**
      * <b>Pre-Condition:</b> None.<br>
      * <b>Description:</b> In order to be called the object cannot be null. Use of this message
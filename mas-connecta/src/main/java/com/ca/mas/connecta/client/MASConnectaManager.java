@@ -9,15 +9,18 @@
 package com.ca.mas.connecta.client;
 
 import android.os.Handler;
+import android.os.Looper;
 import androidx.annotation.NonNull;
 import android.util.Log;
 
-import com.ca.mas.core.util.Functions;
 import com.ca.mas.core.EventDispatcher;
+import com.ca.mas.core.security.DefaultEncryptionProvider;
 import com.ca.mas.foundation.MAS;
 import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.MASException;
 import com.ca.mas.foundation.notify.Callback;
 import com.ca.mas.messaging.MASMessage;
+import com.ca.mas.messaging.MASPublishResult;
 import com.ca.mas.messaging.topic.MASTopic;
 
 import org.eclipse.paho.android.service.MqttAndroidClient;
@@ -27,10 +30,18 @@ import org.eclipse.paho.client.mqttv3.IMqttToken;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import static com.ca.mas.foundation.MAS.DEBUG;
 import static com.ca.mas.foundation.MAS.TAG;
@@ -41,11 +52,38 @@ import static com.ca.mas.foundation.MAS.TAG;
  */
 public class MASConnectaManager implements MASConnectaClient, Observer {
 
+    private static final String OUTBOUND_QUEUE_DIR = "mas_connecta_outbound";
+    private static final String PERSISTENCE_DIR = "mas_connecta_persistence";
+    private static final long RECONNECT_INITIAL_DELAY = TimeUnit.SECONDS.toMillis(1);
+    private static final long RECONNECT_MAX_DELAY = TimeUnit.MINUTES.toMillis(2);
+
     private static MASConnectaManager instance = new MASConnectaManager();
     private MASConnectOptions connectOptions;
     private MASConnectaListener connectaListener;
     private String clientId;
     private MqttAndroidClient mqttAndroidClient;
+    private OutboundQueue outboundQueue;
+    private EncryptedMqttPersistence persistence;
+    //Callbacks of the connect requests received while connecting
+    private final List<MASCallback<Void>> connectCallbacks = new ArrayList<>();
+    private boolean connecting;
+    //Incremented on disconnect, so that the connect attempt in progress is abandoned
+    private int connectionGeneration;
+    private final List<MASMessageSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean messageBroadcast = true;
+    private volatile boolean binaryEnvelope;
+    private final SubscriptionRegistry subscriptionRegistry = new SubscriptionRegistry();
+    private final Handler reconnectHandler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private boolean automaticReconnect = true;
+    //Number of reconnect attempts since the connection was lost, 0 when not reconnecting
+    private int reconnectAttempts;
+    private final Runnable reconnect = new Runnable() {
+        @Override
+        public void run() {
+            connect(null);
+        }
+    };
 
     private MASConnectaManager() {
         EventDispatcher.STOP.addObserver(this);
@@ -72,6 +110,100 @@ public class MASConnectaManager implements MASConnectaClient, Observer {
         }
     }
 
+    /**
+     * Register a listener for the received messages of the topic filter, the messages are delivered in batches
+     * on the main thread. Use {@link #addMessageListener(MASMessageSubscription)} to configure the executor and
+     * the buffer of the listener.
+     *
+     * @param topicFilter The MQTT topic filter of the messages, or null for all the messages.
+     * @param listener    The listener of the messages.
+     * @return The subscription, to cancel it.
+     */
+    public MASMessageSubscription addMessageListener(String topicFilter, MASMessageListener listener) {
+        return addMessageListener(new MASMessageSubscription.Builder(listener).topicFilter(topicFilter).build());
+    }
+
+    /**
+     * Register a listener for the received messages.
+     *
+     * @param subscription The subscription of the listener.
+     * @return The subscription, to cancel it.
+     */
+    public MASMessageSubscription addMessageListener(@NonNull MASMessageSubscription subscription) {
+        if (!subscription.isCancelled() && !subscriptions.contains(subscription)) {
+            subscriptions.add(subscription);
+        }
+        return subscription;
+    }
+
+    public void removeMessageListener(MASMessageSubscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * Broadcast the received messages with the {@link androidx.localbroadcastmanager.content.LocalBroadcastManager}.
+     * Disable the broadcast when the messages are received with {@link #addMessageListener(String, MASMessageListener)}
+     * to avoid parceling and dispatching an Intent for each message.
+     *
+     * @param enable True to broadcast the received messages, default to true.
+     */
+    public void enableMessageBroadcast(boolean enable) {
+        messageBroadcast = enable;
+    }
+
+    /**
+     * Publish the {@link MASMessage} with the compact binary envelope instead of the JSON envelope. The binary
+     * envelope does not Base64 encode the payload, but it is only decoded by the clients which support it.
+     *
+     * @param enable True to publish with the binary envelope, default to false.
+     */
+    public void enableBinaryEnvelope(boolean enable) {
+        binaryEnvelope = enable;
+    }
+
+    /**
+     * Reconnect with an exponential backoff, from 1 second up to 2 minutes, when the connection is lost.
+     * The subscribed topics are restored once reconnected.
+     *
+     * @param enable True to reconnect automatically, default to true.
+     */
+    public synchronized void enableAutomaticReconnect(boolean enable) {
+        automaticReconnect = enable;
+        if (!enable) {
+            cancelReconnect();
+        }
+    }
+
+    /**
+     * @return The topic filters subscribed with {@link #subscribe(MASTopic, MASCallback)} and not unsubscribed.
+     */
+    public Set<String> getSubscribedTopics() {
+        return subscriptionRegistry.getFilters();
+    }
+
+    /**
+     * @return The metrics of the queue of the messages published while not connected.
+     */
+    public OutboundQueueMetrics getOutboundQueueMetrics() {
+        return getOutboundQueue().getMetrics();
+    }
+
+    private synchronized OutboundQueue getOutboundQueue() {
+        if (outboundQueue == null) {
+            outboundQueue = new OutboundQueue(new File(MAS.getContext().getFilesDir(), OUTBOUND_QUEUE_DIR),
+                    new DefaultEncryptionProvider(MAS.getContext()));
+        }
+        return outboundQueue;
+    }
+
+    private synchronized EncryptedMqttPersistence getPersistence() {
+        if (persistence == null) {
+            persistence = new EncryptedMqttPersistence(new File(MAS.getContext().getFilesDir(), PERSISTENCE_DIR),
+                    new DefaultEncryptionProvider(MAS.getContext()));
+        }
+        return persistence;
+    }
+
     @Override
     public synchronized void connect(final MASCallback<Void> callback) {
 
@@ -79,6 +211,15 @@ public class MASConnectaManager implements MASConnectaClient, Observer {
             Callback.onSuccess(callback, null);
             return;
         }
+        if (callback != null) {
+            connectCallbacks.add(callback);
+        }
+        //A single connection attempt serves all the connect requests
+        if (connecting) {
+            return;
+        }
+        connecting = true;
+        final int generation = connectionGeneration;
         final MqttConnecta mqttConnecta = getMqttConnecta();
 
         if (connectOptions == null) {
@@ -89,165 +230,297 @@ public class MASConnectaManager implements MASConnectaClient, Observer {
         mqttConnecta.init(connectOptions, new MASCallback<Void>() {
             @Override
             public void onSuccess(Void result) {
-                mqttAndroidClient = new MqttAndroidClient(MAS.getContext(), mqttConnecta.getServerUri(), mqttConnecta.getClientId(), new MemoryPersistence());
-                registerCallback();
-
+                final MqttAndroidClient client = getClient(generation, mqttConnecta.getServerUri(), mqttConnecta.getClientId());
+                if (client == null) {
+                    return;
+                }
                 try {
-                    mqttAndroidClient.connect(connectOptions, null, new IMqttActionListener() {
+                    client.connect(connectOptions, null, new IMqttActionListener() {
                         @Override
                         public void onSuccess(IMqttToken asyncActionToken) {
                             if (DEBUG) Log.d(TAG, "Success connect to mqtt broker");
-                            Callback.onSuccess(callback, null);
+                            onConnectCompleted(generation, client, null);
                         }
 
                         @Override
                         public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
                             if (DEBUG) Log.e(TAG, "Failed to connect to mqtt broker", exception);
-                            Callback.onError(callback, exception);
+                            onConnectCompleted(generation, client, exception);
                         }
                     });
                 } catch (MqttException e) {
-                    Callback.onError(callback, e);
+                    onConnectCompleted(generation, client, e);
                 }
             }
 
             @Override
             public void onError(Throwable e) {
-                Callback.onError(callback, e);
+                onConnectCompleted(generation, null, e);
             }
         });
     }
 
-    @Override
-    public synchronized void disconnect(MASCallback<Void> callback) {
-        if (DEBUG) Log.d(TAG, "Disconnecting mqtt broker...");
+    /**
+     * The current client is reused to reconnect to the same broker, otherwise it is released and replaced.
+     *
+     * @return The client, or null if disconnected since the connect attempt started.
+     */
+    private synchronized MqttAndroidClient getClient(int generation, String serverUri, String clientId) {
+        if (generation != connectionGeneration) {
+            return null;
+        }
+        if (mqttAndroidClient != null
+                && mqttAndroidClient.getServerURI().equals(serverUri)
+                && mqttAndroidClient.getClientId().equals(clientId)) {
+            return mqttAndroidClient;
+        }
+        release(mqttAndroidClient);
+        mqttAndroidClient = new MqttAndroidClient(MAS.getContext(), serverUri, clientId, getPersistence());
+        registerCallback(mqttAndroidClient);
+        return mqttAndroidClient;
+    }
+
+    /**
+     * Close the client and release its service binding and broadcast receiver.
+     */
+    private static void release(MqttAndroidClient client) {
+        if (client == null) {
+            return;
+        }
         try {
-            if (mqttAndroidClient != null) {
-                mqttAndroidClient.disconnect();
-            }
-            Callback.onSuccess(callback, null);
-        } catch (MqttException e) {
-            Callback.onError(callback, e);
-        } finally {
-            mqttAndroidClient = null;
+            client.close();
+        } catch (Exception e) {
+            if (DEBUG) Log.w(TAG, "Failed to close the mqtt client", e);
+        }
+        try {
+            client.unregisterResources();
+        } catch (Exception e) {
+            if (DEBUG) Log.w(TAG, "Failed to release the mqtt client", e);
         }
     }
 
-    @Override
-    public void subscribe(@NonNull final MASTopic masTopic, final MASCallback<Void> callback) {
-        connectAndExecute(new Functions.NullaryVoid() {
-            @Override
-            public void call() {
-                subscribeTopic(masTopic, callback);
+    /**
+     * Restore the subscriptions and replay the messages queued while connecting, then notify the connect requests.
+     *
+     * @param generation The connection generation of the attempt.
+     * @param client     The client which connected, or null if no client was created.
+     * @param error      The connection error, or null if connected.
+     */
+    private void onConnectCompleted(int generation, MqttAndroidClient client, Throwable error) {
+        List<MASCallback<Void>> callbacks;
+        synchronized (this) {
+            if (generation != connectionGeneration) {
+                //Disconnected while connecting, the connect requests are already notified
+                return;
+            }
+            connecting = false;
+            callbacks = new ArrayList<>(connectCallbacks);
+            connectCallbacks.clear();
+            if (error == null) {
+                reconnectAttempts = 0;
+            } else if (reconnectAttempts > 0 || getOutboundQueue().size() > 0) {
+                //Keep trying while reconnecting or while messages wait in the outbound queue
+                scheduleReconnect();
             }
-        }, callback);
+        }
+        if (error == null) {
+            subscriptionRegistry.restore(client);
+            getOutboundQueue().replay(client);
+            for (MASCallback<Void> callback : callbacks) {
+                Callback.onSuccess(callback, null);
+            }
+        } else {
+            subscriptionRegistry.fail(error);
+            getOutboundQueue().expire();
+            for (MASCallback<Void> callback : callbacks) {
+                Callback.onError(callback, error);
+            }
+        }
+    }
+
+    /**
+     * Schedule the next reconnect attempt, the delay doubles with each attempt.
+     */
+    private synchronized void scheduleReconnect() {
+        if (!automaticReconnect) {
+            reconnectAttempts = 0;
+            return;
+        }
+        long delay = Math.min(RECONNECT_MAX_DELAY, RECONNECT_INITIAL_DELAY << Math.min(reconnectAttempts, 16));
+        //Jitter, so that the clients disconnected together do not reconnect together
+        delay += random.nextInt((int) (delay / 5) + 1);
+        reconnectAttempts++;
+        if (DEBUG) Log.d(TAG, "Reconnecting to mqtt broker in " + delay + "ms, attempt " + reconnectAttempts);
+        reconnectHandler.removeCallbacks(reconnect);
+        reconnectHandler.postDelayed(reconnect, delay);
+    }
 
+    private synchronized void cancelReconnect() {
+        reconnectAttempts = 0;
+        reconnectHandler.removeCallbacks(reconnect);
     }
 
-    private void subscribeTopic(@NonNull final MASTopic topic, final MASCallback<Void> callback) {
+    /**
+     * Disconnect from the broker and release the client, the callback is notified once the client is released.
+     */
+    @Override
+    public synchronized void disconnect(final MASCallback<Void> callback) {
+        if (DEBUG) Log.d(TAG, "Disconnecting mqtt broker...");
+        cancelReconnect();
+        subscriptionRegistry.disconnected();
+        final MqttAndroidClient client = mqttAndroidClient;
+        //Callbacks from the released client and results of the pending connect attempt are ignored
+        mqttAndroidClient = null;
+        connectionGeneration++;
+        if (connecting) {
+            connecting = false;
+            for (MASCallback<Void> connectCallback : connectCallbacks) {
+                Callback.onError(connectCallback, new MASException("Disconnected while connecting to the mqtt broker", null));
+            }
+            connectCallbacks.clear();
+        }
+        if (client == null) {
+            Callback.onSuccess(callback, null);
+            return;
+        }
+        if (!client.isConnected()) {
+            release(client);
+            Callback.onSuccess(callback, null);
+            return;
+        }
         try {
-            mqttAndroidClient.subscribe(topic.toString(), topic.getQos(), null, new IMqttActionListener() {
+            //The client can only be closed once disconnected
+            client.disconnect(null, new IMqttActionListener() {
                 @Override
-                public void onSuccess(IMqttToken iMqttToken) {
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    release(client);
                     Callback.onSuccess(callback, null);
                 }
 
                 @Override
-                public void onFailure(IMqttToken iMqttToken, Throwable throwable) {
-                    Callback.onError(callback, throwable);
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    release(client);
+                    Callback.onError(callback, exception);
                 }
             });
         } catch (Exception e) {
+            release(client);
             Callback.onError(callback, e);
         }
     }
 
-    private void connectAndExecute(@NonNull final Functions.NullaryVoid function, final MASCallback<Void> callback) {
-        if (!isConnected()) {
-            connect(new MASCallback<Void>() {
-                @Override
-                public Handler getHandler() {
-                    return Callback.getHandler(callback);
-                }
-
-                @Override
-                public void onSuccess(Void result) {
-                    function.call();
-                }
+    /**
+     * Subscriptions are reference counted: the topic is unsubscribed from the broker once it is unsubscribed as
+     * many times as it was subscribed. The subscriptions made together are sent in a single SUBSCRIBE, and they
+     * are restored when the connection is re-established.
+     */
+    @Override
+    public void subscribe(@NonNull final MASTopic masTopic, final MASCallback<Void> callback) {
+        subscriptionRegistry.subscribe(masTopic.toString(), masTopic.getQos(), callback);
+        updateSubscriptions();
+    }
 
-                @Override
-                public void onError(Throwable e) {
-                    Callback.onError(callback, e);
-                }
-            });
+    /**
+     * Send the subscription changes if connected, otherwise connect, they are sent once connected.
+     */
+    private void updateSubscriptions() {
+        MqttAndroidClient client;
+        synchronized (this) {
+            client = mqttAndroidClient;
+        }
+        if (isConnected()) {
+            subscriptionRegistry.reconcile(client);
         } else {
-            function.call();
+            connect(null);
         }
     }
 
     @Override
     public void unsubscribe(@NonNull final MASTopic masTopic, final MASCallback<Void> callback) {
+        subscriptionRegistry.unsubscribe(masTopic.toString(), callback);
+        updateSubscriptions();
+    }
 
-        connectAndExecute(new Functions.NullaryVoid() {
-            @Override
-            public void call() {
-                unsubscribeTopic(masTopic, callback);
-            }
-        }, callback);
+    public void publish(@NonNull final MASTopic masTopic, @NonNull final String message, final MASCallback<Void> callback) {
+        publish(masTopic, message.getBytes(), callback);
     }
 
-    private void unsubscribeTopic(@NonNull final MASTopic topic, final MASCallback<Void> callback) {
-        try {
-            mqttAndroidClient.unsubscribe(topic.toString(), null, new IMqttActionListener() {
-                @Override
-                public void onSuccess(IMqttToken iMqttToken) {
-                    Callback.onSuccess(callback, null);
-                }
+    @Override
+    public void publish(@NonNull final MASTopic topic, @NonNull final byte[] message, final MASCallback<Void> callback) {
+        publishOrEnqueue(topic, message, topic.getQos(), false, callback);
+    }
 
-                @Override
-                public void onFailure(IMqttToken iMqttToken, Throwable throwable) {
-                    Callback.onError(callback, throwable);
-                }
-            });
+    @Override
+    public void publish(@NonNull final MASTopic masTopic, @NonNull final MASMessage message, final MASCallback<Void> callback) {
+        byte[] bytes;
+        try {
+            bytes = encode(message);
         } catch (Exception e) {
             Callback.onError(callback, e);
+            return;
         }
+        publishOrEnqueue(masTopic, bytes, message.getQos(), message.isRetained(), callback);
     }
 
-    public void publish(@NonNull final MASTopic masTopic, @NonNull final String message, final MASCallback<Void> callback) {
-        publish(masTopic, message.getBytes(), callback);
+    private byte[] encode(@NonNull MASMessage message) {
+        if (binaryEnvelope) {
+            return message.createBinaryFromMASMessage();
+        }
+        return message.createJSONStringFromMASMessage(null).getBytes();
     }
 
-    @Override
-    public void publish(@NonNull final MASTopic topic, @NonNull final byte[] message, final MASCallback<Void> callback) {
-
-        connectAndExecute(new Functions.NullaryVoid() {
-            @Override
-            public void call() {
-                MqttMessage mqttMessage = new MqttMessage();
-                mqttMessage.setPayload(message);
-                mqttMessage.setQos(topic.getQos());
-                publish(topic, mqttMessage, callback);
+    /**
+     * Publish the message if connected, otherwise add it to the outbound queue, which is replayed once connected.
+     * Messages are also queued while the queue is replayed, so that they are published in order.
+     */
+    private void publishOrEnqueue(@NonNull MASTopic topic, @NonNull byte[] payload, int qos, boolean retained, MASCallback<Void> callback) {
+        OutboundQueue queue = getOutboundQueue();
+        if (isConnected() && queue.size() == 0) {
+            MqttMessage mqttMessage = new MqttMessage(payload);
+            mqttMessage.setQos(qos);
+            mqttMessage.setRetained(retained);
+            publish(topic, mqttMessage, callback);
+            return;
+        }
+        queue.enqueue(topic.toString(), payload, qos, retained, callback);
+        replayOrConnect(queue);
+    }
 
-            }
-        }, callback);
+    /**
+     * Replay the outbound queue if connected, otherwise connect, the queue is replayed once connected.
+     */
+    private void replayOrConnect(OutboundQueue queue) {
+        if (isConnected()) {
+            queue.replay(mqttAndroidClient);
+        } else {
+            connect(null);
+        }
     }
 
     @Override
-    public void publish(@NonNull final MASTopic masTopic, @NonNull final MASMessage message, final MASCallback<Void> callback) {
-
-        connectAndExecute(new Functions.NullaryVoid() {
-            @Override
-            public void call() {
-                MqttMessage mqttMessage = new MqttMessage();
-                byte[] bytes = message.createJSONStringFromMASMessage(null).getBytes();
-                mqttMessage.setPayload(bytes);
-                mqttMessage.setQos(message.getQos());
-                mqttMessage.setRetained(message.isRetained());
-                publish(masTopic, mqttMessage, callback);
-            }
-        }, callback);
+    public void publish(@NonNull final Map<String, MASTopic> recipients, @NonNull final MASMessage message,
+                        final MASCallback<MASPublishResult> callback) {
+        if (recipients.isEmpty()) {
+            Callback.onSuccess(callback, new MASPublishResult(new ArrayList<String>(), new HashMap<String, Throwable>()));
+            return;
+        }
+        final byte[] payload;
+        try {
+            payload = encode(message);
+        } catch (Exception e) {
+            Callback.onError(callback, e);
+            return;
+        }
 
+        //Queued like a single message, so that the messages are not lost offline and are published in order
+        OutboundQueue queue = getOutboundQueue();
+        if (isConnected() && queue.size() == 0) {
+            new FanOutPublisher(mqttAndroidClient, recipients, payload, message.getQos(),
+                    message.isRetained(), connectOptions.getMaxInflight(), callback).start();
+            return;
+        }
+        FanOutPublisher.enqueue(queue, recipients, payload, message.getQos(), message.isRetained(), callback);
+        replayOrConnect(queue);
     }
 
     private void publish(@NonNull MASTopic topic, @NonNull MqttMessage mqttMessage, final MASCallback<Void> callback) {
@@ -268,14 +541,31 @@ public class MASConnectaManager implements MASConnectaClient, Observer {
         }
     }
 
-    private void registerCallback() {
+    private boolean isCurrent(MqttAndroidClient client) {
+        synchronized (this) {
+            return client == mqttAndroidClient;
+        }
+    }
+
+    private void registerCallback(final MqttAndroidClient client) {
 
         final MessageBroadcaster broadcaster = new MessageBroadcaster(MAS.getContext());
-        mqttAndroidClient.setCallback(new MqttCallback() {
+        client.setCallback(new MqttCallback() {
             @Override
             public void connectionLost(Throwable throwable) {
                 if (DEBUG)
                     Log.d(TAG, "Connection lost", throwable);
+                synchronized (MASConnectaManager.this) {
+                    //The connection of a released client is lost on purpose
+                    if (!isCurrent(client)) {
+                        return;
+                    }
+                    //Lost while connecting, the connect failure schedules the reconnect
+                    if (!connecting) {
+                        scheduleReconnect();
+                    }
+                }
+                subscriptionRegistry.disconnected();
                 if (connectaListener != null) {
                     connectaListener.onConnectionLost();
                 }
@@ -283,12 +573,22 @@ public class MASConnectaManager implements MASConnectaClient, Observer {
 
             @Override
             public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
+                if (!isCurrent(client)) {
+                    return;
+                }
                 if (DEBUG)
                     Log.d(TAG, "Message Arrived: QOS: " + mqttMessage.getQos() + ", duplicate?" + mqttMessage.isDuplicate() + ", retained? " + mqttMessage.isRetained());
                 try {
                     MASMessage masMessage = ConnectaUtil.createMASMessageFromMqtt(mqttMessage);
                     masMessage.setTopic(topic);
-                    broadcaster.broadcastMessage(masMessage);
+                    for (MASMessageSubscription subscription : subscriptions) {
+                        if (subscription.matches(topic)) {
+                            subscription.offer(masMessage);
+                        }
+                    }
+                    if (messageBroadcast) {
+                        broadcaster.broadcastMessage(masMessage);
+                    }
                 } catch (Exception je) {
                     if (connectaListener != null) {
                         connectaListener.onInvalidMessageFormat();
@@ -331,8 +631,35 @@ public class MASConnectaManager implements MASConnectaClient, Observer {
 
     @Override
     public void update(Observable o, Object arg) {
+        final boolean reset = o != EventDispatcher.STOP;
+        if (reset) {
+            try {
+                //The queued messages and the subscriptions belong to the previous user or gateway
+                getOutboundQueue().clear();
+                subscriptionRegistry.clear();
+            } catch (Exception ignore) {
+                //Ignore
+            }
+        }
         try {
-            disconnect(null);
+            disconnect(new MASCallback<Void>() {
+                @Override
+                public void onSuccess(Void result) {
+                    deletePersistence();
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    deletePersistence();
+                }
+
+                private void deletePersistence() {
+                    //The in-flight messages belong to the previous user or gateway, the client is released
+                    if (reset) {
+                        getPersistence().deleteAll();
+                    }
+                }
+            });
         } catch (Exception ignore) {
             //Ignore
         }
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.connecta.client;
+
+import com.ca.mas.messaging.MASMessage;
+
+import java.util.List;
+
+/**
+ * Listener of the messages received by the {@link MASConnectaManager}, registered with
+ * {@link MASConnectaManager#addMessageListener(String, MASMessageListener)}.
+ */
+public interface MASMessageListener {
+
+    /**
+     * Invoked with the messages received since the previous invocation, in the order they were received.
+     *
+     * @param messages The received messages, at least one.
+     */
+    void onMessages(List<MASMessage> messages);
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.connecta.client;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.ca.mas.messaging.MASMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.ca.mas.foundation.MAS.DEBUG;
+import static com.ca.mas.foundation.MAS.TAG;
+
+/**
+ * A {@link MASMessageListener} registered for the messages of a topic filter.
+ * <p>
+ * Received messages are buffered and delivered in batches on the executor of the subscription: messages received
+ * before the listener runs are delivered together in a single list. When the listener does not keep up, the buffer
+ * is bounded by {@link Builder#bufferSize(int)} and messages are dropped according to the {@link Overflow} strategy.
+ */
+public class MASMessageSubscription {
+
+    /**
+     * The strategy applied when a message is received while the buffer is full.
+     */
+    public enum Overflow {
+        /**
+         * Drop the oldest buffered message to make room for the received message.
+         */
+        DROP_OLDEST,
+        /**
+         * Drop the received message.
+         */
+        DROP_NEWEST
+    }
+
+    static final int DEFAULT_BUFFER_SIZE = 1000;
+
+    private final String topicFilter;
+    private final MASMessageListener listener;
+    private final Executor executor;
+    private final int bufferSize;
+    private final Overflow overflow;
+
+    private final ArrayDeque<MASMessage> buffer = new ArrayDeque<>();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private boolean scheduled;
+    private volatile boolean cancelled;
+
+    private final Runnable deliver = new Runnable() {
+        @Override
+        public void run() {
+            List<MASMessage> messages;
+            synchronized (MASMessageSubscription.this) {
+                scheduled = false;
+                if (buffer.isEmpty() || cancelled) {
+                    buffer.clear();
+                    return;
+                }
+                messages = new ArrayList<>(buffer);
+                buffer.clear();
+            }
+            delivered.addAndGet(messages.size());
+            try {
+                listener.onMessages(messages);
+            } catch (Exception e) {
+                if (DEBUG) Log.e(TAG, "Message listener failed", e);
+            }
+        }
+    };
+
+    private MASMessageSubscription(Builder builder) {
+        this.topicFilter = builder.topicFilter;
+        this.listener = builder.listener;
+        this.executor = builder.executor;
+        this.bufferSize = builder.bufferSize;
+        this.overflow = builder.overflow;
+    }
+
+    /**
+     * @return The topic filter, or null for all the messages.
+     */
+    public String getTopicFilter() {
+        return topicFilter;
+    }
+
+    /**
+     * @return The number of messages delivered to the listener.
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * @return The number of messages dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Stop delivering messages to the listener, the buffered messages are discarded.
+     */
+    public void cancel() {
+        cancelled = true;
+        MASConnectaManager.getInstance().removeMessageListener(this);
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return True if the subscription receives the messages of the topic.
+     */
+    boolean matches(String topic) {
+        return topicFilter == null || matches(topicFilter, topic);
+    }
+
+    /**
+     * Buffer the message and schedule its delivery.
+     */
+    void offer(MASMessage message) {
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            if (buffer.size() >= bufferSize) {
+                dropped.incrementAndGet();
+                if (overflow == Overflow.DROP_NEWEST) {
+                    return;
+                }
+                buffer.pollFirst();
+            }
+            buffer.addLast(message);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        try {
+            executor.execute(deliver);
+        } catch (Exception e) {
+            if (DEBUG) Log.e(TAG, "Unable to deliver the messages", e);
+            synchronized (this) {
+                scheduled = false;
+            }
+        }
+    }
+
+    /**
+     * MQTT topic filter matching, '+' matches a single level and '#' matches the remaining levels.
+     */
+    static boolean matches(String filter, String topic) {
+        if (topic == null) {
+            return false;
+        }
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        for (int i = 0; i < filterLevels.length; i++) {
+            if ("#".equals(filterLevels[i])) {
+                return true;
+            }
+            if (i >= topicLevels.length) {
+                return false;
+            }
+            if (!"+".equals(filterLevels[i]) && !filterLevels[i].equals(topicLevels[i])) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+
+    public static class Builder {
+
+        private final MASMessageListener listener;
+        private String topicFilter;
+        private Executor executor;
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        private Overflow overflow = Overflow.DROP_OLDEST;
+
+        /**
+         * @param listener The listener of the messages.
+         */
+        public Builder(MASMessageListener listener) {
+            if (listener == null) {
+                throw new NullPointerException("listener");
+            }
+            this.listener = listener;
+        }
+
+        /**
+         * @param topicFilter The MQTT topic filter of the messages, which may contain the '+' and '#' wildcards.
+         *                    Default to all the messages.
+         */
+        public Builder topicFilter(String topicFilter) {
+            this.topicFilter = topicFilter;
+            return this;
+        }
+
+        /**
+         * @param executor The executor the listener is invoked on. Default to the main thread.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param bufferSize The maximum number of messages buffered before they are delivered. Default to 1000.
+         */
+        public Builder bufferSize(int bufferSize) {
+            if (bufferSize < 1) {
+                throw new IllegalArgumentException("bufferSize < 1");
+            }
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * @param overflow The strategy applied when the buffer is full. Default to {@link Overflow#DROP_OLDEST}.
+         */
+        public Builder overflow(Overflow overflow) {
+            if (overflow == null) {
+                throw new NullPointerException("overflow");
+            }
+            this.overflow = overflow;
+            return this;
+        }
+
+        public MASMessageSubscription build() {
+            if (executor == null) {
+                final Handler handler = new Handler(Looper.getMainLooper());
+                executor = new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        handler.post(command);
+                    }
+                };
+            }
+            return new MASMessageSubscription(this);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.connecta.client;
+
+import android.util.Log;
+
+import com.ca.mas.core.io.IoUtils;
+import com.ca.mas.core.security.EncryptionProvider;
+import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.MASException;
+import com.ca.mas.foundation.notify.Callback;
+
+import org.eclipse.paho.android.service.MqttAndroidClient;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.ca.mas.foundation.MAS.DEBUG;
+import static com.ca.mas.foundation.MAS.TAG;
+
+/**
+ * Ordered queue of the messages published while the {@link MASConnectaManager} is not connected.
+ * <p>
+ * Messages are written to disk, encrypted with the {@link EncryptionProvider}, so that they survive the
+ * process. Once connected, the queue is replayed in order, {@link #BATCH_SIZE} messages at a time. The queue is
+ * bounded by {@link #MAX_MESSAGES}, {@link #MAX_SIZE} and {@link #MAX_AGE}, the oldest messages are dropped first.
+ * <p>
+ * The callback of a message is notified once the message is published, or with an error once the message is
+ * dropped because it expired, the queue is full or the queue is cleared. A message which fails to connect or to
+ * publish stays queued for the next connection. Messages restored from a previous process have no callback.
+ * Callbacks are notified outside of the queue lock.
+ */
+class OutboundQueue {
+
+    static final int MAX_MESSAGES = 1000;
+    static final long MAX_SIZE = 5 * 1024 * 1024;
+    static final long MAX_AGE = TimeUnit.HOURS.toMillis(24);
+    static final int BATCH_SIZE = 10;
+
+    private static final int VERSION = 1;
+
+    private final File directory;
+    private final EncryptionProvider encryptionProvider;
+    private final OutboundQueueMetrics metrics = new OutboundQueueMetrics();
+
+    //Messages by sequence, null until loaded from disk
+    private TreeMap<Long, Entry> entries;
+    private long nextSequence;
+    private long size;
+    private boolean replaying;
+    private long replayStartedAt;
+    private int batchPending;
+    private boolean batchFailed;
+
+    OutboundQueue(File directory, EncryptionProvider encryptionProvider) {
+        this.directory = directory;
+        this.encryptionProvider = encryptionProvider;
+    }
+
+    /**
+     * A queued message.
+     */
+    private static class Entry {
+        final long sequence;
+        final String topic;
+        final byte[] payload;
+        final int qos;
+        final boolean retained;
+        final long enqueuedAt;
+        MASCallback<Void> callback;
+
+        Entry(long sequence, String topic, byte[] payload, int qos, boolean retained, long enqueuedAt) {
+            this.sequence = sequence;
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+            this.retained = retained;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * The result of a message, collected under the queue lock and notified once the lock is released.
+     */
+    private static class Notification {
+        final MASCallback<Void> callback;
+        final Throwable error;
+
+        Notification(MASCallback<Void> callback, Throwable error) {
+            this.callback = callback;
+            this.error = error;
+        }
+    }
+
+    OutboundQueueMetrics getMetrics() {
+        return metrics;
+    }
+
+    synchronized int size() {
+        return load().size();
+    }
+
+    /**
+     * Add the message to the queue.
+     *
+     * @param callback Notified once the message is published or dropped, may be null.
+     */
+    void enqueue(String topic, byte[] payload, int qos, boolean retained, MASCallback<Void> callback) {
+        List<Notification> notifications = new ArrayList<>();
+        synchronized (this) {
+            load();
+            Entry entry = new Entry(nextSequence++, topic, payload, qos, retained, System.currentTimeMillis());
+            entry.callback = callback;
+            try {
+                write(entry);
+            } catch (Exception e) {
+                //Keep the message in memory, it is lost if the process ends before it is published
+                if (DEBUG) Log.w(TAG, "Unable to write the queued message", e);
+            }
+            entries.put(entry.sequence, entry);
+            size += entry.payload.length;
+            trim(notifications);
+            metrics.onDepthChanged(entries.size());
+        }
+        notify(notifications);
+    }
+
+    /**
+     * Publish the queued messages in order, in batches, with the connected client.
+     */
+    void replay(MqttAndroidClient client) {
+        List<Notification> notifications = new ArrayList<>();
+        synchronized (this) {
+            if (replaying || load().isEmpty()) {
+                return;
+            }
+            replaying = true;
+            replayStartedAt = System.currentTimeMillis();
+            publishBatch(client, notifications);
+        }
+        notify(notifications);
+    }
+
+    /**
+     * Drop the expired messages and notify their callback, the other messages stay queued for the next
+     * connection.
+     */
+    void expire() {
+        List<Notification> notifications = new ArrayList<>();
+        synchronized (this) {
+            load();
+            removeExpired(notifications);
+            metrics.onDepthChanged(entries.size());
+        }
+        notify(notifications);
+    }
+
+    /**
+     * Remove all the queued messages, their callback is notified with an error.
+     */
+    void clear() {
+        List<Notification> notifications = new ArrayList<>();
+        synchronized (this) {
+            if (entries != null) {
+                for (Entry entry : entries.values()) {
+                    if (entry.callback != null) {
+                        notifications.add(new Notification(entry.callback,
+                                new MASException("Message dropped, the outbound queue is cleared", null)));
+                        entry.callback = null;
+                    }
+                }
+                entries.clear();
+            }
+            size = 0;
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            metrics.onDepthChanged(0);
+        }
+        notify(notifications);
+    }
+
+    private void publishBatch(final MqttAndroidClient client, List<Notification> notifications) {
+        removeExpired(notifications);
+        List<Entry> batch = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (batch.size() == BATCH_SIZE) {
+                break;
+            }
+            batch.add(entry);
+        }
+        if (batch.isEmpty() || !client.isConnected()) {
+            replaying = false;
+            metrics.onReplayCompleted(System.currentTimeMillis() - replayStartedAt);
+            return;
+        }
+
+        batchPending = batch.size();
+        batchFailed = false;
+        for (final Entry entry : batch) {
+            MqttMessage mqttMessage = new MqttMessage(entry.payload);
+            mqttMessage.setQos(entry.qos);
+            mqttMessage.setRetained(entry.retained);
+            try {
+                client.publish(entry.topic, mqttMessage, null, new IMqttActionListener() {
+                    @Override
+                    public void onSuccess(IMqttToken asyncActionToken) {
+                        onPublished(client, entry, null);
+                    }
+
+                    @Override
+                    public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                        onPublished(client, entry, exception);
+                    }
+                });
+            } catch (Exception e) {
+                published(client, entry, e, notifications);
+            }
+        }
+    }
+
+    private void onPublished(MqttAndroidClient client, Entry entry, Throwable error) {
+        List<Notification> notifications = new ArrayList<>();
+        synchronized (this) {
+            published(client, entry, error, notifications);
+        }
+        notify(notifications);
+    }
+
+    private void published(MqttAndroidClient client, Entry entry, Throwable error, List<Notification> notifications) {
+        if (error == null) {
+            MASCallback<Void> callback = entry.callback;
+            entry.callback = null;
+            if (remove(entry)) {
+                metrics.onReplayed(System.currentTimeMillis() - entry.enqueuedAt);
+                notifications.add(new Notification(callback, null));
+            }
+        } else {
+            //Keep the message and its callback for the next connection
+            if (DEBUG) Log.w(TAG, "Failed to publish the queued message to " + entry.topic, error);
+            batchFailed = true;
+        }
+        metrics.onDepthChanged(entries.size());
+
+        if (--batchPending == 0) {
+            if (batchFailed) {
+                replaying = false;
+                metrics.onReplayCompleted(System.currentTimeMillis() - replayStartedAt);
+            } else {
+                publishBatch(client, notifications);
+            }
+        }
+    }
+
+    private static void notify(List<Notification> notifications) {
+        for (Notification notification : notifications) {
+            if (notification.error == null) {
+                Callback.onSuccess(notification.callback, null);
+            } else {
+                Callback.onError(notification.callback, notification.error);
+            }
+        }
+    }
+
+    /**
+     * Drop the expired messages, and the oldest messages while the queue exceeds its bounds.
+     */
+    private void trim(List<Notification> notifications) {
+        removeExpired(notifications);
+        while (!entries.isEmpty() && (entries.size() > MAX_MESSAGES || size > MAX_SIZE)) {
+            drop(entries.firstEntry().getValue(), "Message dropped, the outbound queue is full", notifications);
+        }
+    }
+
+    private void removeExpired(List<Notification> notifications) {
+        long expiresBefore = System.currentTimeMillis() - MAX_AGE;
+        while (!entries.isEmpty() && entries.firstEntry().getValue().enqueuedAt < expiresBefore) {
+            drop(entries.firstEntry().getValue(), "Message dropped, it expired in the outbound queue", notifications);
+        }
+    }
+
+    private void drop(Entry entry, String reason, List<Notification> notifications) {
+        if (DEBUG) Log.w(TAG, reason + ": " + entry.topic);
+        MASCallback<Void> callback = entry.callback;
+        entry.callback = null;
+        remove(entry);
+        metrics.onDropped();
+        if (callback != null) {
+            notifications.add(new Notification(callback, new MASException(reason, null)));
+        }
+    }
+
+    /**
+     * @return False if the message was no longer queued.
+     */
+    private boolean remove(Entry entry) {
+        if (entries.remove(entry.sequence) != null) {
+            size -= entry.payload.length;
+            delete(entry);
+            return true;
+        }
+        return false;
+    }
+
+    private TreeMap<Long, Entry> load() {
+        if (entries != null) {
+            return entries;
+        }
+        entries = new TreeMap<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                try {
+                    Entry entry = read(file);
+                    entries.put(entry.sequence, entry);
+                    size += entry.payload.length;
+                } catch (Exception e) {
+                    if (DEBUG) Log.w(TAG, "Invalid queued message " + file.getName(), e);
+                    file.delete();
+                }
+            }
+        }
+        nextSequence = entries.isEmpty() ? 0 : entries.lastKey() + 1;
+        metrics.onDepthChanged(entries.size());
+        return entries;
+    }
+
+    private void write(Entry entry) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.payload.length + 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(VERSION);
+        out.writeLong(entry.sequence);
+        out.writeUTF(entry.topic);
+        out.writeInt(entry.qos);
+        out.writeBoolean(entry.retained);
+        out.writeLong(entry.enqueuedAt);
+        out.writeInt(entry.payload.length);
+        out.write(entry.payload);
+        out.flush();
+
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(getFile(entry.sequence));
+            outputStream.write(encryptionProvider.encrypt(bytes.toByteArray()));
+            outputStream.flush();
+        } finally {
+            IoUtils.closeQuietly(outputStream);
+        }
+    }
+
+    private Entry read(File file) throws IOException {
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            byte[] data = encryptionProvider.decrypt(IoUtils.slurpStream(inputStream, (int) MAX_SIZE * 2));
+            if (data == null) {
+                throw new IOException("Unable to decrypt the queued message");
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unsupported queued message version");
+            }
+            long sequence = in.readLong();
+            String topic = in.readUTF();
+            int qos = in.readInt();
+            boolean retained = in.readBoolean();
+            long enqueuedAt = in.readLong();
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            return new Entry(sequence, topic, payload, qos, retained, enqueuedAt);
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+    }
+
+    private void delete(Entry entry) {
+        File file = getFile(entry.sequence);
+        if (file.exists() && !file.delete()) {
+            if (DEBUG) Log.w(TAG, "Unable to delete the queued message " + file.getName());
+        }
+    }
+
+    private File getFile(long sequence) {
+        //Zero padded so that the files sort in sequence order
+        return new File(directory, String.format(Locale.US, "%019d", sequence));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.connecta.client;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of the queue of the messages published while the {@link MASConnectaManager} is not connected.
+ */
+public class OutboundQueueMetrics {
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong replayLatency = new AtomicLong();
+    private final AtomicLong lastReplayDuration = new AtomicLong();
+
+    OutboundQueueMetrics() {
+    }
+
+    void onDepthChanged(int depth) {
+        queueDepth.set(depth);
+        int max;
+        do {
+            max = maxQueueDepth.get();
+        } while (depth > max && !maxQueueDepth.compareAndSet(max, depth));
+    }
+
+    void onReplayed(long latencyMillis) {
+        replayed.incrementAndGet();
+        replayLatency.addAndGet(latencyMillis);
+    }
+
+    void onDropped() {
+        dropped.incrementAndGet();
+    }
+
+    void onReplayCompleted(long durationMillis) {
+        lastReplayDuration.set(durationMillis);
+    }
+
+    /**
+     * @return The number of messages waiting to be published.
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return The highest number of messages waiting to be published.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return The number of queued messages published once connected.
+     */
+    public long getReplayedCount() {
+        return replayed.get();
+    }
+
+    /**
+     * @return The number of queued messages removed because they expired, the queue was full
+     * or the connection failed.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The average time in milliseconds between queuing a message and publishing it.
+     */
+    public long getAverageReplayLatency() {
+        long count = replayed.get();
+        return count == 0 ? 0 : replayLatency.get() / count;
+    }
+
+    /**
+     * @return The time in milliseconds taken by the last replay of the queue.
+     */
+    public long getLastReplayDuration() {
+        return lastReplayDuration.get();
+    }
+
+    /**
+     * @return The metrics as a JSON object, for export.
+     */
+    public JSONObject toJSONObject() {
+        JSONObject jsonObject = new JSONObject();
+        try {
+            jsonObject.put("queueDepth", getQueueDepth());
+            jsonObject.put("maxQueueDepth", getMaxQueueDepth());
+            jsonObject.put("replayed", getReplayedCount());
+            jsonObject.put("dropped", getDroppedCount());
+            jsonObject.put("averageReplayLatency", getAverageReplayLatency());
+            jsonObject.put("lastReplayDuration", getLastReplayDuration());
+        } catch (JSONException e) {
+            //Ignore, the keys are not null
+        }
+        return jsonObject;
+    }
+
+    @Override
+    public String toString() {
+        return toJSONObject().toString();
+    }
+}
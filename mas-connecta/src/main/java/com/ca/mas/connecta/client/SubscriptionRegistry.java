@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.connecta.client;
+
+import android.util.Log;
+
+import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.MASException;
+import com.ca.mas.foundation.notify.Callback;
+
+import org.eclipse.paho.android.service.MqttAndroidClient;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.ca.mas.foundation.MAS.DEBUG;
+import static com.ca.mas.foundation.MAS.TAG;
+
+/**
+ * Reference counted registry of the topic filters subscribed with the {@link MASConnectaManager}.
+ * <p>
+ * A topic filter is subscribed with the broker when it is first subscribed, and unsubscribed when it is
+ * unsubscribed as many times as it was subscribed. The filters are reconciled with the broker in batches: the
+ * changes made while a SUBSCRIBE or UNSUBSCRIBE is in flight are sent together in a single packet once it completes.
+ * A filter covered by a wildcard filter of the same or higher QoS, for example <code>users/alice/inbox</code> by
+ * <code>users/alice/#</code>, is not subscribed with the broker, so that its messages are not received twice.
+ * <p>
+ * After a reconnect, {@link #restore(MqttAndroidClient)} subscribes all the active filters with a single SUBSCRIBE.
+ */
+class SubscriptionRegistry {
+
+    private static final int SUBSCRIBE_FAILURE = 0x80;
+
+    /**
+     * An active topic filter.
+     */
+    private static class Entry {
+        int references;
+        int qos;
+    }
+
+    /**
+     * A subscribe or unsubscribe request waiting for the reconcile of its filter.
+     */
+    private static class Request {
+        final String filter;
+        final boolean subscribe;
+        final MASCallback<Void> callback;
+
+        Request(String filter, boolean subscribe, MASCallback<Void> callback) {
+            this.filter = filter;
+            this.subscribe = subscribe;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * The requests sent to the broker together, with the filters of their SUBSCRIBE and UNSUBSCRIBE packets.
+     */
+    private static class Batch {
+        final int generation;
+        final List<Request> requests;
+        final Map<String, Integer> toSubscribe = new TreeMap<>();
+        final Set<String> toUnsubscribe = new HashSet<>();
+
+        Batch(int generation, List<Request> requests) {
+            this.generation = generation;
+            this.requests = requests;
+        }
+
+        boolean hasPackets() {
+            return !toSubscribe.isEmpty() || !toUnsubscribe.isEmpty();
+        }
+    }
+
+    //Active filters, sorted so that the packets are deterministic
+    private final Map<String, Entry> entries = new TreeMap<>();
+    //Filters subscribed with the broker, with their QoS
+    private final Map<String, Integer> subscribed = new HashMap<>();
+    //Filters to unsubscribe which are not active, they may be left from a previous session
+    private final Set<String> unknown = new HashSet<>();
+    private final List<Request> pending = new ArrayList<>();
+    private boolean reconciling;
+    //Incremented when the connection is lost, to ignore the packets of the previous connection
+    private int generation;
+
+    /**
+     * Add a reference to the topic filter.
+     *
+     * @param callback Notified once the filter is subscribed with the broker, may be null.
+     */
+    synchronized void subscribe(String filter, int qos, MASCallback<Void> callback) {
+        Entry entry = entries.get(filter);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(filter, entry);
+        }
+        entry.references++;
+        entry.qos = Math.max(entry.qos, qos);
+        pending.add(new Request(filter, true, callback));
+    }
+
+    /**
+     * Remove a reference to the topic filter.
+     *
+     * @param callback Notified once the filter is unsubscribed with the broker, may be null.
+     */
+    synchronized void unsubscribe(String filter, MASCallback<Void> callback) {
+        Entry entry = entries.get(filter);
+        if (entry == null) {
+            unknown.add(filter);
+        } else if (--entry.references == 0) {
+            entries.remove(filter);
+        }
+        pending.add(new Request(filter, false, callback));
+    }
+
+    /**
+     * @return The active topic filters.
+     */
+    synchronized Set<String> getFilters() {
+        return new HashSet<>(entries.keySet());
+    }
+
+    /**
+     * Send the pending changes to the broker.
+     */
+    void reconcile(MqttAndroidClient client) {
+        Batch batch;
+        synchronized (this) {
+            if (reconciling) {
+                //Sent once the packet in flight completes
+                return;
+            }
+            batch = prepare(client);
+        }
+        execute(client, batch);
+    }
+
+    /**
+     * The connection is new, the subscriptions of the broker are unknown: subscribe all the active filters.
+     */
+    void restore(MqttAndroidClient client) {
+        synchronized (this) {
+            subscribed.clear();
+        }
+        reconcile(client);
+    }
+
+    /**
+     * The connection failed: roll back the pending requests and notify their callback with the error.
+     */
+    void fail(Throwable error) {
+        List<Request> failed;
+        synchronized (this) {
+            failed = new ArrayList<>(pending);
+            pending.clear();
+            unknown.clear();
+            for (Request request : failed) {
+                rollback(request);
+            }
+        }
+        for (Request request : failed) {
+            Callback.onError(request.callback, error);
+        }
+    }
+
+    /**
+     * The connection is lost or closed, the filters are subscribed again by {@link #restore(MqttAndroidClient)}.
+     * The packet in flight, if any, is failed by the client.
+     */
+    synchronized void disconnected() {
+        subscribed.clear();
+        reconciling = false;
+        generation++;
+    }
+
+    /**
+     * Remove all the filters.
+     */
+    void clear() {
+        fail(new MASException("Subscriptions cleared", null));
+        synchronized (this) {
+            entries.clear();
+            subscribed.clear();
+        }
+    }
+
+    /**
+     * Take the pending requests and compute the packets to send.
+     *
+     * @return The batch, or null if not connected.
+     */
+    private Batch prepare(MqttAndroidClient client) {
+        if (client == null || !client.isConnected()) {
+            //Sent by restore() once connected
+            return null;
+        }
+        Batch batch = new Batch(generation, new ArrayList<>(pending));
+        pending.clear();
+
+        Map<String, Integer> effective = getEffectiveFilters();
+        for (Map.Entry<String, Integer> filter : effective.entrySet()) {
+            Integer qos = subscribed.get(filter.getKey());
+            if (qos == null || qos < filter.getValue()) {
+                batch.toSubscribe.put(filter.getKey(), filter.getValue());
+            }
+        }
+        batch.toUnsubscribe.addAll(unknown);
+        unknown.clear();
+        for (String filter : subscribed.keySet()) {
+            if (!effective.containsKey(filter)) {
+                batch.toUnsubscribe.add(filter);
+            }
+        }
+        reconciling = batch.hasPackets();
+        return batch;
+    }
+
+    /**
+     * Send a SUBSCRIBE for the filters to add, then an UNSUBSCRIBE for the filters to remove, so that the
+     * messages are not missed while a wildcard filter replaces the filters it covers.
+     */
+    private void execute(final MqttAndroidClient client, final Batch batch) {
+        if (batch == null) {
+            return;
+        }
+        if (!batch.hasPackets()) {
+            notifySuccess(batch.requests);
+            return;
+        }
+        if (batch.toSubscribe.isEmpty()) {
+            sendUnsubscribe(client, batch);
+            return;
+        }
+
+        String[] filters = batch.toSubscribe.keySet().toArray(new String[batch.toSubscribe.size()]);
+        int[] qos = new int[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            qos[i] = batch.toSubscribe.get(filters[i]);
+        }
+        if (DEBUG) Log.d(TAG, "Subscribing " + batch.toSubscribe.keySet());
+        try {
+            client.subscribe(filters, qos, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken asyncActionToken) {
+                    onSubscribed(client, batch, granted(asyncActionToken));
+                }
+
+                @Override
+                public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                    onCompleted(client, batch, exception);
+                }
+            });
+        } catch (Exception e) {
+            onCompleted(client, batch, e);
+        }
+    }
+
+    private void onSubscribed(MqttAndroidClient client, Batch batch, int[] granted) {
+        Set<String> rejected = new HashSet<>();
+        synchronized (this) {
+            int i = 0;
+            for (Map.Entry<String, Integer> filter : batch.toSubscribe.entrySet()) {
+                if (granted != null && i < granted.length && granted[i] == SUBSCRIBE_FAILURE) {
+                    rejected.add(filter.getKey());
+                } else if (batch.generation == generation) {
+                    subscribed.put(filter.getKey(), filter.getValue());
+                }
+                i++;
+            }
+        }
+        if (!rejected.isEmpty()) {
+            //Only fail the requests of the filters rejected by the broker
+            List<Request> failed = new ArrayList<>();
+            Iterator<Request> iterator = batch.requests.iterator();
+            while (iterator.hasNext()) {
+                Request request = iterator.next();
+                if (request.subscribe && rejected.contains(request.filter)) {
+                    failed.add(request);
+                    iterator.remove();
+                }
+            }
+            synchronized (this) {
+                for (Request request : failed) {
+                    rollback(request);
+                }
+            }
+            MASException error = new MASException("Subscription rejected by the broker", null);
+            for (Request request : failed) {
+                Callback.onError(request.callback, error);
+            }
+            //The filters covered by a rejected filter are subscribed with the next reconcile
+            batch.toUnsubscribe.clear();
+        }
+        if (batch.toUnsubscribe.isEmpty()) {
+            onCompleted(client, batch, null);
+        } else {
+            sendUnsubscribe(client, batch);
+        }
+    }
+
+    private void sendUnsubscribe(final MqttAndroidClient client, final Batch batch) {
+        if (DEBUG) Log.d(TAG, "Unsubscribing " + batch.toUnsubscribe);
+        try {
+            client.unsubscribe(batch.toUnsubscribe.toArray(new String[batch.toUnsubscribe.size()]), null,
+                    new IMqttActionListener() {
+                        @Override
+                        public void onSuccess(IMqttToken asyncActionToken) {
+                            synchronized (SubscriptionRegistry.this) {
+                                if (batch.generation == generation) {
+                                    subscribed.keySet().removeAll(batch.toUnsubscribe);
+                                }
+                            }
+                            onCompleted(client, batch, null);
+                        }
+
+                        @Override
+                        public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+                            onCompleted(client, batch, exception);
+                        }
+                    });
+        } catch (Exception e) {
+            onCompleted(client, batch, e);
+        }
+    }
+
+    /**
+     * Notify the requests of the batch, then send the changes made while it was in flight.
+     */
+    private void onCompleted(MqttAndroidClient client, Batch batch, Throwable error) {
+        Batch next = null;
+        synchronized (this) {
+            if (error != null) {
+                for (Request request : batch.requests) {
+                    rollback(request);
+                }
+            }
+            //Ignore the completion of a packet sent before a reconnect
+            if (batch.generation == generation) {
+                reconciling = false;
+                if (!pending.isEmpty() || !unknown.isEmpty()) {
+                    next = prepare(client);
+                }
+            }
+        }
+        if (error == null) {
+            notifySuccess(batch.requests);
+        } else {
+            if (DEBUG) Log.w(TAG, "Failed to update the subscriptions", error);
+            for (Request request : batch.requests) {
+                Callback.onError(request.callback, error);
+            }
+        }
+        execute(client, next);
+    }
+
+    /**
+     * Revert the reference change of a failed request.
+     */
+    private void rollback(Request request) {
+        if (request.subscribe) {
+            Entry entry = entries.get(request.filter);
+            if (entry != null && --entry.references == 0) {
+                entries.remove(request.filter);
+            }
+        } else {
+            Entry entry = entries.get(request.filter);
+            if (entry != null) {
+                entry.references++;
+            }
+            //A filter removed by the request is not restored, its UNSUBSCRIBE is sent again with the next reconcile
+        }
+    }
+
+    private void notifySuccess(List<Request> requests) {
+        for (Request request : requests) {
+            Callback.onSuccess(request.callback, null);
+        }
+    }
+
+    /**
+     * @return The active filters which are not covered by another active filter of the same or higher QoS.
+     */
+    private Map<String, Integer> getEffectiveFilters() {
+        Map<String, Integer> effective = new TreeMap<>();
+        for (Map.Entry<String, Entry> filter : entries.entrySet()) {
+            boolean covered = false;
+            for (Map.Entry<String, Entry> other : entries.entrySet()) {
+                if (other.getKey().equals(filter.getKey()) || other.getValue().qos < filter.getValue().qos) {
+                    continue;
+                }
+                if (covers(other.getKey(), filter.getKey())
+                        //Filters covering each other, keep the first one
+                        && (!covers(filter.getKey(), other.getKey()) || other.getKey().compareTo(filter.getKey()) < 0)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                effective.put(filter.getKey(), filter.getValue().qos);
+            }
+        }
+        return effective;
+    }
+
+    private static int[] granted(IMqttToken token) {
+        try {
+            return token.getGrantedQos();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return True if every topic matched by the filter is matched by the wildcard filter.
+     */
+    static boolean covers(String wildcard, String filter) {
+        String[] wildcardLevels = wildcard.split("/", -1);
+        String[] filterLevels = filter.split("/", -1);
+        //Wildcards at the first level do not match the topics starting with '$'
+        if (filterLevels[0].startsWith("$") && !wildcardLevels[0].equals(filterLevels[0])) {
+            return false;
+        }
+        for (int i = 0; i < wildcardLevels.length; i++) {
+            if ("#".equals(wildcardLevels[i])) {
+                return true;
+            }
+            if (i >= filterLevels.length || "#".equals(filterLevels[i])) {
+                return false;
+            }
+            if (!"+".equals(wildcardLevels[i]) && !wildcardLevels[i].equals(filterLevels[i])) {
+                return false;
+            }
+        }
+        return wildcardLevels.length == filterLevels.length;
+    }
+}
@@ -7,6 +7,7 @@
 
 package com.ca.mas.messaging;
 
+import android.os.Handler;
 import androidx.annotation.Keep;
 
 import com.ca.mas.connecta.client.MASConnectaManager;
@@ -19,9 +20,9 @@ import com.ca.mas.identity.group.MASMember;
 import com.ca.mas.messaging.topic.MASTopic;
 import com.ca.mas.messaging.topic.MASTopicBuilder;
 
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
 
 @Keep
 public class MASMessengerImpl implements MASMessenger {
@@ -54,6 +55,35 @@ public class MASMessengerImpl implements MASMessenger {
 
     @Override
     public void sendMessage(MASMessage message, MASGroup group, String topic, final MASCallback<Void> callback) {
+        /*
+        The final callback is returned as,
+            Either one member success comes, then return a success callback to the App
+            or, if all member gets error then only return the final Error callback to the App.
+        */
+        sendGroupMessage(message, group, topic, new MASCallback<MASPublishResult>() {
+            @Override
+            public Handler getHandler() {
+                return Callback.getHandler(callback);
+            }
+
+            @Override
+            public void onSuccess(MASPublishResult result) {
+                if (!result.getDelivered().isEmpty() || result.getFailed().isEmpty()) {
+                    Callback.onSuccess(callback, null);
+                } else {
+                    Callback.onError(callback, result.getFailed().values().iterator().next());
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                Callback.onError(callback, e);
+            }
+        });
+    }
+
+    @Override
+    public void sendGroupMessage(MASMessage message, MASGroup group, String topic, MASCallback<MASPublishResult> callback) {
         if (group == null || message == null) {
             throw new IllegalArgumentException("Invalid parameters, arguments cannot be null");
         }
@@ -63,41 +93,16 @@ public class MASMessengerImpl implements MASMessenger {
             Callback.onError(callback, new MASException("Group has no members", null));
             return;
         }
-        String userId = null;
-        MASCallback<Void> temp = null;
-        final AtomicInteger count = new AtomicInteger(1);
-        final AtomicBoolean bool = new AtomicBoolean(false);
-        /*
-        Looping through all the memmbers and providing a temporary callback to each send call to ConnectaManager.
-        This is to make sure that final callback is returned only if,
-            Either one member success comes, then return a success callback to the App
-            or, if all member gets error then only return the final Error callback to the App.
-        */
+        Map<String, MASTopic> recipients = new LinkedHashMap<>();
         for (MASMember member : members) {
             if (member != null) {
-                userId = member.getValue();
-                temp = new MASCallback<Void>() {
-                    @Override
-                    public void onSuccess(Void result) {
-                        if (!bool.getAndSet(true)) {
-                            Callback.onSuccess(callback, null);
-                        }
-                    }
-
-                    @Override
-                    public void onError(Throwable e) {
-                        if (!bool.get() && count.getAndIncrement() == members.size()) {
-                            Callback.onError(callback, e);
-                        }
-                    }
-                };
-                MASTopic masTopic = new MASTopicBuilder().setUserId(userId).setCustomTopic(topic != null ? topic : userId).build();
-                MASConnectaManager.getInstance().publish(masTopic, message, temp);
+                String userId = member.getValue();
+                recipients.put(userId, new MASTopicBuilder().setUserId(userId).setCustomTopic(topic != null ? topic : userId).build());
             }
         }
+        MASConnectaManager.getInstance().publish(recipients, message, callback);
     }
 
-
     @Override
     public void startListeningToMyMessages(MASCallback<Void> callback) {
         MASTopic masTopic = new MASTopicBuilder()
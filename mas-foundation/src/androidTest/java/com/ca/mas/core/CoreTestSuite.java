@@ -10,7 +10,9 @@ package com.ca.mas.core;
 
 import com.ca.mas.core.datasource.AccountManagerStoreDataSourceTest;
 import com.ca.mas.core.datasource.KeystoreDataSourceTest;
+import com.ca.mas.core.datasource.LocalStoreDataSourceTest;
 import com.ca.mas.core.datasource.MASSecureStorageDataSourceTest;
+import com.ca.mas.core.service.MssoExecutorServiceTest;
 import com.ca.mas.core.storage.AccountManagerStorageTests;
 import com.ca.mas.core.storage.EncryptionProviderTests;
 import com.ca.mas.core.storage.KeyStoreStorageTests;
@@ -29,7 +31,10 @@ import org.junit.runners.Suite;
 
         AccountManagerStoreDataSourceTest.class,
         KeystoreDataSourceTest.class,
-        MASSecureStorageDataSourceTest.class
+        LocalStoreDataSourceTest.class,
+        MASSecureStorageDataSourceTest.class,
+
+        MssoExecutorServiceTest.class
 
 
 })
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.datasource;
+
+import android.os.Handler;
+import android.util.Log;
+
+import com.ca.mas.MASTestBase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class LocalStoreDataSourceTest extends MASTestBase {
+
+    private static final String TAG = LocalStoreDataSourceTest.class.getSimpleName();
+    private static final int SEGMENT = 2;
+    private static final String CREATED_BY = "LocalStoreDataSourceTest";
+    private static final int BENCHMARK_ITEMS = 10000;
+
+    private LocalStoreDataSource dataSource;
+
+    @Before
+    public void setUp() {
+        dataSource = new LocalStoreDataSource(getContext(), null, null);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.removeAll(new LocalStoreKey(null, SEGMENT, CREATED_BY));
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        LocalStoreKey key = key(0);
+        dataSource.put(key, entity(0));
+        assertTrue(Arrays.equals(entity(0).getData(), dataSource.get(key).getData()));
+        dataSource.remove(key);
+        assertNull(dataSource.get(key));
+    }
+
+    @Test
+    public void testBatch() {
+        Map<LocalStoreKey, LocalStoreEntity> items = new LinkedHashMap<>();
+        List<LocalStoreKey> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.put(key(i), entity(i));
+            keys.add(key(i));
+        }
+        dataSource.putAll(items);
+        assertEquals(100, dataSource.getKeys(new LocalStoreKey(null, SEGMENT, CREATED_BY)).size());
+
+        keys.add(key(1000));
+        List<LocalStoreEntity> result = dataSource.getAll(keys);
+        assertEquals(101, result.size());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(Arrays.equals(entity(i).getData(), result.get(i).getData()));
+        }
+        assertNull(result.get(100));
+
+        dataSource.removeAll(keys.subList(0, 50));
+        assertEquals(50, dataSource.getKeys(new LocalStoreKey(null, SEGMENT, CREATED_BY)).size());
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Object[] result = new Object[1];
+        dataSource.put(key(0), entity(0), callback());
+        dataSource.get(key(0), new DataSourceCallback() {
+            @Override
+            public Handler getHandler() {
+                return null;
+            }
+
+            @Override
+            public void onError(DataSourceError e) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onSuccess(Object value) {
+                result[0] = value;
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(Arrays.equals(entity(0).getData(), ((LocalStoreEntity) result[0]).getData()));
+    }
+
+    @Test
+    public void testWriteThroughput() throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITEMS; i++) {
+            dataSource.put(key(i), entity(i));
+        }
+        double single = BENCHMARK_ITEMS / ((System.nanoTime() - start) / 1e9);
+        dataSource.removeAll(new LocalStoreKey(null, SEGMENT, CREATED_BY));
+
+        Map<LocalStoreKey, LocalStoreEntity> items = new LinkedHashMap<>();
+        for (int i = 0; i < BENCHMARK_ITEMS; i++) {
+            items.put(key(i), entity(i));
+        }
+        start = System.nanoTime();
+        dataSource.putAll(items);
+        double batch = BENCHMARK_ITEMS / ((System.nanoTime() - start) / 1e9);
+
+        Log.i(TAG, String.format("%d writes: %.0f items/sec single, %.0f items/sec batch", BENCHMARK_ITEMS, single, batch));
+        assertEquals(BENCHMARK_ITEMS, dataSource.getKeys(new LocalStoreKey(null, SEGMENT, CREATED_BY)).size());
+        assertTrue(batch > single);
+    }
+
+    private DataSourceCallback callback() {
+        return new DataSourceCallback() {
+            @Override
+            public Handler getHandler() {
+                return null;
+            }
+
+            @Override
+            public void onError(DataSourceError e) {
+            }
+
+            @Override
+            public void onSuccess(Object value) {
+            }
+        };
+    }
+
+    private static LocalStoreKey key(int i) {
+        return new LocalStoreKey("key" + i, SEGMENT, CREATED_BY);
+    }
+
+    private static LocalStoreEntity entity(int i) {
+        return new LocalStoreEntity("String", ("value" + i).getBytes());
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.service;
+
+import com.ca.mas.MASTestBase;
+import com.ca.mas.core.conf.ConfigurationManager;
+import com.ca.mas.core.util.Functions;
+import com.ca.mas.foundation.MASRequest;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class MssoExecutorServiceTest extends MASTestBase {
+
+    private static final int REQUESTS = 500;
+
+    private final int maxConcurrentRequests = ConfigurationManager.getInstance().getMaxConcurrentRequests();
+    private final int maxConcurrentRequestsPerHost = ConfigurationManager.getInstance().getMaxConcurrentRequestsPerHost();
+
+    @After
+    public void resetLimits() {
+        ConfigurationManager.getInstance().setMaxConcurrentRequests(maxConcurrentRequests);
+        ConfigurationManager.getInstance().setMaxConcurrentRequestsPerHost(maxConcurrentRequestsPerHost);
+    }
+
+    @Test
+    public void testBurstIsQueuedWithinLimits() throws Exception {
+        ConfigurationManager.getInstance().setMaxConcurrentRequests(4);
+        ConfigurationManager.getInstance().setMaxConcurrentRequestsPerHost(2);
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(REQUESTS);
+        long rejectedBefore = RequestSchedulerMetrics.getInstance().getRejectedCount();
+
+        for (int i = 0; i < REQUESTS; i++) {
+            MssoRequest request = new MssoRequest(this, null,
+                    new MASRequest.MASRequestBuilder(new URL("https://host" + (i % 3) + ".example.com/api")).build(), null);
+            MssoExecutorService.getInstance().execute(request, new Runnable() {
+                @Override
+                public void run() {
+                    int current = running.incrementAndGet();
+                    int max;
+                    do {
+                        max = maxRunning.get();
+                    } while (current > max && !maxRunning.compareAndSet(max, current));
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException ignored) {
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            }, new Functions.UnaryVoid<Exception>() {
+                @Override
+                public void call(Exception e) {
+                    rejected.incrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, rejected.get());
+        assertTrue(maxRunning.get() <= 4);
+        assertEquals(rejectedBefore, RequestSchedulerMetrics.getInstance().getRejectedCount());
+        assertTrue(RequestSchedulerMetrics.getInstance().getMaxQueueDepth() > 0);
+    }
+
+    @Test
+    public void testHostLimit() throws Exception {
+        ConfigurationManager.getInstance().setMaxConcurrentRequests(8);
+        ConfigurationManager.getInstance().setMaxConcurrentRequestsPerHost(1);
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger violations = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            MssoRequest request = new MssoRequest(this, null,
+                    new MASRequest.MASRequestBuilder(new URL("https://single.example.com/api")).build(), null);
+            MssoExecutorService.getInstance().execute(request, new Runnable() {
+                @Override
+                public void run() {
+                    if (running.incrementAndGet() > 1) {
+                        violations.incrementAndGet();
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            }, new Functions.UnaryVoid<Exception>() {
+                @Override
+                public void call(Exception e) {
+                    rejected.incrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, rejected.get());
+        assertEquals(0, violations.get());
+    }
+
+    @Test
+    public void testPendingRequestsAreNotRejected() throws Exception {
+        ConfigurationManager.getInstance().setMaxConcurrentRequests(1);
+        ConfigurationManager.getInstance().setMaxConcurrentRequestsPerHost(1);
+
+        final int requests = REQUESTS;
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger rejected = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(requests);
+        long rejectedBefore = RequestSchedulerMetrics.getInstance().getRejectedCount();
+
+        for (int i = 0; i < requests; i++) {
+            MssoRequest request = new MssoRequest(this, null,
+                    new MASRequest.MASRequestBuilder(new URL("https://queued.example.com/api")).build(), null);
+            MssoExecutorService.getInstance().execute(request, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        //Hold the only slot until all the requests are submitted
+                        release.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                    }
+                    done.countDown();
+                }
+            }, new Functions.UnaryVoid<Exception>() {
+                @Override
+                public void call(Exception e) {
+                    rejected.incrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        //All the requests wait for the only slot
+        assertEquals(0, rejected.get());
+        release.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, rejected.get());
+        assertEquals(rejectedBefore, RequestSchedulerMetrics.getInstance().getRejectedCount());
+    }
+
+    @Test
+    public void testAuthRequestsRunBeforeApiRequests() throws Exception {
+        ConfigurationManager.getInstance().setMaxConcurrentRequests(1);
+        ConfigurationManager.getInstance().setMaxConcurrentRequestsPerHost(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(6);
+        Functions.UnaryVoid<Exception> onRejected = new Functions.UnaryVoid<Exception>() {
+            @Override
+            public void call(Exception e) {
+                order.add("rejected");
+                done.countDown();
+            }
+        };
+
+        //Hold the only slot while the other requests are queued
+        MssoExecutorService.getInstance().execute(new MssoRequest(this, null,
+                new MASRequest.MASRequestBuilder(new URL("https://api.example.com/blocker")).build(), null), new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+                done.countDown();
+            }
+        }, onRejected);
+
+        for (int i = 0; i < 4; i++) {
+            final String name = "api" + i;
+            MssoExecutorService.getInstance().execute(new MssoRequest(this, null,
+                    new MASRequest.MASRequestBuilder(new URL("https://api" + (i % 2) + ".example.com/api")).build(), null), new Runnable() {
+                @Override
+                public void run() {
+                    order.add(name);
+                    done.countDown();
+                }
+            }, onRejected);
+        }
+        //Local requests, such as the authentication requests, have the auth priority
+        MssoExecutorService.getInstance().execute(new MssoRequest(this, null,
+                new MASRequest.MASRequestBuilder((URL) null).build(), null), new Runnable() {
+            @Override
+            public void run() {
+                order.add("auth");
+                done.countDown();
+            }
+        }, onRejected);
+
+        release.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(5, order.size());
+        assertEquals("auth", order.get(0));
+    }
+}
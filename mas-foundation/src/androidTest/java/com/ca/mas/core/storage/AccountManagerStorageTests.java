@@ -13,6 +13,7 @@ import android.os.Build;
 import com.ca.mas.AndroidVersionAwareTestRunner;
 import com.ca.mas.MinTargetAPI;
 import com.ca.mas.TestUtils;
+import com.ca.mas.core.storage.implementation.AccountManagerStorage;
 import com.ca.mas.core.storage.implementation.MASStorageManager;
 
 import org.junit.After;
@@ -22,7 +23,9 @@ import org.junit.runner.RunWith;
 
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
@@ -458,6 +461,26 @@ public class AccountManagerStorageTests extends BaseStorageTestsClone {
         }
     }
 
+    @Test
+    public void testWriteOrUpdateAll() throws Exception {
+        Map<String, byte[]> values = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            values.put("key" + i, ("value" + i).getBytes("UTF-8"));
+        }
+        StorageResult result = ((AccountManagerStorage) currentStorage).writeOrUpdateAll(values);
+        assertEquals(StorageResult.StorageOperationType.WRITE_OR_UPDATE, result.getType());
+        assertEquals(StorageResult.StorageOperationStatus.SUCCESS, result.getStatus());
+        assertEquals(100, result.getData());
+
+        result = currentStorage.getAllKeys();
+        assertEquals(100, ((ArrayList<String>) result.getData()).size());
+        result = currentStorage.readData("key42");
+        assertEquals("value42", new String((byte[]) result.getData(), "UTF-8"));
+
+        assertEquals(StorageResult.StorageOperationStatus.SUCCESS, currentStorage.deleteAll().getStatus());
+        assertEquals(0, ((ArrayList<String>) currentStorage.getAllKeys().getData()).size());
+    }
+
     @Test
     public void loadTest() {
         String value = "Test value";
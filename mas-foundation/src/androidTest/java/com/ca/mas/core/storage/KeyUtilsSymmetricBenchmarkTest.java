@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.storage;
+
+import android.os.Debug;
+import android.util.Log;
+
+import com.ca.mas.MASTestBase;
+import com.ca.mas.core.util.KeyUtilsSymmetric;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class KeyUtilsSymmetricBenchmarkTest extends MASTestBase {
+
+    private static final String TAG = KeyUtilsSymmetricBenchmarkTest.class.getSimpleName();
+    private static final String ALIAS = "benchmark";
+    private static final int OPERATIONS_PER_THREAD = 2000;
+    private static final int[] THREADS = {1, 4, 8};
+    //mac|iv|ciphertext|tag
+    private static final int OVERHEAD = 32 + 12 + 16;
+
+    private static SecretKey secretKey;
+    private static byte[] data;
+
+    @BeforeClass
+    public static void generateKey() throws Exception {
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        secretKey = keyGenerator.generateKey();
+        data = new byte[512];
+        Arrays.fill(data, (byte) 'a');
+    }
+
+    @Test
+    public void testWireFormat() {
+        byte[] encrypted = KeyUtilsSymmetric.encrypt(data, secretKey, ALIAS);
+        assertEquals(data.length + OVERHEAD, encrypted.length);
+        assertTrue(Arrays.equals(data, KeyUtilsSymmetric.decrypt(encrypted, secretKey, ALIAS)));
+    }
+
+    @Test
+    public void testThroughput() throws Exception {
+        for (int threads : THREADS) {
+            run(threads);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void run(int threads) throws Exception {
+        final AtomicInteger errors = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < OPERATIONS_PER_THREAD; j++) {
+                        byte[] encrypted = KeyUtilsSymmetric.encrypt(data, secretKey, ALIAS);
+                        if (!Arrays.equals(data, KeyUtilsSymmetric.decrypt(encrypted, secretKey, ALIAS))) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+
+        Debug.resetGlobalAllocSize();
+        Debug.resetGlobalAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long duration = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+
+        //An operation is one encrypt and one decrypt
+        long operations = (long) threads * OPERATIONS_PER_THREAD;
+        Log.d(TAG, String.format("Threads: %d, ops/sec: %.0f, allocations/op: %.1f, bytes allocated/op: %.0f",
+                threads,
+                operations * 1e9 / duration,
+                Debug.getGlobalAllocCount() / (double) operations,
+                Debug.getGlobalAllocSize() / (double) operations));
+        assertEquals(0, errors.get());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.foundation;
+
+import com.ca.mas.GatewayDefaultDispatcher;
+import com.ca.mas.MASCallbackFuture;
+import com.ca.mas.MASStartTestBase;
+import com.ca.mas.core.EventDispatcher;
+import com.ca.mas.core.http.ResponseCache;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+
+public class MASCachePolicyTest extends MASStartTestBase {
+
+    private static final String CACHED = "/test/cached";
+    private static final String ETAG = "\"v1\"";
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private volatile String cacheControl;
+
+    @Before
+    public void setUpDispatcher() {
+        ResponseCache.getInstance(getContext()).clear();
+        final GatewayDefaultDispatcher dispatcher = new GatewayDefaultDispatcher();
+        setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getPath().startsWith(CACHED)) {
+                    requests.incrementAndGet();
+                    if (ETAG.equals(request.getHeader("If-None-Match"))) {
+                        notModified.incrementAndGet();
+                        return new MockResponse().setResponseCode(304).setHeader("ETag", ETAG);
+                    }
+                    MockResponse response = new MockResponse().setResponseCode(200)
+                            .setHeader("ETag", ETAG)
+                            .setHeader("Content-Type", "application/json")
+                            .setBody("{\"value\":\"cached\"}");
+                    if (cacheControl != null) {
+                        response.setHeader("Cache-Control", cacheControl);
+                    }
+                    return response;
+                }
+                return dispatcher.dispatch(request);
+            }
+        });
+    }
+
+    @After
+    public void clearCache() {
+        ResponseCache.getInstance(getContext()).clear();
+    }
+
+    @Test
+    public void testFreshResponseServedFromCache() throws Exception {
+        cacheControl = "max-age=60";
+        assertEquals("cached", invoke(MASCachePolicy.DEFAULT).getBody().getContent().getString("value"));
+        MASResponse<JSONObject> response = invoke(MASCachePolicy.DEFAULT);
+        assertEquals(200, response.getResponseCode());
+        assertEquals("cached", response.getBody().getContent().getString("value"));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testStaleResponseRevalidated() throws Exception {
+        invoke(MASCachePolicy.REVALIDATE);
+        MASResponse<JSONObject> response = invoke(MASCachePolicy.REVALIDATE);
+        assertEquals(200, response.getResponseCode());
+        assertEquals("cached", response.getBody().getContent().getString("value"));
+        assertEquals(2, requests.get());
+        assertEquals(1, notModified.get());
+    }
+
+    @Test
+    public void testNoStoreNotCached() throws Exception {
+        cacheControl = "no-store";
+        invoke(MASCachePolicy.DEFAULT);
+        invoke(MASCachePolicy.DEFAULT);
+        assertEquals(2, requests.get());
+        assertEquals(0, notModified.get());
+    }
+
+    @Test
+    public void testNotCachedWithoutPolicy() throws Exception {
+        cacheControl = "max-age=60";
+        invoke(null);
+        invoke(MASCachePolicy.DEFAULT);
+        assertEquals(2, requests.get());
+        assertEquals(0, notModified.get());
+    }
+
+    @Test
+    public void testCacheClearedOnLogout() throws Exception {
+        cacheControl = "max-age=60";
+        invoke(MASCachePolicy.DEFAULT);
+        EventDispatcher.LOGOUT.notifyObservers();
+        invoke(MASCachePolicy.DEFAULT);
+        assertEquals(2, requests.get());
+    }
+
+    private MASResponse<JSONObject> invoke(MASCachePolicy cachePolicy) throws Exception {
+        MASRequest.MASRequestBuilder builder = new MASRequest.MASRequestBuilder(new URL(
+                MASConfiguration.getCurrentConfiguration().getGatewayUrl() + CACHED))
+                .setPublic()
+                .responseBody(MASResponseBody.jsonBody());
+        if (cachePolicy != null) {
+            builder.cachePolicy(cachePolicy);
+        }
+        MASCallbackFuture<MASResponse<JSONObject>> callback = new MASCallbackFuture<>();
+        MAS.invoke(builder.build(), callback);
+        return callback.get();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.foundation;
+
+import android.util.Log;
+
+import com.ca.mas.GatewayDefaultDispatcher;
+import com.ca.mas.MASCallbackFuture;
+import com.ca.mas.MASLoginTestBase;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class MASConcurrentInvokeTest extends MASLoginTestBase {
+
+    private static final String TAG = MASConcurrentInvokeTest.class.getSimpleName();
+    private static final int REQUESTS_PER_CALLER = 20;
+    private static final int[] CALLERS = {1, 2, 4, 8, 16, 32};
+
+    @Test
+    public void testThroughputScaling() throws Exception {
+        final MASRequest request = new MASRequest.MASRequestBuilder(new URL(
+                MASConfiguration.getCurrentConfiguration().getGatewayUrl() +
+                        GatewayDefaultDispatcher.PROTECTED_RESOURCE_PRODUCTS)).build();
+
+        //Warm up, the access token is cached after the first request
+        MASCallbackFuture<MASResponse<JSONObject>> warmUp = new MASCallbackFuture<>();
+        MAS.invoke(request, warmUp);
+        assertEquals(200, warmUp.get().getResponseCode());
+
+        for (int callers : CALLERS) {
+            long start = System.currentTimeMillis();
+            List<Thread> threads = new ArrayList<>();
+            final List<Throwable> errors = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int j = 0; j < REQUESTS_PER_CALLER; j++) {
+                                MASCallbackFuture<MASResponse<JSONObject>> callback = new MASCallbackFuture<>();
+                                MAS.invoke(request, callback);
+                                callback.get();
+                            }
+                        } catch (Exception e) {
+                            synchronized (errors) {
+                                errors.add(e);
+                            }
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long duration = Math.max(1, System.currentTimeMillis() - start);
+            int total = callers * REQUESTS_PER_CALLER;
+            Log.d(TAG, String.format("Callers: %d, requests: %d, duration: %dms, throughput: %.1f req/s",
+                    callers, total, duration, total * 1000.0 / duration));
+            assertEquals(0, errors.size());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.foundation;
+
+import android.os.Debug;
+import android.util.Log;
+
+import com.ca.mas.GatewayDefaultDispatcher;
+import com.ca.mas.MASCallbackFuture;
+import com.ca.mas.MASLoginTestBase;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MASDirectDispatchTest extends MASLoginTestBase {
+
+    private static final String TAG = MASDirectDispatchTest.class.getSimpleName();
+    private static final int REQUESTS = 200;
+
+    @After
+    public void resetDispatch() {
+        MAS.enableDirectDispatch(false);
+    }
+
+    @Test
+    public void testServiceDispatch() throws Exception {
+        MAS.enableDirectDispatch(false);
+        execute("MssoService");
+    }
+
+    @Test
+    public void testDirectDispatch() throws Exception {
+        MAS.enableDirectDispatch(true);
+        execute("Direct");
+    }
+
+    @Test
+    public void testCancelWithDirectDispatch() throws Exception {
+        MAS.enableDirectDispatch(true);
+        MASRequest request = new MASRequest.MASRequestBuilder(new URL(
+                MASConfiguration.getCurrentConfiguration().getGatewayUrl() +
+                        GatewayDefaultDispatcher.PROTECTED_RESOURCE_SLOW))
+                .notifyOnCancel()
+                .build();
+        MASCallbackFuture<MASResponse<JSONObject>> callback = new MASCallbackFuture<>();
+        long requestId = MAS.invoke(request, callback);
+        MAS.cancelRequest(requestId);
+        try {
+            callback.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getCause() instanceof MAS.RequestCancelledException);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void execute(String mode) throws Exception {
+        MASRequest request = new MASRequest.MASRequestBuilder(new URL(
+                MASConfiguration.getCurrentConfiguration().getGatewayUrl() +
+                        GatewayDefaultDispatcher.PROTECTED_RESOURCE_PRODUCTS)).build();
+
+        //Warm up
+        MASCallbackFuture<MASResponse<JSONObject>> warmUp = new MASCallbackFuture<>();
+        MAS.invoke(request, warmUp);
+        assertEquals(200, warmUp.get().getResponseCode());
+
+        Debug.resetGlobalAllocSize();
+        Debug.resetGlobalAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            MASCallbackFuture<MASResponse<JSONObject>> callback = new MASCallbackFuture<>();
+            MAS.invoke(request, callback);
+            assertEquals(200, callback.get().getResponseCode());
+        }
+        long duration = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+
+        Log.d(TAG, String.format("%s dispatch, latency/request: %.2fms, allocations/request: %.1f, bytes allocated/request: %.0f",
+                mode,
+                duration / 1e6 / REQUESTS,
+                Debug.getGlobalAllocCount() / (double) REQUESTS,
+                Debug.getGlobalAllocSize() / (double) REQUESTS));
+    }
+}
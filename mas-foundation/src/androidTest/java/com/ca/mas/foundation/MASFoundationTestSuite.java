@@ -17,6 +17,7 @@ import org.junit.runners.Suite;
         MASEnrollmentStartTest.class,
         MASAuthorizationCodeFlowTest.class,
         MASAuthorizationProviderTest.class,
+        MASCachePolicyTest.class,
         MASClaimsTest.class,
         MASClientCredentialTest.class,
         MASConfigurationTest.class,
@@ -36,6 +37,8 @@ import org.junit.runners.Suite;
         MASOneTimePasswordTest.class,
         MASPhoneNumberTest.class,
         MASRegistrationTest.class,
+        MASRequestCoalescingTest.class,
+        MASRetryPolicyTest.class,
         MASSessionLockTest.class,
         MASSharedStorageSDKStopTest.class,
         MASSecureSharedStorageTest.class,
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.foundation;
+
+import android.util.Log;
+
+import com.ca.mas.GatewayDefaultDispatcher;
+import com.ca.mas.MASStartTestBase;
+import com.ca.mas.core.http.DefaultHttpTransport;
+import com.ca.mas.core.http.MAGHttpClient;
+import com.ca.mas.core.http.PooledHttpTransport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MASHttpTransportTest extends MASStartTestBase {
+
+    private static final String TAG = MASHttpTransportTest.class.getSimpleName();
+    private static final int REQUESTS = 1000;
+
+    private final AtomicInteger handshakes = new AtomicInteger();
+
+    @Before
+    public void countHandshakes() {
+        final GatewayDefaultDispatcher dispatcher = new GatewayDefaultDispatcher();
+        setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                //First request on a new connection, a TLS handshake has been performed.
+                if (request.getSequenceNumber() == 0) {
+                    handshakes.incrementAndGet();
+                }
+                return dispatcher.dispatch(request);
+            }
+        });
+    }
+
+    @After
+    public void resetTransport() {
+        MAS.setHttpTransport(null);
+    }
+
+    @Test
+    public void testDefaultTransport() throws Exception {
+        MAS.setHttpTransport(new DefaultHttpTransport());
+        int count = execute();
+        Log.d(TAG, "Handshakes per " + REQUESTS + " requests with DefaultHttpTransport: " + count);
+        assertEquals(REQUESTS, count);
+    }
+
+    @Test
+    public void testPooledTransport() throws Exception {
+        MAS.setHttpTransport(new PooledHttpTransport());
+        int count = execute();
+        Log.d(TAG, "Handshakes per " + REQUESTS + " requests with PooledHttpTransport: " + count);
+        assertTrue(count < REQUESTS / 10);
+    }
+
+    private int execute() throws Exception {
+        MASRequest request = new MASRequest.MASRequestBuilder(new URL(
+                MASConfiguration.getCurrentConfiguration().getGatewayUrl() +
+                        GatewayDefaultDispatcher.PROTECTED_RESOURCE_PRODUCTS))
+                .setPublic()
+                .build();
+        MAGHttpClient client = new MAGHttpClient();
+        handshakes.set(0);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < REQUESTS; i++) {
+            MASResponse<Object> response = client.execute(request);
+            assertEquals(200, response.getResponseCode());
+        }
+        Log.d(TAG, "Duration for " + REQUESTS + " requests: " + (System.currentTimeMillis() - start) + "ms");
+        return handshakes.get();
+    }
+}
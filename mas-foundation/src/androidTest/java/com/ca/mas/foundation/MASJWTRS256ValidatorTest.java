@@ -8,18 +8,35 @@
 
 package com.ca.mas.foundation;
 
+import android.util.Log;
+
 import com.ca.mas.MASMockGatewayTestBase;
 import com.ca.mas.core.context.MssoContext;
 import com.ca.mas.core.token.IdToken;
 import com.ca.mas.core.token.JWTRS256Validator;
 import com.ca.mas.core.token.JWTValidationException;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 
 public class MASJWTRS256ValidatorTest extends MASMockGatewayTestBase {
 
+    private static final String TAG = MASJWTRS256ValidatorTest.class.getSimpleName();
+    private static final int ITERATIONS = 1000;
+
+    @After
+    public void clearJWKS() {
+        JWTRS256Validator.setJwks(null);
+    }
 
     @Test(expected = JWTValidationException.class)
     public void validateWithKidMissingTest() throws Exception {
@@ -53,6 +70,50 @@ public class MASJWTRS256ValidatorTest extends MASMockGatewayTestBase {
         Assert.assertTrue(jwtrs256Validator.validate(MssoContext.newContext(), idToken));
     }
 
+    @Test
+    public void concurrentValidationTest() throws Exception {
+        MAS.start(getContext());
+        JWTRS256Validator.setJwks(null);
+        final IdToken idToken = new IdToken();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executorService.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return new JWTRS256Validator().validate(MssoContext.newContext(), idToken);
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        Assert.assertNotNull(JWTRS256Validator.getJwks());
+    }
 
+    @Test
+    public void validateBenchmark() throws Exception {
+        MAS.start(getContext());
+        IdToken idToken = new IdToken();
+        JWTRS256Validator jwtrs256Validator = new JWTRS256Validator();
+        MssoContext mssoContext = MssoContext.newContext();
+
+        JWTRS256Validator.setJwks(null);
+        long start = System.nanoTime();
+        Assert.assertTrue(jwtrs256Validator.validate(mssoContext, idToken));
+        long cold = (System.nanoTime() - start) / 1000;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            Assert.assertTrue(jwtrs256Validator.validate(mssoContext, idToken));
+        }
+        long warm = (System.nanoTime() - start) / 1000 / ITERATIONS;
+        Log.i(TAG, String.format("validate(): cold %d us, cached %d us", cold, warm));
+        Assert.assertTrue(warm < cold);
+    }
 
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.foundation;
+
+import android.util.Log;
+
+import com.ca.mas.MASTestBase;
+import com.ca.mas.core.error.MAGError;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class MASMultiPartBenchmarkTest extends MASTestBase {
+
+    private static final String TAG = MASMultiPartBenchmarkTest.class.getSimpleName();
+    private static final int MB = 1024 * 1024;
+    private static final int[] PAYLOAD_SIZES = {1, 8, 32};
+
+    @Test
+    public void testContentLength() throws Exception {
+        File file = createFile("content.bin", 100 * 1024 + 7);
+        try {
+            MultiPart multiPart = new MultiPart();
+            multiPart.addFormField("key1", "value1");
+            multiPart.addFilePart(new MASFileObject("content.bin", "application/octet-stream", "file1", file.getAbsolutePath()));
+            multiPart.addFilePart(new MASFileObject("bytes.bin", "application/octet-stream", "file2", new byte[]{1, 2, 3}));
+
+            final List<String> progress = new ArrayList<>();
+            MASRequestBody body = MASRequestBody.multipartBody(multiPart, new MASProgressListener() {
+                @Override
+                public void onProgress(String progressPercent) {
+                    progress.add(progressPercent);
+                }
+
+                @Override
+                public void onComplete() {
+                }
+
+                @Override
+                public void onError(MAGError error) {
+                }
+            });
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            body.write(outputStream);
+            assertEquals(body.getContentLength(), outputStream.size());
+            assertEquals("100", progress.get(progress.size() - 1));
+            String content = outputStream.toString("UTF-8");
+            assertTrue(content.endsWith("--" + MASConstants.MAS_BOUNDARY + "--\r\n"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = MASException.class)
+    public void testMissingFile() throws Exception {
+        MultiPart multiPart = new MultiPart();
+        multiPart.addFilePart(new MASFileObject("missing.bin", "application/octet-stream", "file",
+                new File(getContext().getCacheDir(), "missing.bin").getAbsolutePath()));
+        MASRequestBody.multipartBody(multiPart, null);
+    }
+
+    @Test
+    public void testPeakHeap() throws Exception {
+        for (int size : PAYLOAD_SIZES) {
+            File file = createFile("payload.bin", size * MB);
+            try {
+                MultiPart multiPart = new MultiPart();
+                multiPart.addFilePart(new MASFileObject("payload.bin", "application/octet-stream", "file", file.getAbsolutePath()));
+
+                System.gc();
+                final Runtime runtime = Runtime.getRuntime();
+                final long baseline = runtime.totalMemory() - runtime.freeMemory();
+                final long[] peak = {baseline};
+
+                MASRequestBody body = MASRequestBody.multipartBody(multiPart, null);
+                //Discard the content, sample the heap as the body is written
+                body.write(new OutputStream() {
+                    private long count;
+
+                    @Override
+                    public void write(int b) throws IOException {
+                        count++;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        count += len;
+                        if (count % MB < len) {
+                            peak[0] = Math.max(peak[0], runtime.totalMemory() - runtime.freeMemory());
+                        }
+                    }
+                });
+
+                long peakIncrease = peak[0] - baseline;
+                Log.i(TAG, String.format("Payload %d MB, peak heap increase %d KB", size, peakIncrease / 1024));
+                //The body is streamed, the heap does not grow with the payload
+                assertTrue(peakIncrease < 4 * MB);
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    private File createFile(String name, int size) throws IOException {
+        File file = new File(getContext().getCacheDir(), name);
+        byte[] chunk = new byte[64 * 1024];
+        Arrays.fill(chunk, (byte) 'a');
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            int remaining = size;
+            while (remaining > 0) {
+                int count = Math.min(chunk.length, remaining);
+                outputStream.write(chunk, 0, count);
+                remaining -= count;
+            }
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+}
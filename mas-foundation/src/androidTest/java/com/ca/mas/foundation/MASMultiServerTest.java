@@ -15,6 +15,9 @@ import com.ca.mas.MASLoginTestBase;
 import com.ca.mas.core.cert.CertUtils;
 import com.ca.mas.core.cert.PublicKeyHash;
 import com.ca.mas.core.http.ContentType;
+import com.ca.mas.core.http.SSLSocketFactoryProvider;
+import com.ca.mas.core.io.http.TrustedCertificateConfigurationTrustManager;
+import com.ca.mas.core.io.ssl.SSLContextCache;
 import com.ca.mas.core.io.Charsets;
 
 import junit.framework.Assert;
@@ -94,6 +97,66 @@ public class MASMultiServerTest extends MASLoginTestBase {
         mockServer.start(PORT);
     }
 
+    @Test
+    public void testTrustManagerPinValidation() throws Exception {
+        Uri host = new Uri.Builder().encodedAuthority(HOST).build();
+        X509Certificate[] chain = {certificate};
+        TrustedCertificateConfigurationTrustManager trustManager = new TrustedCertificateConfigurationTrustManager(
+                new MASSecurityConfiguration.Builder()
+                        .host(host)
+                        .add(PublicKeyHash.fromPublicKey(certificate.getPublicKey()).getHashString())
+                        .build());
+        //The second check is served by the validated chain cache
+        trustManager.checkServerTrusted(chain, "RSA");
+        trustManager.checkServerTrusted(chain, "RSA");
+
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        trustManager = new TrustedCertificateConfigurationTrustManager(
+                new MASSecurityConfiguration.Builder()
+                        .host(host)
+                        .add(PublicKeyHash.fromPublicKey(keyPairGenerator.generateKeyPair().getPublic()).getHashString())
+                        .build());
+        try {
+            trustManager.checkServerTrusted(chain, "RSA");
+            Assert.fail("The chain does not contain the pinned public key");
+        } catch (CertificateException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void testSSLContextCache() throws Exception {
+        MASSecurityConfiguration configuration = new MASSecurityConfiguration.Builder()
+                .host(new Uri.Builder().encodedAuthority(HOST).build())
+                .add(certificate)
+                .build();
+        SSLSocketFactoryProvider provider = SSLSocketFactoryProvider.getInstance();
+        SSLContextCache cache = SSLContextCache.getInstance();
+        cache.invalidateAll();
+        cache.resetCounters();
+
+        SSLSocketFactory socketFactory = provider.createSSLSocketFactory(configuration);
+        assertTrue(socketFactory == provider.createSSLSocketFactory(configuration));
+        assertEquals(1, cache.getContextCount());
+
+        //Changing the security configuration of the host invalidates the context
+        MASConfiguration.getCurrentConfiguration().addSecurityConfiguration(configuration);
+        assertTrue(socketFactory != provider.createSSLSocketFactory(configuration));
+        assertEquals(2, cache.getContextCount());
+
+        for (int i = 0; i < 2; i++) {
+            HttpsURLConnection connection = (HttpsURLConnection) new URL("https://" + HOST + "/test").openConnection();
+            connection.setSSLSocketFactory(provider.createSSLSocketFactory(configuration));
+            //Force a new connection, so that the second request resumes the session
+            connection.setRequestProperty("Connection", "close");
+            assertEquals(200, connection.getResponseCode());
+            connection.disconnect();
+        }
+        assertEquals(1, cache.getHandshakeCount());
+        assertEquals(1, cache.getResumptionCount());
+    }
+
     @Test
     public void testMultiServerCertificatePinning() throws Exception {
         Assert.assertNotNull(certificate);
@@ -9,6 +9,7 @@
 package com.ca.mas.foundation;
 
 import com.ca.mas.core.CoreTestSuite;
+import com.ca.mas.core.storage.KeyUtilsSymmetricBenchmarkTest;
 import com.ca.mas.foundation.MASFoundationTestSuite;
 import com.ca.mas.foundation.MASPerformanceTest;
 
@@ -17,7 +18,12 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
-        MASPerformanceTest.class
+        MASPerformanceTest.class,
+        MASHttpTransportTest.class,
+        MASConcurrentInvokeTest.class,
+        MASDirectDispatchTest.class,
+        MASMultiPartBenchmarkTest.class,
+        KeyUtilsSymmetricBenchmarkTest.class
 })
 
 public class MASProfilerTestSuite {
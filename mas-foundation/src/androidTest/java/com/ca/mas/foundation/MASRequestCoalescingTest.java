@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.foundation;
+
+import com.ca.mas.GatewayDefaultDispatcher;
+import com.ca.mas.MASCallbackFuture;
+import com.ca.mas.MASStartTestBase;
+import com.ca.mas.core.conf.ConfigurationManager;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MASRequestCoalescingTest extends MASStartTestBase {
+
+    private static final String SLOW = "/test/coalesced";
+    private static final int REQUESTS = 5;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final int maxConcurrentRequestsPerHost = ConfigurationManager.getInstance().getMaxConcurrentRequestsPerHost();
+
+    @Before
+    public void setUpDispatcher() {
+        final GatewayDefaultDispatcher dispatcher = new GatewayDefaultDispatcher();
+        setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getPath().startsWith(SLOW)) {
+                    requests.incrementAndGet();
+                    Thread.sleep(1000);
+                    return new MockResponse().setResponseCode(200).setBody("{\"value\":\"shared\"}");
+                }
+                return dispatcher.dispatch(request);
+            }
+        });
+    }
+
+    @After
+    public void disableCoalescing() {
+        MAS.enableRequestCoalescing(false);
+        ConfigurationManager.getInstance().setMaxConcurrentRequestsPerHost(maxConcurrentRequestsPerHost);
+    }
+
+    @Test
+    public void testIdenticalRequestsShareResponse() throws Exception {
+        MAS.enableRequestCoalescing(true);
+        long coalesced = MAS.getRequestSchedulerMetrics().getCoalescedCount();
+        List<MASCallbackFuture<MASResponse<JSONObject>>> callbacks = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            MASCallbackFuture<MASResponse<JSONObject>> callback = new MASCallbackFuture<>();
+            MAS.invoke(request().build(), callback);
+            callbacks.add(callback);
+        }
+        for (MASCallbackFuture<MASResponse<JSONObject>> callback : callbacks) {
+            MASResponse<JSONObject> response = callback.get();
+            assertEquals(200, response.getResponseCode());
+            assertEquals("shared", response.getBody().getContent().getString("value"));
+        }
+        assertEquals(1, requests.get());
+        assertEquals(1, getRecordRequestCount(SLOW));
+        assertEquals(REQUESTS - 1, MAS.getRequestSchedulerMetrics().getCoalescedCount() - coalesced);
+    }
+
+    @Test
+    public void testWaitingRequestsReleaseTheirSlot() throws Exception {
+        MAS.enableRequestCoalescing(true);
+        //Without releasing their slot, the first waiting request would hold back the other identical requests
+        ConfigurationManager.getInstance().setMaxConcurrentRequestsPerHost(2);
+        long coalesced = MAS.getRequestSchedulerMetrics().getCoalescedCount();
+        List<MASCallbackFuture<MASResponse<JSONObject>>> callbacks = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            MASCallbackFuture<MASResponse<JSONObject>> callback = new MASCallbackFuture<>();
+            MAS.invoke(request().build(), callback);
+            callbacks.add(callback);
+        }
+        for (MASCallbackFuture<MASResponse<JSONObject>> callback : callbacks) {
+            assertEquals(200, callback.get().getResponseCode());
+        }
+        assertEquals(1, getRecordRequestCount(SLOW));
+        assertEquals(REQUESTS - 1, MAS.getRequestSchedulerMetrics().getCoalescedCount() - coalesced);
+    }
+
+    @Test
+    public void testCancelCoalescedRequest() throws Exception {
+        MAS.enableRequestCoalescing(true);
+        MASCallbackFuture<MASResponse<JSONObject>> first = new MASCallbackFuture<>();
+        MAS.invoke(request().build(), first);
+        MASCallbackFuture<MASResponse<JSONObject>> second = new MASCallbackFuture<>();
+        long requestId = MAS.invoke(request().notifyOnCancel().build(), second);
+        MAS.cancelRequest(requestId);
+
+        assertEquals(200, first.get().getResponseCode());
+        try {
+            second.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getCause() instanceof MAS.RequestCancelledException);
+        }
+        assertEquals(1, requests.get());
+        assertEquals(1, getRecordRequestCount(SLOW));
+    }
+
+    @Test
+    public void testRequestsNotSharedWhenDisabled() throws Exception {
+        List<MASCallbackFuture<MASResponse<JSONObject>>> callbacks = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            MASCallbackFuture<MASResponse<JSONObject>> callback = new MASCallbackFuture<>();
+            MAS.invoke(request().build(), callback);
+            callbacks.add(callback);
+        }
+        for (MASCallbackFuture<MASResponse<JSONObject>> callback : callbacks) {
+            assertEquals(200, callback.get().getResponseCode());
+        }
+        assertEquals(2, requests.get());
+        assertEquals(2, getRecordRequestCount(SLOW));
+    }
+
+    private MASRequest.MASRequestBuilder request() throws Exception {
+        return new MASRequest.MASRequestBuilder(new URL(
+                MASConfiguration.getCurrentConfiguration().getGatewayUrl() + SLOW))
+                .setPublic()
+                .responseBody(MASResponseBody.jsonBody());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.foundation;
+
+import com.ca.mas.GatewayDefaultDispatcher;
+import com.ca.mas.MASCallbackFuture;
+import com.ca.mas.MASStartTestBase;
+import com.ca.mas.core.http.CircuitBreaker;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MASRetryPolicyTest extends MASStartTestBase {
+
+    private static final String UNAVAILABLE = "/test/unavailable";
+
+    private final AtomicInteger attempts = new AtomicInteger();
+    private volatile int failures;
+    private volatile String retryAfter;
+
+    @Before
+    public void setUpDispatcher() {
+        CircuitBreaker.reset();
+        final GatewayDefaultDispatcher dispatcher = new GatewayDefaultDispatcher();
+        setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getPath().startsWith(UNAVAILABLE)) {
+                    if (attempts.incrementAndGet() <= failures) {
+                        MockResponse response = new MockResponse().setResponseCode(503);
+                        if (retryAfter != null) {
+                            response.setHeader("Retry-After", retryAfter);
+                        }
+                        return response;
+                    }
+                    return new MockResponse().setResponseCode(200).setBody("{}");
+                }
+                return dispatcher.dispatch(request);
+            }
+        });
+    }
+
+    @After
+    public void resetCircuitBreakers() {
+        CircuitBreaker.reset();
+    }
+
+    @Test
+    public void testRetryTransientError() throws Exception {
+        failures = 2;
+        MASCallbackFuture<MASResponse<JSONObject>> callback = new MASCallbackFuture<>();
+        MAS.invoke(request(new MASRetryPolicy(2, 10, 100)).build(), callback);
+        assertEquals(200, callback.get().getResponseCode());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void testRetryAfter() throws Exception {
+        failures = 1;
+        retryAfter = "1";
+        long start = System.currentTimeMillis();
+        MASCallbackFuture<MASResponse<JSONObject>> callback = new MASCallbackFuture<>();
+        MAS.invoke(request(new MASRetryPolicy(1, 10, 5000)).build(), callback);
+        assertEquals(200, callback.get().getResponseCode());
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+    }
+
+    @Test
+    public void testNonIdempotentRequestNotRetried() throws Exception {
+        failures = 1;
+        MASCallbackFuture<MASResponse<JSONObject>> callback = new MASCallbackFuture<>();
+        MAS.invoke(request(new MASRetryPolicy(2, 10, 100))
+                .post(MASRequestBody.stringBody("test"))
+                .build(), callback);
+        try {
+            callback.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(1, attempts.get());
+        }
+    }
+
+    @Test
+    public void testCircuitBreakerOpens() throws Exception {
+        failures = Integer.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            MASCallbackFuture<MASResponse<JSONObject>> callback = new MASCallbackFuture<>();
+            MAS.invoke(request(MASRetryPolicy.NONE).build(), callback);
+            try {
+                callback.get();
+            } catch (ExecutionException ignored) {
+            }
+        }
+        String host = MASConfiguration.getCurrentConfiguration().getGatewayUrl().getHost();
+        assertEquals(CircuitBreaker.State.OPEN, MAS.getCircuitBreakerStates().get(host));
+
+        int before = attempts.get();
+        MASCallbackFuture<MASResponse<JSONObject>> callback = new MASCallbackFuture<>();
+        MAS.invoke(request(MASRetryPolicy.NONE).build(), callback);
+        try {
+            callback.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(before, attempts.get());
+        }
+    }
+
+    private MASRequest.MASRequestBuilder request(MASRetryPolicy retryPolicy) throws Exception {
+        return new MASRequest.MASRequestBuilder(new URL(
+                MASConfiguration.getCurrentConfiguration().getGatewayUrl() + UNAVAILABLE))
+                .setPublic()
+                .retryPolicy(retryPolicy);
+    }
+}
@@ -10,6 +10,7 @@ package com.ca.mas.foundation;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
+import android.util.JsonReader;
 import android.util.Pair;
 
 import com.ca.mas.GatewayDefaultDispatcher;
@@ -17,14 +18,13 @@ import com.ca.mas.MASCallbackFuture;
 import com.ca.mas.MASLoginTestBase;
 import com.ca.mas.core.client.ServerClient;
 import com.ca.mas.core.context.DeviceIdentifier;
-import com.ca.mas.core.datasource.DataSource;
+import com.ca.mas.core.error.MAGError;
 import com.ca.mas.core.error.TargetApiException;
 import com.ca.mas.core.http.ContentType;
 import com.ca.mas.core.io.Charsets;
 import com.ca.mas.core.io.IoUtils;
 import com.ca.mas.core.oauth.OAuthServerException;
 import com.ca.mas.core.security.KeyStoreException;
-import com.ca.mas.core.store.PrivateTokenStorage;
 import com.ca.mas.core.store.StorageProvider;
 
 import org.json.JSONArray;
@@ -34,7 +34,9 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.net.HttpURLConnection;
@@ -42,8 +44,10 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -266,18 +270,66 @@ public class MASTest extends MASLoginTestBase {
 
         newToken[0] = true;
 
-        //Remove Access Token
-        DataSource<String, String> dataSource = getValue(StorageProvider.getInstance().getOAuthTokenContainer(), "storage", DataSource.class);
-        for (String k : dataSource.getKeys(null)) {
-            if (k.contains(PrivateTokenStorage.KEY.PREF_ACCESS_TOKEN.name())) {
-                dataSource.remove(k);
+        //Remove Access Token, the token container caches the tokens, remove it through the container.
+        StorageProvider.getInstance().getOAuthTokenContainer().clearAccessToken();
+
+        MASCallbackFuture<MASResponse<JSONObject>> callback2 = new MASCallbackFuture<>();
+        MAS.invoke(request, callback2);
+        assertNotNull(callback2.get());
+
+        RecordedRequest rr = getRecordRequest(GatewayDefaultDispatcher.PROTECTED_RESOURCE_PRODUCTS);
+        assertTrue(rr.getHeader("Authorization").contains(NEW_ACCESS_TOKEN));
+    }
+
+    @Test
+    public void testRefreshTokenGrantIsStoredAndUsed() throws Exception {
+
+        final String NEW_ACCESS_TOKEN = "refreshed_access_token";
+        final boolean[] newToken = {false};
+        final List<String> grants = Collections.synchronizedList(new ArrayList<String>());
+
+        setDispatcher(new GatewayDefaultDispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (newToken[0] && request.getPath().contains(AUTH_OAUTH_V2_TOKEN)) {
+                    grants.add(request.getBody().clone().readUtf8());
+                }
+                return super.dispatch(request);
             }
-        }
+
+            @Override
+            protected MockResponse retrieveTokenResponse() {
+                if (newToken[0]) {
+                    String token = "{\n" +
+                            "  \"access_token\":\"" + NEW_ACCESS_TOKEN + "\",\n" +
+                            "  \"token_type\":\"Bearer\",\n" +
+                            "  \"expires_in\":3600,\n" +
+                            "  \"refresh_token\":\"29785fca-4b86-4f8e-a73c-7de1d420f88d\",\n" +
+                            "  \"scope\":\"openid msso phone profile address email\"\n" +
+                            "}";
+                    return new MockResponse().setResponseCode(200).setBody(token);
+                }
+                return super.retrieveTokenResponse();
+            }
+        });
+
+        MASRequest request = new MASRequest.MASRequestBuilder(new URI("/protected/resource/products?operation=listProducts"))
+                .build();
+        MASCallbackFuture<MASResponse<JSONObject>> callback = new MASCallbackFuture<>();
+        MAS.invoke(request, callback);
+        assertNotNull(callback.get());
+
+        newToken[0] = true;
+        StorageProvider.getInstance().getOAuthTokenContainer().clearAccessToken();
 
         MASCallbackFuture<MASResponse<JSONObject>> callback2 = new MASCallbackFuture<>();
         MAS.invoke(request, callback2);
         assertNotNull(callback2.get());
 
+        //A single refresh token grant, no fallback to the ID token or password grant
+        assertEquals(1, grants.size());
+        assertTrue(grants.get(0).contains("grant_type=refresh_token"));
+        assertEquals(NEW_ACCESS_TOKEN, StorageProvider.getInstance().getOAuthTokenContainer().getAccessToken());
         RecordedRequest rr = getRecordRequest(GatewayDefaultDispatcher.PROTECTED_RESOURCE_PRODUCTS);
         assertTrue(rr.getHeader("Authorization").contains(NEW_ACCESS_TOKEN));
     }
@@ -408,6 +460,115 @@ public class MASTest extends MASLoginTestBase {
         }
     }
 
+    @Test
+    public void testStreamingJsonResponseBody() throws Exception {
+        MASRequest request = new MASRequest.MASRequestBuilder(new URI(GatewayDefaultDispatcher.PROTECTED_RESOURCE_PRODUCTS))
+                .responseBody(MASResponseBody.streamingJsonBody())
+                .build();
+
+        MASCallbackFuture<MASResponse<Object>> callback = new MASCallbackFuture<>();
+        MAS.invoke(request, callback);
+        assertEquals(HttpURLConnection.HTTP_OK, callback.get().getResponseCode());
+        Object content = callback.get().getBody().getContent();
+        assertTrue(content instanceof JSONObject);
+        JSONAssert.assertEquals(new JSONObject(GatewayDefaultDispatcher.TARGET_RESPONSE), (JSONObject) content, false);
+    }
+
+    @Test
+    public void testJsonReaderResponseBody() throws Exception {
+        MASRequest request = new MASRequest.MASRequestBuilder(new URI(GatewayDefaultDispatcher.PROTECTED_RESOURCE_PRODUCTS))
+                .responseBody(MASResponseBody.jsonReaderBody(new MASResponseBody.JsonHandler<Integer>() {
+                    @Override
+                    public Integer handle(JsonReader reader) throws IOException {
+                        int products = 0;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if ("products".equals(reader.nextName())) {
+                                reader.beginArray();
+                                while (reader.hasNext()) {
+                                    reader.skipValue();
+                                    products++;
+                                }
+                                reader.endArray();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        return products;
+                    }
+                }))
+                .build();
+
+        MASCallbackFuture<MASResponse<Integer>> callback = new MASCallbackFuture<>();
+        MAS.invoke(request, callback);
+        assertEquals(HttpURLConnection.HTTP_OK, callback.get().getResponseCode());
+        int expected = new JSONObject(GatewayDefaultDispatcher.TARGET_RESPONSE).getJSONArray("products").length();
+        assertEquals(expected, (int) callback.get().getBody().getContent());
+    }
+
+    @Test
+    public void testStreamResponseBody() throws Exception {
+        MASRequest request = new MASRequest.MASRequestBuilder(new URI(GatewayDefaultDispatcher.PROTECTED_RESOURCE_PRODUCTS))
+                .responseBody(MASResponseBody.streamBody(new MASResponseBody.StreamHandler<Long>() {
+                    @Override
+                    public Long handle(InputStream inputStream, Charset charset) throws IOException {
+                        long total = 0;
+                        byte[] buffer = new byte[256];
+                        int count;
+                        while ((count = inputStream.read(buffer)) != -1) {
+                            total += count;
+                        }
+                        return total;
+                    }
+                }))
+                .build();
+
+        MASCallbackFuture<MASResponse<Long>> callback = new MASCallbackFuture<>();
+        MAS.invoke(request, callback);
+        assertEquals(HttpURLConnection.HTTP_OK, callback.get().getResponseCode());
+        assertTrue(callback.get().getBody().getContent() > 0);
+    }
+
+    @Test
+    public void testFileResponseBody() throws Exception {
+        File file = new File(getContext().getCacheDir(), "products.json");
+        final List<String> progress = new ArrayList<>();
+        final boolean[] completed = {false};
+        MASRequest request = new MASRequest.MASRequestBuilder(new URI(GatewayDefaultDispatcher.PROTECTED_RESOURCE_PRODUCTS))
+                .responseBody(MASResponseBody.fileBody(file, new MASProgressListener() {
+                    @Override
+                    public void onProgress(String progressPercent) {
+                        progress.add(progressPercent);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        completed[0] = true;
+                    }
+
+                    @Override
+                    public void onError(MAGError error) {
+                    }
+                }))
+                .build();
+
+        try {
+            MASCallbackFuture<MASResponse<File>> callback = new MASCallbackFuture<>();
+            MAS.invoke(request, callback);
+            assertEquals(HttpURLConnection.HTTP_OK, callback.get().getResponseCode());
+            File content = callback.get().getBody().getContent();
+            assertEquals(file, content);
+            assertTrue(file.length() > 0);
+            assertTrue(completed[0]);
+            if (!progress.isEmpty()) {
+                assertEquals("100", progress.get(progress.size() - 1));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
     class ProductResponseBody extends MASResponseBody<Product> {
 
         @Override
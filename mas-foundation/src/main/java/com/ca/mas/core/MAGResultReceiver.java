@@ -40,12 +40,16 @@ import static com.ca.mas.foundation.MAS.TAG;
 public abstract class MAGResultReceiver<T> extends ResultReceiver {
 
 
+    private final Handler handler;
+
     public MAGResultReceiver(Handler handler) {
         super(handler);
+        this.handler = handler;
     }
 
     public MAGResultReceiver() {
         super(null);
+        this.handler = null;
     }
 
     @Override
@@ -60,12 +64,7 @@ public abstract class MAGResultReceiver<T> extends ResultReceiver {
                     } else {
                         MASResponse<T> response = MssoClient.takeMAGResponse(requestId);
                         if (response != null) {
-                            int responseCode = response.getResponseCode();
-                            if (responseCode < HttpURLConnection.HTTP_OK || responseCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
-                                onError(new MAGError(response.getResponseMessage(), new TargetApiException(response)));
-                                return;
-                            }
-                            onSuccess(response);
+                            onResponse(response);
                         }
                     }
                     break;
@@ -86,6 +85,40 @@ public abstract class MAGResultReceiver<T> extends ResultReceiver {
 
     }
 
+    /**
+     * Deliver the response directly, without going through the response queue. Used when requests are
+     * dispatched in process, the response is delivered on the Handler provided to this receiver if any,
+     * otherwise on the calling thread.
+     *
+     * @param response The HttpResponse of the endpoint.
+     */
+    public void complete(final MASResponse<T> response) {
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    onResponse(response);
+                } catch (Throwable e) {
+                    if (DEBUG) Log.e(TAG, "Error handling response.", e);
+                }
+            }
+        };
+        if (handler != null) {
+            handler.post(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+
+    private void onResponse(MASResponse<T> response) {
+        int responseCode = response.getResponseCode();
+        if (responseCode < HttpURLConnection.HTTP_OK || responseCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
+            onError(new MAGError(response.getResponseMessage(), new TargetApiException(response)));
+            return;
+        }
+        onSuccess(response);
+    }
+
     /**
      * Callback when successfully invoked the target API and the target API return http status code
      * within the range 200 - 299.
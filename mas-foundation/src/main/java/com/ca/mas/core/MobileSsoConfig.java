@@ -311,6 +311,30 @@ public interface MobileSsoConfig {
 
 
     String PROP_ALLOW_SSL_PINNING = "allow_ssl_pinning";
+
+    /**
+     * Integer.  Maximum number of retries of a request which failed with a transient error.
+     * If not specified, will default to 2.
+     */
+    String PROP_RETRY_MAX_RETRIES = "msso.retry.max_retries";
+
+    /**
+     * Integer.  Backoff in milliseconds before the first retry of a request, doubled for each retry.
+     * If not specified, will default to 200.
+     */
+    String PROP_RETRY_INITIAL_BACKOFF = "msso.retry.initial_backoff";
+
+    /**
+     * Integer.  Maximum backoff in milliseconds before retrying a request.
+     * If not specified, will default to 10000.
+     */
+    String PROP_RETRY_MAX_BACKOFF = "msso.retry.max_backoff";
+
+    /**
+     * Boolean.  Whether requests to a host fail immediately after repeated transient errors.
+     * If not specified, will default to true.
+     */
+    String PROP_RETRY_CIRCUIT_BREAKER_ENABLED = "msso.retry.circuit_breaker_enabled";
     // If you add any properties to this file, you must update MobileSsoFactory.createConfig()
     // or they will be ignored.
 
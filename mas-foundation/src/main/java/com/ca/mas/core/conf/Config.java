@@ -58,6 +58,12 @@ public class Config {
     public static final Config CLIENT_STORAGE = new Config(false, MobileSsoConfig.PROP_STORAGE, "mag.mobile_sdk.storage", String.class);
     public static final Config ALLOW_SSL_PINNING = new Config(false, MobileSsoConfig.PROP_ALLOW_SSL_PINNING, "mag.mobile_sdk.allow_ssl_pinning", Boolean.class);
 
+    //mag.mobile_sdk.retry
+    public static final Config RETRY_MAX_RETRIES = new Config(false, MobileSsoConfig.PROP_RETRY_MAX_RETRIES, "mag.mobile_sdk.retry.max_retries", Integer.class);
+    public static final Config RETRY_INITIAL_BACKOFF = new Config(false, MobileSsoConfig.PROP_RETRY_INITIAL_BACKOFF, "mag.mobile_sdk.retry.initial_backoff", Integer.class);
+    public static final Config RETRY_MAX_BACKOFF = new Config(false, MobileSsoConfig.PROP_RETRY_MAX_BACKOFF, "mag.mobile_sdk.retry.max_backoff", Integer.class);
+    public static final Config RETRY_CIRCUIT_BREAKER_ENABLED = new Config(false, MobileSsoConfig.PROP_RETRY_CIRCUIT_BREAKER_ENABLED, "mag.mobile_sdk.retry.circuit_breaker_enabled", Boolean.class);
+
     //mag.ble
     public static final Config BLE_SERVICE_UUID = new Config(false, MobileSsoConfig.PROP_BLE_SERVICE_UUID, "mag.ble.msso_ble_service_uuid", String.class);
     public static final Config BLE_USER_SESSION_CHARACTERISTIC_UUID = new Config(false, MobileSsoConfig.PROP_BLE_CHARACTERISTIC_UUID, "mag.ble.msso_ble_characteristic_uuid", String.class);
@@ -67,7 +73,8 @@ public class Config {
             HOSTNAME, PORT, PREFIX, SERVER_CERTS, ORGANIZATION, CLIENT_KEY, CLIENT_SECRET, SCOPE, REDIRECT_URI, AUTHORIZE_PATH, REGISTER_TOKEN_PATH, REGISTER_TOKEN_PATH_SSO, LOGOUT_DEVICE_PATH, REVOKE_PATH,
             REMOVE_DEVICE_PATH, REGISTER_DEVICE_PATH, RENEW_DEVICE_PATH, REGISTER_DEVICE_PATH_CLIENT, CLIENT_CREDENTIAL_INIT_PATH, ENTERPRISE_APP_PATH, SSO_ENABLED, LOCATION_ENABLED, LOCATION_PROVIDER,
             MSISDN_ENABLED, TRUSTED_PUBLIC_PKI,DEVICE_METADATA_PATH, TRUSTED_CERT_PINNED_PUBLIC_KEY_HASHES, CLIENT_CERT_RSA_KEYBITS, CLIENT_STORAGE, BLE_SERVICE_UUID, BLE_USER_SESSION_CHARACTERISTIC_UUID,
-            BLE_RSSI, AUTHENTICATE_OTP_PATH, ALLOW_SSL_PINNING
+            BLE_RSSI, AUTHENTICATE_OTP_PATH, ALLOW_SSL_PINNING, RETRY_MAX_RETRIES, RETRY_INITIAL_BACKOFF, RETRY_MAX_BACKOFF,
+            RETRY_CIRCUIT_BREAKER_ENABLED
     };
 
     public boolean mandatory;
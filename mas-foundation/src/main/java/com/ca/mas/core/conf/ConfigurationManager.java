@@ -14,6 +14,8 @@ import com.ca.mas.core.MobileSsoListener;
 import com.ca.mas.core.ResponseInterceptor;
 import com.ca.mas.core.error.MAGErrorCode;
 import com.ca.mas.core.error.MAGRuntimeException;
+import com.ca.mas.core.http.DefaultHttpTransport;
+import com.ca.mas.core.http.HttpTransport;
 import com.ca.mas.foundation.MASGrantProvider;
 import com.ca.mas.core.store.StorageProvider;
 import com.ca.mas.foundation.MASConnectionListener;
@@ -49,9 +51,15 @@ public class ConfigurationManager {
     private boolean sslPinningEnabled = true;
     private boolean idTokenValidation = true;
     private boolean enableJwksPreload = false;
+    private boolean directDispatch = false;
+    private boolean requestCoalescing = false;
+    //Values based on {@link android.os.AsyncTask}'s implementation
+    private int maxConcurrentRequests = Runtime.getRuntime().availableProcessors() * 2 + 1;
+    private int maxConcurrentRequestsPerHost = maxConcurrentRequests;
     private JSONObject jsonConfiguration;
 
     private MASConnectionListener connectionListener;
+    private HttpTransport httpTransport = new DefaultHttpTransport();
     private MobileSsoListener mobileSsoListener;
     private LinkedHashMap<Class, ResponseInterceptor> responseInterceptors = new LinkedHashMap<>();
 
@@ -398,6 +406,52 @@ public class ConfigurationManager {
         this.connectionListener = connectionListener;
     }
 
+    public HttpTransport getHttpTransport() {
+        return httpTransport;
+    }
+
+    public void setHttpTransport(HttpTransport httpTransport) {
+        this.httpTransport = httpTransport == null ? new DefaultHttpTransport() : httpTransport;
+    }
+
+    public boolean isDirectDispatchEnabled() {
+        return directDispatch;
+    }
+
+    public void enableDirectDispatch(boolean directDispatch) {
+        this.directDispatch = directDispatch;
+    }
+
+    public boolean isRequestCoalescingEnabled() {
+        return requestCoalescing;
+    }
+
+    public void enableRequestCoalescing(boolean requestCoalescing) {
+        this.requestCoalescing = requestCoalescing;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests < 1");
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public int getMaxConcurrentRequestsPerHost() {
+        return maxConcurrentRequestsPerHost;
+    }
+
+    public void setMaxConcurrentRequestsPerHost(int maxConcurrentRequestsPerHost) {
+        if (maxConcurrentRequestsPerHost < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequestsPerHost < 1");
+        }
+        this.maxConcurrentRequestsPerHost = maxConcurrentRequestsPerHost;
+    }
+
     public MobileSsoListener getMobileSsoListener() {
         return mobileSsoListener;
     }
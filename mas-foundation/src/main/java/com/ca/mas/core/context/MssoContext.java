@@ -10,9 +10,11 @@ package com.ca.mas.core.context;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.util.Base64;
 import android.util.Log;
 
 import com.ca.mas.core.EventDispatcher;
+import com.ca.mas.core.MobileSsoConfig;
 import com.ca.mas.core.auth.AuthenticationException;
 import com.ca.mas.core.conf.ConfigurationManager;
 import com.ca.mas.core.conf.ConfigurationProvider;
@@ -20,7 +22,10 @@ import com.ca.mas.core.datasource.DataSourceException;
 import com.ca.mas.core.error.MAGErrorCode;
 import com.ca.mas.core.error.MAGServerException;
 import com.ca.mas.core.error.MAGStateException;
+import com.ca.mas.core.http.CircuitBreaker;
 import com.ca.mas.core.http.MAGHttpClient;
+import com.ca.mas.core.http.ResponseCache;
+import com.ca.mas.core.io.Charsets;
 import com.ca.mas.core.oauth.OAuthClient;
 import com.ca.mas.core.policy.PolicyManager;
 import com.ca.mas.core.policy.RequestInfo;
@@ -30,7 +35,9 @@ import com.ca.mas.core.policy.exceptions.RetryRequestException;
 import com.ca.mas.core.registration.RegistrationClient;
 import com.ca.mas.core.request.MAGInternalRequest;
 import com.ca.mas.core.request.internal.LocalRequest;
+import com.ca.mas.core.request.internal.PolicyAwareRequest;
 import com.ca.mas.core.security.SecureLockException;
+import com.ca.mas.core.service.RequestBackoff;
 import com.ca.mas.core.store.ClientCredentialContainer;
 import com.ca.mas.core.store.OAuthTokenContainer;
 import com.ca.mas.core.store.StorageProvider;
@@ -41,12 +48,24 @@ import com.ca.mas.core.token.IdToken;
 import com.ca.mas.core.token.JWTValidation;
 import com.ca.mas.core.token.JWTValidationException;
 import com.ca.mas.foundation.MASAuthCredentials;
+import com.ca.mas.foundation.MASCachePolicy;
 import com.ca.mas.foundation.MASConfiguration;
 import com.ca.mas.foundation.MASRequest;
 import com.ca.mas.foundation.MASResponse;
+import com.ca.mas.foundation.MASRetryPolicy;
+
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static com.ca.mas.foundation.MAS.DEBUG;
 import static com.ca.mas.foundation.MAS.TAG;
@@ -70,6 +89,8 @@ public class MssoContext {
      */
     private static final int MAX_REQUEST_ATTEMPTS = 4;
 
+    private static final String RETRY_AFTER = "Retry-After";
+
     private Context appContext;
 
     private ConfigurationProvider configurationProvider;
@@ -398,25 +419,80 @@ public class MssoContext {
     public MASResponse executeRequest(Bundle extra, MASRequest request) throws Exception {
         RequestInfo requestInfo = new RequestInfo(this, request, extra);
         final MAGInternalRequest internalRequest = requestInfo.getRequest();
+        MASCachePolicy cachePolicy = request instanceof PolicyAwareRequest ?
+                ((PolicyAwareRequest) request).getCachePolicy() : null;
+        if (cachePolicy == null || !cachePolicy.isEnabled() || !"GET".equals(request.getMethod())
+                || internalRequest.isLocalRequest()) {
+            return execute(requestInfo, internalRequest, request);
+        }
+        String user = getUserIdentity();
+        //Responses are not cached if the logged in user cannot be identified, they could be served to another user
+        if (user == null) {
+            return execute(requestInfo, internalRequest, request);
+        }
+
+        ResponseCache cache = ResponseCache.getInstance(appContext);
+        String key = ResponseCache.key(request, internalRequest.getScope(), user);
+        ResponseCache.Entry entry = cache.get(key);
+        if (entry != null) {
+            if (entry.isFresh(cachePolicy)) {
+                if (DEBUG) Log.d(TAG, "Serving cached response for " + request.getURL());
+                return entry.toResponse(request.getResponseBody());
+            }
+            for (Map.Entry<String, String> header : entry.getConditionalHeaders().entrySet()) {
+                internalRequest.addHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        MASResponse response = execute(requestInfo, internalRequest, request);
+        if (entry != null && response.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            if (DEBUG) Log.d(TAG, "Cached response revalidated for " + request.getURL());
+            return cache.revalidated(key, entry, response.getHeaders()).toResponse(request.getResponseBody());
+        }
+        if (response.getResponseCode() == HttpURLConnection.HTTP_OK) {
+            cache.put(key, response, cachePolicy);
+        }
+        return response;
+    }
+
+    private MASResponse execute(RequestInfo requestInfo, final MAGInternalRequest internalRequest, MASRequest request) throws Exception {
+        MASRetryPolicy retryPolicy = getRetryPolicy(request);
+        CircuitBreaker circuitBreaker = getCircuitBreaker(request);
+        //The circuit breaker is checked once per request, the attempts of the request share its permit
+        long permit = circuitBreaker == null ? 0 : circuitBreaker.acquire();
+        if (permit == CircuitBreaker.REJECTED) {
+            clearCredentials();
+            throw new IOException("Circuit breaker is open for host " + circuitBreaker.getHost());
+        }
+        try {
+            return execute(requestInfo, internalRequest, request, retryPolicy, circuitBreaker);
+        } finally {
+            if (circuitBreaker != null) circuitBreaker.release(permit);
+        }
+    }
+
+    private MASResponse execute(RequestInfo requestInfo, final MAGInternalRequest internalRequest, MASRequest request,
+                                MASRetryPolicy retryPolicy, CircuitBreaker circuitBreaker) throws Exception {
+        int retries = 0;
 
         Exception lastError = null;
-        for (; requestInfo.getNumAttempts() < MAX_REQUEST_ATTEMPTS; requestInfo.incrementNumAttempts()) {
+        while (requestInfo.getNumAttempts() < MAX_REQUEST_ATTEMPTS) {
             try {
-                //Do not execute the policy if this request is targeting an unprotected endpoint.
-                if (request.isPublic()) {
-                    return getMAGHttpClient().execute(internalRequest);
+                MASResponse response = send(requestInfo, internalRequest);
+                int responseCode = response.getResponseCode();
+                if (!MASRetryPolicy.isTransient(responseCode)) {
+                    if (circuitBreaker != null) circuitBreaker.onSuccess();
+                    return response;
                 }
-
-                return policyManager.execute(requestInfo, new PolicyManager.Route<MASResponse>() {
-                    @Override
-                    public MASResponse invoke() throws IOException {
-                        if (internalRequest.isLocalRequest()) {
-                            return ((LocalRequest) internalRequest.getRequest()).send(MssoContext.this);
-                        } else {
-                            return getMAGHttpClient().execute(internalRequest);
-                        }
-                    }
-                });
+                if (circuitBreaker != null) circuitBreaker.onFailure();
+                long backoff = retryPolicy.isRetryable(request, retries, responseCode) ?
+                        retryPolicy.getBackoff(retries, getRetryAfter(response)) : -1;
+                if (backoff < 0 || !allowRetry(circuitBreaker)) {
+                    return response;
+                }
+                if (DEBUG) Log.d(TAG, String.format("Server returned %d, retry request in %dms", responseCode, backoff));
+                retries++;
+                RequestBackoff.sleep(backoff);
             } catch (MAGServerException e) {
                 //This catch system endpoint error.
                 if (DEBUG)
@@ -426,12 +502,24 @@ public class MssoContext {
                 } catch (RetryRequestException rre) {
                     lastError = rre;
                     rre.recover(this);
+                    requestInfo.incrementNumAttempts();
                     if (DEBUG) Log.d(TAG, "Attempting to retry request. " + e.getClass());
                 }
             } catch (RetryRequestException e) {
                 lastError = e;
                 e.recover(this);
+                requestInfo.incrementNumAttempts();
                 if (DEBUG) Log.d(TAG, "Attempting to retry request. " + e.getClass());
+            } catch (IOException e) {
+                if (circuitBreaker != null && MASRetryPolicy.isTransient(e)) circuitBreaker.onFailure();
+                if (!retryPolicy.isRetryable(request, retries, e) || !allowRetry(circuitBreaker)) {
+                    clearCredentials();
+                    throw e;
+                }
+                long backoff = retryPolicy.getBackoff(retries, -1);
+                if (DEBUG) Log.d(TAG, String.format("Request failed with %s, retry request in %dms", e, backoff));
+                retries++;
+                RequestBackoff.sleep(backoff);
             } catch (Exception e) {
                 clearCredentials();
                 throw e;
@@ -445,6 +533,127 @@ public class MssoContext {
         throw new IOException("Too many attempts, giving up");
     }
 
+    /**
+     * @return The subject of the logged in user, from the user profile or the ID token, used to isolate the
+     * cached responses of the users. An empty string if no user is logged in, or null if the logged in user
+     * cannot be identified.
+     */
+    private String getUserIdentity() {
+        if (tokenManager == null || !isLogin()) {
+            return "";
+        }
+        String subject = getSubject(tokenManager.getUserProfile());
+        if (subject == null) {
+            IdToken idToken = getIdToken();
+            String[] parts = idToken == null || idToken.getValue() == null ? null : idToken.getValue().split("\\.");
+            if (parts != null && parts.length > 1) {
+                try {
+                    subject = getSubject(new String(Base64.decode(parts[1], Base64.URL_SAFE), Charsets.UTF8));
+                } catch (IllegalArgumentException e) {
+                    if (DEBUG) Log.w(TAG, "Invalid ID token", e);
+                }
+            }
+        }
+        return subject;
+    }
+
+    /**
+     * @return The "sub" claim of the JSON object, or null if missing.
+     */
+    private static String getSubject(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            String subject = new JSONObject(json).optString("sub");
+            return subject.isEmpty() ? null : subject;
+        } catch (JSONException e) {
+            if (DEBUG) Log.w(TAG, "Invalid user claims", e);
+            return null;
+        }
+    }
+
+    private MASResponse send(RequestInfo requestInfo, final MAGInternalRequest internalRequest) throws Exception {
+        //Do not execute the policy if this request is targeting an unprotected endpoint.
+        if (internalRequest.isPublic()) {
+            return getMAGHttpClient().execute(internalRequest);
+        }
+
+        return policyManager.execute(requestInfo, new PolicyManager.Route<MASResponse>() {
+            @Override
+            public MASResponse invoke() throws IOException {
+                if (internalRequest.isLocalRequest()) {
+                    return ((LocalRequest) internalRequest.getRequest()).send(MssoContext.this);
+                } else {
+                    return getMAGHttpClient().execute(internalRequest);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The retry policy of the request, or the retry policy defined in the configuration.
+     */
+    private MASRetryPolicy getRetryPolicy(MASRequest request) {
+        if (request instanceof PolicyAwareRequest && ((PolicyAwareRequest) request).getRetryPolicy() != null) {
+            return ((PolicyAwareRequest) request).getRetryPolicy();
+        }
+        if (request instanceof LocalRequest) {
+            return MASRetryPolicy.NONE;
+        }
+        return new MASRetryPolicy(
+                getIntProperty(MobileSsoConfig.PROP_RETRY_MAX_RETRIES, MASRetryPolicy.DEFAULT_MAX_RETRIES),
+                getIntProperty(MobileSsoConfig.PROP_RETRY_INITIAL_BACKOFF, (int) MASRetryPolicy.DEFAULT_INITIAL_BACKOFF),
+                getIntProperty(MobileSsoConfig.PROP_RETRY_MAX_BACKOFF, (int) MASRetryPolicy.DEFAULT_MAX_BACKOFF));
+    }
+
+    private CircuitBreaker getCircuitBreaker(MASRequest request) {
+        if (request.getURL() == null || request.getURL().getHost() == null) {
+            return null;
+        }
+        Boolean enabled = configurationProvider.getProperty(MobileSsoConfig.PROP_RETRY_CIRCUIT_BREAKER_ENABLED);
+        if (enabled != null && !enabled) {
+            return null;
+        }
+        return CircuitBreaker.forHost(request.getURL().getHost());
+    }
+
+    private boolean allowRetry(CircuitBreaker circuitBreaker) {
+        return circuitBreaker == null || circuitBreaker.allowRetry();
+    }
+
+    private int getIntProperty(String name, int defaultValue) {
+        Object value = configurationProvider.getProperty(name);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    /**
+     * @return The delay in milliseconds requested by the Retry-After header, or -1 if not provided.
+     */
+    private static long getRetryAfter(MASResponse response) {
+        Map<String, List<String>> headers = response.getHeaders();
+        if (headers == null) {
+            return -1;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (RETRY_AFTER.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                String value = header.getValue().get(0).trim();
+                try {
+                    return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+                } catch (NumberFormatException e) {
+                    //The value may be a HTTP date
+                }
+                try {
+                    SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+                    return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+                } catch (ParseException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
     /**
      * Handle common server error defined under
      * Git: MAS/Gateway-SK-MAG/blob/develop/apidoc/errorcodes/error_codes_overview.xml
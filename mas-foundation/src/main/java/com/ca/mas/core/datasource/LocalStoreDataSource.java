@@ -14,8 +14,11 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
 import android.provider.BaseColumns;
 import androidx.annotation.NonNull;
+import android.util.Log;
 import android.util.Pair;
 
 import com.ca.mas.core.storage.StorageException;
@@ -25,9 +28,47 @@ import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import static com.ca.mas.foundation.MAS.DEBUG;
+import static com.ca.mas.foundation.MAS.TAG;
+
+/**
+ * {@link DataSource} backed by a SQLite database.
+ * <p>
+ * The database uses write-ahead logging, so that reads are not blocked by writes. The asynchronous
+ * operations and the batch operations are executed on a single writer thread, each batch operation
+ * runs in a single transaction so that bulk writes are committed to disk once.
+ */
 public class LocalStoreDataSource implements DataSource<LocalStoreKey, LocalStoreEntity> {
 
+    private static final String SQL_INSERT =
+            "INSERT OR REPLACE INTO " + LocalStorageContract.LocalStorageEntry.TABLE_NAME + " (" +
+                    LocalStorageContract.LocalStorageEntry.COLUMN_KEY + "," +
+                    LocalStorageContract.LocalStorageEntry.COLUMN_CREATED_BY + "," +
+                    LocalStorageContract.LocalStorageEntry.COLUMN_SEGMENT + "," +
+                    LocalStorageContract.LocalStorageEntry.COLUMN_VALUE + "," +
+                    LocalStorageContract.LocalStorageEntry.COLUMN_TYPE + "," +
+                    LocalStorageContract.LocalStorageEntry.COLUMN_LAST_UPDATED_DATE +
+                    ") VALUES (?,?,?,?,?,?)";
+
+    private static LocalStorageDbHelper dbHelper;
+
+    //Single writer, all asynchronous and batch operations are serialized
+    private static volatile Thread writerThread;
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            writerThread = new Thread(r, "LocalStoreWriter");
+            return writerThread;
+        }
+    });
 
     private Context context;
 
@@ -39,119 +80,206 @@ public class LocalStoreDataSource implements DataSource<LocalStoreKey, LocalStor
     public LocalStoreDataSource(Context context, JSONObject param, DataConverter converter) {
         this.context = context.getApplicationContext();
         try {
-            mLocalStorageDbHelper = new LocalStorageDbHelper(this.context);
+            mLocalStorageDbHelper = getDbHelper(this.context);
             mLocalStorageDbHelper.getDatabaseHandle();
         } catch (Exception e) {
             throw new DataSourceException(e);
         }
     }
 
+    /**
+     * All the instances share the database connection, as SQLite only allows a single writer.
+     */
+    private static synchronized LocalStorageDbHelper getDbHelper(Context context) {
+        if (dbHelper == null) {
+            dbHelper = new LocalStorageDbHelper(context);
+        }
+        return dbHelper;
+    }
+
     @Override
     public void put(@NonNull LocalStoreKey key, @NonNull LocalStoreEntity localStoreItem) {
-
-        SQLiteDatabase myDatabase = null;
-
+        SQLiteStatement statement = null;
         try {
-            myDatabase = mLocalStorageDbHelper.getDatabaseHandle();
-            ContentValues values = new ContentValues();
-            values.put(LocalStorageContract.LocalStorageEntry.COLUMN_KEY, key.getKey());
-            if (key.getCreatedBy() == null) {
-                values.putNull(LocalStorageContract.LocalStorageEntry.COLUMN_CREATED_BY);
-            } else {
-                values.put(LocalStorageContract.LocalStorageEntry.COLUMN_CREATED_BY, key.getCreatedBy());
-            }
-            values.put(LocalStorageContract.LocalStorageEntry.COLUMN_SEGMENT, key.getSegment());
-            values.put(LocalStorageContract.LocalStorageEntry.COLUMN_VALUE, localStoreItem.getData());
-            values.put(LocalStorageContract.LocalStorageEntry.COLUMN_TYPE, localStoreItem.getType());
-            values.put(LocalStorageContract.LocalStorageEntry.COLUMN_LAST_UPDATED_DATE, new Date().getTime());
-
-            long rowID;
-            rowID = myDatabase.insertWithOnConflict(LocalStorageContract.LocalStorageEntry.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
-            if (rowID == -1) {
-                throw new StorageException(StorageException.OPERATION_FAILED);
-            }
-
+            statement = mLocalStorageDbHelper.getDatabaseHandle().compileStatement(SQL_INSERT);
+            insert(statement, key, localStoreItem, new Date().getTime());
         } catch (Exception e) {
             throw new DataSourceException("Error in put() ", e);
+        } finally {
+            close(statement);
         }
-
     }
 
     @Override
-    public void put(LocalStoreKey key, LocalStoreEntity localStoreItem, DataSourceCallback dataSourceCallback) {
-        throw new DataSourceException("Not Implemented");
+    public void put(final LocalStoreKey key, final LocalStoreEntity localStoreItem, DataSourceCallback dataSourceCallback) {
+        execute(new Callable<Object>() {
+            @Override
+            public Object call() {
+                put(key, localStoreItem);
+                return null;
+            }
+        }, dataSourceCallback);
     }
 
-    @Override
-    public LocalStoreEntity get(@NonNull LocalStoreKey key) {
-
-        SQLiteDatabase myDatabase = null;
-        try {
-            myDatabase = mLocalStorageDbHelper.getDatabaseHandle();
-            String[] columns = new String[]{LocalStorageContract.LocalStorageEntry.COLUMN_VALUE, LocalStorageContract.LocalStorageEntry.COLUMN_TYPE};
-            Pair<String, String[]> selection = getSelection(key);
+    /**
+     * Insert or replace the items in a single transaction.
+     *
+     * @param items The items to store, in insertion order.
+     */
+    public void putAll(@NonNull final Map<? extends LocalStoreKey, LocalStoreEntity> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                putAllInTransaction(items);
+                return null;
+            }
+        }, "putAll()");
+    }
 
-            Cursor resultCursor = myDatabase.query(LocalStorageContract.LocalStorageEntry.TABLE_NAME, columns, selection.first, selection.second,
-                    null, null, null, null);
-            if (resultCursor.getCount() == 0) {
+    /**
+     * Asynchronous version of {@link #putAll(Map)}.
+     */
+    public void putAll(@NonNull final Map<? extends LocalStoreKey, LocalStoreEntity> items, DataSourceCallback dataSourceCallback) {
+        execute(new Callable<Object>() {
+            @Override
+            public Object call() {
+                putAllInTransaction(items);
                 return null;
-            } else {
-                resultCursor.moveToFirst();
-                byte[] value = resultCursor.getBlob(resultCursor.getColumnIndexOrThrow(LocalStorageContract.LocalStorageEntry.COLUMN_VALUE));
-                String type = resultCursor.getString(resultCursor.getColumnIndexOrThrow(LocalStorageContract.LocalStorageEntry.COLUMN_TYPE));
-                resultCursor.close();
-                return new LocalStoreEntity(type, value);
             }
+        }, dataSourceCallback);
+    }
 
+    @Override
+    public LocalStoreEntity get(@NonNull LocalStoreKey key) {
+        try {
+            return query(mLocalStorageDbHelper.getDatabaseHandle(), key);
         } catch (Exception e) {
             throw new DataSourceException("Error in get() ", e);
         }
     }
 
     @Override
-    public void get(LocalStoreKey s, DataSourceCallback dataSourceCallback) {
-        throw new DataSourceException("Not Implemented");
+    public void get(final LocalStoreKey key, DataSourceCallback dataSourceCallback) {
+        execute(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return get(key);
+            }
+        }, dataSourceCallback);
+    }
+
+    /**
+     * Retrieve the items from a consistent snapshot of the database.
+     *
+     * @param keys The keys of the items.
+     * @return The items in the order of the keys, null for the keys which are not found.
+     */
+    public List<LocalStoreEntity> getAll(@NonNull List<? extends LocalStoreKey> keys) {
+        List<LocalStoreEntity> result = new ArrayList<>(keys.size());
+        if (keys.isEmpty()) {
+            return result;
+        }
+        try {
+            SQLiteDatabase db = mLocalStorageDbHelper.getDatabaseHandle();
+            db.beginTransactionNonExclusive();
+            try {
+                for (LocalStoreKey key : keys) {
+                    result.add(query(db, key));
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return result;
+        } catch (Exception e) {
+            throw new DataSourceException("Error in getAll() ", e);
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #getAll(List)}, the result is delivered as a List of {@link LocalStoreEntity}.
+     */
+    public void getAll(@NonNull final List<? extends LocalStoreKey> keys, DataSourceCallback dataSourceCallback) {
+        execute(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return getAll(keys);
+            }
+        }, dataSourceCallback);
     }
 
     @Override
     public void remove(@NonNull LocalStoreKey key) {
-        SQLiteDatabase myDatabase = null;
         try {
-            get(key);//will throw exception if READ_DATA_NOT_FOUND
-            myDatabase = mLocalStorageDbHelper.getDatabaseHandle();
-            Pair<String, String[]> selection = getSelection(key);
-            int val = myDatabase.delete(LocalStorageContract.LocalStorageEntry.TABLE_NAME, selection.first, selection.second);
-            if (val < 0) {
-                throw new StorageException(StorageException.OPERATION_FAILED);
-            }
+            delete(mLocalStorageDbHelper.getDatabaseHandle(), key);
         } catch (Exception e) {
             throw new DataSourceException("Error in remove() ", e);
         }
     }
 
     @Override
-    public void remove(LocalStoreKey s, DataSourceCallback dataSourceCallback) {
-        throw new DataSourceException("Not Implemented");
+    public void remove(final LocalStoreKey key, DataSourceCallback dataSourceCallback) {
+        execute(new Callable<Object>() {
+            @Override
+            public Object call() {
+                remove(key);
+                return null;
+            }
+        }, dataSourceCallback);
     }
 
     @Override
     public void removeAll(Object filter) {
-        SQLiteDatabase myDatabase = null;
         try {
-            myDatabase = mLocalStorageDbHelper.getDatabaseHandle();
-            Pair<String, String[]> selection = getSelection((LocalStoreKey) filter);
-            int val = myDatabase.delete(LocalStorageContract.LocalStorageEntry.TABLE_NAME, selection.first, selection.second);
-            if (val < 0) {
-                throw new StorageException(StorageException.OPERATION_FAILED);
-            }
+            delete(mLocalStorageDbHelper.getDatabaseHandle(), (LocalStoreKey) filter);
         } catch (Exception e) {
             throw new DataSourceException("Error in removeAll() ", e);
         }
     }
 
     @Override
-    public void removeAll(Object filter, DataSourceCallback dataSourceCallback) {
-        throw new DataSourceException("Not Implemented");
+    public void removeAll(final Object filter, DataSourceCallback dataSourceCallback) {
+        execute(new Callable<Object>() {
+            @Override
+            public Object call() {
+                removeAll(filter);
+                return null;
+            }
+        }, dataSourceCallback);
+    }
+
+    /**
+     * Remove the items in a single transaction.
+     *
+     * @param keys The keys of the items to remove.
+     */
+    public void removeAll(@NonNull final List<? extends LocalStoreKey> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                removeAllInTransaction(keys);
+                return null;
+            }
+        }, "removeAll()");
+    }
+
+    /**
+     * Asynchronous version of {@link #removeAll(List)}.
+     */
+    public void removeAll(@NonNull final List<? extends LocalStoreKey> keys, DataSourceCallback dataSourceCallback) {
+        execute(new Callable<Object>() {
+            @Override
+            public Object call() {
+                removeAllInTransaction(keys);
+                return null;
+            }
+        }, dataSourceCallback);
     }
 
     @Override
@@ -159,24 +287,25 @@ public class LocalStoreDataSource implements DataSource<LocalStoreKey, LocalStor
         SQLiteDatabase myDatabase = null;
         List<LocalStoreKey> allKeys = new ArrayList<>();
         try {
-            myDatabase = mLocalStorageDbHelper.getWritableDatabase();
+            myDatabase = mLocalStorageDbHelper.getDatabaseHandle();
             String[] columns = new String[]{LocalStorageContract.LocalStorageEntry.COLUMN_KEY,
                     LocalStorageContract.LocalStorageEntry.COLUMN_SEGMENT,
                     LocalStorageContract.LocalStorageEntry.COLUMN_CREATED_BY};
             Pair<String, String[]> selection = getSelection((LocalStoreKey) filter);
             Cursor resultCursor = myDatabase.query(LocalStorageContract.LocalStorageEntry.TABLE_NAME,
                     columns, selection.first, selection.second, null, null, null);
-            if (resultCursor.getCount() != 0) {
-                resultCursor.moveToFirst();
-                while (resultCursor.isAfterLast() == false) {
+            try {
+                int keyIndex = resultCursor.getColumnIndexOrThrow(LocalStorageContract.LocalStorageEntry.COLUMN_KEY);
+                int segmentIndex = resultCursor.getColumnIndexOrThrow(LocalStorageContract.LocalStorageEntry.COLUMN_SEGMENT);
+                int createdByIndex = resultCursor.getColumnIndexOrThrow(LocalStorageContract.LocalStorageEntry.COLUMN_CREATED_BY);
+                while (resultCursor.moveToNext()) {
                     allKeys.add(new LocalStoreKey(
-                            resultCursor.getString(resultCursor.getColumnIndexOrThrow(LocalStorageContract.LocalStorageEntry.COLUMN_KEY)),
-                            resultCursor.getInt(resultCursor.getColumnIndexOrThrow(LocalStorageContract.LocalStorageEntry.COLUMN_SEGMENT)),
-                            resultCursor.getString(resultCursor.getColumnIndexOrThrow(LocalStorageContract.LocalStorageEntry.COLUMN_CREATED_BY))
-                            ));
-
-                    resultCursor.moveToNext();
+                            resultCursor.getString(keyIndex),
+                            resultCursor.getInt(segmentIndex),
+                            resultCursor.getString(createdByIndex)
+                    ));
                 }
+            } finally {
                 resultCursor.close();
             }
             return allKeys;
@@ -186,6 +315,189 @@ public class LocalStoreDataSource implements DataSource<LocalStoreKey, LocalStor
         }
     }
 
+    @Override
+    public void getKeys(final Object filter, DataSourceCallback dataSourceCallback) {
+        execute(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return getKeys(filter);
+            }
+        }, dataSourceCallback);
+    }
+
+    private void putAllInTransaction(Map<? extends LocalStoreKey, LocalStoreEntity> items) {
+        SQLiteStatement statement = null;
+        try {
+            SQLiteDatabase db = mLocalStorageDbHelper.getDatabaseHandle();
+            long now = new Date().getTime();
+            db.beginTransaction();
+            try {
+                statement = db.compileStatement(SQL_INSERT);
+                for (Map.Entry<? extends LocalStoreKey, LocalStoreEntity> entry : items.entrySet()) {
+                    insert(statement, entry.getKey(), entry.getValue(), now);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            throw new DataSourceException("Error in putAll() ", e);
+        } finally {
+            close(statement);
+        }
+    }
+
+    private void removeAllInTransaction(List<? extends LocalStoreKey> keys) {
+        try {
+            SQLiteDatabase db = mLocalStorageDbHelper.getDatabaseHandle();
+            db.beginTransaction();
+            try {
+                for (LocalStoreKey key : keys) {
+                    delete(db, key);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (Exception e) {
+            throw new DataSourceException("Error in removeAll() ", e);
+        }
+    }
+
+    private void insert(SQLiteStatement statement, LocalStoreKey key, LocalStoreEntity localStoreItem, long lastUpdated) throws StorageException {
+        statement.clearBindings();
+        statement.bindString(1, key.getKey());
+        if (key.getCreatedBy() == null) {
+            statement.bindNull(2);
+        } else {
+            statement.bindString(2, key.getCreatedBy());
+        }
+        statement.bindLong(3, key.getSegment());
+        statement.bindBlob(4, localStoreItem.getData());
+        statement.bindString(5, localStoreItem.getType());
+        statement.bindLong(6, lastUpdated);
+        if (statement.executeInsert() == -1) {
+            throw new StorageException(StorageException.OPERATION_FAILED);
+        }
+    }
+
+    private LocalStoreEntity query(SQLiteDatabase db, LocalStoreKey key) {
+        String[] columns = new String[]{LocalStorageContract.LocalStorageEntry.COLUMN_VALUE, LocalStorageContract.LocalStorageEntry.COLUMN_TYPE};
+        Pair<String, String[]> selection = getSelection(key);
+
+        Cursor resultCursor = db.query(LocalStorageContract.LocalStorageEntry.TABLE_NAME, columns, selection.first, selection.second,
+                null, null, null, null);
+        try {
+            if (!resultCursor.moveToFirst()) {
+                return null;
+            }
+            byte[] value = resultCursor.getBlob(resultCursor.getColumnIndexOrThrow(LocalStorageContract.LocalStorageEntry.COLUMN_VALUE));
+            String type = resultCursor.getString(resultCursor.getColumnIndexOrThrow(LocalStorageContract.LocalStorageEntry.COLUMN_TYPE));
+            return new LocalStoreEntity(type, value);
+        } finally {
+            resultCursor.close();
+        }
+    }
+
+    private void delete(SQLiteDatabase db, LocalStoreKey key) throws StorageException {
+        Pair<String, String[]> selection = getSelection(key);
+        int val = db.delete(LocalStorageContract.LocalStorageEntry.TABLE_NAME, selection.first, selection.second);
+        if (val < 0) {
+            throw new StorageException(StorageException.OPERATION_FAILED);
+        }
+    }
+
+    /**
+     * Execute the operation on the writer thread and deliver the result to the callback.
+     */
+    private void execute(final Callable<Object> operation, final DataSourceCallback callback) {
+        try {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        notifySuccess(callback, operation.call());
+                    } catch (final Exception e) {
+                        notifyError(callback, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            notifyError(callback, e);
+        }
+    }
+
+    private void notifySuccess(final DataSourceCallback callback, final Object value) {
+        if (callback == null) {
+            return;
+        }
+        Handler handler = callback.getHandler();
+        if (handler == null) {
+            callback.onSuccess(value);
+        } else {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onSuccess(value);
+                }
+            });
+        }
+    }
+
+    private void notifyError(final DataSourceCallback callback, final Exception e) {
+        if (callback == null) {
+            if (DEBUG) Log.e(TAG, "Error in LocalStoreDataSource", e);
+            return;
+        }
+        Handler handler = callback.getHandler();
+        if (handler == null) {
+            callback.onError(new DataSourceError(e));
+        } else {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onError(new DataSourceError(e));
+                }
+            });
+        }
+    }
+
+    /**
+     * Execute the operation on the writer thread and wait for its completion.
+     */
+    private void submit(Callable<Object> operation, String name) {
+        if (Thread.currentThread() == writerThread) {
+            //Called from a callback delivered on the writer thread
+            try {
+                operation.call();
+                return;
+            } catch (DataSourceException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new DataSourceException("Error in " + name + " ", e);
+            }
+        }
+        try {
+            writer.submit(operation).get();
+        } catch (RejectedExecutionException e) {
+            throw new DataSourceException("Error in " + name + " ", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataSourceException("Error in " + name + " ", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DataSourceException) {
+                throw (DataSourceException) e.getCause();
+            }
+            throw new DataSourceException("Error in " + name + " ", e.getCause());
+        }
+    }
+
+    private static void close(SQLiteStatement statement) {
+        if (statement != null) {
+            statement.close();
+        }
+    }
+
     private Pair<String, String[]> getSelection(LocalStoreKey key) {
         StringBuilder selection = new StringBuilder();
         List<String> selectionArgs = new ArrayList<>();
@@ -214,11 +526,6 @@ public class LocalStoreDataSource implements DataSource<LocalStoreKey, LocalStor
 
     }
 
-    @Override
-    public void getKeys(Object filter, DataSourceCallback dataSourceCallback) {
-
-    }
-
     @Override
     public boolean isReady() {
         return true;
@@ -253,9 +560,9 @@ public class LocalStoreDataSource implements DataSource<LocalStoreKey, LocalStor
         }
     }
 
-    private class LocalStorageDbHelper extends SQLiteOpenHelper {
+    private static class LocalStorageDbHelper extends SQLiteOpenHelper {
 
-        public static final int DATABASE_VERSION = 2;
+        public static final int DATABASE_VERSION = 3;
         private static final String DATABASE_NAME = "LS.db";
         private static final String TEXT_TYPE = " TEXT";
         private static final String INT_TYPE = " INTEGER";
@@ -275,6 +582,13 @@ public class LocalStoreDataSource implements DataSource<LocalStoreKey, LocalStor
                         LocalStorageContract.LocalStorageEntry.COLUMN_CREATED_BY + ")" +
                         " )";
 
+        //The primary key starts with the key column, lookups by segment and owner need their own index
+        private static final String SQL_CREATE_INDEX =
+                "CREATE INDEX IF NOT EXISTS " + LocalStorageContract.LocalStorageEntry.TABLE_NAME + "_segment_created_by ON " +
+                        LocalStorageContract.LocalStorageEntry.TABLE_NAME + " (" +
+                        LocalStorageContract.LocalStorageEntry.COLUMN_SEGMENT + "," +
+                        LocalStorageContract.LocalStorageEntry.COLUMN_CREATED_BY + ")";
+
         private final String SQL_DELETE_ENTRIES =
                 "DROP TABLE IF EXISTS " + LocalStorageContract.LocalStorageEntry.TABLE_NAME;
 
@@ -282,15 +596,26 @@ public class LocalStoreDataSource implements DataSource<LocalStoreKey, LocalStor
             super(context, DATABASE_NAME, null, DATABASE_VERSION);
         }
 
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+            db.enableWriteAheadLogging();
+        }
+
         @Override
         public void onCreate(SQLiteDatabase db) {
             db.execSQL(SQL_CREATE_ENTRIES);
+            db.execSQL(SQL_CREATE_INDEX);
         }
 
         @Override
         public void onUpgrade(SQLiteDatabase db, int i, int i1) {
-            db.execSQL(SQL_DELETE_ENTRIES);
-            onCreate(db);
+            if (i < 2) {
+                db.execSQL(SQL_DELETE_ENTRIES);
+                onCreate(db);
+                return;
+            }
+            //Version 3 only adds the index, keep the stored data
+            db.execSQL(SQL_CREATE_INDEX);
         }
 
         public SQLiteDatabase getDatabaseHandle() throws SQLiteException {
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.http;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per host retry budget and circuit breaker, to avoid amplifying the load on a degraded server.
+ * <p>
+ * The retry budget follows the gRPC retry throttling: each host has 10 tokens, a transient failure
+ * removes a token, a success adds 0.1 token, and retries are only allowed while more than half of the
+ * tokens are left.
+ * <p>
+ * The circuit opens after 5 consecutive transient failures, requests to the host then fail immediately
+ * for 30 seconds. After that a single request is let through, the circuit closes if it succeeds and opens
+ * again if it fails.
+ */
+public class CircuitBreaker {
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    /**
+     * Returned by {@link #acquire()} when the circuit is open.
+     */
+    public static final long REJECTED = -1;
+
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long OPEN_DURATION = TimeUnit.SECONDS.toMillis(30);
+    private static final double MAX_TOKENS = 10;
+    private static final double TOKEN_RATIO = 0.1;
+
+    private static final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private final String host;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probing;
+    //Identifies the request which holds the probe
+    private long probe;
+    private double tokens = MAX_TOKENS;
+
+    private CircuitBreaker(String host) {
+        this.host = host;
+    }
+
+    /**
+     * @param host The host name.
+     * @return The circuit breaker of the host.
+     */
+    public static CircuitBreaker forHost(String host) {
+        CircuitBreaker breaker = breakers.get(host);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(host);
+            CircuitBreaker existing = ((ConcurrentHashMap<String, CircuitBreaker>) breakers).putIfAbsent(host, breaker);
+            if (existing != null) {
+                breaker = existing;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * @return The state of the circuit breaker of each host which received a request.
+     */
+    public static Map<String, State> getStates() {
+        Map<String, State> states = new HashMap<>();
+        for (CircuitBreaker breaker : breakers.values()) {
+            states.put(breaker.host, breaker.getState());
+        }
+        return states;
+    }
+
+    /**
+     * Close all circuits and restore the retry budgets.
+     */
+    public static void reset() {
+        breakers.clear();
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= OPEN_DURATION) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        return state;
+    }
+
+    /**
+     * @return True if a request can be sent to the host. The request must be followed by
+     * {@link #onSuccess()} or {@link #onFailure()}, prefer {@link #acquire()} which can be released
+     * whatever the outcome of the request.
+     */
+    public synchronized boolean allowRequest() {
+        return acquire() != REJECTED;
+    }
+
+    /**
+     * Acquire the permission to send a request to the host, the permit must be released with
+     * {@link #release(long)} once the request completes, whatever its outcome.
+     *
+     * @return The permit, or {@link #REJECTED} if the circuit is open.
+     */
+    public synchronized long acquire() {
+        switch (getState()) {
+            case CLOSED:
+                return 0;
+            case HALF_OPEN:
+                //Let a single request through to probe the host
+                if (probing) {
+                    return REJECTED;
+                }
+                probing = true;
+                return ++probe;
+            default:
+                return REJECTED;
+        }
+    }
+
+    /**
+     * Release the permit acquired with {@link #acquire()}. If the request was the probe and neither
+     * {@link #onSuccess()} nor {@link #onFailure()} was recorded, for example because it failed with a
+     * non transient error, the next request probes the host.
+     *
+     * @param permit The permit returned by {@link #acquire()}.
+     */
+    public synchronized void release(long permit) {
+        if (permit > 0 && permit == probe) {
+            probing = false;
+        }
+    }
+
+    /**
+     * @return True if the retry budget of the host allows a retry.
+     */
+    public synchronized boolean allowRetry() {
+        return state == State.CLOSED && tokens > MAX_TOKENS / 2;
+    }
+
+    /**
+     * Record a response which is not a transient failure.
+     */
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probing = false;
+        state = State.CLOSED;
+        tokens = Math.min(MAX_TOKENS, tokens + TOKEN_RATIO);
+    }
+
+    /**
+     * Record a transient failure.
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        tokens = Math.max(0, tokens - 1);
+        if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            probing = false;
+        }
+    }
+}
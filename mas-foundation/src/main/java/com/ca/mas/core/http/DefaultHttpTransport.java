@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.http;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Default {@link HttpTransport}, opens a new connection for each request and disconnects it
+ * once the request has completed.
+ */
+public class DefaultHttpTransport implements HttpTransport {
+
+    @Override
+    public HttpURLConnection open(URL url) throws IOException {
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    @Override
+    public void release(HttpURLConnection connection, boolean reusable) {
+        connection.disconnect();
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.http;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Transport used by {@link MAGHttpClient} to obtain and release the underlying connection
+ * for a request. Implementations decide whether a connection is torn down after each request
+ * or kept alive for reuse.
+ */
+public interface HttpTransport {
+
+    /**
+     * Obtain a connection to the target URL. The connection returned is not yet connected.
+     *
+     * @param url The target URL.
+     * @return The connection to the target URL.
+     * @throws IOException if the connection cannot be obtained.
+     */
+    HttpURLConnection open(URL url) throws IOException;
+
+    /**
+     * Release the connection after the request has completed.
+     *
+     * @param connection The connection obtained by {@link #open(URL)}.
+     * @param reusable   True if the response has been fully consumed and the underlying socket
+     *                   may be returned to a pool, false if the request failed.
+     */
+    void release(HttpURLConnection connection, boolean reusable);
+}
@@ -54,7 +54,9 @@ public class MAGHttpClient {
      */
     public <T> MASResponse<T> execute(MASRequest request, SSLSocketFactory sslSocketFactory) throws IOException {
 
-        final HttpURLConnection urlConnection = (HttpURLConnection) request.getURL().openConnection();
+        final HttpTransport transport = ConfigurationManager.getInstance().getHttpTransport();
+        final HttpURLConnection urlConnection = transport.open(request.getURL());
+        boolean reusable = false;
 
         if (DEBUG) {
             Log.d(TAG, String.format("API Request Url: %s", request.getURL()));
@@ -186,6 +188,7 @@ public class MAGHttpClient {
             }
 
             final Map<String, List<String>> headers = urlConnection.getHeaderFields();
+            reusable = true;
 
             final int finalResponseCode = responseCode;
             final String finalResponseMessage = responseMessage;
@@ -215,7 +218,7 @@ public class MAGHttpClient {
             };
 
         } finally {
-            urlConnection.disconnect();
+            transport.release(urlConnection, reusable);
         }
     }
 
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.http;
+
+import android.util.Log;
+
+import com.ca.mas.core.io.IoUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+import static com.ca.mas.foundation.MAS.DEBUG;
+import static com.ca.mas.foundation.MAS.TAG;
+
+/**
+ * {@link HttpTransport} which keeps connections alive after a request has completed, so that
+ * subsequent requests to the same host reuse the socket and skip the TLS handshake.
+ * <p>
+ * The platform {@link HttpURLConnection} already maintains a connection pool keyed by host,
+ * port and {@link javax.net.ssl.SSLSocketFactory}; this transport returns the connection to the
+ * pool instead of disconnecting it. The platform pool is used as-is: its size and keep alive
+ * duration are the platform defaults, they are not configured by the SDK since they are process
+ * wide settings shared with the rest of the application. Connections are only reused when the
+ * same {@link javax.net.ssl.SSLSocketFactory} instance is provided, which is the case for factories
+ * obtained from {@link SSLSocketFactoryProvider#get(java.net.URL)}. Protocol negotiation (including
+ * HTTP/2 where the platform supports it) is left to the platform connection.
+ */
+public class PooledHttpTransport extends DefaultHttpTransport {
+
+    @Override
+    public void release(HttpURLConnection connection, boolean reusable) {
+        if (!reusable) {
+            connection.disconnect();
+            return;
+        }
+        //Closing the exhausted response stream returns the socket to the pool,
+        //disconnect() would close the socket.
+        InputStream inputStream = null;
+        try {
+            inputStream = connection.getErrorStream();
+            if (inputStream == null) {
+                inputStream = connection.getInputStream();
+            }
+        } catch (IOException e) {
+            if (DEBUG) Log.d(TAG, "Unable to return connection to the pool: " + e.getMessage());
+            connection.disconnect();
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+    }
+}
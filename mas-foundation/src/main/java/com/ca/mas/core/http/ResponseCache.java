@@ -0,0 +1,560 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.http;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.ca.mas.core.EventDispatcher;
+import com.ca.mas.core.io.Charsets;
+import com.ca.mas.core.io.IoUtils;
+import com.ca.mas.core.security.DefaultEncryptionProvider;
+import com.ca.mas.core.security.EncryptionProvider;
+import com.ca.mas.foundation.MASCachePolicy;
+import com.ca.mas.foundation.MASRequest;
+import com.ca.mas.foundation.MASResponse;
+import com.ca.mas.foundation.MASResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.TimeUnit;
+
+import static com.ca.mas.foundation.MAS.DEBUG;
+import static com.ca.mas.foundation.MAS.TAG;
+
+/**
+ * Cache of the responses of GET requests, see {@link MASCachePolicy}.
+ * <p>
+ * Responses are kept in a memory LRU cache and, for persistent cache policies, in a disk LRU cache under the
+ * application cache directory. Disk entries are encrypted with the {@link EncryptionProvider}. Both caches
+ * are cleared on logout, deregistration, local reset and gateway switch, see {@link #registerInvalidation(Context)}.
+ * <p>
+ * The files are read, decrypted, encrypted and written outside the cache lock, a file is written to a temporary
+ * file and renamed once complete. The responses read or written while the cache is cleared are discarded.
+ */
+public class ResponseCache {
+
+    static final long MAX_MEMORY_SIZE = 1024 * 1024;
+    static final long MAX_DISK_SIZE = 10 * 1024 * 1024;
+
+    private static final String CACHE_DIR = "mas_http_cache";
+    private static final int VERSION = 1;
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+    private static final String CACHE_CONTROL = "Cache-Control";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String MAX_AGE = "max-age=";
+
+    private static ResponseCache instance;
+    private static boolean invalidationRegistered;
+
+    private final File directory;
+    private final EncryptionProvider encryptionProvider;
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memorySize;
+    //Incremented when the cache is cleared
+    private long generation;
+
+    public static synchronized ResponseCache getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new ResponseCache(new File(appContext.getCacheDir(), CACHE_DIR),
+                    new DefaultEncryptionProvider(appContext));
+        }
+        return instance;
+    }
+
+    ResponseCache(File directory, EncryptionProvider encryptionProvider) {
+        this.directory = directory;
+        this.encryptionProvider = encryptionProvider;
+    }
+
+    /**
+     * Clear the cached responses on logout, deregistration, local reset and gateway switch. Registered when the
+     * SDK starts, before any cached request, so that the responses persisted by a previous process are removed
+     * as well.
+     */
+    public static synchronized void registerInvalidation(Context context) {
+        if (invalidationRegistered) {
+            return;
+        }
+        invalidationRegistered = true;
+        final File directory = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR);
+        Observer clear = new Observer() {
+            @Override
+            public void update(Observable o, Object arg) {
+                ResponseCache cache;
+                synchronized (ResponseCache.class) {
+                    cache = instance;
+                }
+                if (cache != null) {
+                    cache.clear();
+                } else {
+                    delete(directory);
+                }
+            }
+        };
+        EventDispatcher.LOGOUT.addObserver(clear);
+        EventDispatcher.AFTER_DEREGISTER.addObserver(clear);
+        EventDispatcher.RESET_LOCALLY.addObserver(clear);
+        EventDispatcher.BEFORE_GATEWAY_SWITCH.addObserver(clear);
+    }
+
+    /**
+     * A cached response.
+     */
+    public static class Entry {
+        private final int responseCode;
+        private final String responseMessage;
+        private final String contentType;
+        private final Map<String, List<String>> headers;
+        private final byte[] content;
+        private final long storedAt;
+        private final long maxAge;
+        private final boolean persistent;
+
+        Entry(int responseCode, String responseMessage, String contentType, Map<String, List<String>> headers,
+              byte[] content, long storedAt, long maxAge, boolean persistent) {
+            this.responseCode = responseCode;
+            this.responseMessage = responseMessage;
+            this.contentType = contentType;
+            this.headers = headers;
+            this.content = content;
+            this.storedAt = storedAt;
+            this.maxAge = maxAge;
+            this.persistent = persistent;
+        }
+
+        /**
+         * @return True if the response can be served without revalidation.
+         */
+        public boolean isFresh(MASCachePolicy policy) {
+            long age = policy.getMaxAge() == MASCachePolicy.SERVER_MAX_AGE ? maxAge : policy.getMaxAge();
+            return System.currentTimeMillis() < storedAt + age;
+        }
+
+        /**
+         * @return The conditional headers to revalidate the response with the server.
+         */
+        public Map<String, String> getConditionalHeaders() {
+            Map<String, String> conditionalHeaders = new HashMap<>();
+            String etag = getHeader(headers, ETAG);
+            if (etag != null) {
+                conditionalHeaders.put(IF_NONE_MATCH, etag);
+            }
+            String lastModified = getHeader(headers, LAST_MODIFIED);
+            if (lastModified != null) {
+                conditionalHeaders.put(IF_MODIFIED_SINCE, lastModified);
+            }
+            return conditionalHeaders;
+        }
+
+        /**
+         * @param body The response body of the request, populated with the cached content.
+         * @return The cached response.
+         */
+        public <T> MASResponse<T> toResponse(final MASResponseBody<T> body) throws IOException {
+            body.read(contentType, content);
+            return new MASResponse<T>() {
+                @Override
+                public Map<String, List<String>> getHeaders() {
+                    return headers;
+                }
+
+                @Override
+                public int getResponseCode() {
+                    return responseCode;
+                }
+
+                @Override
+                public String getResponseMessage() {
+                    return responseMessage;
+                }
+
+                @Override
+                public MASResponseBody<T> getBody() {
+                    return body;
+                }
+            };
+        }
+
+        int size() {
+            return content.length;
+        }
+    }
+
+    /**
+     * @return The cache key of the request for the scope and user.
+     */
+    public static String key(MASRequest request, String scope, String user) {
+        return request.getURL() + "\n" + (scope == null ? "" : scope) + "\n" + (user == null ? "" : user);
+    }
+
+    /**
+     * @return The cached response, or null if the response is not cached.
+     */
+    public Entry get(String key) {
+        long generation;
+        synchronized (this) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                return entry;
+            }
+            generation = this.generation;
+        }
+        Entry entry = readFromDisk(key);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (generation != this.generation) {
+                return null;
+            }
+            putInMemory(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Cache the response if it is cacheable, or remove the cached response otherwise.
+     *
+     * @return The cached entry, or null if the response is not cacheable.
+     */
+    public Entry put(String key, MASResponse<?> response, MASCachePolicy policy) {
+        MASResponseBody<?> body = response.getBody();
+        String cacheControl = getHeader(response.getHeaders(), CACHE_CONTROL);
+        if (response.getResponseCode() != HttpURLConnection.HTTP_OK || body == null || !body.isBuffered()
+                || body.getRawContent() == null || hasDirective(cacheControl, "no-store")) {
+            remove(key);
+            return null;
+        }
+        Entry entry = new Entry(response.getResponseCode(), response.getResponseMessage(), body.getContentType(),
+                copy(response.getHeaders()), body.getRawContent(), System.currentTimeMillis(),
+                getMaxAge(cacheControl), policy.isPersistent());
+        store(key, entry);
+        return entry;
+    }
+
+    /**
+     * Update the cached response after the server confirmed it with HTTP 304.
+     *
+     * @param headers The headers of the HTTP 304 response.
+     * @return The updated entry.
+     */
+    public Entry revalidated(String key, Entry entry, Map<String, List<String>> headers) {
+        Map<String, List<String>> merged = new HashMap<>(entry.headers);
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (header.getKey() != null) {
+                    merged.put(header.getKey(), header.getValue());
+                }
+            }
+        }
+        Entry updated = new Entry(entry.responseCode, entry.responseMessage, entry.contentType, merged,
+                entry.content, System.currentTimeMillis(), getMaxAge(getHeader(merged, CACHE_CONTROL)),
+                entry.persistent);
+        store(key, updated);
+        return updated;
+    }
+
+    public void remove(String key) {
+        synchronized (this) {
+            Entry entry = memory.remove(key);
+            if (entry != null) {
+                memorySize -= entry.size();
+            }
+        }
+        File file = getFile(key);
+        if (file.exists() && !file.delete()) {
+            if (DEBUG) Log.w(TAG, "Unable to delete cached response " + file);
+        }
+    }
+
+    /**
+     * Remove all the cached responses.
+     */
+    public void clear() {
+        synchronized (this) {
+            memory.clear();
+            memorySize = 0;
+            generation++;
+        }
+        delete(directory);
+    }
+
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    if (DEBUG) Log.w(TAG, "Unable to delete cached response " + file);
+                }
+            }
+        }
+    }
+
+    private void store(String key, Entry entry) {
+        long generation;
+        synchronized (this) {
+            putInMemory(key, entry);
+            generation = this.generation;
+        }
+        if (entry.persistent) {
+            writeToDisk(key, entry, generation);
+        } else {
+            File file = getFile(key);
+            if (file.exists()) {
+                file.delete();
+            }
+        }
+    }
+
+    private void putInMemory(String key, Entry entry) {
+        Entry previous = memory.put(key, entry);
+        if (previous != null) {
+            memorySize -= previous.size();
+        }
+        memorySize += entry.size();
+        Iterator<Map.Entry<String, Entry>> iterator = memory.entrySet().iterator();
+        while (memorySize > MAX_MEMORY_SIZE && iterator.hasNext()) {
+            memorySize -= iterator.next().getValue().size();
+            iterator.remove();
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry, long generation) {
+        OutputStream outputStream = null;
+        File tmp = null;
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Unable to create " + directory);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.size() + 512);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeInt(entry.responseCode);
+            writeString(out, entry.responseMessage);
+            writeString(out, entry.contentType);
+            out.writeLong(entry.storedAt);
+            out.writeLong(entry.maxAge);
+            List<String[]> headers = new ArrayList<>();
+            for (Map.Entry<String, List<String>> header : entry.headers.entrySet()) {
+                if (header.getKey() != null && header.getValue() != null) {
+                    for (String value : header.getValue()) {
+                        headers.add(new String[]{header.getKey(), value});
+                    }
+                }
+            }
+            out.writeInt(headers.size());
+            for (String[] header : headers) {
+                out.writeUTF(header[0]);
+                writeString(out, header[1]);
+            }
+            out.writeInt(entry.content.length);
+            out.write(entry.content);
+            out.flush();
+
+            tmp = File.createTempFile("response", ".tmp", directory);
+            outputStream = new FileOutputStream(tmp);
+            outputStream.write(encryptionProvider.encrypt(bytes.toByteArray()));
+            outputStream.flush();
+            outputStream.close();
+            outputStream = null;
+            synchronized (this) {
+                //Not restored if the cache was cleared while the file was written
+                if (generation != this.generation || !tmp.renameTo(getFile(key))) {
+                    tmp.delete();
+                }
+            }
+        } catch (Exception e) {
+            if (DEBUG) Log.w(TAG, "Unable to write cached response", e);
+            IoUtils.closeQuietly(outputStream);
+            outputStream = null;
+            if (tmp != null) {
+                tmp.delete();
+            }
+            getFile(key).delete();
+        } finally {
+            IoUtils.closeQuietly(outputStream);
+        }
+        trimDisk();
+    }
+
+    private Entry readFromDisk(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            byte[] data = encryptionProvider.decrypt(IoUtils.slurpStream(inputStream, (int) MAX_DISK_SIZE));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != VERSION || !key.equals(in.readUTF())) {
+                throw new IOException("Invalid cached response");
+            }
+            int responseCode = in.readInt();
+            String responseMessage = readString(in);
+            String contentType = readString(in);
+            long storedAt = in.readLong();
+            long maxAge = in.readLong();
+            Map<String, List<String>> headers = new HashMap<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                List<String> values = headers.get(name);
+                if (values == null) {
+                    values = new ArrayList<>();
+                    headers.put(name, values);
+                }
+                values.add(readString(in));
+            }
+            byte[] content = new byte[in.readInt()];
+            in.readFully(content);
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(responseCode, responseMessage, contentType, headers, content, storedAt, maxAge, true);
+        } catch (Exception e) {
+            if (DEBUG) Log.w(TAG, "Unable to read cached response", e);
+            file.delete();
+            return null;
+        } finally {
+            IoUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Remove the least recently used files until the disk cache fits in {@link #MAX_DISK_SIZE}.
+     */
+    private void trimDisk() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= MAX_DISK_SIZE) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (size <= MAX_DISK_SIZE) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File getFile(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return new File(directory, IoUtils.hexDump(md.digest(key.getBytes(Charsets.UTF8))));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static Map<String, List<String>> copy(Map<String, List<String>> headers) {
+        Map<String, List<String>> copy = new HashMap<>();
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (header.getKey() != null && header.getValue() != null) {
+                    copy.put(header.getKey(), Collections.unmodifiableList(new ArrayList<>(header.getValue())));
+                }
+            }
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    private static String getHeader(Map<String, List<String>> headers, String name) {
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                    return header.getValue().get(0);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasDirective(String cacheControl, String directive) {
+        if (cacheControl != null) {
+            for (String value : cacheControl.split(",")) {
+                if (value.trim().equalsIgnoreCase(directive)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The Cache-Control max-age in milliseconds, 0 if not defined or if the response must be revalidated.
+     */
+    private static long getMaxAge(String cacheControl) {
+        if (cacheControl == null || hasDirective(cacheControl, "no-cache")) {
+            return 0;
+        }
+        for (String value : cacheControl.split(",")) {
+            value = value.trim().toLowerCase();
+            if (value.startsWith(MAX_AGE)) {
+                try {
+                    return TimeUnit.SECONDS.toMillis(Long.parseLong(value.substring(MAX_AGE.length())));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -10,22 +10,23 @@ package com.ca.mas.core.http;
 import android.net.Uri;
 
 import com.ca.mas.core.io.ssl.MAGSocketFactory;
+import com.ca.mas.core.io.ssl.SSLContextCache;
 import com.ca.mas.foundation.MASConfiguration;
 import com.ca.mas.foundation.MASInvalidHostException;
 import com.ca.mas.foundation.MASSecurityConfiguration;
 
 import java.net.URL;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.net.ssl.SSLSocketFactory;
 
 public class SSLSocketFactoryProvider {
 
     private static SSLSocketFactoryProvider instance = new SSLSocketFactoryProvider();
-    private Map<Uri, SSLSocketFactory> factories = new HashMap<>();
+    private Map<Uri, SSLSocketFactory> factories = new ConcurrentHashMap<>();
 
     private SSLSocketFactoryProvider() {
         MASConfiguration.SECURITY_CONFIGURATION_CHANGED.addObserver(
@@ -33,6 +34,7 @@ public class SSLSocketFactoryProvider {
                     @Override
                     public void update(Observable o, Object arg) {
                         factories.remove((Uri) arg);
+                        SSLContextCache.getInstance().invalidate((Uri) arg);
                     }
                 }
         );
@@ -42,6 +44,7 @@ public class SSLSocketFactoryProvider {
                     @Override
                     public void update(Observable o, Object arg) {
                         factories.clear();
+                        SSLContextCache.getInstance().invalidateAll();
                     }
                 }
         );
@@ -60,6 +63,10 @@ public class SSLSocketFactoryProvider {
         Uri sanitized = new Uri.Builder()
                 .encodedAuthority(url.getHost() + ":" + url.getPort())
                 .build();
+        return get(sanitized);
+    }
+
+    private SSLSocketFactory get(Uri sanitized) {
         SSLSocketFactory factory = factories.get(sanitized);
 
         //If not found in the cache, we create one and add it
@@ -72,6 +79,8 @@ public class SSLSocketFactoryProvider {
 
     /**
      * Returns the SSLSocketFactory associated with the primary gateway configuration.
+     * The same instance is returned for subsequent calls, so that pooled connections to the
+     * primary gateway can be reused.
      * @return the SSLSocketFactory
      */
     public SSLSocketFactory getPrimaryGatewaySocketFactory() throws MASInvalidHostException {
@@ -80,7 +89,7 @@ public class SSLSocketFactoryProvider {
                 + ":"
                 + currentConfiguration.getGatewayPort())
                 .build();
-        return getSSLSocketFactory(uri);
+        return get(uri);
     }
 
     /**
@@ -102,7 +111,8 @@ public class SSLSocketFactoryProvider {
     }
 
     /**
-     * Creates a SSLSocketFactory for this configuration.
+     * Creates a SSLSocketFactory for this configuration. The SSL context is shared with the other
+     * factories created for the same configuration and client certificate, see {@link SSLContextCache}.
      * @param configuration the specified security configuration
      * @return the primary SSLSocketFactory
      */
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.io;
+
+import android.util.JsonReader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * Builds {@link JSONObject} and {@link JSONArray} from a {@link JsonReader}, decoding the JSON document
+ * as it is read instead of buffering it as a String.
+ */
+public class JsonStreamParser {
+
+    private JsonStreamParser() {
+    }
+
+    /**
+     * @param reader The reader positioned on a JSON value.
+     * @return The parsed value, a {@link JSONObject}, {@link JSONArray}, String, Number, Boolean or {@link JSONObject#NULL}.
+     */
+    public static Object parse(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    object.put(name, parse(reader));
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(parse(reader));
+                }
+                reader.endArray();
+                return array;
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return parseNumber(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                throw new JSONException("Unexpected token " + reader.peek());
+        }
+    }
+
+    private static Object parseNumber(String value) {
+        if (value.indexOf('.') < 0 && value.indexOf('e') < 0 && value.indexOf('E') < 0) {
+            try {
+                long l = Long.parseLong(value);
+                if (l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE) {
+                    return (int) l;
+                }
+                return l;
+            } catch (NumberFormatException e) {
+                //Fall back to double
+            }
+        }
+        return Double.valueOf(value);
+    }
+}
@@ -7,6 +7,9 @@
  */
 package com.ca.mas.core.io.http;
 
+import android.util.Base64;
+import android.util.Log;
+
 import com.ca.mas.core.cert.PublicKeyHash;
 import com.ca.mas.core.cert.TrustedCertificateConfiguration;
 import com.ca.mas.foundation.MAS;
@@ -15,6 +18,7 @@ import com.ca.mas.foundation.MASSecurityConfiguration;
 import java.io.IOException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.cert.Certificate;
@@ -22,20 +26,52 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 
+import static com.ca.mas.foundation.MAS.DEBUG;
+import static com.ca.mas.foundation.MAS.TAG;
+
 /**
  * Trust manager that works with a {@link TrustedCertificateConfiguration}.
+ * <p>
+ * Validated chains are remembered by the fingerprint of their leaf certificate until the first certificate
+ * of the chain expires, so that repeat connections to the same server skip the delegates and the pin
+ * check. The trust manager is created with the security configuration, a configuration change creates a
+ * new trust manager with an empty cache.
  */
 public class TrustedCertificateConfigurationTrustManager implements X509TrustManager {
 
+    /**
+     * Maximum number of validated chains remembered.
+     */
+    private static final int MAX_VALIDATED_CHAINS = 32;
+
+    /**
+     * SHA-256 of the SubjectPublicKeyInfo by certificate.
+     */
+    private static final Map<X509Certificate, PublicKeyHash> publicKeyHashes = new WeakHashMap<>();
+
     private final Collection<X509TrustManager> publicPkiDelegates;
     private final Collection<X509TrustManager> privateTrustStoreDelegates;
     private final MASSecurityConfiguration config;
+    private final Set<PublicKeyHash> pins;
+
+    //Expiry of the validated chains by leaf fingerprint and auth type
+    private final Map<String, Long> validatedChains = new LinkedHashMap<String, Long>(MAX_VALIDATED_CHAINS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_VALIDATED_CHAINS;
+        }
+    };
 
     /**
      * Create a trust manager that uses the specified trust configuration.
@@ -46,6 +82,22 @@ public class TrustedCertificateConfigurationTrustManager implements X509TrustMan
         this.publicPkiDelegates = config.trustPublicPki() ? getPlatformX509TrustManagers() : null;
         this.privateTrustStoreDelegates = getPrivateX509TrustManagers(config.getCertificates());
         this.config = config;
+        this.pins = getPins(config.getPublicKeyHashes());
+    }
+
+    private static Set<PublicKeyHash> getPins(List<String> hashes) {
+        if (hashes == null) {
+            return null;
+        }
+        Set<PublicKeyHash> pins = new HashSet<>();
+        for (String hash : hashes) {
+            try {
+                pins.add(PublicKeyHash.fromHashString(hash, Base64.DEFAULT));
+            } catch (IllegalArgumentException e) {
+                if (DEBUG) Log.w(TAG, "Invalid public key hash: " + hash, e);
+            }
+        }
+        return pins;
     }
 
     private static Collection<X509TrustManager> getPrivateX509TrustManagers(Collection<Certificate> certs) {
@@ -116,13 +168,17 @@ public class TrustedCertificateConfigurationTrustManager implements X509TrustMan
     @Override
     public void checkServerTrusted(X509Certificate[] chain, String s) throws CertificateException {
         List<Certificate> certs = config.getCertificates();
-        List<String> hashes = config.getPublicKeyHashes();
 
         // Bypass the SSL Pinning if not enabled.
         if (!MAS.isSSLPinningEnabled() || !config.allowSSLPinning()) {
             return;
         }
 
+        String fingerprint = getFingerprint(chain, s);
+        if (isValidated(fingerprint)) {
+            return;
+        }
+
         //If we don't trust the public PKI, we fail the validation
         if (config.trustPublicPki()) {
             //All public PKI delegates must succeed
@@ -138,16 +194,13 @@ public class TrustedCertificateConfigurationTrustManager implements X509TrustMan
 
         //Check the public key hashes
         boolean hashesValid = false;
-        if (hashes != null) {
-            if (!hashes.isEmpty()) {
+        if (pins != null) {
+            if (!pins.isEmpty()) {
                 for (X509Certificate xcert : chain) {
-                    PublicKey key = xcert.getPublicKey();
-                    if (key != null) {
-                        String hashString = PublicKeyHash.fromPublicKey(key).getHashString();
-                        if (hashes.contains(hashString)) {
-                            hashesValid = true;
-                            break;
-                        }
+                    PublicKeyHash hash = getPublicKeyHash(xcert);
+                    if (hash != null && pins.contains(hash)) {
+                        hashesValid = true;
+                        break;
                     }
                 }
             }
@@ -156,6 +209,67 @@ public class TrustedCertificateConfigurationTrustManager implements X509TrustMan
                 throw new CertificateException("Server certificate chain did not contain any of the pinned public keys.");
             }
         }
+
+        setValidated(fingerprint, chain);
+    }
+
+    private static PublicKeyHash getPublicKeyHash(X509Certificate certificate) {
+        synchronized (publicKeyHashes) {
+            PublicKeyHash hash = publicKeyHashes.get(certificate);
+            if (hash == null) {
+                PublicKey key = certificate.getPublicKey();
+                if (key == null) {
+                    return null;
+                }
+                hash = PublicKeyHash.fromPublicKey(key);
+                publicKeyHashes.put(certificate, hash);
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * @return The SHA-256 fingerprint of the leaf certificate and the auth type, or null if the chain is empty.
+     */
+    private static String getFingerprint(X509Certificate[] chain, String authType) throws CertificateException {
+        if (chain == null || chain.length == 0) {
+            return null;
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return Base64.encodeToString(md.digest(chain[0].getEncoded()), Base64.NO_WRAP) + ":" + authType;
+        } catch (NoSuchAlgorithmException e) {
+            throw new CertificateException(e);
+        }
+    }
+
+    private synchronized boolean isValidated(String fingerprint) {
+        if (fingerprint == null) {
+            return false;
+        }
+        Long expiry = validatedChains.get(fingerprint);
+        if (expiry == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() >= expiry) {
+            validatedChains.remove(fingerprint);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remember the validated chain until its first certificate expires.
+     */
+    private synchronized void setValidated(String fingerprint, X509Certificate[] chain) {
+        if (fingerprint == null) {
+            return;
+        }
+        long expiry = Long.MAX_VALUE;
+        for (X509Certificate xcert : chain) {
+            expiry = Math.min(expiry, xcert.getNotAfter().getTime());
+        }
+        validatedChains.put(fingerprint, expiry);
     }
 
     @Override
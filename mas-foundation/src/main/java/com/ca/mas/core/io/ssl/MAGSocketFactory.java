@@ -53,8 +53,22 @@ public class MAGSocketFactory {
         }
     }
 
+    /**
+     * Returns the socket factory of the SSL context for the security configuration and client certificate,
+     * the context is created on first use and then shared, see {@link SSLContextCache}.
+     */
     public SSLSocketFactory createTLSSocketFactory() {
-        return new TLSSocketFactory(createSslContext().getSocketFactory());
+        SSLContextCache cache = SSLContextCache.getInstance();
+        String key = SSLContextCache.key(securityConfiguration, hasClientCert() ? clientCertChain[0] : null);
+        SSLSocketFactory socketFactory = cache.get(key);
+        if (socketFactory == null) {
+            socketFactory = cache.put(key, securityConfiguration.getHost(), createSslContext());
+        }
+        return socketFactory;
+    }
+
+    private boolean hasClientCert() {
+        return clientCertPrivateKey != null && clientCertChain != null && clientCertChain.length > 0;
     }
 
     private SSLContext createSslContext() {
@@ -62,7 +76,7 @@ public class MAGSocketFactory {
             SSLContext sslContext = SSLContext.getInstance(SSL_TLS_PROTOCOL);
             TrustManager manager = new TrustedCertificateConfigurationTrustManager(securityConfiguration);
             TrustManager[] trustManagers = {manager};
-            KeyManager[] keyManagers = clientCertPrivateKey == null || clientCertChain == null
+            KeyManager[] keyManagers = !hasClientCert()
                     ? new KeyManager[0]
                     : new KeyManager[]{new SingleKeyX509KeyManager(clientCertPrivateKey, clientCertChain)};
             sslContext.init(keyManagers, trustManagers, secureRandom);
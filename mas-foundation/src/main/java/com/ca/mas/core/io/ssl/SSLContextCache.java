@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.io.ssl;
+
+import android.net.Uri;
+import android.util.Base64;
+
+import com.ca.mas.foundation.MASSecurityConfiguration;
+
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Cache of the SSL contexts by security configuration and client certificate.
+ * <p>
+ * Requests which share the same security configuration and client certificate share the same
+ * {@link SSLContext}, and therefore the same client session cache, so that TLS sessions are resumed instead
+ * of performing a full handshake for every new context. The session cache of each context is bounded by
+ * {@link #SESSION_CACHE_SIZE} and {@link #SESSION_TIMEOUT}.
+ * <p>
+ * Contexts are invalidated when the security configuration of their host changes, when the security
+ * configurations are reset, and when the client certificate is renewed.
+ */
+public class SSLContextCache {
+
+    /**
+     * Maximum number of contexts kept in the cache.
+     */
+    static final int MAX_CONTEXTS = 16;
+    /**
+     * Maximum number of TLS sessions kept by a context.
+     */
+    static final int SESSION_CACHE_SIZE = 32;
+    /**
+     * Lifetime of the TLS sessions in seconds.
+     */
+    static final int SESSION_TIMEOUT = (int) TimeUnit.HOURS.toSeconds(8);
+
+    private static final String SEPARATOR = "|";
+    private static final SSLContextCache instance = new SSLContextCache();
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(MAX_CONTEXTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_CONTEXTS;
+        }
+    };
+
+    private final AtomicLong contexts = new AtomicLong();
+    private final AtomicLong handshakes = new AtomicLong();
+    private final AtomicLong resumptions = new AtomicLong();
+
+    private SSLContextCache() {
+    }
+
+    public static SSLContextCache getInstance() {
+        return instance;
+    }
+
+    private static class Entry {
+        final Uri host;
+        final SSLSocketFactory socketFactory;
+
+        Entry(Uri host, SSLSocketFactory socketFactory) {
+            this.host = host;
+            this.socketFactory = socketFactory;
+        }
+    }
+
+    /**
+     * @return The socket factory of the cached context, or null if there is no context for the key.
+     */
+    synchronized SSLSocketFactory get(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.socketFactory;
+    }
+
+    /**
+     * Add the context to the cache, the session cache of the context is bounded.
+     *
+     * @return The socket factory of the context, or of the context already cached for the key.
+     */
+    synchronized SSLSocketFactory put(String key, Uri host, SSLContext sslContext) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+            if (sessionContext != null) {
+                sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+                sessionContext.setSessionTimeout(SESSION_TIMEOUT);
+            }
+            entry = new Entry(host, new TLSSocketFactory(sslContext.getSocketFactory(), this));
+            entries.put(key, entry);
+            contexts.incrementAndGet();
+        }
+        return entry.socketFactory;
+    }
+
+    /**
+     * Remove the contexts of the host.
+     *
+     * @param host The host, as provided by {@link MASSecurityConfiguration#getHost()}.
+     */
+    public synchronized void invalidate(Uri host) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Uri current = iterator.next().host;
+            if (current == null ? host == null : current.equals(host)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all the contexts.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return The number of contexts created since the counters were reset.
+     */
+    public long getContextCount() {
+        return contexts.get();
+    }
+
+    /**
+     * @return The number of full TLS handshakes since the counters were reset.
+     */
+    public long getHandshakeCount() {
+        return handshakes.get();
+    }
+
+    /**
+     * @return The number of resumed TLS sessions since the counters were reset.
+     */
+    public long getResumptionCount() {
+        return resumptions.get();
+    }
+
+    public void resetCounters() {
+        contexts.set(0);
+        handshakes.set(0);
+        resumptions.set(0);
+    }
+
+    void onHandshakeCompleted(boolean resumed) {
+        if (resumed) {
+            resumptions.incrementAndGet();
+        } else {
+            handshakes.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return The cache key of the security configuration and client certificate, the certificates are
+     * identified by the digest of their encoded form.
+     */
+    static String key(MASSecurityConfiguration configuration, Certificate clientCertificate) {
+        try {
+            StringBuilder key = new StringBuilder();
+            key.append(configuration.getHost()).append(SEPARATOR)
+                    .append(configuration.isPublic()).append(SEPARATOR)
+                    .append(configuration.trustPublicPki()).append(SEPARATOR)
+                    .append(configuration.allowSSLPinning()).append(SEPARATOR);
+            List<String> publicKeyHashes = configuration.getPublicKeyHashes();
+            if (publicKeyHashes != null) {
+                for (String publicKeyHash : publicKeyHashes) {
+                    key.append(publicKeyHash).append(',');
+                }
+            }
+            key.append(SEPARATOR);
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            List<Certificate> certificates = configuration.getCertificates();
+            if (certificates != null) {
+                for (Certificate certificate : certificates) {
+                    digest.update(certificate.getEncoded());
+                }
+            }
+            key.append(Base64.encodeToString(digest.digest(), Base64.NO_WRAP)).append(SEPARATOR);
+            if (clientCertificate != null) {
+                key.append(Base64.encodeToString(digest.digest(clientCertificate.getEncoded()), Base64.NO_WRAP));
+            }
+            return key.toString();
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to create SSL Context key: " + e.getMessage(), e);
+        }
+    }
+}
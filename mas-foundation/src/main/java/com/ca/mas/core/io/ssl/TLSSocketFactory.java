@@ -13,6 +13,8 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
 
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
@@ -27,10 +29,20 @@ class TLSSocketFactory extends SSLSocketFactory {
     private static final String[] SUPPORTED_TLS =  {SSL_V3_PROTOCOL, SSL_TLS_V1_PROTOCOL, SSL_TLS_V1_1_PROTOCOL, SSL_TLS_V1_2_PROTOCOL};
     private static final String[] SUPPORTED_TLS_FROM_ANDROID_Q =  {SSL_V3_PROTOCOL, SSL_TLS_V1_PROTOCOL, SSL_TLS_V1_1_PROTOCOL, SSL_TLS_V1_2_PROTOCOL, SSL_TLS_V1_3_PROTOCOL};
 
+    private SSLContextCache stats;
+
     TLSSocketFactory(SSLSocketFactory sslSocketFactory) {
         this.sslSocketFactory = sslSocketFactory;
     }
 
+    /**
+     * @param stats Notified of the handshakes completed by the sockets.
+     */
+    TLSSocketFactory(SSLSocketFactory sslSocketFactory, SSLContextCache stats) {
+        this.sslSocketFactory = sslSocketFactory;
+        this.stats = stats;
+    }
+
     @Override
     public String[] getDefaultCipherSuites() {
         return sslSocketFactory.getDefaultCipherSuites();
@@ -80,6 +92,16 @@ class TLSSocketFactory extends SSLSocketFactory {
             {
                 ((SSLSocket) socket).setEnabledProtocols(SUPPORTED_TLS_FROM_ANDROID_Q);
             }
+            if (stats != null) {
+                final long created = System.currentTimeMillis();
+                ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                    @Override
+                    public void handshakeCompleted(HandshakeCompletedEvent event) {
+                        //A resumed session was created before the socket
+                        stats.onHandshakeCompleted(event.getSession().getCreationTime() < created);
+                    }
+                });
+            }
         }
         return socket;
     }
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.oauth;
+
+import androidx.annotation.NonNull;
+import android.util.Log;
+
+import com.ca.mas.core.EventDispatcher;
+import com.ca.mas.core.error.MAGErrorCode;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.ca.mas.foundation.MAS.DEBUG;
+import static com.ca.mas.foundation.MAS.TAG;
+
+/**
+ * Coalesces concurrent token requests for the same grant and scope into a single call to the
+ * token endpoint. The first caller performs the token request, concurrent callers wait for and
+ * share its result.
+ * <p>
+ * The coordinator can also refresh the access token in the background shortly before it expires,
+ * so that requests do not have to wait for the token endpoint when the access token expires. The
+ * coordinator is reset on logout, deregistration, local reset, gateway switch and stop: the session
+ * generation changes, so that a refresh in progress does not store its tokens, and the background
+ * thread is shut down.
+ */
+public class TokenRefreshCoordinator {
+
+    /**
+     * Access tokens are refreshed in the background when they expire within this window.
+     */
+    static final long PROACTIVE_REFRESH_WINDOW = TimeUnit.SECONDS.toMillis(30);
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread thread = new Thread(r, "MASTokenRefresh");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static final TokenRefreshCoordinator instance = new TokenRefreshCoordinator();
+
+    private final Map<String, Flight> flights = new HashMap<>();
+    private final Object lock = new Object();
+    //Guarded by lock
+    private ExecutorService executor;
+    private int generation;
+    private final AtomicLong tokenRequests = new AtomicLong();
+    private final AtomicLong coalescedWaiters = new AtomicLong();
+    private final AtomicLong proactiveRefreshes = new AtomicLong();
+
+    /**
+     * A token request to the token endpoint.
+     */
+    public interface TokenRequest {
+
+        /**
+         * @return The stored access token if it can be used without calling the token endpoint, for example
+         * when it was refreshed while the request was waiting, otherwise null.
+         */
+        String current();
+
+        /**
+         * Perform the token request and store the result with {@link TokenRefreshCoordinator#store(int, Runnable)}.
+         *
+         * @param generation The session generation when the request started.
+         * @return The access token, or null if no access token can be obtained with this grant.
+         */
+        String execute(int generation) throws OAuthException, OAuthServerException;
+    }
+
+    private static class Flight {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private String accessToken;
+        private Exception exception;
+    }
+
+    private TokenRefreshCoordinator() {
+        Observer reset = new Observer() {
+            @Override
+            public void update(Observable o, Object arg) {
+                reset();
+            }
+        };
+        EventDispatcher.LOGOUT.addObserver(reset);
+        EventDispatcher.AFTER_DEREGISTER.addObserver(reset);
+        EventDispatcher.RESET_LOCALLY.addObserver(reset);
+        EventDispatcher.BEFORE_GATEWAY_SWITCH.addObserver(reset);
+        EventDispatcher.STOP.addObserver(reset);
+    }
+
+    public static TokenRefreshCoordinator getInstance() {
+        return instance;
+    }
+
+    /**
+     * Execute the token request, or wait for the result of a token request already in progress
+     * for the same grant and scope.
+     *
+     * @param grantType The grant type of the token request.
+     * @param scope     The requested scope, may be null if the grant does not request a scope.
+     * @param request   The token request.
+     * @return The access token, or null if no access token can be obtained with this grant.
+     */
+    public String execute(String grantType, String scope, TokenRequest request) throws OAuthException, OAuthServerException {
+        String key = key(grantType, scope);
+        Flight flight;
+        boolean owner = false;
+        synchronized (flights) {
+            flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight();
+                flights.put(key, flight);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            run(key, flight, request);
+        } else {
+            coalescedWaiters.incrementAndGet();
+            if (DEBUG) Log.d(TAG, "Waiting for token request in progress: " + grantType);
+            try {
+                flight.done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OAuthException(MAGErrorCode.UNKNOWN, "Interrupted while waiting for token request", e);
+            }
+        }
+        return result(flight);
+    }
+
+    /**
+     * Execute the token request in the background, the request is ignored if a token request
+     * is already in progress for the same grant and scope.
+     *
+     * @param grantType The grant type of the token request.
+     * @param scope     The requested scope, may be null if the grant does not request a scope.
+     * @param request   The token request.
+     */
+    public void executeAsync(String grantType, String scope, final TokenRequest request) {
+        final String key = key(grantType, scope);
+        final Flight flight;
+        synchronized (flights) {
+            if (flights.containsKey(key)) {
+                return;
+            }
+            flight = new Flight();
+            flights.put(key, flight);
+        }
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                if (TokenRefreshCoordinator.this.run(key, flight, request)) {
+                    proactiveRefreshes.incrementAndGet();
+                }
+                if (DEBUG && flight.exception != null) {
+                    Log.w(TAG, "Background token refresh failed: " + flight.exception.getMessage(), flight.exception);
+                }
+            }
+        };
+        synchronized (lock) {
+            if (executor == null) {
+                executor = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+            }
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * Store the tokens obtained by a token request, unless the session was reset since the request started.
+     *
+     * @param generation The session generation passed to {@link TokenRequest#execute(int)}.
+     * @param store      Stores the tokens, runs while a reset is blocked.
+     * @return False if the session was reset and the tokens are discarded.
+     */
+    public boolean store(int generation, Runnable store) {
+        synchronized (lock) {
+            if (generation != this.generation) {
+                if (DEBUG) Log.d(TAG, "Session reset during the token request, tokens discarded");
+                return false;
+            }
+            store.run();
+            return true;
+        }
+    }
+
+    /**
+     * Start a new session generation and shut down the background refresh thread, the refresh in progress
+     * completes but its tokens are discarded.
+     */
+    public void reset() {
+        synchronized (lock) {
+            generation++;
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * @param expiry The access token expiry in milliseconds since epoch, 0 if the access token does not expire.
+     * @return True if the access token should be refreshed in the background.
+     */
+    public boolean isRefreshDue(long expiry) {
+        return expiry > 0 && System.currentTimeMillis() >= expiry - PROACTIVE_REFRESH_WINDOW;
+    }
+
+    /**
+     * @return The number of calls made to the token endpoint through the coordinator.
+     */
+    public long getTokenRequestCount() {
+        return tokenRequests.get();
+    }
+
+    /**
+     * @return The number of callers which shared the result of a token request in progress,
+     * which is also the number of calls to the token endpoint saved.
+     */
+    public long getCoalescedWaiterCount() {
+        return coalescedWaiters.get();
+    }
+
+    /**
+     * @return The number of token refreshes performed in the background before the access token expired.
+     */
+    public long getProactiveRefreshCount() {
+        return proactiveRefreshes.get();
+    }
+
+    /**
+     * @return True if the token endpoint was called.
+     */
+    private boolean run(String key, Flight flight, TokenRequest request) {
+        int generation;
+        synchronized (lock) {
+            generation = this.generation;
+        }
+        boolean called = false;
+        try {
+            String current = request.current();
+            if (current != null) {
+                flight.accessToken = current;
+            } else {
+                called = true;
+                tokenRequests.incrementAndGet();
+                flight.accessToken = request.execute(generation);
+            }
+        } catch (Exception e) {
+            flight.exception = e;
+        } finally {
+            synchronized (flights) {
+                flights.remove(key);
+            }
+            flight.done.countDown();
+        }
+        return called;
+    }
+
+    private String result(Flight flight) throws OAuthException, OAuthServerException {
+        Exception e = flight.exception;
+        if (e == null) {
+            return flight.accessToken;
+        }
+        if (e instanceof OAuthServerException) {
+            throw (OAuthServerException) e;
+        }
+        if (e instanceof OAuthException) {
+            throw (OAuthException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        throw new OAuthException(MAGErrorCode.UNKNOWN, e);
+    }
+
+    private static String key(String grantType, String scope) {
+        return scope == null ? grantType : grantType + " " + scope;
+    }
+}
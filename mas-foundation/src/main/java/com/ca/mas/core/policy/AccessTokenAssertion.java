@@ -25,6 +25,7 @@ import com.ca.mas.core.oauth.OAuthException;
 import com.ca.mas.core.oauth.OAuthServerException;
 import com.ca.mas.core.oauth.OAuthTokenClient;
 import com.ca.mas.core.oauth.OAuthTokenResponse;
+import com.ca.mas.core.oauth.TokenRefreshCoordinator;
 import com.ca.mas.core.policy.exceptions.CredentialRequiredException;
 import com.ca.mas.core.policy.exceptions.RetryRequestException;
 import com.ca.mas.core.request.MAGInternalRequest;
@@ -53,21 +54,33 @@ class AccessTokenAssertion implements MssoAssertion {
     private static final int INVALID_MAG_IDENTIFIER = 3003107;
     private static final int INVALID_CLIENT_CERTIFICATE = 3003206;
 
+    private final Object policySync;
+    private final TokenRefreshCoordinator refreshCoordinator = TokenRefreshCoordinator.getInstance();
     private OAuthTokenClient oAuthTokenClient;
 
+    AccessTokenAssertion(Object policySync) {
+        this.policySync = policySync;
+    }
+
     @Override
     public void init(@NonNull MssoContext mssoContext, @NonNull Context sysContext) {
         oAuthTokenClient = new OAuthTokenClient(mssoContext);
     }
 
     @Override
-    public synchronized void processRequest(MssoContext mssoContext, RequestInfo request) throws MAGException, MAGServerException {
+    public void processRequest(MssoContext mssoContext, RequestInfo request) throws MAGException, MAGServerException {
         if (request.getRequest().getURL() != null && request.getRequest().getURL().getHost() == null) {
             throw new IllegalArgumentException("Host is not provided");
         }
 
         MAGInternalRequest magInternalRequest = request.getRequest();
-        String accessToken = findAccessToken(mssoContext, magInternalRequest);
+        String accessToken = findValidAccessToken(mssoContext, magInternalRequest);
+        if (accessToken == null) {
+            synchronized (policySync) {
+                //Another request may have obtained the access token while waiting for the lock
+                accessToken = findAccessToken(mssoContext, magInternalRequest);
+            }
+        }
         if (accessToken != null) {
             //Clear any Authorization from the header before adding new one.
             request.getRequest().addHeader("Authorization", "Bearer " + accessToken);
@@ -96,6 +109,51 @@ class AccessTokenAssertion implements MssoAssertion {
         //No resources to close
     }
 
+    /**
+     * Lock free lookup of the stored access token.
+     *
+     * @return The access token if it is still valid and can be used for the request without any
+     * modification of the token state, otherwise null.
+     */
+    private String findValidAccessToken(MssoContext mssoContext, MAGInternalRequest request) {
+        String accessToken = mssoContext.getAccessToken();
+        if (accessToken != null
+                && isAccessTokenStillValid(mssoContext)
+                && isSufficientScope(mssoContext, request)
+                && (request.getGrantProvider() != MASGrantProvider.PASSWORD || mssoContext.getRefreshToken() != null)) {
+            refreshBeforeExpiry(mssoContext);
+            return accessToken;
+        }
+        return null;
+    }
+
+    /**
+     * Refresh the access token in the background when it is about to expire, so that requests
+     * do not have to wait for the token endpoint once it has expired.
+     */
+    private void refreshBeforeExpiry(final MssoContext mssoContext) {
+        if (mssoContext.getRefreshToken() == null || !refreshCoordinator.isRefreshDue(mssoContext.getAccessTokenExpiry())) {
+            return;
+        }
+        if (DEBUG) Log.d(TAG, "Access Token is about to expire, refresh in background");
+        refreshCoordinator.executeAsync(ServerClient.REFRESH_TOKEN, null, new TokenRefreshCoordinator.TokenRequest() {
+            @Override
+            public String current() {
+                //The access token may have been refreshed while the request was queued
+                String current = mssoContext.getAccessToken();
+                if (current != null && !refreshCoordinator.isRefreshDue(mssoContext.getAccessTokenExpiry())) {
+                    return current;
+                }
+                return null;
+            }
+
+            @Override
+            public String execute(int generation) throws OAuthException, OAuthServerException {
+                return refresh(mssoContext, generation);
+            }
+        });
+    }
+
     private String findAccessToken(MssoContext mssoContext, MAGInternalRequest request) throws CredentialRequiredException, OAuthException, OAuthServerException, AuthenticationException, JWTValidationException, RetryRequestException {
         String accessToken = mssoContext.getAccessToken();
         if (accessToken != null) {
@@ -127,7 +185,7 @@ class AccessTokenAssertion implements MssoAssertion {
 
         String refreshToken = mssoContext.getRefreshToken();
         if (refreshToken != null) {
-            accessToken = obtainAccessTokenUsingRefreshToken(mssoContext, refreshToken);
+            accessToken = obtainAccessTokenUsingRefreshToken(mssoContext);
         }
 
         if (accessToken != null) {
@@ -243,17 +301,30 @@ class AccessTokenAssertion implements MssoAssertion {
         return accessToken;
     }
 
-    private String obtainAccessTokenUsingRefreshToken(MssoContext mssoContext, String refreshToken) throws OAuthException, OAuthServerException, JWTValidationException {
+    private String obtainAccessTokenUsingRefreshToken(final MssoContext mssoContext) throws OAuthException, OAuthServerException, JWTValidationException {
         if (DEBUG) Log.d(TAG, "Obtain Access Token using Refresh Token");
         String clientId = mssoContext.getClientId();
         String clientSecret = mssoContext.getClientSecret();
         String accessToken = null;
 
         try {
-            OAuthTokenResponse response = oAuthTokenClient.obtainTokenUsingRefreshToken(refreshToken, clientId, clientSecret);
-            accessToken = response.getAccessToken();
-            mssoContext.onAccessTokenAvailable(accessToken, response.getRefreshToken(), response.getExpiresIn(), response.getGrantedScope());
+            //Concurrent requests share a single refresh, the refresh token can only be used once
+            accessToken = refreshCoordinator.execute(ServerClient.REFRESH_TOKEN, null, new TokenRefreshCoordinator.TokenRequest() {
+                @Override
+                public String current() {
+                    //The access token may have been refreshed by a request which completed before this one started
+                    String current = mssoContext.getAccessToken();
+                    if (current != null && isAccessTokenStillValid(mssoContext)) {
+                        return current;
+                    }
+                    return null;
+                }
 
+                @Override
+                public String execute(int generation) throws OAuthException, OAuthServerException {
+                    return refresh(mssoContext, generation);
+                }
+            });
         } catch (OAuthServerException tse) {
 
             rethrowOrIgnore(tse);
@@ -277,6 +348,30 @@ class AccessTokenAssertion implements MssoAssertion {
         return accessToken;
     }
 
+    /**
+     * Exchange the stored refresh token for a new access token and store the result. The result is discarded
+     * if the session was reset, by a logout, a deregistration or a gateway switch, while the request was in
+     * progress. The token client removes the used refresh token once the server responds.
+     *
+     * @param generation The session generation when the request started.
+     * @return The access token, or null if there is no refresh token or the result is discarded.
+     */
+    private String refresh(final MssoContext mssoContext, int generation) throws OAuthException, OAuthServerException {
+        String refreshToken = mssoContext.getRefreshToken();
+        if (refreshToken == null) {
+            return null;
+        }
+        final OAuthTokenResponse response = oAuthTokenClient.obtainTokenUsingRefreshToken(refreshToken,
+                mssoContext.getClientId(), mssoContext.getClientSecret());
+        final String accessToken = response.getAccessToken();
+        boolean stored = refreshCoordinator.store(generation, new Runnable() {
+            @Override
+            public void run() {
+                mssoContext.onAccessTokenAvailable(accessToken, response.getRefreshToken(), response.getExpiresIn(), response.getGrantedScope());
+            }
+        });
+        return stored ? accessToken : null;
+    }
 
     /**
      * Check to see if we can continue the flow with the exception
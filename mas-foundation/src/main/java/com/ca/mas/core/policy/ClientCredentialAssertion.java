@@ -30,6 +30,16 @@ import static com.ca.mas.foundation.MAS.TAG;
 
 public class ClientCredentialAssertion implements MssoAssertion {
 
+    private final Object policySync;
+
+    public ClientCredentialAssertion() {
+        this(new Object());
+    }
+
+    ClientCredentialAssertion(Object policySync) {
+        this.policySync = policySync;
+    }
+
     @Override
     public void init(@NonNull MssoContext mssoContext, @NonNull Context sysContext) {
         if (mssoContext.getConfigurationProvider() == null)
@@ -37,7 +47,7 @@ public class ClientCredentialAssertion implements MssoAssertion {
     }
 
     @Override
-    public synchronized void processRequest(MssoContext mssoContext, RequestInfo request) throws MAGException, MAGServerException {
+    public void processRequest(MssoContext mssoContext, RequestInfo request) throws MAGException, MAGServerException {
         String configuredClientSecret = mssoContext.getConfigurationProvider().getClientSecret();
         String configuredClientId = mssoContext.getConfigurationProvider().getClientId();
 
@@ -50,33 +60,49 @@ public class ClientCredentialAssertion implements MssoAssertion {
             }
         }
 
-        //OR the client ID does not exist. Due to resetting the device PIN, the key for decrypting the client ID may be empty.
-        //May not necessary to check the client id, the client expiration check may be good enough
-        if (mssoContext.isClientCredentialExpired(mssoContext.getClientExpiration()) ||
-                mssoContext.getStoredClientId() == null) {
-            String deviceId;
-            try {
-                deviceId = (new DeviceIdentifier()).toString();
-            } catch (Exception e) {
-                throw new MssoException(e);
-            }
-
-            try {
-                if (DEBUG) Log.d(TAG, "Retrieving dynamic client credentials");
-                String uuid = UUID.randomUUID().toString();
-                ClientCredentials result = new ClientCredentialsClient(mssoContext).
-                        getClientCredentials(configuredClientId, uuid, deviceId);
-                if (DEBUG) Log.d(TAG, String.format("Client ID: %s", result.getClientId()));
-                mssoContext.setClientCredentials(result);
-                return;
-            } catch (NullPointerException e) {
-                throw new IllegalArgumentException("Please check your configurations: one or more configurations are wrong or incomplete");
+        if (isClientCredentialRequired(mssoContext)) {
+            synchronized (policySync) {
+                //Another request may have retrieved the client credentials while waiting for the lock
+                if (isClientCredentialRequired(mssoContext)) {
+                    retrieveClientCredentials(mssoContext, configuredClientId);
+                    return;
+                }
             }
         }
 
         if (DEBUG) Log.d(TAG, String.format("Client ID: %s", mssoContext.getStoredClientId()));
     }
 
+    /**
+     * The client credentials are required if the client ID does not exist or expired.
+     * Due to resetting the device PIN, the key for decrypting the client ID may be empty.
+     */
+    private boolean isClientCredentialRequired(MssoContext mssoContext) {
+        //May not necessary to check the client id, the client expiration check may be good enough
+        return mssoContext.isClientCredentialExpired(mssoContext.getClientExpiration()) ||
+                mssoContext.getStoredClientId() == null;
+    }
+
+    private void retrieveClientCredentials(MssoContext mssoContext, String configuredClientId) throws MAGException, MAGServerException {
+        String deviceId;
+        try {
+            deviceId = (new DeviceIdentifier()).toString();
+        } catch (Exception e) {
+            throw new MssoException(e);
+        }
+
+        try {
+            if (DEBUG) Log.d(TAG, "Retrieving dynamic client credentials");
+            String uuid = UUID.randomUUID().toString();
+            ClientCredentials result = new ClientCredentialsClient(mssoContext).
+                    getClientCredentials(configuredClientId, uuid, deviceId);
+            if (DEBUG) Log.d(TAG, String.format("Client ID: %s", result.getClientId()));
+            mssoContext.setClientCredentials(result);
+        } catch (NullPointerException e) {
+            throw new IllegalArgumentException("Please check your configurations: one or more configurations are wrong or incomplete");
+        }
+    }
+
     @Override
     public void processResponse(MssoContext mssoContext, RequestInfo request, MASResponse response) throws MAGStateException {
         int errorCode = ServerClient.findErrorCode(response);
@@ -57,9 +57,14 @@ import static com.ca.mas.foundation.MAS.TAG;
  */
 class DeviceRegistrationAssertion implements MssoAssertion {
 
+    private final Object policySync;
     private TokenManager tokenManager;
     private Context ctx = null;
 
+    DeviceRegistrationAssertion(Object policySync) {
+        this.policySync = policySync;
+    }
+
     @Override
     public void init(@NonNull MssoContext mssoContext, @NonNull Context sysContext) {
         this.tokenManager = mssoContext.getTokenManager();
@@ -71,7 +76,20 @@ class DeviceRegistrationAssertion implements MssoAssertion {
     }
 
     @Override
-    public synchronized void processRequest(MssoContext mssoContext, RequestInfo request) throws MAGException, MAGServerException {
+    public void processRequest(MssoContext mssoContext, RequestInfo request) throws MAGException, MAGServerException {
+        if (isDeviceRegistered()) {
+            return;
+        }
+        synchronized (policySync) {
+            //Another request may have registered the device while waiting for the lock
+            if (isDeviceRegistered()) {
+                return;
+            }
+            registerDevice(mssoContext, request);
+        }
+    }
+
+    private boolean isDeviceRegistered() throws MAGException {
         X509Certificate[] clientCerts = tokenManager.getClientCertificateChain();
         if (clientCerts != null && clientCerts.length > 0) {
             // Device is registered
@@ -93,10 +111,10 @@ class DeviceRegistrationAssertion implements MssoAssertion {
             if (tokenManager.getMagIdentifier() != null) {
                 if (DEBUG) Log.d(TAG,
                         String.format("Device is registered with identifier: %s", tokenManager.getMagIdentifier()));
-                return;
+                return true;
             }
         }
-        registerDevice(mssoContext, request);
+        return false;
     }
 
     @Override
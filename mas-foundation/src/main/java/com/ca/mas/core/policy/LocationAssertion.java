@@ -171,18 +171,24 @@ class LocationAssertion implements MssoAssertion {
     }
 
     private Location getLastLocation() {
-        if (lastLocation != null) {
-            return lastLocation;
-        } else {
-            setupLocation();
+        Location location = lastLocation;
+        if (location != null) {
+            return location;
+        }
+        //Policies are not serialized, prevent concurrent requests from setting up the location updates in parallel.
+        synchronized (this) {
+            if (lastLocation == null) {
+                setupLocation();
+            }
             return lastLocation;
         }
     }
 
     @Override
     public void processRequest(MssoContext mssoContext, RequestInfo request) {
-        if (getLastLocation() != null) {
-            String loc = String.format("%f,%f", getLastLocation().getLatitude(), getLastLocation().getLongitude());
+        Location location = getLastLocation();
+        if (location != null) {
+            String loc = String.format("%f,%f", location.getLatitude(), location.getLongitude());
             request.getRequest().addHeader("geo-location", loc);
         }
     }
@@ -42,9 +42,9 @@ public class PolicyManager {
 
         StorageReadyAssertion storageReadyAssertion = new StorageReadyAssertion();
         SecureLockAssertion secureLockAssertion = new SecureLockAssertion();
-        ClientCredentialAssertion clientCredentialAssertion = new ClientCredentialAssertion();
-        DeviceRegistrationAssertion deviceRegistrationAssertion = new DeviceRegistrationAssertion();
-        AccessTokenAssertion accessTokenAssertion = new AccessTokenAssertion();
+        ClientCredentialAssertion clientCredentialAssertion = new ClientCredentialAssertion(policySync);
+        DeviceRegistrationAssertion deviceRegistrationAssertion = new DeviceRegistrationAssertion(policySync);
+        AccessTokenAssertion accessTokenAssertion = new AccessTokenAssertion(policySync);
         LocationAssertion locationAssertion = new LocationAssertion();
         TelephoneAssertion telephoneAssertion = new TelephoneAssertion();
         CustomHeaderAssertion customHeaderAssertion = new CustomHeaderAssertion();
@@ -112,12 +112,13 @@ public class PolicyManager {
      * @throws MAGException      Exception occur in MAG Engine
      */
     private void processRequest(RequestInfo request, List<MssoAssertion> policy) throws MAGException, MAGServerException {
-        // For now, we will serialize all policies to prevent things like device registration and token acquisition
-        // from being attempted in parallel.
-        synchronized (policySync) {
-            for (MssoAssertion assertion : policy) {
-                assertion.processRequest(mssoContext, request);
-            }
+        // Policies are not serialized, when the client credentials, device registration and access token are
+        // available no lock is taken. Assertions which have to acquire them from the server synchronize on
+        // the shared policySync, to prevent things like device registration and token acquisition from being
+        // attempted in parallel, and re-check the state once the lock is obtained so that concurrent
+        // callers use the result of the first one.
+        for (MssoAssertion assertion : policy) {
+            assertion.processRequest(mssoContext, request);
         }
     }
 
@@ -132,11 +133,8 @@ public class PolicyManager {
      * @throws MAGException      Exception occur in MAG Engine
      */
     private void processResponse(RequestInfo request, MASResponse response, List<MssoAssertion> policy) throws MAGException, MAGServerException {
-        // For now, we will serialize all policies
-        synchronized (policySync) {
-            for (MssoAssertion assertion : policy) {
-                assertion.processResponse(mssoContext, request, response);
-            }
+        for (MssoAssertion assertion : policy) {
+            assertion.processResponse(mssoContext, request, response);
         }
     }
 
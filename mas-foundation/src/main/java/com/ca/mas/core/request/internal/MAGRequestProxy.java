@@ -8,17 +8,19 @@
 
 package com.ca.mas.core.request.internal;
 
+import com.ca.mas.foundation.MASCachePolicy;
 import com.ca.mas.foundation.MASGrantProvider;
 import com.ca.mas.foundation.MASConnectionListener;
 import com.ca.mas.foundation.MASRequest;
 import com.ca.mas.foundation.MASRequestBody;
 import com.ca.mas.foundation.MASResponseBody;
+import com.ca.mas.foundation.MASRetryPolicy;
 
 import java.net.URL;
 import java.util.List;
 import java.util.Map;
 
-public abstract class MAGRequestProxy implements MASRequest {
+public abstract class MAGRequestProxy implements PolicyAwareRequest {
 
     protected MASRequest request;
 
@@ -71,4 +73,14 @@ public abstract class MAGRequestProxy implements MASRequest {
     public boolean notifyOnCancel() {
         return false;
     }
+
+    @Override
+    public MASRetryPolicy getRetryPolicy() {
+        return request instanceof PolicyAwareRequest ? ((PolicyAwareRequest) request).getRetryPolicy() : null;
+    }
+
+    @Override
+    public MASCachePolicy getCachePolicy() {
+        return request instanceof PolicyAwareRequest ? ((PolicyAwareRequest) request).getCachePolicy() : null;
+    }
 }
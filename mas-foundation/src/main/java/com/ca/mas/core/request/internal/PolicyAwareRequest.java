@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.request.internal;
+
+import com.ca.mas.foundation.MASCachePolicy;
+import com.ca.mas.foundation.MASRequest;
+import com.ca.mas.foundation.MASRetryPolicy;
+
+/**
+ * A {@link MASRequest} built with the {@link MASRequest.MASRequestBuilder}, which carries the policies set on the
+ * builder. Kept out of {@link MASRequest} so that the existing implementations of the interface are not affected.
+ */
+public interface PolicyAwareRequest extends MASRequest {
+
+    /**
+     * @return The retry policy for requests which failed with a transient error. When return null, the retry
+     * policy defined in the configuration will be used.
+     */
+    MASRetryPolicy getRetryPolicy();
+
+    /**
+     * @return The cache policy for the response of this request. When return null, the response is not cached.
+     */
+    MASCachePolicy getCachePolicy();
+
+}
@@ -59,53 +59,65 @@ public abstract class KeyStoreKeyStorageProvider implements KeyStorageProvider {
      */
     @Override
     public SecretKey getKey(String alias, boolean userAuthenticationRequired) {
+        // Keys which require user authentication are always looked up, so that their state is checked
+        if (!userAuthenticationRequired) {
+            SecretKey cached = SecretKeyCache.getInstance().get(alias);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        long start = System.nanoTime();
+
         // For Android.M+, if this key was created we'll find it here
         SecretKey secretKey = KeyUtilsSymmetric.retrieveKey(alias);
+        if (secretKey != null) {
+            // Only AndroidKeyStore handles are cached, the raw key material of Pre-Android.M is not kept
+            if (!userAuthenticationRequired) {
+                SecretKeyCache.getInstance().put(alias, secretKey, System.nanoTime() - start);
+            }
+            return secretKey;
+        }
 
-        if (secretKey == null) {
-
-            // check if the key is present locally
-            byte encryptedSecretKey[] = getEncryptedSecretKey(alias);
-            if (encryptedSecretKey != null) {
-                try {
-                    secretKey = decryptSecretKey(encryptedSecretKey);
-                } catch (Exception unableToDecrypt) {
-                    if (DEBUG)
-                        Log.e(TAG, "Error while decrypting SecretKey, deleting it", unableToDecrypt);
-
-                    deleteSecretKeyLocally(alias);
-                    encryptedSecretKey = null;
-                }
+        // check if the key is present locally
+        byte encryptedSecretKey[] = getEncryptedSecretKey(alias);
+        if (encryptedSecretKey != null) {
+            try {
+                secretKey = decryptSecretKey(encryptedSecretKey);
+            } catch (Exception unableToDecrypt) {
+                if (DEBUG)
+                    Log.e(TAG, "Error while decrypting SecretKey, deleting it", unableToDecrypt);
+
+                deleteSecretKeyLocally(alias);
+                encryptedSecretKey = null;
             }
+        }
 
-            // if still no key, generate one
-            if (secretKey == null) {
-                if (userAuthenticationRequired) {
-                    secretKey = KeyUtilsSymmetric.generateKey(alias, "AES", 256, false, true, VALIDITY_SECONDS, false);
-                } else {
-                    secretKey = KeyUtilsSymmetric.generateKey(alias, "AES", 256, false, false, -1, false);
-                }
-
-                // if this is Pre- Android.M, we need to store it locally
-                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
-                    encryptedSecretKey = encryptSecretKey(secretKey);
-                    storeSecretKeyLocally(alias, encryptedSecretKey);
-                }
+        // if still no key, generate one
+        if (secretKey == null) {
+            if (userAuthenticationRequired) {
+                secretKey = KeyUtilsSymmetric.generateKey(alias, "AES", 256, false, true, VALIDITY_SECONDS, false);
             } else {
-                // if this is Android.M+, check if the operating system was upgraded
-                //   and we can now store the SecretKey in the AndroidKeyStore
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                    KeyUtilsSymmetric.storeKeyAndroidN(alias, secretKey,
-                            false, -1, false);
-                    deleteSecretKeyLocally(alias);
-                } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    KeyUtilsSymmetric.storeKeyAndroidM(alias, secretKey,
-                            false, -1);
-                    deleteSecretKeyLocally(alias);
-                }
+                secretKey = KeyUtilsSymmetric.generateKey(alias, "AES", 256, false, false, -1, false);
             }
-        }
 
+            // if this is Pre- Android.M, we need to store it locally
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                encryptedSecretKey = encryptSecretKey(secretKey);
+                storeSecretKeyLocally(alias, encryptedSecretKey);
+            }
+        } else {
+            // if this is Android.M+, check if the operating system was upgraded
+            //   and we can now store the SecretKey in the AndroidKeyStore
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                KeyUtilsSymmetric.storeKeyAndroidN(alias, secretKey,
+                        false, -1, false);
+                deleteSecretKeyLocally(alias);
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                KeyUtilsSymmetric.storeKeyAndroidM(alias, secretKey,
+                        false, -1);
+                deleteSecretKeyLocally(alias);
+            }
+        }
         return secretKey;
     }
 
@@ -117,6 +129,7 @@ public abstract class KeyStoreKeyStorageProvider implements KeyStorageProvider {
      */
     @Override
     public boolean removeKey(String alias) {
+        SecretKeyCache.getInstance().remove(alias);
         KeyUtilsSymmetric.deleteKey(alias);
         deleteSecretKeyLocally(alias);
         return true;
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.security;
+
+import android.util.LruCache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Bounded cache of the SecretKey handles retrieved by {@link KeyStoreKeyStorageProvider}, avoiding
+ * an AndroidKeyStore lookup for every encryption and decryption.
+ * <p>
+ * Only the handles of keys stored in the AndroidKeyStore which do not require user authentication are
+ * cached, the key material does not leave the AndroidKeyStore. The raw keys of Pre-Android.M and the keys
+ * which require user authentication are looked up on every use. A key is removed from the cache when it
+ * is removed or deleted from the AndroidKeyStore, or when an encryption or decryption with the key fails,
+ * which includes keys permanently invalidated after a screen lock change.
+ */
+public class SecretKeyCache {
+
+    private static final int MAX_SIZE = 16;
+    private static final SecretKeyCache instance = new SecretKeyCache();
+
+    private final LruCache<String, SecretKey> cache = new LruCache<>(MAX_SIZE);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadTime = new AtomicLong();
+
+    private SecretKeyCache() {
+    }
+
+    public static SecretKeyCache getInstance() {
+        return instance;
+    }
+
+    SecretKey get(String alias) {
+        SecretKey secretKey = cache.get(alias);
+        if (secretKey == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return secretKey;
+    }
+
+    /**
+     * @param alias         The alias of the key.
+     * @param secretKey     The key.
+     * @param loadTimeNanos The time taken to load the key from the storage.
+     */
+    void put(String alias, SecretKey secretKey, long loadTimeNanos) {
+        if (secretKey != null) {
+            cache.put(alias, secretKey);
+            loadTime.addAndGet(loadTimeNanos);
+        }
+    }
+
+    /**
+     * Invalidate the cached key.
+     *
+     * @param alias The alias of the key.
+     */
+    public void remove(String alias) {
+        cache.remove(alias);
+    }
+
+    /**
+     * Invalidate all cached keys.
+     */
+    public void clear() {
+        cache.evictAll();
+    }
+
+    /**
+     * @return The number of key lookups served from the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of key lookups which loaded the key from the storage.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The ratio of key lookups served from the cache, between 0 and 1.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return The estimated time in milliseconds saved by serving keys from the cache,
+     * based on the average time taken to load a key from the storage.
+     */
+    public long getLoadTimeSavedMillis() {
+        long m = misses.get();
+        if (m == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(loadTime.get() / m * hits.get());
+    }
+}
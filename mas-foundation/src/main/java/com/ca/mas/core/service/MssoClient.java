@@ -15,6 +15,7 @@ import android.os.ResultReceiver;
 
 import com.ca.mas.core.EventDispatcher;
 import com.ca.mas.core.MAGResultReceiver;
+import com.ca.mas.core.conf.ConfigurationManager;
 import com.ca.mas.core.context.MssoContext;
 import com.ca.mas.core.datasource.DataSourceException;
 import com.ca.mas.core.request.internal.AuthenticateRequest;
@@ -62,6 +63,12 @@ public class MssoClient {
         MssoRequestQueue.getInstance().addRequest(mssoRequest);
 
         final long requestId = mssoRequest.getId();
+        if (isDirectDispatch()) {
+            Bundle extras = new Bundle();
+            extras.putLong(MssoIntents.EXTRA_REQUEST_ID, requestId);
+            MssoRequestProcessor.getDirectInstance(appContext).process(requestId, extras);
+            return requestId;
+        }
         final Intent intent = new Intent(appContext, MssoService.class);
         intent.setAction(MssoIntents.ACTION_PROCESS_REQUEST);
         intent.putExtra(MssoIntents.EXTRA_REQUEST_ID, requestId);
@@ -116,7 +123,10 @@ public class MssoClient {
             }
         }
 
-        if(MssoServiceState.getInstance().isBound()){
+        if (isDirectDispatch()) {
+            MssoRequestProcessor.getDirectInstance(appContext).processCredentialsAsync(
+                    intent.getLongExtra(MssoIntents.EXTRA_REQUEST_ID, -1), intent.getExtras());
+        } else if(MssoServiceState.getInstance().isBound()){
             MssoServiceState.getInstance().getMssoService().handleWork(intent);
         } else {
             bind(intent);
@@ -129,6 +139,10 @@ public class MssoClient {
     public void processPendingRequests() {
         // Currently this should only be necessary when we have started the UNLOCK activity.
         // For the Log On activity, it should take care of signalling the MssoService when it should retry.
+        if (isDirectDispatch()) {
+            MssoRequestProcessor.getDirectInstance(appContext).process(-1, null);
+            return;
+        }
         final Intent intent = new Intent(appContext, MssoService.class);
         intent.setAction(MssoIntents.ACTION_PROCESS_REQUEST);
         intent.putExtra(MssoIntents.EXTRA_REQUEST_ID, (long) -1);
@@ -140,6 +154,10 @@ public class MssoClient {
         }
     }
 
+    private boolean isDirectDispatch() {
+        return ConfigurationManager.getInstance().isDirectDispatchEnabled();
+    }
+
     /**
      * Binds to a MssoService by creating a ServiceConnection object.
      */
@@ -11,9 +11,22 @@ package com.ca.mas.core.service;
 import androidx.annotation.NonNull;
 import android.util.Log;
 
-import java.util.concurrent.BlockingQueue;
+import com.ca.mas.core.MobileSsoConfig;
+import com.ca.mas.core.conf.ConfigurationManager;
+import com.ca.mas.core.conf.ConfigurationProvider;
+import com.ca.mas.core.context.MssoContext;
+import com.ca.mas.core.util.Functions;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -23,17 +36,36 @@ import static com.ca.mas.foundation.MAS.DEBUG;
 import static com.ca.mas.foundation.MAS.TAG;
 
 /**
- * An executor service to manage the thread launching mechanism for {@link MssoService}.
+ * Schedules the requests processed by the {@link MssoService}.
+ * <p>
+ * Requests are queued when all threads are busy, the queue is not bounded. Requests to the MAG token and
+ * registration endpoints are scheduled ahead of API requests. Within a priority, requests are taken from
+ * each host in turn, and the number of concurrent requests to a single host is limited, so that a burst
+ * of requests to one host does not hold back requests to the others. A request waiting before a retry
+ * releases its slot, see {@link RequestBackoff}, as does a request waiting for the response of an identical
+ * request, see {@link RequestCoalescer}.
+ * <p>
+ * The limits are set with {@link com.ca.mas.foundation.MAS#setMaxConcurrentRequests(int)} and
+ * {@link com.ca.mas.foundation.MAS#setMaxConcurrentRequestsPerHost(int)}, the scheduler metrics are available
+ * with {@link com.ca.mas.foundation.MAS#getRequestSchedulerMetrics()}.
  */
 class MssoExecutorService {
 
-    //Values based on {@link android.os.AsyncTask}'s implementation
-    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
-    private static final int CORE_POOL_SIZE = CPU_COUNT + 1;
-    private static final int MAXIMUM_POOL_SIZE = CPU_COUNT * 2 + 1;
+    static final int PRIORITY_AUTH = 0;
+    static final int PRIORITY_API = 1;
+
     private static final int KEEP_ALIVE = 5;
+    private static final String[] AUTH_ENDPOINTS = {
+            MobileSsoConfig.PROP_TOKEN_URL_SUFFIX_REQUEST_TOKEN,
+            MobileSsoConfig.PROP_TOKEN_URL_SUFFIX_REQUEST_TOKEN_SSO,
+            MobileSsoConfig.PROP_TOKEN_URL_SUFFIX_REGISTER_DEVICE,
+            MobileSsoConfig.PROP_TOKEN_URL_SUFFIX_RENEW_DEVICE,
+            MobileSsoConfig.PROP_TOKEN_URL_SUFFIX_REGISTER_DEVICE_CLIENT,
+            MobileSsoConfig.PROP_TOKEN_URL_SUFFIX_RESOURCE_OWNER_LOGOUT,
+            MobileSsoConfig.PROP_TOKEN_URL_SUFFIX_REMOVE_DEVICE_X509,
+            MobileSsoConfig.PROP_TOKEN_URL_SUFFIX_AUTHORIZE,
+            MobileSsoConfig.PROP_TOKEN_URL_SUFFIX_CLIENT_CREDENTIALS};
 
-    private static final BlockingQueue<Runnable> POOL_WORK_QUEUE = new LinkedBlockingQueue<>(128);
     private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
 
         private final AtomicInteger increment = new AtomicInteger(1);
@@ -46,17 +78,263 @@ class MssoExecutorService {
         }
     };
 
-    private static ExecutorService executor;
+    private static final MssoExecutorService INSTANCE = new MssoExecutorService();
 
-    public static ExecutorService getInstance() {
-        if (executor == null || executor.isShutdown()) {
-            executor = new ThreadPoolExecutor(CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE,
-                            TimeUnit.SECONDS, POOL_WORK_QUEUE, THREAD_FACTORY);
-        }
-        return executor;
+    //Threads are only requested when a request is allowed to run, the number of threads is bounded by the scheduler.
+    private final ExecutorService executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE,
+            TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), THREAD_FACTORY);
+
+    //Pending requests per priority, per host
+    @SuppressWarnings("unchecked")
+    private final LinkedHashMap<String, ArrayDeque<Task>>[] pending = new LinkedHashMap[]{
+            new LinkedHashMap<String, ArrayDeque<Task>>(),
+            new LinkedHashMap<String, ArrayDeque<Task>>()};
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private int running;
+    private int queued;
+    //Tasks resuming after a backoff, per host, they are given a slot before the pending tasks
+    private final Map<String, Integer> resumingPerHost = new HashMap<>();
+    private int resuming;
+    private final ThreadLocal<Task> current = new ThreadLocal<>();
+
+    private final RequestSchedulerMetrics metrics = new RequestSchedulerMetrics();
+
+    static MssoExecutorService getInstance() {
+        return INSTANCE;
     }
 
     private MssoExecutorService() {
     }
 
+    private class Task implements Runnable {
+        private final String host;
+        private final Runnable runnable;
+        private final Functions.UnaryVoid<Exception> onRejected;
+        private final long queuedAt = System.nanoTime();
+
+        Task(String host, Runnable runnable, Functions.UnaryVoid<Exception> onRejected) {
+            this.host = host;
+            this.runnable = runnable;
+            this.onRejected = onRejected;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            metrics.onStarted(start - queuedAt);
+            current.set(this);
+            try {
+                runnable.run();
+            } finally {
+                current.remove();
+                metrics.onFinished(System.nanoTime() - start);
+                finished(this);
+            }
+        }
+    }
+
+    /**
+     * Schedule the request, the request is queued until a thread and its host are available.
+     *
+     * @param request    The request to schedule.
+     * @param runnable   The task which processes the request.
+     * @param onRejected Notified if the task cannot be executed.
+     */
+    void execute(MssoRequest request, Runnable runnable, Functions.UnaryVoid<Exception> onRejected) {
+        Task task = new Task(getHost(request), runnable, onRejected);
+        int priority = getPriority(request);
+        synchronized (this) {
+            ArrayDeque<Task> tasks = pending[priority].get(task.host);
+            if (tasks == null) {
+                tasks = new ArrayDeque<>();
+                pending[priority].put(task.host, tasks);
+            }
+            tasks.add(task);
+            queued++;
+            metrics.onQueued(queued);
+        }
+        promote();
+    }
+
+    /**
+     * Wait before retrying the request processed by the calling thread. The slot of the request is released
+     * while waiting, so that the other requests, including the requests to the same host, are not held back.
+     *
+     * @param millis The delay in milliseconds.
+     */
+    void backoff(long millis) throws InterruptedException {
+        Task task = current.get();
+        if (task == null) {
+            Thread.sleep(millis);
+            return;
+        }
+        finished(task);
+        try {
+            Thread.sleep(millis);
+        } finally {
+            resume(task);
+        }
+    }
+
+    /**
+     * Wait for the latch, the slot of the request processed by the calling thread is released while waiting,
+     * the same way as for {@link #backoff(long)}.
+     *
+     * @param latch The latch to wait for.
+     */
+    void await(CountDownLatch latch) throws InterruptedException {
+        Task task = current.get();
+        if (task == null || latch.getCount() == 0) {
+            latch.await();
+            return;
+        }
+        finished(task);
+        try {
+            latch.await();
+        } finally {
+            resume(task);
+        }
+    }
+
+    /**
+     * Wait for a slot to continue the task, the task does not queue behind the pending tasks.
+     */
+    private synchronized void resume(Task task) {
+        boolean interrupted = false;
+        resuming++;
+        increment(resumingPerHost, task.host);
+        try {
+            ConfigurationManager conf = ConfigurationManager.getInstance();
+            while (running >= conf.getMaxConcurrentRequests()
+                    || get(runningPerHost, task.host) >= conf.getMaxConcurrentRequestsPerHost()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            resuming--;
+            decrement(resumingPerHost, task.host);
+            running++;
+            increment(runningPerHost, task.host);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    RequestSchedulerMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void finished(Task task) {
+        synchronized (this) {
+            running--;
+            decrement(runningPerHost, task.host);
+            notifyAll();
+        }
+        promote();
+    }
+
+    /**
+     * Start the pending requests allowed to run by the concurrency limits.
+     */
+    private void promote() {
+        while (true) {
+            Task task;
+            synchronized (this) {
+                task = next();
+                if (task == null) {
+                    return;
+                }
+                running++;
+                increment(runningPerHost, task.host);
+            }
+            try {
+                executor.execute(task);
+            } catch (Exception e) {
+                //In case we got rejected to assign a thread to serve the request
+                metrics.onRejected();
+                finished(task);
+                task.onRejected.call(e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The next task allowed to run, the host of the task is moved to the end of the round.
+     */
+    private Task next() {
+        ConfigurationManager conf = ConfigurationManager.getInstance();
+        //The slots freed for the resuming tasks are not given to the pending tasks
+        if (running + resuming >= conf.getMaxConcurrentRequests()) {
+            return null;
+        }
+        int maxPerHost = conf.getMaxConcurrentRequestsPerHost();
+        for (LinkedHashMap<String, ArrayDeque<Task>> hosts : pending) {
+            Iterator<Map.Entry<String, ArrayDeque<Task>>> iterator = hosts.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, ArrayDeque<Task>> entry = iterator.next();
+                if (get(runningPerHost, entry.getKey()) + get(resumingPerHost, entry.getKey()) >= maxPerHost) {
+                    continue;
+                }
+                ArrayDeque<Task> tasks = entry.getValue();
+                Task task = tasks.poll();
+                iterator.remove();
+                if (!tasks.isEmpty()) {
+                    hosts.put(entry.getKey(), tasks);
+                }
+                queued--;
+                metrics.onDequeued(queued);
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private static int get(Map<String, Integer> counts, String host) {
+        Integer count = counts.get(host);
+        return count == null ? 0 : count;
+    }
+
+    private static void increment(Map<String, Integer> counts, String host) {
+        counts.put(host, get(counts, host) + 1);
+    }
+
+    private static void decrement(Map<String, Integer> counts, String host) {
+        int count = get(counts, host);
+        if (count <= 1) {
+            counts.remove(host);
+        } else {
+            counts.put(host, count - 1);
+        }
+    }
+
+    private static String getHost(MssoRequest request) {
+        URL url = request.getRequest().getURL();
+        return url == null || url.getHost() == null ? "" : url.getHost();
+    }
+
+    private static int getPriority(MssoRequest request) {
+        URL url = request.getRequest().getURL();
+        if (url == null) {
+            //Local requests
+            return PRIORITY_AUTH;
+        }
+        MssoContext mssoContext = request.getMssoContext();
+        ConfigurationProvider conf = mssoContext == null ? null : mssoContext.getConfigurationProvider();
+        if (conf == null) {
+            return PRIORITY_API;
+        }
+        for (String endpoint : AUTH_ENDPOINTS) {
+            URI uri = conf.getTokenUri(endpoint);
+            if (uri != null && uri.getPath().length() > 1 && url.getPath().equals(uri.getPath())) {
+                return PRIORITY_AUTH;
+            }
+        }
+        return PRIORITY_API;
+    }
+
 }
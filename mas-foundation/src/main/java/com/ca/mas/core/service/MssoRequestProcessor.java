@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.service;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.ResultReceiver;
+import android.util.Log;
+
+import com.ca.mas.core.MAGResultReceiver;
+import com.ca.mas.core.MobileSsoListener;
+import com.ca.mas.core.ResponseInterceptor;
+import com.ca.mas.core.conf.ConfigurationManager;
+import com.ca.mas.core.context.MssoContext;
+import com.ca.mas.core.error.MAGError;
+import com.ca.mas.core.error.MAGServerException;
+import com.ca.mas.core.oauth.OAuthClient;
+import com.ca.mas.core.oauth.OAuthException;
+import com.ca.mas.core.oauth.OAuthServerException;
+import com.ca.mas.core.policy.exceptions.CredentialRequiredException;
+import com.ca.mas.core.policy.exceptions.TokenStoreUnavailableException;
+import com.ca.mas.core.util.Functions;
+import com.ca.mas.foundation.MAS;
+import com.ca.mas.foundation.MASAuthCredentials;
+import com.ca.mas.foundation.MASRequest;
+import com.ca.mas.foundation.MASResponse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.ca.mas.foundation.MAS.DEBUG;
+import static com.ca.mas.foundation.MAS.TAG;
+
+/**
+ * Moves requests from the {@link MssoRequestQueue} to the {@link MssoActiveQueue}, executes them on the
+ * {@link MssoExecutorService} and delivers the responses to the request's ResultReceiver.
+ * <p>
+ * Used by the {@link MssoService} for requests delivered as Intents, and directly by the {@link MssoClient}
+ * when direct dispatch is enabled with {@link MAS#enableDirectDispatch(boolean)}. With direct dispatch,
+ * successful responses are handed to the {@link MAGResultReceiver} without going through the
+ * {@link MssoResponseQueue}.
+ */
+class MssoRequestProcessor {
+
+    private static MssoRequestProcessor directInstance;
+
+    private final Context context;
+    private final boolean direct;
+    //Serialize the AuthenticateRequest as the MssoService does with its HandlerThread
+    private final ExecutorService authenticateExecutor = Executors.newSingleThreadExecutor();
+
+    MssoRequestProcessor(Context context, boolean direct) {
+        this.context = context.getApplicationContext();
+        this.direct = direct;
+    }
+
+    /**
+     * @return The processor used for direct dispatch.
+     */
+    static synchronized MssoRequestProcessor getDirectInstance(Context context) {
+        if (directInstance == null) {
+            directInstance = new MssoRequestProcessor(context, true);
+        }
+        return directInstance;
+    }
+
+    /**
+     * Process the request with the provided request ID.
+     *
+     * @param requestId The request ID, or -1 to process all pending requests.
+     * @param extras    The extras of the request.
+     */
+    synchronized void process(long requestId, Bundle extras) {
+        if (requestId == -1) {
+            processPendingRequests();
+            return;
+        }
+
+        MssoRequest request = takeActiveRequest(requestId);
+        if (request == null) {
+            if (DEBUG)
+                Log.d(TAG, "Request ID not found, assuming request is canceled or already processed");
+            return;
+        }
+        startThreadedRequest(extras, request);
+    }
+
+    /**
+     * Process the AuthenticateRequest with the provided request ID using the obtained credentials.
+     * The request is processed on the calling thread.
+     *
+     * @param requestId The request ID.
+     * @param extras    The extras of the request, containing the credentials.
+     */
+    void processCredentials(long requestId, Bundle extras) {
+        MssoRequest request;
+        synchronized (this) {
+            request = takeActiveRequest(requestId);
+        }
+        if (request == null) {
+            if (DEBUG)
+                Log.d(TAG, "Request ID not found, assuming request is canceled or already processed");
+            return;
+        }
+        //Make credentials available to this request's MssoContext
+        MASAuthCredentials creds = extras.getParcelable(MssoIntents.EXTRA_CREDENTIALS);
+        request.getMssoContext().setCredentials(creds);
+        onProcessRequest(request);
+    }
+
+    /**
+     * Process the AuthenticateRequest on a background thread, one at a time.
+     *
+     * @see #processCredentials(long, Bundle)
+     */
+    void processCredentialsAsync(final long requestId, final Bundle extras) {
+        authenticateExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                processCredentials(requestId, extras);
+            }
+        });
+    }
+
+    private void processPendingRequests() {
+        final Collection<MssoRequest> requests = new ArrayList<>(MssoActiveQueue.getInstance().getAllRequest());
+        for (MssoRequest mssoRequest : requests) {
+            if (!mssoRequest.isRunning()) {
+                startThreadedRequest(null, mssoRequest);
+            }
+        }
+    }
+
+    private void startThreadedRequest(final Bundle extras, final MssoRequest request) {
+        //Before assign the request to thread task,
+        request.setRunning(true);
+        request.setExtra(extras);
+        MssoExecutorService.getInstance().execute(request, new Runnable() {
+            @Override
+            public void run() {
+                onProcessRequest(request);
+            }
+        }, new Functions.UnaryVoid<Exception>() {
+            @Override
+            public void call(Exception e) {
+                //In case we got rejected to assign a thread to serve the request
+                request.setRunning(false);
+                requestFinished(request);
+                respondError(request.getResultReceiver(), new MAGError(e));
+            }
+        });
+    }
+
+    private void onProcessRequest(final MssoRequest request) {
+        //The request is in running state
+
+        request.setRunning(true);
+        ResultReceiver receiver = request.getResultReceiver();
+
+        MssoContext mssoContext = request.getMssoContext();
+        try {
+            MASResponse magResponse = RequestCoalescer.getInstance().execute(request);
+            if (handleInterceptors(request.getId(), request.getRequest(), request.getExtra(), magResponse)) {
+                //The request is intercepted and keep in the pending queue.
+                return;
+            }
+            //Success: move to response queue and send a success notification.
+            if (requestFinished(request)) {
+                if (direct && receiver instanceof MAGResultReceiver) {
+                    ((MAGResultReceiver) receiver).complete(magResponse);
+                } else {
+                    MssoResponse response = createMssoResponse(request, magResponse);
+                    MssoResponseQueue.getInstance().addResponse(response);
+                    respondSuccess(receiver, response.getId(), "OK");
+                }
+            }
+            //Otherwise, the request was cancelled, so don't bother enqueuing a response.
+
+        } catch (CredentialRequiredException e) {
+            if (DEBUG) Log.d(TAG, "Request for user credentials");
+            //Notify listener
+            MobileSsoListener mobileSsoListener = ConfigurationManager.getInstance().getMobileSsoListener();
+            AuthenticationProvider authProvider = null;
+            if (!MAS.isBrowserBasedAuthenticationEnabled()) {
+                try {
+                    authProvider = new OAuthClient(request.getMssoContext()).getSocialPlatformProvider(context);
+                } catch (OAuthException | OAuthServerException e1) {
+                    if (DEBUG) Log.e(TAG, e1.getMessage(), e1);
+                    authProvider = null;
+                }
+            }
+            if (mobileSsoListener != null) {
+                mobileSsoListener.onAuthenticateRequest(request.getId(), authProvider);
+            } else {
+                if (DEBUG) Log.w(TAG, "No Authentication listener is registered");
+            }
+        } catch (TokenStoreUnavailableException e) {
+            try {
+                mssoContext.getTokenManager().getTokenStore().unlock();
+            } catch (Exception e1) {
+                handleErrorResponse(request, e1);
+            }
+        } catch (MAGServerException e) {
+            if (handleInterceptors(request.getId(), request.getRequest(), request.getExtra(), e.getResponse())) {
+                //The request is intercepted and keep in the pending queue.
+                return;
+            }
+            handleErrorResponse(request, e);
+        } catch (Exception e) {
+            handleErrorResponse(request, e);
+        } finally {
+            //The request is not running, may or may not stay in the active queue
+            request.setRunning(false);
+        }
+    }
+
+    private void handleErrorResponse(MssoRequest request, Exception e) {
+        if (DEBUG) Log.e(TAG, e.getMessage(), e);
+        if (requestFinished(request)) {
+            respondError(request.getResultReceiver(), new MAGError(e));
+        }
+    }
+
+    /**
+     * @return True to keep the request message to the queue
+     */
+    private boolean handleInterceptors(long requestId, MASRequest request, Bundle requestExtra, MASResponse response) {
+        for (ResponseInterceptor ri : ConfigurationManager.getInstance().getResponseInterceptors()) {
+            if (ri.intercept(requestId, request, requestExtra, response)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private MssoResponse createMssoResponse(MssoRequest request, MASResponse response) {
+        return new MssoResponse(request, response);
+    }
+
+    /*
+     * Find a request in either the inbound queue or the active queue.
+     * If the request is in the inbound queue, move it to the active queue.
+     * If this method returns a request, it is guaranteed to be present in the active queue.
+     * @return located request or null.
+     */
+    private MssoRequest takeActiveRequest(long requestId) {
+        MssoRequest request = MssoRequestQueue.getInstance().takeRequest(requestId);
+        if (request != null) {
+            MssoActiveQueue.getInstance().addRequest(request);
+            return request;
+        }
+        request = MssoActiveQueue.getInstance().getRequest(requestId);
+        return request;
+    }
+
+    private boolean requestFinished(MssoRequest request) {
+        return null != MssoActiveQueue.getInstance().takeRequest(request.getId());
+    }
+
+    private void respondError(ResultReceiver receiver, MAGError error) {
+        if (receiver != null) {
+            Bundle resultData = new Bundle();
+            resultData.putSerializable(MssoIntents.RESULT_ERROR, error);
+            resultData.putString(MssoIntents.RESULT_ERROR_MESSAGE, error.getMessage());
+            receiver.send(MssoIntents.RESULT_CODE_ERR, resultData);
+        }
+    }
+
+    private void respondSuccess(ResultReceiver receiver, long requestId, String errorMessage) {
+        if (receiver != null) {
+            Bundle resultData = new Bundle();
+            resultData.putString(MssoIntents.RESULT_ERROR_MESSAGE, errorMessage);
+            resultData.putLong(MssoIntents.RESULT_REQUEST_ID, requestId);
+            receiver.send(MssoIntents.RESULT_CODE_SUCCESS, resultData);
+        }
+    }
+}
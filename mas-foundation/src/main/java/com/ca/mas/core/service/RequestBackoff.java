@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.service;
+
+/**
+ * Backoff between the attempts of a request.
+ */
+public class RequestBackoff {
+
+    private RequestBackoff() {
+    }
+
+    /**
+     * Wait before the next attempt of the request processed by the calling thread. When called from a request
+     * scheduled by the {@link MssoService}, the scheduler slot of the request is released while waiting.
+     *
+     * @param millis The delay in milliseconds.
+     */
+    public static void sleep(long millis) throws InterruptedException {
+        MssoExecutorService.getInstance().backoff(millis);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.service;
+
+import android.util.Log;
+
+import com.ca.mas.core.conf.ConfigurationManager;
+import com.ca.mas.core.request.internal.LocalRequest;
+import com.ca.mas.foundation.MAS;
+import com.ca.mas.foundation.MASRequest;
+import com.ca.mas.foundation.MASResponse;
+import com.ca.mas.foundation.MASResponseBody;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+
+import static com.ca.mas.foundation.MAS.DEBUG;
+import static com.ca.mas.foundation.MAS.TAG;
+
+/**
+ * Executes the requests of the {@link MssoRequestProcessor}, identical GET requests executed at the same time
+ * share a single execution when enabled with {@link MAS#enableRequestCoalescing(boolean)}.
+ * <p>
+ * The first request executes, identical requests received while it is in progress wait for its response and
+ * read the response content into their own response body. The waiting requests do not hold their scheduler
+ * slot. Each {@link MssoRequest} keeps its own ID and ResultReceiver, so that a cancelled request does not
+ * receive the shared response.
+ */
+class RequestCoalescer {
+
+    private static final RequestCoalescer instance = new RequestCoalescer();
+
+    private final Map<String, Call> calls = new HashMap<>();
+
+    private RequestCoalescer() {
+    }
+
+    static RequestCoalescer getInstance() {
+        return instance;
+    }
+
+    /**
+     * A request in progress.
+     */
+    private static class Call {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private MASResponse response;
+        private Exception error;
+
+        void complete(MASResponse response, Exception error) {
+            this.response = response;
+            this.error = error;
+            done.countDown();
+        }
+
+        MASResponse get() throws Exception {
+            //The scheduler slot of the waiting request is released until the response is available
+            MssoExecutorService.getInstance().await(done);
+            if (error != null) {
+                throw error;
+            }
+            if (response == null) {
+                throw new IOException("Coalesced request failed");
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Execute the request, or wait for the response of an identical request in progress.
+     *
+     * @return The response of the request.
+     */
+    MASResponse execute(MssoRequest mssoRequest) throws Exception {
+        MASRequest request = mssoRequest.getRequest();
+        if (!ConfigurationManager.getInstance().isRequestCoalescingEnabled() || !isCoalescable(request)) {
+            return mssoRequest.getMssoContext().executeRequest(mssoRequest.getExtra(), request);
+        }
+
+        String key = key(request);
+        Call call;
+        boolean execute = false;
+        synchronized (this) {
+            call = calls.get(key);
+            if (call == null) {
+                call = new Call();
+                calls.put(key, call);
+                execute = true;
+            }
+        }
+
+        if (!execute) {
+            if (DEBUG) Log.d(TAG, "Waiting for the response of an identical request to " + request.getURL());
+            MASResponse response = call.get();
+            MssoExecutorService.getInstance().getMetrics().onCoalesced();
+            return copy(response, request.getResponseBody());
+        }
+
+        MASResponse response = null;
+        Exception error = null;
+        try {
+            response = mssoRequest.getMssoContext().executeRequest(mssoRequest.getExtra(), request);
+            return response;
+        } catch (Exception e) {
+            error = e;
+            throw e;
+        } finally {
+            synchronized (this) {
+                calls.remove(key);
+            }
+            call.complete(response, error);
+        }
+    }
+
+    /**
+     * @return True if the request is idempotent and its response content can be shared.
+     */
+    private static boolean isCoalescable(MASRequest request) {
+        MASResponseBody<?> responseBody = request.getResponseBody();
+        return "GET".equals(request.getMethod())
+                && request.getBody() == null
+                && !(request instanceof LocalRequest)
+                && request.getURL() != null
+                && responseBody != null
+                && responseBody.isBuffered();
+    }
+
+    /**
+     * @return The key which identifies identical requests: method, URL, headers, scope and grant provider.
+     */
+    private static String key(MASRequest request) {
+        StringBuilder key = new StringBuilder();
+        key.append(request.getMethod()).append(' ')
+                .append(request.getURL()).append('\n')
+                .append(request.getScope()).append('\n')
+                .append(request.getGrantProvider()).append('\n')
+                .append(request.isPublic()).append('\n');
+        Map<String, List<String>> headers = request.getHeaders();
+        if (headers != null) {
+            key.append(new TreeMap<>(headers));
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return The response with the content read into the response body of the waiting request.
+     */
+    private static MASResponse copy(final MASResponse response, final MASResponseBody responseBody) throws IOException {
+        if (responseBody == response.getBody()) {
+            return response;
+        }
+        MASResponseBody<?> body = response.getBody();
+        if (body != null && body.getRawContent() != null) {
+            responseBody.read(body.getContentType(), body.getRawContent());
+        }
+        return new MASResponse() {
+            @Override
+            public Map<String, List<String>> getHeaders() {
+                return response.getHeaders();
+            }
+
+            @Override
+            public int getResponseCode() {
+                return response.getResponseCode();
+            }
+
+            @Override
+            public String getResponseMessage() {
+                return response.getResponseMessage();
+            }
+
+            @Override
+            public MASResponseBody getBody() {
+                return responseBody;
+            }
+        };
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.service;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of the scheduler which executes the requests sent with {@link com.ca.mas.foundation.MAS#invoke}.
+ */
+public class RequestSchedulerMetrics {
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong waitTime = new AtomicLong();
+    private final AtomicLong executionTime = new AtomicLong();
+
+    RequestSchedulerMetrics() {
+    }
+
+    /**
+     * @return The metrics of the request scheduler.
+     */
+    public static RequestSchedulerMetrics getInstance() {
+        return MssoExecutorService.getInstance().getMetrics();
+    }
+
+    void onQueued(int depth) {
+        queueDepth.set(depth);
+        int max;
+        do {
+            max = maxQueueDepth.get();
+        } while (depth > max && !maxQueueDepth.compareAndSet(max, depth));
+    }
+
+    void onDequeued(int depth) {
+        queueDepth.set(depth);
+    }
+
+    void onStarted(long waitTimeNanos) {
+        started.incrementAndGet();
+        waitTime.addAndGet(waitTimeNanos);
+    }
+
+    void onFinished(long executionTimeNanos) {
+        completed.incrementAndGet();
+        executionTime.addAndGet(executionTimeNanos);
+    }
+
+    void onRejected() {
+        rejected.incrementAndGet();
+    }
+
+    void onCoalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    /**
+     * @return The number of requests waiting to be executed.
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return The highest number of requests waiting to be executed.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return The number of requests executed.
+     */
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * @return The number of requests which could not be executed.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return The number of requests which shared the response of an identical request in progress
+     * instead of being sent, see {@link com.ca.mas.foundation.MAS#enableRequestCoalescing(boolean)}.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return The average time in milliseconds a request waits before it is executed.
+     */
+    public long getAverageWaitTime() {
+        long count = started.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitTime.get() / count);
+    }
+
+    /**
+     * @return The average time in milliseconds taken to execute a request.
+     */
+    public long getAverageExecutionTime() {
+        long count = completed.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(executionTime.get() / count);
+    }
+
+    /**
+     * @return The metrics as a JSON object, for export.
+     */
+    public JSONObject toJSONObject() {
+        JSONObject jsonObject = new JSONObject();
+        try {
+            jsonObject.put("queueDepth", getQueueDepth());
+            jsonObject.put("maxQueueDepth", getMaxQueueDepth());
+            jsonObject.put("completed", getCompletedCount());
+            jsonObject.put("rejected", getRejectedCount());
+            jsonObject.put("coalesced", getCoalescedCount());
+            jsonObject.put("averageWaitTime", getAverageWaitTime());
+            jsonObject.put("averageExecutionTime", getAverageExecutionTime());
+        } catch (JSONException e) {
+            //Ignore, the keys are not null
+        }
+        return jsonObject;
+    }
+
+    @Override
+    public String toString() {
+        return toJSONObject().toString();
+    }
+}
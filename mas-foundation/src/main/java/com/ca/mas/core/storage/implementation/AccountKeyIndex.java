@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.storage.implementation;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.accounts.OnAccountsUpdateListener;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+import android.util.Log;
+
+import com.ca.mas.core.io.Charsets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.ca.mas.foundation.MAS.DEBUG;
+import static com.ca.mas.foundation.MAS.TAG;
+
+/**
+ * In memory index of the keys stored in the account by the {@link AccountManagerStorage}.
+ * <p>
+ * The in memory index is used to detect the changes made by this app. The keys are read from the stored
+ * index on each {@link #getKeys()}, the accounts update listener is not notified when other apps sharing the
+ * account change its data. Changes are applied to the in memory set and written to the account with the
+ * entry, or at the end of a batch, so that an entry is never left without its index. Changes which fail to
+ * be written are kept and written with the next change. When the index is written, the pending changes are merged with the
+ * index stored in the account, so that keys added by other apps sharing the account are preserved.
+ * The in memory index is reloaded when the accounts are updated.
+ */
+class AccountKeyIndex implements OnAccountsUpdateListener {
+
+    /**
+     * Column name for the key-index
+     */
+    static final String KEYINDEX_COLUMN_NAME = "lookup_index";
+    private static final String ACCOUNT_KEY_SEPARATOR = ":";
+
+    private static AccountKeyIndex instance;
+
+    private final Context context;
+    private final AMSSManager accountManager;
+
+    //Encoded keys, null until loaded from the account
+    private LinkedHashSet<String> keys;
+    //Changes not written to the account yet
+    private final Set<String> added = new LinkedHashSet<>();
+    private final Set<String> removed = new HashSet<>();
+    private final Map<String, String> decodedKeys = new HashMap<>();
+    private int batchDepth;
+
+    static synchronized AccountKeyIndex getInstance(Context context, AMSSManager accountManager) {
+        if (instance == null) {
+            instance = new AccountKeyIndex(context.getApplicationContext(), accountManager);
+        }
+        return instance;
+    }
+
+    private AccountKeyIndex(Context context, AMSSManager accountManager) {
+        this.context = context;
+        this.accountManager = accountManager;
+        try {
+            AccountManager.get(context).addOnAccountsUpdatedListener(this, new Handler(Looper.getMainLooper()), false);
+        } catch (Exception e) {
+            if (DEBUG) Log.w(TAG, "Unable to listen to account updates", e);
+        }
+    }
+
+    @Override
+    public synchronized void onAccountsUpdated(Account[] accounts) {
+        try {
+            if (!Arrays.asList(accounts).contains(accountManager.getAccount())) {
+                //The account and its data have been removed
+                added.clear();
+                removed.clear();
+            }
+        } catch (Exception e) {
+            if (DEBUG) Log.w(TAG, "Unable to retrieve the storage account", e);
+        }
+        //Reload on next access, pending changes are applied to the reloaded index
+        keys = null;
+    }
+
+    /**
+     * @return The encoded keys of the stored index, including the changes not written yet.
+     */
+    synchronized List<String> getKeys() throws Exception {
+        //The stored index may have been changed by other apps sharing the account
+        keys = null;
+        return new ArrayList<>(load());
+    }
+
+    /**
+     * @param encodedKey The encoded key.
+     * @return The decoded key, the decoded keys are cached.
+     */
+    synchronized String decode(String encodedKey) {
+        String decoded = decodedKeys.get(encodedKey);
+        if (decoded == null) {
+            byte[] decodedData = Base64.decode(encodedKey.getBytes(Charsets.UTF8), Base64.DEFAULT);
+            if (decodedData == null) {
+                return null;
+            }
+            decoded = new String(decodedData, Charsets.UTF8);
+            decodedKeys.put(encodedKey, decoded);
+        }
+        return decoded;
+    }
+
+    synchronized void add(String encodedKey) throws Exception {
+        if (load().add(encodedKey)) {
+            removed.remove(encodedKey);
+            added.add(encodedKey);
+            if (batchDepth == 0) {
+                flush();
+            }
+        }
+    }
+
+    synchronized void remove(String encodedKey) throws Exception {
+        if (load().remove(encodedKey)) {
+            added.remove(encodedKey);
+            removed.add(encodedKey);
+            decodedKeys.remove(encodedKey);
+            if (batchDepth == 0) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Defer writing the index until {@link #endBatch()}.
+     */
+    synchronized void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Write the changes made during the batch to the account.
+     */
+    synchronized void endBatch() {
+        if (--batchDepth == 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Merge the pending changes with the index stored in the account.
+     */
+    synchronized void flush() {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        try {
+            AccountManager am = AccountManager.get(context);
+            Account account = accountManager.getAccount();
+            LinkedHashSet<String> stored = unmarshal(am.getUserData(account, KEYINDEX_COLUMN_NAME));
+            stored.removeAll(removed);
+            stored.addAll(added);
+            am.setUserData(account, KEYINDEX_COLUMN_NAME, marshal(stored));
+            keys = stored;
+            added.clear();
+            removed.clear();
+        } catch (Exception e) {
+            //Keep the pending changes for the next flush
+            if (DEBUG) Log.e(TAG, "Failed to write the key index", e);
+        }
+    }
+
+    private LinkedHashSet<String> load() throws Exception {
+        if (keys == null) {
+            AccountManager am = AccountManager.get(context);
+            LinkedHashSet<String> stored = unmarshal(am.getUserData(accountManager.getAccount(), KEYINDEX_COLUMN_NAME));
+            stored.removeAll(removed);
+            stored.addAll(added);
+            keys = stored;
+        }
+        return keys;
+    }
+
+    private static String marshal(Set<String> items) {
+        StringBuilder buff = new StringBuilder();
+        for (String keyElement : items) {
+            if (buff.length() > 0) {
+                buff.append(ACCOUNT_KEY_SEPARATOR);
+            }
+            buff.append(keyElement);
+        }
+        return buff.toString();
+    }
+
+    private static LinkedHashSet<String> unmarshal(String blob) {
+        LinkedHashSet<String> items = new LinkedHashSet<>();
+        if (blob == null || blob.length() == 0) {
+            return items;
+        }
+        items.addAll(Arrays.asList(blob.split(ACCOUNT_KEY_SEPARATOR)));
+        return items;
+    }
+}
@@ -22,7 +22,7 @@ import com.ca.mas.core.storage.StorageResultReceiver;
 
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Map;
 
 import static com.ca.mas.foundation.MAS.DEBUG;
 import static com.ca.mas.foundation.MAS.TAG;
@@ -41,11 +41,6 @@ public class AccountManagerStorage extends Storage {
     private static final int MAX_DATA_SIZE = SQLITE_MAX_LENGTH;
     private static final int MAX_KEY_SIZE = SQLITE_MAX_LENGTH;
 
-    /**
-     * Column name for the key-index
-     */
-    private static final String KEYINDEX_COLUMN_NAME = "lookup_index";
-
     /**
      * Key Prefix. The value will be the package name for private mode and
      * "SHARED_" for shared mode
@@ -58,9 +53,9 @@ public class AccountManagerStorage extends Storage {
     private Context mContext;
 
     /**
-     * Handle to the class responsible to marshaling and unmarshaling the key index.
+     * The index of the keys stored in the account.
      */
-    private AccountIndexFormatter mFormatter;
+    private AccountKeyIndex mKeyIndex;
 
     /**
      * AMS Manager
@@ -101,7 +96,7 @@ public class AccountManagerStorage extends Storage {
 
             accountManager = AMSSManager.getInstance(mContext);
 
-            mFormatter = new AccountIndexFormatter();
+            mKeyIndex = AccountKeyIndex.getInstance(mContext, accountManager);
         } catch (StorageException bubble) {
             throw bubble;
         } catch (Exception e) {
@@ -120,18 +115,16 @@ public class AccountManagerStorage extends Storage {
         StorageException returnException = null;
         validateInputs(key, value);
         try {
-            byte[] keyBytes = (mPrefix + key).getBytes(UTF8);
-            String encodedKey = Base64.encodeToString(keyBytes, Base64.DEFAULT);
-            String data = readAccountData(mContext, encodedKey);
+            String encodedKey = encodeKey(key);
 
             switch (option) {
                 case 0://write
-                    if (data != null) {
+                    if (readAccountData(mContext, encodedKey) != null) {
                         returnException = new StorageException(StorageException.WRITE_DATA_ALREADY_EXISTS);
                     }
                     break;
                 case 1://update
-                    if (data == null) {
+                    if (readAccountData(mContext, encodedKey) == null) {
                         returnException = new StorageException(StorageException.READ_DATA_NOT_FOUND);
                     }
                     break;
@@ -200,8 +193,7 @@ public class AccountManagerStorage extends Storage {
         }
 
         try {
-            byte[] keyBytes = (mPrefix + key).getBytes(UTF8);
-            String encodedKey = Base64.encodeToString(keyBytes, Base64.DEFAULT);
+            String encodedKey = encodeKey(key);
             String data = readAccountData(mContext, encodedKey);
             if (data == null) {
                 returnException = new StorageException(StorageException.READ_DATA_NOT_FOUND);
@@ -322,6 +314,45 @@ public class AccountManagerStorage extends Storage {
         notifyCallback(callback, result);
     }
 
+    /**
+     * Write or update all the entries, the key index is written once for the whole batch.
+     *
+     * @param values The values to write by key.
+     * @return The result of the operation, with the number of entries written as data.
+     * @throws StorageException if any of the keys or values is invalid.
+     */
+    public StorageResult writeOrUpdateAll(Map<String, byte[]> values) throws StorageException {
+        if (values == null) {
+            throw new StorageException(StorageException.INVALID_INPUT);
+        }
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            validateInputs(entry.getKey(), entry.getValue());
+        }
+        StorageResult returnValue = new StorageResult(StorageResult.StorageOperationType.WRITE_OR_UPDATE);
+        int successCount = 0;
+        mKeyIndex.beginBatch();
+        try {
+            for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+                writeAccountData(mContext, encodeKey(entry.getKey()), Base64.encodeToString(entry.getValue(), Base64.DEFAULT));
+                successCount++;
+            }
+            returnValue.setStatus(StorageResult.StorageOperationStatus.SUCCESS);
+            returnValue.setData(successCount);
+        } catch (Exception e) {
+            if (DEBUG) Log.e(TAG, "Error writing data, entries written: " + successCount, e);
+            returnValue.setStatus(StorageResult.StorageOperationStatus.FAILURE);
+            returnValue.setData(new StorageException(StorageException.OPERATION_FAILED));
+        } finally {
+            mKeyIndex.endBatch();
+        }
+        return returnValue;
+    }
+
+    public void writeOrUpdateAll(Map<String, byte[]> values, StorageResultReceiver callback) throws StorageException {
+        StorageResult result = writeOrUpdateAll(values);
+        notifyCallback(callback, result);
+    }
+
     @Override
     public StorageResult deleteData(String key) throws StorageException {
         StorageResult returnValue = new StorageResult(StorageResult.StorageOperationType.DELETE);
@@ -334,8 +365,7 @@ public class AccountManagerStorage extends Storage {
         }
 
         try {
-            byte[] keyBytes = (mPrefix + key).getBytes(UTF8);
-            String encodedKey = Base64.encodeToString(keyBytes, Base64.DEFAULT);
+            String encodedKey = encodeKey(key);
             String data = readAccountData(mContext, encodedKey);
             if (data == null) {
                 returnException = new StorageException(StorageException.READ_DATA_NOT_FOUND);
@@ -382,6 +412,7 @@ public class AccountManagerStorage extends Storage {
         StorageException returnError = null;
         int successCount = 0;
         int failureCount = 0;
+        mKeyIndex.beginBatch();
         try {
             StorageResult keyQuery = getAllKeys();
             ArrayList<String> keys = (ArrayList<String>) keyQuery.getData();
@@ -408,6 +439,8 @@ public class AccountManagerStorage extends Storage {
         } catch (Exception e) {
             if (DEBUG) Log.e(TAG, "deleteAll failed ", e);
             returnError = new StorageException(StorageException.OPERATION_FAILED);
+        } finally {
+            mKeyIndex.endBatch();
         }
 
         if (returnError != null) {
@@ -432,8 +465,14 @@ public class AccountManagerStorage extends Storage {
         StorageException returnError = null;
         ArrayList<String> keys = new ArrayList<>();
         try {
-            String keyBlob = readAccountData(mContext, "lookup_index");
-            keys = mFormatter.unmarshal(keyBlob, true);
+            for (String encodedKey : mKeyIndex.getKeys()) {
+                String key = mKeyIndex.decode(encodedKey);
+                if (key == null) {
+                    if (DEBUG) Log.w(TAG, "Unable to process key retrieved from store");
+                } else if (key.startsWith(mPrefix)) {
+                    keys.add(key.substring(mPrefix.length()));
+                }
+            }
         } catch (Exception e) {
             returnError = new StorageException(StorageException.OPERATION_FAILED);
         }
@@ -468,39 +507,22 @@ public class AccountManagerStorage extends Storage {
         }
     }
 
-    private void updateAccountKeyIndex(Context ctx, String key, String value) throws Exception {
-        AccountManager am = AccountManager.get(ctx);
-        Account account = accountManager.getAccount();
-        String keyBlob = readAccountData(ctx, KEYINDEX_COLUMN_NAME);
-        //ArrayList<String> keyList = keyBlob==null?new ArrayList<String>():new ArrayList<String>(Arrays.asList(keyBlob.split(ACCOUNT_KEY_SEPERATOR)));
-        ArrayList<String> keyList = mFormatter.unmarshal(keyBlob, false);
-        if (value == null) {
-            //DELETE
-            if (keyList.contains(key)) {
-                keyList.remove(key);
-            }
-        } else {
-            //WRITE
-            if (!keyList.contains(key)) {
-                keyList.add(key);
-            }
-        }
-        keyBlob = mFormatter.marshal(keyList, false);
-        am.setUserData(account, KEYINDEX_COLUMN_NAME, keyBlob);
-    }
-
     private void writeAccountData(Context ctx, String encodedKey, String value) throws Exception {
         AccountManager am = AccountManager.get(ctx);
         Account account = accountManager.getAccount();
         if (value == null) {//DELETE
-            updateAccountKeyIndex(ctx, encodedKey, null);
+            mKeyIndex.remove(encodedKey);
             am.setUserData(account, encodedKey, null);
         } else {//WRITE or UPDATE
             am.setUserData(account, encodedKey, value);
-            updateAccountKeyIndex(ctx, encodedKey, value);
+            mKeyIndex.add(encodedKey);
         }
     }
 
+    private String encodeKey(String key) throws UnsupportedEncodingException {
+        return Base64.encodeToString((mPrefix + key).getBytes(UTF8), Base64.DEFAULT);
+    }
+
     private String readAccountData(Context ctx,String key) throws Exception {
         AccountManager am = AccountManager.get(ctx);
         Account account = accountManager.getAccount();
@@ -562,78 +584,5 @@ public class AccountManagerStorage extends Storage {
         }
     }
 
-    /**
-     * Class responsible for marshalling and unmarshalling the key index.
-     */
-    private class AccountIndexFormatter {
-
-        private static final String ACCOUNT_KEY_SEPARATOR = ":";
-
-        /**
-         * String representation of the ArrayList<String>.
-         * @param items
-         * @param encode
-         * @return
-         */
-        private String marshal(ArrayList<String> items, boolean encode) {
-            if (items == null || items.size() == 0) {
-                return "";
-            }
-            try {
-                StringBuffer buff = new StringBuffer();
-                for (String keyElement : items) {
-                    String modifiedKey = keyElement;
-                    if (encode) {
-                        modifiedKey = Base64.encodeToString((mPrefix + keyElement).getBytes(UTF8), Base64.DEFAULT);
-                    }
-                    buff.append(modifiedKey);
-                    buff.append(ACCOUNT_KEY_SEPARATOR);
-                }
-                String keyBlob = buff.toString();
-                keyBlob = keyBlob.endsWith(ACCOUNT_KEY_SEPARATOR) ? keyBlob.substring(0, keyBlob.length() - 1) : keyBlob;
-                return keyBlob;
-            } catch (Exception e) {
-                if (DEBUG) Log.e(TAG, "Error in marshal: " + e);
-                return "";
-            }
-        }
-
-        /**
-         * Creates ArrayList<String> out of the String blob.
-         * @param blob
-         * @param decode if you want to Base64 decode the items
-         * @return
-         */
-        private ArrayList<String> unmarshal(String blob, boolean decode) {
-            ArrayList<String> keys = new ArrayList<>();
-            if (blob == null || blob.length() == 0) {
-                return keys;
-            }
-
-            try {
-                ArrayList<String> temp = new ArrayList<String>(Arrays.asList(blob.split(ACCOUNT_KEY_SEPARATOR)));
-                if (decode) {
-                    for (String key : temp) {
-                        byte[] decodedData = Base64.decode(key.getBytes(UTF8), Base64.DEFAULT);
-                        if (decodedData != null) {
-                            String sanitizedKey = new String((byte[]) decodedData, UTF8);
-                            if (sanitizedKey.startsWith(mPrefix)) {
-                                keys.add(sanitizedKey.substring(mPrefix.length()));
-                            }
-                        } else {
-                            if (DEBUG) Log.w(TAG, "Unable to process key retrieved from store");
-                        }
-                    }
-                } else {
-                    keys = temp;
-                }
-            } catch (UnsupportedEncodingException e) {
-                if (DEBUG) Log.e(TAG, "Error in unmarshal: " + e);
-            }
-
-            return keys;
-        }
-    }
-
 }
 
@@ -10,10 +10,15 @@ package com.ca.mas.core.store;
 
 import androidx.annotation.NonNull;
 
+import com.ca.mas.core.EventDispatcher;
 import com.ca.mas.core.conf.ConfigurationManager;
 import com.ca.mas.core.datasource.DataSource;
 import com.ca.mas.core.datasource.DataSourceException;
 
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class PrivateTokenStorage implements OAuthTokenContainer {
 
     public enum KEY {
@@ -25,26 +30,61 @@ public class PrivateTokenStorage implements OAuthTokenContainer {
         PREF_ID_TOKEN_TYPE
     }
 
+    /**
+     * Incremented to invalidate the cached tokens of all instances, e.g. when the user logs out.
+     */
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    static {
+        EventDispatcher.LOGOUT.addObserver(new Observer() {
+            @Override
+            public void update(Observable o, Object arg) {
+                generation.incrementAndGet();
+            }
+        });
+    }
+
     private DataSource<String, String> storage;
+    private final boolean cacheEnabled;
+    private volatile Tokens tokens;
 
     public PrivateTokenStorage(@NonNull DataSource storage){
+        this(storage, true);
+    }
+
+    /**
+     * @param storage      The storage to persist the tokens.
+     * @param cacheEnabled True to keep an in memory copy of the tokens, written through to the storage.
+     *                     The cache must be disabled when the storage is shared with other processes,
+     *                     which may update the tokens.
+     */
+    public PrivateTokenStorage(@NonNull DataSource storage, boolean cacheEnabled) {
         this.storage = storage;
+        this.cacheEnabled = cacheEnabled;
     }
 
     @Override
-    public void saveAccessToken(String accessToken, String refreshToken, long expiresInSec, String grantedScope) {
+    public synchronized void saveAccessToken(String accessToken, String refreshToken, long expiresInSec, String grantedScope) {
         long now = System.currentTimeMillis();
         long expiresInMillis = expiresInSec * 1000L;
         long expiry = now + expiresInMillis;
 
+        tokens = null;
         storage.put(getKey(KEY.PREF_ACCESS_TOKEN.name()), accessToken);
         storage.put(getKey(KEY.PREF_REFRESH_TOKEN.name()), refreshToken);
         storage.put(getKey(KEY.PREF_EXPIRY_UNIXTIME.name()), Long.toString(expiry));
         storage.put(getKey(KEY.PREF_GRANTED_SCOPE.name()), grantedScope);
+        if (cacheEnabled) {
+            tokens = new Tokens(getKey(""), generation.get(), accessToken, refreshToken, expiry, grantedScope);
+        }
     }
 
     @Override
     public String getAccessToken() {
+        if (cacheEnabled) {
+            Tokens t = getTokens();
+            return t == null ? null : t.accessToken;
+        }
         try {
             return storage.get(getKey(KEY.PREF_ACCESS_TOKEN.name()));
         } catch (DataSourceException e) {
@@ -54,6 +94,10 @@ public class PrivateTokenStorage implements OAuthTokenContainer {
 
     @Override
     public String getRefreshToken() {
+        if (cacheEnabled) {
+            Tokens t = getTokens();
+            return t == null ? null : t.refreshToken;
+        }
         try {
             return storage.get(getKey(KEY.PREF_REFRESH_TOKEN.name()));
         } catch (DataSourceException e) {
@@ -65,6 +109,7 @@ public class PrivateTokenStorage implements OAuthTokenContainer {
     public synchronized String takeRefreshToken() {
         String refreshToken = getRefreshToken();
         if (refreshToken != null) {
+            tokens = null;
             storage.remove(getKey(KEY.PREF_REFRESH_TOKEN.name()));
         }
         return refreshToken;
@@ -72,6 +117,10 @@ public class PrivateTokenStorage implements OAuthTokenContainer {
 
     @Override
     public String getGrantedScope() {
+        if (cacheEnabled) {
+            Tokens t = getTokens();
+            return t == null ? null : t.grantedScope;
+        }
         try {
             return storage.get(getKey(KEY.PREF_GRANTED_SCOPE.name()));
         } catch (DataSourceException e) {
@@ -84,38 +133,107 @@ public class PrivateTokenStorage implements OAuthTokenContainer {
      */
     @Override
     public long getExpiry() {
-        try {
-            String r = storage.get(getKey(KEY.PREF_EXPIRY_UNIXTIME.name()));
-            if (r != null) {
-                return Long.parseLong(r);
-            } else {
-                return 0;
-            }
-        } catch (DataSourceException e) {
-            return 0;
+        if (cacheEnabled) {
+            Tokens t = getTokens();
+            return t == null ? 0 : t.expiry;
         }
+        return readExpiry();
     }
 
     @Override
-    public void clearAccessToken() {
+    public synchronized void clearAccessToken() {
+        tokens = null;
         storage.remove(getKey(KEY.PREF_ACCESS_TOKEN.name()));
         storage.remove(getKey(KEY.PREF_EXPIRY_UNIXTIME.name()));
     }
 
     @Override
-    public void clear() {
+    public synchronized void clear() {
+        tokens = null;
         for (KEY k : KEY.values()) {
             storage.remove(getKey(k.name()));
         }
     }
 
     @Override
-    public void clearAll() {
+    public synchronized void clearAll() {
+        tokens = null;
         storage.removeAll(null);
     }
 
+    private long readExpiry() {
+        try {
+            String r = storage.get(getKey(KEY.PREF_EXPIRY_UNIXTIME.name()));
+            if (r != null) {
+                return Long.parseLong(r);
+            } else {
+                return 0;
+            }
+        } catch (DataSourceException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the cached tokens for the connected gateway, the tokens are loaded from the storage
+     * if not cached or the cache has been invalidated.
+     *
+     * @return The cached tokens, or null if the tokens cannot be read from the storage.
+     */
+    private Tokens getTokens() {
+        String prefix = getKey("");
+        Tokens t = tokens;
+        if (t != null && t.isValid(prefix)) {
+            return t;
+        }
+        synchronized (this) {
+            t = tokens;
+            if (t != null && t.isValid(prefix)) {
+                return t;
+            }
+            int currentGeneration = generation.get();
+            try {
+                t = new Tokens(prefix, currentGeneration,
+                        storage.get(getKey(KEY.PREF_ACCESS_TOKEN.name())),
+                        storage.get(getKey(KEY.PREF_REFRESH_TOKEN.name())),
+                        readExpiry(),
+                        storage.get(getKey(KEY.PREF_GRANTED_SCOPE.name())));
+            } catch (DataSourceException e) {
+                //Storage may not be ready, do not cache
+                return null;
+            }
+            tokens = t;
+            return t;
+        }
+    }
+
     private String getKey(String name) {
         return ConfigurationManager.getInstance().getConnectedGateway().toString() + name;
     }
 
+    /**
+     * Immutable snapshot of the OAuth tokens of a gateway.
+     */
+    private static class Tokens {
+        private final String prefix;
+        private final int generation;
+        private final String accessToken;
+        private final String refreshToken;
+        private final long expiry;
+        private final String grantedScope;
+
+        private Tokens(String prefix, int generation, String accessToken, String refreshToken, long expiry, String grantedScope) {
+            this.prefix = prefix;
+            this.generation = generation;
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+            this.expiry = expiry;
+            this.grantedScope = grantedScope;
+        }
+
+        private boolean isValid(String prefix) {
+            return this.generation == PrivateTokenStorage.generation.get() && this.prefix.equals(prefix);
+        }
+    }
+
 }
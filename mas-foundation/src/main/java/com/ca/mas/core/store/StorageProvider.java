@@ -100,7 +100,9 @@ public class StorageProvider {
                 ConfigurationManager.getInstance().getContext(),
                 mStorageConfig.getStorageClass(), mStorageConfig.getConfig(),
                 new StringDataConverter());
-        return new PrivateTokenStorage(storage);
+        //Tokens in a shared storage may be updated by other processes, do not cache them.
+        boolean shared = mStorageConfig.getConfig().optBoolean(StorageConfig.PROP_SHARE_STATUS, false);
+        return new PrivateTokenStorage(storage, !shared);
     }
 
     /**
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.core.token;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.ca.mas.core.http.MAGHttpClient;
+import com.ca.mas.foundation.MAS;
+import com.ca.mas.foundation.MASCallback;
+import com.ca.mas.foundation.MASConfiguration;
+import com.ca.mas.foundation.MASRequest;
+import com.ca.mas.foundation.MASResponse;
+import com.ca.mas.foundation.MASResponseBody;
+import com.ca.mas.foundation.notify.Callback;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+
+import org.json.JSONObject;
+
+import java.net.URL;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static com.ca.mas.core.token.JWTRS256Validator.JWT_KEY_SET_FILE;
+import static com.ca.mas.core.token.JWTRS256Validator.TAG;
+import static com.ca.mas.foundation.MAS.DEBUG;
+
+/**
+ * Cache of the JSON Web Key Sets (JWKS) by gateway host.
+ * <p>
+ * The key set is parsed once when it is loaded and the {@link JWSVerifier} of each key is built on first
+ * use. Key sets expire after the Cache-Control max-age of the JWKS response, and are refreshed in the
+ * background once {@link #REFRESH_FACTOR} of their lifetime has elapsed. Concurrent loads of the same host
+ * share a single request.
+ */
+class JwksCache {
+
+    private static final String WELL_KNOW_URI = "/.well-known/openid-configuration";
+    private static final String JWKS_URI = "jwks_uri";
+    private static final String CACHE_CONTROL = "Cache-Control";
+    private static final String MAX_AGE = "max-age=";
+    private static final String EXPIRES_SUFFIX = ".expires";
+
+    /**
+     * Lifetime of a key set when the response does not define a max-age.
+     */
+    private static final long DEFAULT_MAX_AGE = TimeUnit.HOURS.toMillis(24);
+    /**
+     * Minimum lifetime of a key set, which is also the minimum interval between two loads triggered
+     * by an unknown key id.
+     */
+    private static final long MIN_MAX_AGE = TimeUnit.SECONDS.toMillis(30);
+    private static final double REFRESH_FACTOR = 0.8;
+
+    private static final JwksCache instance = new JwksCache();
+
+    private final Map<String, KeySet> keySets = new ConcurrentHashMap<>();
+    private final Map<String, Loader> loaders = new HashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    static JwksCache getInstance() {
+        return instance;
+    }
+
+    private JwksCache() {
+    }
+
+    /**
+     * A parsed key set.
+     */
+    static class KeySet {
+        final String jwks;
+        final long loadedAt;
+        final long expiresAt;
+        private final JWKSet jwkSet;
+        private final Map<String, JWSVerifier> verifiers = new ConcurrentHashMap<>();
+
+        KeySet(String jwks, long loadedAt, long expiresAt) throws ParseException {
+            this.jwks = jwks;
+            this.loadedAt = loadedAt;
+            this.expiresAt = expiresAt;
+            this.jwkSet = JWKSet.parse(jwks);
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+
+        boolean isRefreshDue() {
+            return System.currentTimeMillis() >= loadedAt + (long) ((expiresAt - loadedAt) * REFRESH_FACTOR);
+        }
+
+        boolean canReload() {
+            return System.currentTimeMillis() >= loadedAt + MIN_MAX_AGE;
+        }
+
+        /**
+         * @return The verifier of the RSA key with the key id, or null if the key set does not contain it.
+         */
+        JWSVerifier getVerifier(String kid) throws JOSEException {
+            JWSVerifier verifier = verifiers.get(kid);
+            if (verifier == null) {
+                JWK jwk = jwkSet.getKeyByKeyId(kid);
+                if (!(jwk instanceof RSAKey)) {
+                    return null;
+                }
+                verifier = new RSASSAVerifier((RSAKey) jwk);
+                verifiers.put(kid, verifier);
+            }
+            return verifier;
+        }
+    }
+
+    /**
+     * @return The cached key set of the host, restored from the SharedPreferences if not loaded yet.
+     */
+    KeySet get(String host) {
+        KeySet keySet = keySets.get(host);
+        if (keySet == null) {
+            SharedPreferences prefs = getPrefs();
+            String jwks = prefs.getString(host, null);
+            if (jwks != null) {
+                try {
+                    //Key sets stored without expiry are refreshed on next use
+                    long expiresAt = prefs.getLong(host + EXPIRES_SUFFIX, 0);
+                    keySet = new KeySet(jwks, expiresAt - MIN_MAX_AGE, expiresAt);
+                    keySets.put(host, keySet);
+                } catch (ParseException e) {
+                    if (DEBUG) Log.w(TAG, "Invalid JWT Key Set stored for " + host, e);
+                }
+            }
+        }
+        return keySet;
+    }
+
+    /**
+     * Retrieves the verifier of the key id, loading the key set if it is expired or does not contain the
+     * key id. The calling thread is blocked while the key set is loaded.
+     *
+     * @return The verifier, or null if the key id is not part of the key set.
+     */
+    JWSVerifier getVerifier(String host, String kid) throws InterruptedException, ExecutionException, JOSEException {
+        KeySet keySet = get(host);
+        if (keySet == null) {
+            keySet = load(host, null).get();
+        } else if (keySet.isExpired()) {
+            try {
+                keySet = load(host, null).get();
+            } catch (ExecutionException e) {
+                //Keep using the expired key set while the gateway is not reachable
+                if (DEBUG) Log.w(TAG, "Failed to reload the JWT Key Set, using the expired one", e);
+            }
+        } else if (keySet.isRefreshDue()) {
+            load(host, null);
+        }
+
+        JWSVerifier verifier = keySet.getVerifier(kid);
+        if (verifier == null && keySet.canReload()) {
+            //The keys may have been rotated
+            keySet = load(host, null).get();
+            verifier = keySet.getVerifier(kid);
+        }
+        return verifier;
+    }
+
+    /**
+     * Loads the key set of the host in the background, concurrent loads share the same request.
+     *
+     * @param callback Notified with the JWKS once loaded, may be null.
+     */
+    synchronized Future<KeySet> load(String host, MASCallback<String> callback) {
+        Loader loader = loaders.get(host);
+        if (loader == null) {
+            loader = new Loader(host);
+            loaders.put(host, loader);
+            executor.execute(loader);
+        }
+        if (callback != null) {
+            loader.callbacks.add(callback);
+        }
+        return loader;
+    }
+
+    void put(String host, String jwks) throws ParseException {
+        long now = System.currentTimeMillis();
+        keySets.put(host, new KeySet(jwks, now, now + DEFAULT_MAX_AGE));
+    }
+
+    /**
+     * Removes all the key sets from the cache and from the SharedPreferences.
+     */
+    void clear() {
+        keySets.clear();
+        getPrefs().edit().clear().apply();
+    }
+
+    private KeySet fetch(String host) throws Exception {
+        URL wellKnownUri = new URL(MASConfiguration.getCurrentConfiguration().getGatewayUrl() + WELL_KNOW_URI);
+
+        MAGHttpClient client = new MAGHttpClient();
+        MASRequest request = new MASRequest.MASRequestBuilder(wellKnownUri).
+                responseBody(MASResponseBody.jsonBody()).setPublic().build();
+        MASResponse<JSONObject> response = client.execute(request);
+        String jwksUri = response.getBody().getContent().getString(JWKS_URI);
+
+        request = new MASRequest.MASRequestBuilder(new URL(jwksUri)).setPublic().build();
+        response = client.execute(request);
+        String jwks = response.getBody().getContent().toString();
+        if (DEBUG) Log.d(TAG, "JWT Key Set = " + jwks);
+
+        long now = System.currentTimeMillis();
+        KeySet keySet = new KeySet(jwks, now, now + getMaxAge(response.getHeaders()));
+        keySets.put(host, keySet);
+        getPrefs().edit()
+                .putString(host, jwks)
+                .putLong(host + EXPIRES_SUFFIX, keySet.expiresAt)
+                .apply();
+        return keySet;
+    }
+
+    /**
+     * @return The max-age of the Cache-Control header in milliseconds, at least {@link #MIN_MAX_AGE}.
+     */
+    static long getMaxAge(Map<String, List<String>> headers) {
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (!CACHE_CONTROL.equalsIgnoreCase(header.getKey()) || header.getValue() == null) {
+                    continue;
+                }
+                for (String value : header.getValue()) {
+                    for (String directive : value.split(",")) {
+                        directive = directive.trim().toLowerCase();
+                        if (directive.equals("no-cache") || directive.equals("no-store")) {
+                            return MIN_MAX_AGE;
+                        }
+                        if (directive.startsWith(MAX_AGE)) {
+                            try {
+                                long maxAge = TimeUnit.SECONDS.toMillis(Long.parseLong(directive.substring(MAX_AGE.length())));
+                                return Math.max(maxAge, MIN_MAX_AGE);
+                            } catch (NumberFormatException e) {
+                                if (DEBUG) Log.w(TAG, "Invalid Cache-Control max-age: " + directive);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return DEFAULT_MAX_AGE;
+    }
+
+    private static SharedPreferences getPrefs() {
+        return MAS.getContext().getSharedPreferences(JWT_KEY_SET_FILE, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Loads the key set of a host and notifies the callbacks registered while loading.
+     */
+    private class Loader extends FutureTask<KeySet> {
+
+        private final String host;
+        private final List<MASCallback<String>> callbacks = new ArrayList<>();
+
+        Loader(final String host) {
+            super(new Callable<KeySet>() {
+                @Override
+                public KeySet call() throws Exception {
+                    return fetch(host);
+                }
+            });
+            this.host = host;
+        }
+
+        @Override
+        protected void done() {
+            List<MASCallback<String>> listeners;
+            synchronized (JwksCache.this) {
+                loaders.remove(host);
+                listeners = new ArrayList<>(callbacks);
+                callbacks.clear();
+            }
+            try {
+                KeySet keySet = get();
+                for (MASCallback<String> callback : listeners) {
+                    Callback.onSuccess(callback, keySet.jwks);
+                }
+            } catch (ExecutionException e) {
+                if (DEBUG) Log.e(TAG, "Failed to load the JWT Key Set", e.getCause());
+                for (MASCallback<String> callback : listeners) {
+                    Callback.onError(callback, e.getCause());
+                }
+            } catch (InterruptedException | CancellationException e) {
+                for (MASCallback<String> callback : listeners) {
+                    Callback.onError(callback, e);
+                }
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.ca.mas.core.util;
 
 
+import android.content.ContentResolver;
+import android.content.res.AssetFileDescriptor;
 import android.net.Uri;
 
 import com.ca.mas.foundation.MAS;
@@ -9,6 +11,7 @@ import com.ca.mas.foundation.MASException;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -63,6 +66,39 @@ public class FileUtils {
     }
 
 
+    /**
+     * Returns the size of the file without reading its content.
+     *
+     * @param uri the file uri.
+     * @return the file size in bytes, or -1 if the size is unknown.
+     */
+    public static long getLengthFromUri(Uri uri) throws MASException {
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme()) && uri.getPath() != null) {
+            File file = new File(uri.getPath());
+            if (!file.isFile()) {
+                throw new MASException(new FileNotFoundException(uri.toString()));
+            }
+            return file.length();
+        }
+        AssetFileDescriptor descriptor = null;
+        try {
+            descriptor = MAS.getContext().getContentResolver().openAssetFileDescriptor(uri, "r");
+            if (descriptor == null) {
+                throw new MASException(new FileNotFoundException(uri.toString()));
+            }
+            return descriptor.getLength();
+        } catch (FileNotFoundException e) {
+            throw new MASException(e);
+        } finally {
+            if (descriptor != null) {
+                try {
+                    descriptor.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
     private static byte[] getBytes(InputStream inputStream) throws IOException {
         ByteArrayOutputStream byteBuffer = new ByteArrayOutputStream();
         int bufferSize = 1024;
@@ -15,27 +15,32 @@ import android.security.keystore.KeyProtection;
 import androidx.annotation.RequiresApi;
 import android.util.Log;
 
+import com.ca.mas.core.security.SecretKeyCache;
+
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.UnrecoverableEntryException;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
-import javax.security.auth.DestroyFailedException;
-import javax.security.auth.Destroyable;
 
 import static android.security.keystore.KeyProperties.BLOCK_MODE_CBC;
 import static android.security.keystore.KeyProperties.BLOCK_MODE_CTR;
@@ -444,6 +449,7 @@ public class KeyUtilsSymmetric {
      * @param alias the alias of the key to delete
      */
     public static void deleteKey(String alias) {
+        SecretKeyCache.getInstance().remove(alias);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             // remove it from AndroidKeyStore
             deleteKeyAndroidM(alias);
@@ -483,6 +489,43 @@ public class KeyUtilsSymmetric {
     private static final String AES_GCM_NO_PADDING = "AES/GCM/NoPadding";
     private static final String HMAC_SHA256 = "HmacSHA256";
     private static final int IV_LENGTH = 12;
+    private static final int MAC_LENGTH = 32;
+    private static final int MAX_MAC_KEYS = 64;
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    /**
+     * Cipher and Mac instances are not thread safe, each thread reuses its own instances
+     * instead of serializing all encryption and decryption operations.
+     */
+    private static final ThreadLocal<Cipher> ciphers = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance(AES_GCM_NO_PADDING);
+            } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+                if (DEBUG) Log.e(TAG, "Error while getting an cipher instance", e);
+                throw new RuntimeException("Error while getting an cipher instance", e);
+            }
+        }
+    };
+
+    private static final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                return Mac.getInstance(HMAC_SHA256);
+            } catch (NoSuchAlgorithmException e) {
+                if (DEBUG) Log.e(TAG, "Error while instantiating MAC", e);
+                throw new RuntimeException("Error while instantiating MAC", e);
+            }
+        }
+    };
+
+    /**
+     * The MAC keys, derived from the key alias.
+     */
+    private static final Map<String, SecretKey> macKeys = new ConcurrentHashMap<>();
 
     /**
      * Encrypts the given data.
@@ -492,23 +535,22 @@ public class KeyUtilsSymmetric {
      * @param key       Key to use to generate a secret key for MAC operation, can be key alias
      * @return encrypted data as byte[]
      */
-    public synchronized static byte[] encrypt(byte[] data, SecretKey secretKey, String key) {
+    public static byte[] encrypt(byte[] data, SecretKey secretKey, String key) {
         if (data == null) {
             return null;
         }
 
         byte[] encryptedData;
         try {
-            Cipher cipher = Cipher.getInstance(AES_GCM_NO_PADDING);
+            Cipher cipher;
 
             byte[] iv;
             AlgorithmParameterSpec ivParams;
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+                cipher = initCipher(Cipher.ENCRYPT_MODE, secretKey, null);
                 iv = cipher.getIV();
             } else {
                 iv = new byte[IV_LENGTH];
-                SecureRandom secureRandom = new SecureRandom();
                 secureRandom.nextBytes(iv);
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
                     ivParams = new GCMParameterSpec(128, iv);
@@ -519,14 +561,23 @@ public class KeyUtilsSymmetric {
                     ivParams = new IvParameterSpec(iv);
                 }
 
-                cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivParams);
+                cipher = initCipher(Cipher.ENCRYPT_MODE, secretKey, ivParams);
             }
 
-            encryptedData = cipher.doFinal(data);
-            byte[] mac = computeMac(key, encryptedData);
-            encryptedData = concatArrays(mac, iv, encryptedData);
+            // mac|iv|ciphertext, the cipher text is written in place
+            encryptedData = new byte[MAC_LENGTH + iv.length + cipher.getOutputSize(data.length)];
+            int cipherTextLength = cipher.doFinal(data, 0, data.length, encryptedData, MAC_LENGTH + iv.length);
+            System.arraycopy(iv, 0, encryptedData, MAC_LENGTH, iv.length);
+            computeMac(key, encryptedData, MAC_LENGTH + iv.length, cipherTextLength, encryptedData);
+            if (MAC_LENGTH + iv.length + cipherTextLength != encryptedData.length) {
+                encryptedData = Arrays.copyOf(encryptedData, MAC_LENGTH + iv.length + cipherTextLength);
+            }
         } catch (Exception e) {
             if (DEBUG) Log.e(TAG, "inside exception of encrypt function: ", e);
+            // Discard the cipher, it may be left in an unusable state
+            ciphers.remove();
+            // The key may have been invalidated, it is looked up again on next use
+            SecretKeyCache.getInstance().remove(key);
             // if auth error, we should delete the invalid key
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
                 checkDeleteKeys(key, e);
@@ -543,46 +594,38 @@ public class KeyUtilsSymmetric {
      * @param key           Key to use to generate a secret key for MAC operation, can be key alias
      * @return byte[] of decrypted data
      */
-    public synchronized static byte[] decrypt(byte[] encryptedData, SecretKey secretKey, String key) {
-        Cipher cipher;
-        try {
-            cipher = Cipher.getInstance(AES_GCM_NO_PADDING);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-            if (DEBUG) Log.e(TAG, "Error while getting an cipher instance", e);
-            throw new RuntimeException("Error while getting an cipher instance", e);
-        }
-
+    public static byte[] decrypt(byte[] encryptedData, SecretKey secretKey, String key) {
         int ivlength = IV_LENGTH;
-        int macLength;
-        try {
-            macLength = Mac.getInstance(HMAC_SHA256).getMacLength();
-        } catch (NoSuchAlgorithmException e) {
-            if (DEBUG) Log.e(TAG, "Error while instantiating MAC", e);
-            throw new RuntimeException("Error while instantiating MAC", e);
-        }
+        int macLength = MAC_LENGTH;
         int encryptedDataLength = encryptedData.length - ivlength - macLength;
-        byte[] macFromMessage = getArraySubset(encryptedData, 0, macLength);
+        if (encryptedDataLength < 0) {
+            if (DEBUG) Log.e(TAG, "MAC signature could not be verified");
+            throw new RuntimeException("MAC signature could not be verified");
+        }
 
-        byte[] iv = getArraySubset(encryptedData, macLength, ivlength);
-        encryptedData = getArraySubset(encryptedData, macLength + ivlength, encryptedDataLength);
-        byte[] mac = computeMac(key, encryptedData);
+        byte[] mac = new byte[macLength];
+        computeMac(key, encryptedData, macLength + ivlength, encryptedDataLength, mac);
 
-        if (!Arrays.equals(mac, macFromMessage)) {
+        if (!MessageDigest.isEqual(mac, Arrays.copyOf(encryptedData, macLength))) {
             if (DEBUG) Log.e(TAG, "MAC signature could not be verified");
             throw new RuntimeException("MAC signature could not be verified");
         }
 
         AlgorithmParameterSpec ivParams;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            ivParams = new GCMParameterSpec(128, iv);
+            ivParams = new GCMParameterSpec(128, encryptedData, macLength, ivlength);
         } else {
-            ivParams = new IvParameterSpec(iv);
+            ivParams = new IvParameterSpec(encryptedData, macLength, ivlength);
         }
 
         try {
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, ivParams);
-            return cipher.doFinal(encryptedData);
+            Cipher cipher = initCipher(Cipher.DECRYPT_MODE, secretKey, ivParams);
+            return cipher.doFinal(encryptedData, macLength + ivlength, encryptedDataLength);
         } catch (Exception e) {
+            // Discard the cipher, it may be left in an unusable state
+            ciphers.remove();
+            // The key may have been invalidated, it is looked up again on next use
+            SecretKeyCache.getInstance().remove(key);
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
                 checkDeleteKeys(key, e);
             if (DEBUG) Log.i(TAG, "Error while decrypting an cipher instance", e);
@@ -591,66 +634,70 @@ public class KeyUtilsSymmetric {
     }
 
     /**
-     * Computes the mac signature for the encrypted array
-     *
-     * @param key        Key to use to generate a secret key for MAC operation
-     * @param cipherText the data for which the signature has to be calculated
+     * Initializes the Cipher of the current thread. The provider of a Cipher is selected by the first key
+     * it is initialized with, if the key is not supported by the provider a new Cipher is created. Errors
+     * caused by the state of the key, invalidated or not authenticated, are not retried.
      */
-    private static byte[] computeMac(String key, byte[] cipherText) {
-        Mac hm;
-        SecretKey secretKey = null;
+    private static Cipher initCipher(int mode, SecretKey secretKey, AlgorithmParameterSpec params) throws GeneralSecurityException {
+        Cipher cipher = ciphers.get();
         try {
-            hm = Mac.getInstance(HMAC_SHA256);
-            secretKey = new SecretKeySpec(key.getBytes("UTF-8"), HMAC_SHA256);
-            hm.init(secretKey);
-            return hm.doFinal(cipherText);
-        } catch (NoSuchAlgorithmException | InvalidKeyException | UnsupportedEncodingException e) {
-            if (DEBUG) Log.e(TAG, "Error while calculating signature", e);
-            throw new RuntimeException("Error while calculating signature", e);
-        } finally {
-            destroyKey(secretKey);
+            init(cipher, mode, secretKey, params);
+        } catch (InvalidKeyException e) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && isKeyStateException(e)) {
+                throw e;
+            }
+            ciphers.remove();
+            cipher = ciphers.get();
+            init(cipher, mode, secretKey, params);
         }
+        return cipher;
     }
 
-    /**
-     * Combine the mac,iv and encrypted data arrays into one array
-     *
-     * @param mac
-     * @param iv
-     * @param cipherText
-     * @return Combined mac, iv and encrypted data arrays.
-     */
-    private static byte[] concatArrays(byte[] mac, byte[] iv, byte[] cipherText) {
-        int macLength = mac.length;
-        int ivLength = iv.length;
-        int cipherTextLength = cipherText.length;
-        int totalLength = macLength + ivLength + cipherTextLength;
-        byte[] result = new byte[totalLength];
-        System.arraycopy(mac, 0, result, 0, macLength);
-        System.arraycopy(iv, 0, result, macLength, ivLength);
-        System.arraycopy(cipherText, 0, result, macLength + ivLength, cipherTextLength);
-        return result;
+    @TargetApi(Build.VERSION_CODES.M)
+    private static boolean isKeyStateException(InvalidKeyException e) {
+        return e instanceof android.security.keystore.KeyPermanentlyInvalidatedException
+                || e instanceof android.security.keystore.UserNotAuthenticatedException;
     }
 
-    private static byte[] getArraySubset(byte[] array, int start, int length) {
-        byte[] result = new byte[length];
-        System.arraycopy(array, start, result, 0, length);
-        return result;
+    private static void init(Cipher cipher, int mode, SecretKey secretKey, AlgorithmParameterSpec params) throws GeneralSecurityException {
+        if (params == null) {
+            cipher.init(mode, secretKey);
+        } else {
+            cipher.init(mode, secretKey, params);
+        }
     }
 
     /**
-     * Destroys the ephemeral key, in this case the Secret key generated for MAC, if the key implements Destroyable
+     * Computes the mac signature for the encrypted data and writes it at the beginning of the output.
      *
-     * @param key
+     * @param key        Key to use to generate a secret key for MAC operation
+     * @param cipherText the array containing the data for which the signature has to be calculated
+     * @param offset     the offset of the data in cipherText
+     * @param length     the length of the data
+     * @param output     the array to write the signature to
      */
-    private static void destroyKey(SecretKey key) {
-        if (key instanceof Destroyable) {
-            try {
-                (key).destroy();
-            } catch (DestroyFailedException e) {
-                if (DEBUG) Log.w(TAG, "Could not destroy key");
+    private static void computeMac(String key, byte[] cipherText, int offset, int length, byte[] output) {
+        Mac hm = macs.get();
+        try {
+            hm.init(getMacKey(key));
+            hm.update(cipherText, offset, length);
+            hm.doFinal(output, 0);
+        } catch (InvalidKeyException | ShortBufferException | UnsupportedEncodingException e) {
+            if (DEBUG) Log.e(TAG, "Error while calculating signature", e);
+            throw new RuntimeException("Error while calculating signature", e);
+        }
+    }
+
+    private static SecretKey getMacKey(String key) throws UnsupportedEncodingException {
+        SecretKey macKey = macKeys.get(key);
+        if (macKey == null) {
+            if (macKeys.size() >= MAX_MAC_KEYS) {
+                macKeys.clear();
             }
+            macKey = new SecretKeySpec(key.getBytes("UTF-8"), HMAC_SHA256);
+            macKeys.put(key, macKey);
         }
+        return macKey;
     }
 
     /**
@@ -20,6 +20,7 @@ import android.util.Base64;
 import android.util.Log;
 
 import com.ca.mas.core.EventDispatcher;
+import com.ca.mas.core.http.ResponseCache;
 import com.ca.mas.core.MAGResultReceiver;
 import com.ca.mas.core.MobileSsoConfig;
 import com.ca.mas.core.MobileSsoFactory;
@@ -28,8 +29,12 @@ import com.ca.mas.core.conf.ConfigurationManager;
 import com.ca.mas.core.error.MAGError;
 import com.ca.mas.core.error.MAGErrorCode;
 import com.ca.mas.core.error.MAGRuntimeException;
+import com.ca.mas.core.http.CircuitBreaker;
+import com.ca.mas.core.http.HttpTransport;
 import com.ca.mas.core.http.MAGHttpClient;
+import com.ca.mas.core.http.PooledHttpTransport;
 import com.ca.mas.core.service.MssoServiceState;
+import com.ca.mas.core.service.RequestSchedulerMetrics;
 import com.ca.mas.core.store.StorageProvider;
 import com.ca.mas.core.token.JWTValidatorFactory;
 import com.ca.mas.foundation.notify.Callback;
@@ -42,6 +47,7 @@ import java.net.InetAddress;
 import java.net.URL;
 import java.security.PrivateKey;
 import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -93,6 +99,7 @@ public class MAS {
         }
 
         registerActivityLifecycleCallbacks((Application) appContext);
+        ResponseCache.registerInvalidation(appContext);
 
         // This is important, don't remove this
         new MASConfiguration(appContext);
@@ -370,6 +377,81 @@ public class MAS {
         ConfigurationManager.getInstance().setConnectionListener(listener);
     }
 
+    /**
+     * Sets the transport used to obtain and release connections to the MAG server.
+     * Use {@link PooledHttpTransport} to keep connections alive and reuse them across requests.
+     *
+     * @param transport The transport to use, or null to restore the default transport
+     *                  which disconnects after each request.
+     */
+    public static void setHttpTransport(HttpTransport transport) {
+        ConfigurationManager.getInstance().setHttpTransport(transport);
+    }
+
+    /**
+     * Dispatch requests directly to the request executor instead of sending them to the MssoService.
+     * Direct dispatch avoids binding to the service and the Intent and Bundle round trips for each request,
+     * requests can still be cancelled with {@link #cancelRequest(long)} and resumed with {@link #processPendingRequests()}.
+     *
+     * @param enable True to dispatch requests in process, False to use the MssoService. Default to false.
+     */
+    public static void enableDirectDispatch(boolean enable) {
+        ConfigurationManager.getInstance().enableDirectDispatch(enable);
+    }
+
+    /**
+     * Share the response of identical GET requests executed at the same time. A GET request which has the same URL,
+     * headers, scope and grant provider as a request already in progress waits for the response of that request
+     * instead of sending its own. Each request still receives its own response and can be cancelled
+     * with {@link #cancelRequest(long)}. Only requests with a buffered response body, such as
+     * {@link MASResponseBody#jsonBody()}, are shared. The number of requests which were not sent is
+     * provided by {@link RequestSchedulerMetrics#getCoalescedCount()}.
+     *
+     * @param enable True to share the response of identical GET requests. Default to false.
+     */
+    public static void enableRequestCoalescing(boolean enable) {
+        ConfigurationManager.getInstance().enableRequestCoalescing(enable);
+    }
+
+    /**
+     * Sets the maximum number of requests executed concurrently, additional requests are queued.
+     *
+     * @param maxConcurrentRequests The maximum number of concurrent requests. Default to twice the number of CPUs plus one.
+     */
+    public static void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        ConfigurationManager.getInstance().setMaxConcurrentRequests(maxConcurrentRequests);
+    }
+
+    /**
+     * Sets the maximum number of requests executed concurrently for each host, additional requests are queued.
+     *
+     * @param maxConcurrentRequestsPerHost The maximum number of concurrent requests per host.
+     *                                     Default to the maximum number of concurrent requests.
+     */
+    public static void setMaxConcurrentRequestsPerHost(int maxConcurrentRequestsPerHost) {
+        ConfigurationManager.getInstance().setMaxConcurrentRequestsPerHost(maxConcurrentRequestsPerHost);
+    }
+
+    /**
+     * Retrieves the metrics of the scheduler which executes the requests, such as the queue depth,
+     * the time requests wait before execution and their execution time.
+     *
+     * @return The request scheduler metrics.
+     */
+    public static RequestSchedulerMetrics getRequestSchedulerMetrics() {
+        return RequestSchedulerMetrics.getInstance();
+    }
+
+    /**
+     * Retrieves the state of the circuit breaker of each host which received a request. Requests to a host
+     * fail immediately while its circuit breaker is {@link CircuitBreaker.State#OPEN}.
+     *
+     * @return The circuit breaker state per host.
+     */
+    public static Map<String, CircuitBreaker.State> getCircuitBreakerStates() {
+        return CircuitBreaker.getStates();
+    }
+
     /**
      * Set a user login listener to handle user authentication.
      *
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.foundation;
+
+/**
+ * Defines how the response of a GET request is cached. Responses are cached by URL, scope and user, in
+ * memory and encrypted on disk. Responses are not cached unless the request defines a cache policy with
+ * {@link MASRequest.MASRequestBuilder#cachePolicy(MASCachePolicy)}.
+ * <p>
+ * A cached response is served without contacting the server while it is fresh, as defined by the
+ * Cache-Control max-age of the response or by {@link #MASCachePolicy(long, boolean)}. Once stale, the request
+ * is sent with the If-None-Match and If-Modified-Since headers of the cached response, and the cached response
+ * is served if the server responds with HTTP 304. Responses with Cache-Control no-store are not cached.
+ * <p>
+ * Cached responses are removed on logout and when the device is reset locally. Only responses read with a
+ * buffered response body, such as {@link MASResponseBody#jsonBody()}, are cached.
+ */
+public class MASCachePolicy {
+
+    /**
+     * Use the freshness defined by the Cache-Control max-age of the response.
+     */
+    public static final long SERVER_MAX_AGE = -1;
+
+    /**
+     * Do not cache the response.
+     */
+    public static final MASCachePolicy NONE = new MASCachePolicy(0, false, false);
+
+    /**
+     * Cache the response in memory and on disk, the freshness is defined by the server.
+     */
+    public static final MASCachePolicy DEFAULT = new MASCachePolicy(SERVER_MAX_AGE, true);
+
+    /**
+     * Cache the response in memory and on disk, and revalidate the cached response with the server
+     * for every request.
+     */
+    public static final MASCachePolicy REVALIDATE = new MASCachePolicy(0, true);
+
+    private final boolean enabled;
+    private final long maxAge;
+    private final boolean persistent;
+
+    /**
+     * @param maxAge     The time in milliseconds a cached response is served without revalidation,
+     *                   or {@link #SERVER_MAX_AGE} to use the Cache-Control max-age of the response.
+     * @param persistent True to also keep the response in the encrypted disk cache.
+     */
+    public MASCachePolicy(long maxAge, boolean persistent) {
+        this(maxAge, persistent, true);
+    }
+
+    private MASCachePolicy(long maxAge, boolean persistent, boolean enabled) {
+        if (maxAge < SERVER_MAX_AGE) {
+            throw new IllegalArgumentException("Invalid max age");
+        }
+        this.maxAge = maxAge;
+        this.persistent = persistent;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    public boolean isPersistent() {
+        return persistent;
+    }
+}
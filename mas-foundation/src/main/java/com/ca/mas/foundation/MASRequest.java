@@ -11,6 +11,7 @@ package com.ca.mas.foundation;
 import android.net.Uri;
 
 import com.ca.mas.core.conf.ConfigurationManager;
+import com.ca.mas.core.request.internal.PolicyAwareRequest;
 
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -126,6 +127,8 @@ public interface MASRequest {
         private TimeUnit timeUnit;
 
         private boolean notifyOnCancel = false;
+        private MASRetryPolicy retryPolicy;
+        private MASCachePolicy cachePolicy;
         private boolean sign = false;
         private MASClaims claim;
         private PrivateKey privateKey;
@@ -383,6 +386,30 @@ public interface MASRequest {
             return this;
         }
 
+        /**
+         * Sets the retry policy for this request when it fails with a transient error, such as a connection
+         * timeout or a HTTP 503 response. Use {@link MASRetryPolicy#NONE} to disable retries.
+         *
+         * @param retryPolicy The retry policy
+         * @return The builder
+         */
+        public MASRequestBuilder retryPolicy(MASRetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the cache policy for the response of this request, only the responses of GET requests are cached.
+         * Please refer to {@link MASCachePolicy} for detail.
+         *
+         * @param cachePolicy The cache policy
+         * @return The builder
+         */
+        public MASRequestBuilder cachePolicy(MASCachePolicy cachePolicy) {
+            this.cachePolicy = cachePolicy;
+            return this;
+        }
+
         /**
          * Signs the request with the device registered private key and injects JWT claims based on the user information.
          * This method will use a default value of 5 minutes for the JWS 'exp' claim.
@@ -446,7 +473,7 @@ public interface MASRequest {
                 }
             }
 
-            return new MASRequest() {
+            return new PolicyAwareRequest() {
 
                 @Override
                 public URL getURL() {
@@ -488,6 +515,16 @@ public interface MASRequest {
                     return notifyOnCancel;
                 }
 
+                @Override
+                public MASRetryPolicy getRetryPolicy() {
+                    return retryPolicy;
+                }
+
+                @Override
+                public MASCachePolicy getCachePolicy() {
+                    return cachePolicy;
+                }
+
                 @Override
                 public MASRequestBody getBody() {
                     if (sign && body != null) {
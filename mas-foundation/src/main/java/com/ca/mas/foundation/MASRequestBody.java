@@ -8,31 +8,24 @@
 
 package com.ca.mas.foundation;
 
-import android.net.Uri;
 import android.util.Base64;
 import android.util.Log;
 import android.util.Pair;
 
 import com.ca.mas.core.error.MAGError;
 import com.ca.mas.core.http.ContentType;
-import com.ca.mas.core.util.FileUtils;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URLEncoder;
 import java.security.PrivateKey;
 import java.util.List;
-import java.util.Map;
 
 import static com.ca.mas.core.io.Charsets.UTF8;
 import static com.ca.mas.foundation.MAS.DEBUG;
@@ -306,7 +299,9 @@ public abstract class MASRequestBody {
 
     /**
      * @param multipart The multipart/form-data as request body.
-     * @return A new request with content of a url encoded form.
+     * @param progressListener The {@link MASProgressListener} to receive the upload progress, optional.
+     * @return A new request body with content of a multipart/form-data, the file parts are streamed
+     * from their source while the request is sent.
      */
     public static MASRequestBody multipartBody(final MultiPart multipart, final MASProgressListener progressListener) throws MASException {
         if (multipart == null) {
@@ -314,105 +309,12 @@ public abstract class MASRequestBody {
         }
 
         try {
-            return new MASRequestBody() {
-
-                public final String twoHyphens = "--";
-                public final String lineEnd = "\r\n";
-                public String multipart_separator = twoHyphens + MASConstants.MAS_BOUNDARY + lineEnd;
-                private final byte[] content = getContent();
-
-                private byte[] getContent() throws MASException, IOException {
-                    StringBuilder formParams = new StringBuilder();
-                    ByteArrayOutputStream output = new ByteArrayOutputStream();
-                    if (!multipart.getFormFields().isEmpty()) {
-
-                        for (Map.Entry<String, String> entry : multipart.getFormFields().entrySet()) {
-                            formParams.append(multipart_separator);
-                            formParams.append("Content-Disposition: form-data; name=\"" + entry.getKey() + "\"" + lineEnd);
-                            formParams.append(lineEnd);
-                            formParams.append(entry.getValue());
-                            formParams.append(lineEnd);
-                        }
-                        output.write(formParams.toString().getBytes());
-                    }
-
-                    for (MASFileObject fileObject : multipart.getFilePart()) {
-                        byte[] bytes = fileObject.getFileBytes();
-                        Uri uri = fileObject.getFileUri();
-                        try {
-
-                            if( bytes == null) {
-                                if ( uri != null) {
-                                    bytes = FileUtils.getBytesFromUri(uri);
-                                } else if (bytes == null) {
-                                    bytes = FileUtils.getBytesFromPath(fileObject.getFilePath());
-                                }
-                            }
-                            output.write(multipart_separator.getBytes());
-                            output.write(("Content-Disposition: form-data; name=\"" + fileObject.getFieldName() + "\"; filename=\"" + fileObject.getFileName() + "\"" + lineEnd).getBytes());
-                            output.write(("Content-Type: " + fileObject.getFileType() + lineEnd).getBytes());
-                            output.write(("Content-Transfer-Encoding: binary" + lineEnd).getBytes());
-                            output.write((lineEnd).getBytes());
-                            output.write(bytes);
-                            output.write(lineEnd.getBytes());
-                            output.write((lineEnd).getBytes());
-
-                        } catch (IOException e) {
-                            progressListener.onError(new MAGError(e));
-                            throw new MASException(e);
-                        }
-
-                    }
-                    output.write((twoHyphens + MASConstants.MAS_BOUNDARY + twoHyphens + lineEnd).getBytes());
-
-                    return output.toByteArray();
-                }
-
-                @Override
-                public ContentType getContentType() {
-                    return ContentType.MULTIPART_FORM_DATA;
-                }
-
-                @Override
-                public long getContentLength() {
-                    return content.length;
-                }
-
-                @Override
-                public void write(OutputStream outputStream) throws IOException {
-
-                    InputStream stream = new ByteArrayInputStream(content);
-
-                    byte buf[] = new byte[1024];
-                    int progress = 0;
-                    int bytesRead = 0;
-                    BufferedInputStream bufInput = new BufferedInputStream(stream);
-
-                    while ((bytesRead = bufInput.read(buf)) != -1) {
-                        // write output
-                        outputStream.write(buf, 0, bytesRead);
-                        outputStream.flush();
-                        progress += bytesRead;
-                        if (progressListener != null) {
-                            progressListener.onProgress("" + (int) ((progress * 100) / content.length)); // sending progress percent to publishProgress
-                        }
-                    }
-                    if (progressListener != null) {
-                        progressListener.onComplete();
-                    }
-                    outputStream.close();
-
-                }
-            };
-        } catch (MASException | IOException e) {
+            return new MultiPartRequestBody(multipart, progressListener);
+        } catch (MASException e) {
             if (progressListener != null) {
                 progressListener.onError(new MAGError(e));
             }
-            throw new MASException(e);
+            throw e;
         }
     }
-
-
-
-
 }
@@ -8,21 +8,29 @@
 
 package com.ca.mas.foundation;
 
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 
+import com.ca.mas.core.error.MAGError;
 import com.ca.mas.core.io.IoUtils;
+import com.ca.mas.core.io.JsonStreamParser;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URLConnection;
+import java.nio.charset.Charset;
 
 import static com.ca.mas.foundation.MAS.DEBUG;
 import static com.ca.mas.foundation.MAS.TAG;
@@ -39,6 +47,8 @@ public class MASResponseBody<T> {
      */
     private static final int DEFAULT_MAX_RESPONSE_SIZE = 10485760;
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     /**
      * The response Content type
      */
@@ -72,7 +82,7 @@ public class MASResponseBody<T> {
                     if (buffer == null || buffer.length == 0) {
                         return null;
                     }
-                    retValue = new String(buffer);
+                    retValue = new String(buffer, getCharset());
                     return (T) new JSONObject(retValue);
                 } catch (JSONException e) {
 
@@ -87,7 +97,7 @@ public class MASResponseBody<T> {
                 if (buffer == null || buffer.length == 0) {
                     return (T) "";
                 }
-                return (T) new String(buffer);
+                return (T) new String(buffer, getCharset());
             }
         }
         return (T) buffer;
@@ -121,6 +131,27 @@ public class MASResponseBody<T> {
         return contentType;
     }
 
+    /**
+     * Returns the charset specified by the content-type response header field, default to UTF-8.
+     *
+     * @return The charset of the response content.
+     */
+    public Charset getCharset() {
+        if (contentType != null) {
+            for (String param : contentType.split(";")) {
+                String[] pair = param.trim().split("=", 2);
+                if (pair.length == 2 && "charset".equalsIgnoreCase(pair[0].trim())) {
+                    try {
+                        return Charset.forName(pair[1].trim().replace("\"", ""));
+                    } catch (IllegalArgumentException e) {
+                        if (DEBUG) Log.w(TAG, "Unsupported charset " + pair[1]);
+                    }
+                }
+            }
+        }
+        return UTF_8;
+    }
+
     /**
      * Default implementation of reading the response body. Read the http response as stream and buffer
      * the content as byte[].
@@ -136,74 +167,52 @@ public class MASResponseBody<T> {
         if (inputStream == null) {
             inputStream = httpURLConnection.getInputStream();
         }
+        read(inputStream);
+    }
+
+    /**
+     * Read the response content from a cached response, see {@link MASCachePolicy}.
+     *
+     * @param contentType The content type of the cached response.
+     * @param content     The content of the cached response.
+     * @throws IOException if an IO exception occurs during the reading of the content.
+     */
+    public void read(String contentType, byte[] content) throws IOException {
+        this.contentType = contentType;
+        this.contentLength = content.length;
+        read(new ByteArrayInputStream(content));
+    }
+
+    /**
+     * @return True if the response content is buffered and available with {@link #getRawContent()}, only
+     * buffered responses are cached. Response bodies which process the content as it is received return false.
+     */
+    public boolean isBuffered() {
+        return true;
+    }
+
+    /**
+     * Read the response content. The default implementation buffers the content as byte[], response bodies
+     * which process the content as it is received override this method.
+     *
+     * @param inputStream The response content stream, it is closed by the caller.
+     * @throws IOException if an IO exception occurs during the reading of the input stream.
+     */
+    protected void read(InputStream inputStream) throws IOException {
         buffer = IoUtils.slurpStream(inputStream, DEFAULT_MAX_RESPONSE_SIZE);
 
         if (DEBUG) {
             String s = "";
             try {
-                s = new String(buffer);
+                s = new String(buffer, getCharset());
                 JSONObject j = new JSONObject(s);
                 Log.d(TAG, String.format("Response content: %s", j.toString(4)));
             } catch (JSONException ignore) {
             }
             Log.d(TAG, String.format("Response content: %s", s));
         }
-
     }
 
-    /**
-     * Immplementation for reading the response body containing a file. Read the http response as stream write into a file.
-     *
-     * @param httpURLConnection The HttpURLConnection to communicate with MAG
-     * @throws IOException if an IO exception occurs during the reading and storing the input stream.
-     */
-
-    /* public String read(HttpURLConnection httpURLConnection, MASRequest request) throws IOException {
-        this.contentType = httpURLConnection.getContentType();
-        this.contentLength = httpURLConnection.getContentLength();
-
-        if(contentLength <= 0){
-            throw new IOException("Content lenght : "+ contentLength);
-        }
-        MASFileObject downloadFile = request.getDownloadFile();
-        String fileName = downloadFile.getFileName();
-
-        file = new File(downloadFile.getFilePath(), fileName);
-
-
-        InputStream input = httpURLConnection.getInputStream();
-
-        // Output stream to write file
-        OutputStream output = new FileOutputStream(file);
-
-        byte data[] = new byte[4069];
-
-        long total = 0;
-
-        int count=0;
-        while ((count = input.read(data)) != -1) {
-            total += count;
-            // publishing the progress....
-            int progress = (int) ((total * 100) / contentLength);
-            if(request.getProgressListener() != null) {
-                request.getProgressListener().onProgress("" + progress);
-            }
-            // writing data to file
-            output.write(data, 0, count);
-        }
-        // flushing output
-        output.flush();
-        // closing streams
-        output.close();
-        input.close();
-        if(request.getProgressListener() != null) {
-            request.getProgressListener().onComplete();
-        }
-        return "Downloaded at: " + file.getAbsolutePath();
-    }*/
-
-
-
     /**
      * @return Return a new ResponseBody with byte[] content.
      */
@@ -231,7 +240,7 @@ public class MASResponseBody<T> {
                     return new JSONObject();
                 }
                 try {
-                    return new JSONObject(new String(buffer));
+                    return new JSONObject(new String(buffer, getCharset()));
                 } catch (JSONException e) {
                     throw new RuntimeException(e);
                 }
@@ -252,7 +261,7 @@ public class MASResponseBody<T> {
                     return new JSONArray();
                 }
                 try {
-                    return new JSONArray(new String(buffer));
+                    return new JSONArray(new String(buffer, getCharset()));
                 } catch (JSONException e) {
                     throw new RuntimeException(e);
                 }
@@ -273,26 +282,217 @@ public class MASResponseBody<T> {
                 if (buffer == null || buffer.length == 0) {
                     return "";
                 }
-                return new String(buffer);
+                return new String(buffer, getCharset());
             }
         };
     }
 
     /**
+     * Handles the response content as it is received.
+     *
+     * @param <T> The type of the result.
+     */
+    public interface StreamHandler<T> {
+
+        /**
+         * Consume the response content, the stream is only valid until this method returns.
+         * Use {@link java.nio.channels.Channels#newChannel(InputStream)} to read the content with a
+         * {@link java.nio.channels.ReadableByteChannel}.
+         *
+         * @param inputStream The response content stream.
+         * @param charset     The charset of the response content.
+         * @return The result returned by {@link MASResponseBody#getContent()}.
+         * @throws IOException if an IO exception occurs during the reading of the input stream.
+         */
+        T handle(InputStream inputStream, Charset charset) throws IOException;
+    }
+
+    /**
+     * Returns a ResponseBody which hands the response content stream to the handler instead of buffering it,
+     * the response content is not limited in size. The handler is invoked on the thread executing the request.
+     *
+     * @param handler The handler to consume the response content.
+     * @return Return a new ResponseBody with the content returned by the handler.
+     */
+    public static <T> MASResponseBody<T> streamBody(final StreamHandler<T> handler) {
+
+        return new MASResponseBody<T>() {
+
+            private T content;
+
+            @Override
+            protected void read(InputStream inputStream) throws IOException {
+                content = handler.handle(inputStream, getCharset());
+            }
+
+            @Override
+            public T getContent() {
+                return content;
+            }
+
+            @Override
+            public boolean isBuffered() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a ResponseBody which writes the response content to a file as it is received,
+     * the response content is not limited in size.
+     *
+     * @param file             The file to write the response content to.
+     * @param progressListener The listener notified of the download progress, may be null. The progress
+     *                         is only notified when the server provides the content length.
      * @return Return a new ResponseBody with {@link File} content.
      */
-   /* public static MASResponseBody<File> fileBody() {
+    public static MASResponseBody<File> fileBody(final File file, final MASProgressListener progressListener) {
 
         return new MASResponseBody<File>() {
 
             @Override
-            public File getContent() {
-                if (file == null || file.length() == 0) {
-                    return null;
+            protected void read(InputStream inputStream) throws IOException {
+                this.file = file;
+                OutputStream output = null;
+                try {
+                    output = new FileOutputStream(file);
+                    byte[] data = new byte[8192];
+                    long total = 0;
+                    int lastProgress = -1;
+                    int count;
+                    while ((count = inputStream.read(data)) != -1) {
+                        output.write(data, 0, count);
+                        total += count;
+                        if (progressListener != null && getContentLength() > 0) {
+                            int progress = (int) ((total * 100) / getContentLength());
+                            if (progress != lastProgress) {
+                                lastProgress = progress;
+                                progressListener.onProgress(Integer.toString(progress));
+                            }
+                        }
+                    }
+                    output.flush();
+                } catch (IOException e) {
+                    if (progressListener != null) {
+                        progressListener.onError(new MAGError(e));
+                    }
+                    throw e;
+                } finally {
+                    IoUtils.closeQuietly(output);
+                }
+                if (progressListener != null) {
+                    progressListener.onComplete();
                 }
+            }
+
+            @Override
+            public File getContent() {
                 return file;
             }
+
+            @Override
+            public boolean isBuffered() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Handles the JSON response content token by token as it is received.
+     *
+     * @param <T> The type of the result.
+     */
+    public interface JsonHandler<T> {
+
+        /**
+         * Consume the JSON response content, the reader is only valid until this method returns.
+         *
+         * @param reader The reader of the response content, positioned before the first token.
+         * @return The result returned by {@link MASResponseBody#getContent()}.
+         * @throws IOException if an IO exception occurs or the content is not valid JSON.
+         */
+        T handle(JsonReader reader) throws IOException;
+    }
+
+    /**
+     * Returns a ResponseBody which hands a {@link JsonReader} on the response content to the handler, with the
+     * charset of the response. The content is neither buffered nor decoded to a tree, so that a large JSON
+     * response can be processed with a memory use independent of its size. The handler is invoked on the
+     * thread executing the request.
+     *
+     * @param handler The handler to consume the JSON response content.
+     * @return Return a new ResponseBody with the content returned by the handler.
+     */
+    public static <T> MASResponseBody<T> jsonReaderBody(final JsonHandler<T> handler) {
+
+        return new MASResponseBody<T>() {
+
+            private T content;
+
+            @Override
+            protected void read(InputStream inputStream) throws IOException {
+                JsonReader reader = new JsonReader(new InputStreamReader(inputStream, getCharset()));
+                try {
+                    content = handler.handle(reader);
+                } catch (IllegalStateException e) {
+                    throw new IOException("Invalid JSON response", e);
+                }
+            }
+
+            @Override
+            public T getContent() {
+                return content;
+            }
+
+            @Override
+            public boolean isBuffered() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a ResponseBody which decodes the JSON response content as it is received, with the charset
+     * of the response. Unlike {@link #jsonBody()}, the raw response content is not buffered before it is parsed
+     * and is not limited in size, but the decoded {@link JSONObject} or {@link JSONArray} is held in memory as a
+     * whole. This is a convenience to parse from the stream, it does not reduce the memory used by a large
+     * response, use {@link #jsonReaderBody(JsonHandler)} to process the content without decoding it to a tree.
+     * The content is either a {@link JSONObject} or a {@link JSONArray}, or null if the response is empty.
+     *
+     * @return Return a new ResponseBody with {@link JSONObject} or {@link JSONArray} content.
+     */
+    public static MASResponseBody<Object> streamingJsonBody() {
+
+        return new MASResponseBody<Object>() {
+
+            private Object content;
+
+            @Override
+            protected void read(InputStream inputStream) throws IOException {
+                JsonReader reader = new JsonReader(new InputStreamReader(inputStream, getCharset()));
+                try {
+                    if (reader.peek() == JsonToken.END_DOCUMENT) {
+                        return;
+                    }
+                    content = JsonStreamParser.parse(reader);
+                } catch (JSONException | IllegalStateException e) {
+                    throw new IOException("Invalid JSON response", e);
+                } catch (EOFException e) {
+                    //Empty response
+                    content = null;
+                }
+            }
+
+            @Override
+            public Object getContent() {
+                return content;
+            }
+
+            @Override
+            public boolean isBuffered() {
+                return false;
+            }
         };
-    }*/
+    }
 
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.foundation;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+import javax.net.ssl.SSLException;
+
+/**
+ * Defines how a request which failed with a transient error is retried. A transient error is a network
+ * failure such as a connection or read timeout, or a HTTP 429, 502, 503 or 504 response.
+ * <p>
+ * Retries are delayed with exponential backoff and full jitter, a Retry-After response header is honored.
+ * Only idempotent requests (GET, PUT and DELETE) are retried, unless the connection to the server could not
+ * be established or {@link #MASRetryPolicy(int, long, long, boolean)} allows non idempotent retries.
+ * <p>
+ * The policy can be set per request with {@link MASRequest.MASRequestBuilder#retryPolicy(MASRetryPolicy)},
+ * otherwise the policy defined by "mag.mobile_sdk.retry" in the msso_config.json is used.
+ */
+public class MASRetryPolicy {
+
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final long DEFAULT_INITIAL_BACKOFF = 200;
+    public static final long DEFAULT_MAX_BACKOFF = 10000;
+
+    /**
+     * Do not retry requests which failed with a transient error.
+     */
+    public static final MASRetryPolicy NONE = new MASRetryPolicy(0, 0, 0);
+
+    private static final Random random = new Random();
+
+    private final int maxRetries;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final boolean retryNonIdempotent;
+
+    /**
+     * @param maxRetries     The maximum number of retries.
+     * @param initialBackoff The backoff in milliseconds before the first retry, doubled for each retry.
+     * @param maxBackoff     The maximum backoff in milliseconds. A request is not retried if the server
+     *                       asks to retry after a longer delay.
+     */
+    public MASRetryPolicy(int maxRetries, long initialBackoff, long maxBackoff) {
+        this(maxRetries, initialBackoff, maxBackoff, false);
+    }
+
+    /**
+     * @param maxRetries         The maximum number of retries.
+     * @param initialBackoff     The backoff in milliseconds before the first retry, doubled for each retry.
+     * @param maxBackoff         The maximum backoff in milliseconds. A request is not retried if the server
+     *                           asks to retry after a longer delay.
+     * @param retryNonIdempotent True to also retry POST and PATCH requests.
+     */
+    public MASRetryPolicy(int maxRetries, long initialBackoff, long maxBackoff, boolean retryNonIdempotent) {
+        if (maxRetries < 0 || initialBackoff < 0 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("Invalid retry policy");
+        }
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retryNonIdempotent = retryNonIdempotent;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public boolean isRetryNonIdempotent() {
+        return retryNonIdempotent;
+    }
+
+    /**
+     * @param request The request.
+     * @param retries The number of retries already performed.
+     * @param error   The error of the last attempt.
+     * @return True if the request can be retried after the error.
+     */
+    public boolean isRetryable(MASRequest request, int retries, IOException error) {
+        if (retries >= maxRetries || !isTransient(error)) {
+            return false;
+        }
+        //The request has not been sent if the connection could not be established
+        return error instanceof ConnectException || isIdempotent(request);
+    }
+
+    /**
+     * @param request      The request.
+     * @param retries      The number of retries already performed.
+     * @param responseCode The HTTP status code of the last attempt.
+     * @return True if the request can be retried after the response.
+     */
+    public boolean isRetryable(MASRequest request, int retries, int responseCode) {
+        return retries < maxRetries && isTransient(responseCode) && isIdempotent(request);
+    }
+
+    /**
+     * @param retries    The number of retries already performed.
+     * @param retryAfter The delay in milliseconds requested by the server with the Retry-After header, or -1.
+     * @return The delay in milliseconds before the next retry, or -1 if the request should not be retried.
+     */
+    public long getBackoff(int retries, long retryAfter) {
+        if (retryAfter >= 0) {
+            return retryAfter <= maxBackoff ? retryAfter : -1;
+        }
+        long backoff = Math.min(maxBackoff, initialBackoff << Math.min(retries, 30));
+        //Full jitter, spread the retries of the clients over the backoff window
+        return backoff == 0 ? 0 : (long) (random.nextDouble() * backoff);
+    }
+
+    /**
+     * @return True if the HTTP status code indicates that the server is temporarily unavailable.
+     */
+    public static boolean isTransient(int responseCode) {
+        return responseCode == 429 || responseCode == 502 || responseCode == 503 || responseCode == 504;
+    }
+
+    /**
+     * @return True if the error is a network failure which may succeed when retried.
+     */
+    public static boolean isTransient(IOException error) {
+        if (error instanceof SSLException) {
+            return false;
+        }
+        if (error instanceof InterruptedIOException) {
+            return error instanceof SocketTimeoutException;
+        }
+        return error instanceof SocketException
+                || error instanceof NoRouteToHostException
+                || error instanceof EOFException;
+    }
+
+    private boolean isIdempotent(MASRequest request) {
+        if (retryNonIdempotent) {
+            return true;
+        }
+        String method = request.getMethod();
+        return MASRequest.Method.GET.name().equals(method)
+                || MASRequest.Method.PUT.name().equals(method)
+                || MASRequest.Method.DELETE.name().equals(method);
+    }
+}
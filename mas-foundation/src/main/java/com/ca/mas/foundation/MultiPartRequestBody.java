@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.foundation;
+
+import android.net.Uri;
+
+import com.ca.mas.core.error.MAGError;
+import com.ca.mas.core.http.ContentType;
+import com.ca.mas.core.util.FileUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.ca.mas.core.io.Charsets.UTF8;
+
+/**
+ * A multipart/form-data request body which streams the file parts from their source to the connection.
+ * <p>
+ * The content length is computed from the file sizes, so that the connection uses fixed length streaming
+ * and the body is never buffered in memory. If the size of a file part is unknown, the content length is
+ * -1 and the body is sent with chunked transfer encoding.
+ */
+class MultiPartRequestBody extends MASRequestBody {
+
+    private static final String TWO_HYPHENS = "--";
+    private static final String LINE_END = "\r\n";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final List<Part> parts = new ArrayList<>();
+    private final MASProgressListener progressListener;
+    private final long contentLength;
+
+    /**
+     * A part of the body, the part header followed by the part content.
+     */
+    private static class Part {
+        private final byte[] header;
+        private final MASFileObject fileObject;
+        private final long length;
+
+        Part(byte[] header, MASFileObject fileObject, long length) {
+            this.header = header;
+            this.fileObject = fileObject;
+            this.length = length;
+        }
+    }
+
+    MultiPartRequestBody(MultiPart multipart, MASProgressListener progressListener) throws MASException {
+        this.progressListener = progressListener;
+        String separator = TWO_HYPHENS + MASConstants.MAS_BOUNDARY + LINE_END;
+
+        if (!multipart.getFormFields().isEmpty()) {
+            StringBuilder formParams = new StringBuilder();
+            for (Map.Entry<String, String> entry : multipart.getFormFields().entrySet()) {
+                formParams.append(separator);
+                formParams.append("Content-Disposition: form-data; name=\"").append(entry.getKey()).append("\"").append(LINE_END);
+                formParams.append(LINE_END);
+                formParams.append(entry.getValue());
+                formParams.append(LINE_END);
+            }
+            parts.add(new Part(formParams.toString().getBytes(UTF8), null, 0));
+        }
+
+        for (MASFileObject fileObject : multipart.getFilePart()) {
+            String header = separator +
+                    "Content-Disposition: form-data; name=\"" + fileObject.getFieldName() + "\"; filename=\"" + fileObject.getFileName() + "\"" + LINE_END +
+                    "Content-Type: " + fileObject.getFileType() + LINE_END +
+                    "Content-Transfer-Encoding: binary" + LINE_END +
+                    LINE_END;
+            parts.add(new Part(header.getBytes(UTF8), fileObject, getLength(fileObject)));
+            parts.add(new Part((LINE_END + LINE_END).getBytes(UTF8), null, 0));
+        }
+        parts.add(new Part((TWO_HYPHENS + MASConstants.MAS_BOUNDARY + TWO_HYPHENS + LINE_END).getBytes(UTF8), null, 0));
+
+        long length = 0;
+        for (Part part : parts) {
+            if (part.length < 0) {
+                length = -1;
+                break;
+            }
+            length += part.header.length + part.length;
+        }
+        contentLength = length;
+    }
+
+    @Override
+    public ContentType getContentType() {
+        return ContentType.MULTIPART_FORM_DATA;
+    }
+
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long written = 0;
+        int reported = -1;
+        try {
+            for (Part part : parts) {
+                outputStream.write(part.header);
+                written += part.header.length;
+                if (part.fileObject == null) {
+                    continue;
+                }
+                InputStream inputStream = open(part.fileObject);
+                try {
+                    int count;
+                    while ((count = inputStream.read(buffer)) != -1) {
+                        outputStream.write(buffer, 0, count);
+                        written += count;
+                        reported = onProgress(written, reported);
+                    }
+                } finally {
+                    inputStream.close();
+                }
+            }
+            outputStream.flush();
+        } catch (IOException e) {
+            if (progressListener != null) {
+                progressListener.onError(new MAGError(e));
+            }
+            throw e;
+        }
+        onProgress(written, reported);
+        if (progressListener != null) {
+            progressListener.onComplete();
+        }
+        outputStream.close();
+    }
+
+    /**
+     * Report the progress percent when it changes.
+     *
+     * @return The last reported percent.
+     */
+    private int onProgress(long written, int reported) {
+        if (progressListener == null || contentLength <= 0) {
+            return reported;
+        }
+        int percent = (int) (written * 100 / contentLength);
+        if (percent != reported) {
+            progressListener.onProgress(String.valueOf(percent));
+        }
+        return percent;
+    }
+
+    private static long getLength(MASFileObject fileObject) throws MASException {
+        if (fileObject.getFileBytes() != null) {
+            return fileObject.getFileBytes().length;
+        }
+        Uri uri = fileObject.getFileUri();
+        if (uri != null) {
+            return FileUtils.getLengthFromUri(uri);
+        }
+        File file = new File(fileObject.getFilePath());
+        if (!file.isFile()) {
+            throw new MASException(new FileNotFoundException(fileObject.getFilePath()));
+        }
+        return file.length();
+    }
+
+    private static InputStream open(MASFileObject fileObject) throws IOException {
+        if (fileObject.getFileBytes() != null) {
+            return new ByteArrayInputStream(fileObject.getFileBytes());
+        }
+        Uri uri = fileObject.getFileUri();
+        if (uri != null) {
+            InputStream inputStream = MAS.getContext().getContentResolver().openInputStream(uri);
+            if (inputStream == null) {
+                throw new FileNotFoundException(uri.toString());
+            }
+            return inputStream;
+        }
+        return new FileInputStream(fileObject.getFilePath());
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+
+package com.ca.mas.messaging;
+
+import com.ca.mas.core.io.Charsets;
+
+import java.util.Arrays;
+
+/**
+ * <p>Compact binary envelope of a {@link MASMessage}, an alternative to the JSON envelope which does not
+ * Base64 encode the payload.</p>
+ * <pre>
+ * magic (2 bytes: 0xCA 0x4D) | version (1 byte) | flags (1 byte, reserved)
+ * sent time (8 bytes)
+ * version, sender id, sender type, display name, content type, content encoding, topic
+ *     (each an unsigned 2 bytes length followed by the UTF-8 bytes, 0xFFFF for null)
+ * payload length (4 bytes) | payload
+ * </pre>
+ * <p>All the numbers are big endian. An envelope is only accepted if its lengths match the total size exactly,
+ * so that a raw payload which starts with the magic bytes is not mistaken for an envelope.</p>
+ */
+class BinaryEnvelope {
+
+    static final byte MAGIC_0 = (byte) 0xCA;
+    static final byte MAGIC_1 = (byte) 0x4D;
+    static final byte VERSION = 1;
+
+    private static final int HEADER_SIZE = 4;
+    private static final int NULL_STRING = 0xFFFF;
+    private static final int STRING_FIELDS = 7;
+
+    private BinaryEnvelope() {
+    }
+
+    /**
+     * @return True if the data starts with the binary envelope header.
+     */
+    static boolean isEnvelope(byte[] data) {
+        return data != null && data.length >= HEADER_SIZE
+                && data[0] == MAGIC_0 && data[1] == MAGIC_1 && data[2] == VERSION;
+    }
+
+    /**
+     * @param fields The version, sender id, sender type, display name, content type, content encoding and topic.
+     */
+    static byte[] encode(long sentTime, byte[] payload, String... fields) {
+        byte[][] strings = new byte[STRING_FIELDS][];
+        for (int i = 0; i < STRING_FIELDS; i++) {
+            strings[i] = bytes(fields[i]);
+        }
+
+        int size = HEADER_SIZE + 8 + STRING_FIELDS * 2 + 4 + payload.length;
+        for (byte[] string : strings) {
+            if (string != null) {
+                if (string.length >= NULL_STRING) {
+                    throw new MASMessageException("Message attribute too long.");
+                }
+                size += string.length;
+            }
+        }
+
+        byte[] data = new byte[size];
+        data[0] = MAGIC_0;
+        data[1] = MAGIC_1;
+        data[2] = VERSION;
+        data[3] = 0;
+        int pos = writeLong(data, HEADER_SIZE, sentTime);
+        for (byte[] string : strings) {
+            if (string == null) {
+                pos = writeShort(data, pos, NULL_STRING);
+            } else {
+                pos = writeShort(data, pos, string.length);
+                System.arraycopy(string, 0, data, pos, string.length);
+                pos += string.length;
+            }
+        }
+        pos = writeInt(data, pos, payload.length);
+        System.arraycopy(payload, 0, data, pos, payload.length);
+        return data;
+    }
+
+    /**
+     * Populate the message from the envelope.
+     *
+     * @return False if the data is not a valid envelope, the message is then left unchanged.
+     */
+    static boolean decode(byte[] data, MASMessage message) {
+        if (!isEnvelope(data)) {
+            return false;
+        }
+        int pos = HEADER_SIZE;
+        if (data.length < pos + 8) {
+            return false;
+        }
+        long sentTime = readLong(data, pos);
+        pos += 8;
+
+        String[] strings = new String[STRING_FIELDS];
+        for (int i = 0; i < STRING_FIELDS; i++) {
+            if (data.length < pos + 2) {
+                return false;
+            }
+            int length = readShort(data, pos);
+            pos += 2;
+            if (length == NULL_STRING) {
+                continue;
+            }
+            if (data.length < pos + length) {
+                return false;
+            }
+            strings[i] = new String(data, pos, length, Charsets.UTF8);
+            pos += length;
+        }
+
+        if (data.length < pos + 4) {
+            return false;
+        }
+        int payloadLength = readInt(data, pos);
+        pos += 4;
+        if (payloadLength < 0 || data.length != pos + payloadLength) {
+            return false;
+        }
+
+        message.setSentTime(sentTime);
+        message.setVersion(strings[0]);
+        message.setSenderId(strings[1]);
+        message.setSenderType(strings[2]);
+        message.setDisplayName(strings[3]);
+        message.setContentType(strings[4]);
+        message.setContentEncoding(strings[5]);
+        message.setTopic(strings[6]);
+        message.setPayload(Arrays.copyOfRange(data, pos, data.length));
+        return true;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(Charsets.UTF8);
+    }
+
+    private static int writeShort(byte[] data, int pos, int value) {
+        data[pos] = (byte) (value >>> 8);
+        data[pos + 1] = (byte) value;
+        return pos + 2;
+    }
+
+    private static int writeInt(byte[] data, int pos, int value) {
+        for (int i = 3; i >= 0; i--) {
+            data[pos++] = (byte) (value >>> (i * 8));
+        }
+        return pos;
+    }
+
+    private static int writeLong(byte[] data, int pos, long value) {
+        for (int i = 7; i >= 0; i--) {
+            data[pos++] = (byte) (value >>> (i * 8));
+        }
+        return pos;
+    }
+
+    private static int readShort(byte[] data, int pos) {
+        return ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] data, int pos) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (data[pos + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static long readLong(byte[] data, int pos) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data[pos + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -14,6 +14,9 @@ import android.os.Parcelable;
 import android.text.TextUtils;
 import android.util.Base64;
 
+import androidx.annotation.NonNull;
+
+import com.ca.mas.core.io.Charsets;
 import com.ca.mas.foundation.FoundationConsts;
 import com.ca.mas.foundation.MASUser;
 
@@ -159,25 +162,115 @@ public class MASMessage implements MASPayload, Parcelable {
 
     public void createMASMessageFromJSONString(String jsonStr) throws MASMessageException {
         try {
-            JSONObject jobj = new JSONObject(jsonStr);
-            mVersion = jobj.optString(MessagingConsts.KEY_VERSION, MessagingConsts.DEFAULT_VERSION);
-            mSenderId = jobj.optString(MessagingConsts.KEY_SENDER_ID);
-            mSenderType = jobj.optString(MessagingConsts.KEY_SENDER_TYPE);
-            if (!TextUtils.isEmpty(mSenderType)) {
-                mSenderType = mSenderType.toUpperCase();
+            if (!readJSON(new JSONObject(jsonStr))) {
+                throw new MASMessageException("Invalid message, " + MessagingConsts.KEY_SENT_TIME
+                        + " or " + MessagingConsts.KEY_PAYLOAD + " is missing or invalid.");
             }
-            mDisplayName = jobj.optString(MessagingConsts.KEY_DISPLAY_NAME);
-            mSentTime = jobj.getLong(MessagingConsts.KEY_SENT_TIME);
-            mContentType = jobj.optString(MessagingConsts.KEY_CONTENT_TYPE);
-            mContentEncoding = jobj.optString(MessagingConsts.KEY_CONTENT_ENCODING, FoundationConsts.ENC_UTF8);
-            String payloadBefore = jobj.optString(MessagingConsts.KEY_PAYLOAD, FoundationConsts.EMPTY);
-            mPayload = Base64.decode(payloadBefore.getBytes(), Base64.NO_WRAP);
-            mTopic = jobj.optString(MessagingConsts.KEY_TOPIC);
         } catch (JSONException je) {
             throw new MASMessageException(je);
         }
     }
 
+    /**
+     * Populate the message from the bytes received from the message broker. The format of the bytes is sniffed
+     * from their first bytes, without exception: the binary envelope created with
+     * {@link #createBinaryFromMASMessage()}, the JSON envelope created with {@link #createJSONStringFromMASMessage(Context)},
+     * otherwise the bytes are the raw payload of the message.
+     *
+     * @param data The bytes of the message.
+     */
+    public void createMASMessageFromBytes(@NonNull byte[] data) {
+        if (BinaryEnvelope.isEnvelope(data)) {
+            if (BinaryEnvelope.decode(data, this)) {
+                return;
+            }
+        } else if (isJSONObject(data)) {
+            try {
+                if (readJSON(new JSONObject(new String(data, Charsets.UTF8)))) {
+                    return;
+                }
+            } catch (JSONException ignore) {
+                //Not a JSON envelope, the bytes are the payload
+            }
+        }
+        mPayload = data;
+    }
+
+    /**
+     * @return False if the JSON object is not a message, the message is then left unchanged.
+     */
+    private boolean readJSON(JSONObject jobj) {
+        long sentTime = jobj.optLong(MessagingConsts.KEY_SENT_TIME, Long.MIN_VALUE);
+        if (sentTime == Long.MIN_VALUE) {
+            return false;
+        }
+        byte[] payload;
+        try {
+            String payloadBefore = jobj.optString(MessagingConsts.KEY_PAYLOAD, FoundationConsts.EMPTY);
+            payload = Base64.decode(payloadBefore.getBytes(), Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        mVersion = jobj.optString(MessagingConsts.KEY_VERSION, MessagingConsts.DEFAULT_VERSION);
+        mSenderId = jobj.optString(MessagingConsts.KEY_SENDER_ID);
+        mSenderType = jobj.optString(MessagingConsts.KEY_SENDER_TYPE);
+        if (!TextUtils.isEmpty(mSenderType)) {
+            mSenderType = mSenderType.toUpperCase();
+        }
+        mDisplayName = jobj.optString(MessagingConsts.KEY_DISPLAY_NAME);
+        mSentTime = sentTime;
+        mContentType = jobj.optString(MessagingConsts.KEY_CONTENT_TYPE);
+        mContentEncoding = jobj.optString(MessagingConsts.KEY_CONTENT_ENCODING, FoundationConsts.ENC_UTF8);
+        mPayload = payload;
+        mTopic = jobj.optString(MessagingConsts.KEY_TOPIC);
+        return true;
+    }
+
+    /**
+     * @return True if the first non whitespace byte opens a JSON object.
+     */
+    private static boolean isJSONObject(byte[] data) {
+        for (byte b : data) {
+            if (b == '{') {
+                return true;
+            }
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Create the compact binary envelope of the message, an alternative to
+     * {@link #createJSONStringFromMASMessage(Context)} which does not Base64 encode the payload. The envelope is
+     * decoded with {@link #createMASMessageFromBytes(byte[])}.
+     *
+     * @return The binary envelope of the message.
+     * @throws MASMessageException If the payload is empty.
+     */
+    public byte[] createBinaryFromMASMessage() throws MASMessageException {
+        byte[] payload = getPayload();
+        if (payload == null || payload.length == 0) {
+            throw new MASMessageException("Parameter cannot be empty or null.");
+        }
+        String id = getSenderId();
+        String senderType = getSenderType();
+        String dispName = getDisplayName();
+        String contentType = getContentType();
+        String contentEnc = getContentEncoding();
+        long sentTime = getSentTime();
+        return BinaryEnvelope.encode(sentTime == 0 ? System.currentTimeMillis() : sentTime,
+                payload,
+                TextUtils.isEmpty(getVersion()) ? MessagingConsts.DEFAULT_VERSION : getVersion(),
+                id,
+                (TextUtils.isEmpty(senderType) ? MessagingConsts.DEFAULT_SENDER_TYPE : senderType).toUpperCase(),
+                TextUtils.isEmpty(dispName) ? id : dispName,
+                TextUtils.isEmpty(contentType) ? MessagingConsts.DEFAULT_TEXT_PLAIN_CONTENT_TYPE : contentType,
+                TextUtils.isEmpty(contentEnc) ? MessagingConsts.DEFAULT_BASE64_ENCODING : contentEnc,
+                getTopic());
+    }
+
     @Override
     public String createJSONStringFromMASMessage(Context context) throws MASMessageException {
         JSONObject jobj = new JSONObject();
@@ -70,6 +70,17 @@ public interface MASMessenger {
      */
     void sendMessage(MASMessage message, MASGroup group,String topic, MASCallback<Void> callback);
 
+    /**
+     * This method sends a message from the current user to each member of an existing group on a specified topic.
+     * The message is serialized once for all the members.
+     *
+     * @param message  The Message to be sent.
+     * @param group    The Group to send the message to.
+     * @param topic    The Topic on which the message to send, or null to use the user id of each member.
+     * @param callback The Callback with the result of each member.
+     */
+    void sendGroupMessage(MASMessage message, MASGroup group, String topic, MASCallback<MASPublishResult> callback);
+
     /**
      * This method enables incoming messages to the currently authenticated user.
      *
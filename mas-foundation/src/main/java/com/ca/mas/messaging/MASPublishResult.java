@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ */
+
+package com.ca.mas.messaging;
+
+import androidx.annotation.Keep;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of a message published to several recipients, such as the members of a group.
+ * Recipients are identified by their user id.
+ */
+@Keep
+public class MASPublishResult {
+
+    private final List<String> delivered;
+    private final Map<String, Throwable> failed;
+
+    public MASPublishResult(List<String> delivered, Map<String, Throwable> failed) {
+        this.delivered = Collections.unmodifiableList(delivered);
+        this.failed = Collections.unmodifiableMap(failed);
+    }
+
+    /**
+     * @return The recipients the message was published to.
+     */
+    public List<String> getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * @return The recipients the message could not be published to, with the cause of the failure.
+     */
+    public Map<String, Throwable> getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return True if the message was published to all the recipients.
+     */
+    public boolean isSuccessful() {
+        return failed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "MASPublishResult{delivered=" + delivered.size() + ", failed=" + failed.keySet() + "}";
+    }
+}
@@ -9,6 +9,7 @@
 package com.ca.mas;
 
 import com.ca.mas.storage.MASSecureLocalStorageApplicationTest;
+import com.ca.mas.storage.MASSecureLocalStorageLargeValueTest;
 import com.ca.mas.storage.MASSecureLocalStorageUserTest;
 
 import org.junit.experimental.categories.Categories;
@@ -19,6 +20,7 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
         MASSecureLocalStorageUserTest.class,
         MASSecureLocalStorageApplicationTest.class,
+        MASSecureLocalStorageLargeValueTest.class,
 })
 
 public class MASStorageTestSuite {
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+package com.ca.mas.storage;
+
+import android.util.Log;
+
+import com.ca.mas.GatewayDefaultDispatcher;
+import com.ca.mas.MASCallbackFuture;
+import com.ca.mas.MASLoginTestBase;
+import com.ca.mas.core.datasource.LocalStoreDataSource;
+import com.ca.mas.core.datasource.LocalStoreEntity;
+import com.ca.mas.core.datasource.LocalStoreKey;
+import com.ca.mas.foundation.MASConstants;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class MASSecureLocalStorageLargeValueTest extends MASLoginTestBase {
+
+    private static final String TAG = MASSecureLocalStorageLargeValueTest.class.getSimpleName();
+    private static final int SEGMENT = MASConstants.MAS_APPLICATION;
+    private static final int[] PAYLOAD_SIZES = {256 * 1024, 1024 * 1024, 4 * 1024 * 1024};
+
+    @Override
+    protected void setupDispatcher(GatewayDefaultDispatcher gatewayDefaultDispatcher) {
+        gatewayDefaultDispatcher.addDispatcher(new StorageDispatcher());
+    }
+
+    @After
+    public void cleanupStorage() throws Exception {
+        if (isSkipped) return;
+        MASCallbackFuture<Void> callbackFuture = new MASCallbackFuture<>();
+        new MASSecureLocalStorage().deleteAll(SEGMENT, callbackFuture);
+        callbackFuture.get();
+    }
+
+    @Test
+    public void testSaveFindDeleteLargeValue() throws Exception {
+        MASSecureLocalStorage storage = new MASSecureLocalStorage();
+        storage.setLargeValueThreshold(64 * 1024);
+        JSONObject expected = createJson(1024 * 1024);
+
+        MASCallbackFuture<Void> callbackFuture = new MASCallbackFuture<>();
+        storage.save("large", expected, SEGMENT, callbackFuture);
+        callbackFuture.get();
+
+        //Chunk rows are not visible
+        MASCallbackFuture<Set<String>> keySetCallbackFuture = new MASCallbackFuture<>();
+        storage.keySet(SEGMENT, keySetCallbackFuture);
+        assertEquals(1, keySetCallbackFuture.get().size());
+
+        MASCallbackFuture<JSONObject> findByKeyCallbackFuture = new MASCallbackFuture<>();
+        storage.findByKey("large", SEGMENT, findByKeyCallbackFuture);
+        assertEquals(expected.toString(), findByKeyCallbackFuture.get().toString());
+
+        //Overwrite with a small value, the chunks are removed
+        callbackFuture = new MASCallbackFuture<>();
+        storage.save("large", "small", SEGMENT, callbackFuture);
+        callbackFuture.get();
+        assertEquals(1, getRows().size());
+
+        callbackFuture = new MASCallbackFuture<>();
+        storage.delete("large", SEGMENT, callbackFuture);
+        callbackFuture.get();
+        assertTrue(getRows().isEmpty());
+    }
+
+    @Test
+    public void testSaveAllLargeValue() throws Exception {
+        MASSecureLocalStorage storage = new MASSecureLocalStorage();
+        storage.setLargeValueThreshold(64 * 1024);
+        JSONObject expected = createJson(1024 * 1024);
+
+        Map<String, Object> objects = new LinkedHashMap<>();
+        objects.put("large", expected);
+        objects.put("small", "small");
+        MASCallbackFuture<Void> callbackFuture = new MASCallbackFuture<>();
+        storage.saveAll(objects, SEGMENT, callbackFuture);
+        callbackFuture.get();
+
+        //The large value is stored in chunks, the chunk rows are not visible
+        assertTrue(getRows().size() > 2);
+        MASCallbackFuture<Set<String>> keySetCallbackFuture = new MASCallbackFuture<>();
+        storage.keySet(SEGMENT, keySetCallbackFuture);
+        assertEquals(2, keySetCallbackFuture.get().size());
+
+        MASCallbackFuture<Map<String, Object>> findByKeysCallbackFuture = new MASCallbackFuture<>();
+        storage.findByKeys(Arrays.asList("large", "small"), SEGMENT, findByKeysCallbackFuture);
+        Map<String, Object> result = findByKeysCallbackFuture.get();
+        assertEquals(expected.toString(), result.get("large").toString());
+        assertEquals("small", result.get("small"));
+
+        //Overwrite with small values, the chunks are removed
+        objects.put("large", "small");
+        callbackFuture = new MASCallbackFuture<>();
+        storage.saveAll(objects, SEGMENT, callbackFuture);
+        callbackFuture.get();
+        assertEquals(2, getRows().size());
+    }
+
+    @Test
+    public void testSaveOpenStream() throws Exception {
+        MASSecureLocalStorage storage = new MASSecureLocalStorage();
+        byte[] expected = new byte[3 * LargeValueStore.CHUNK_SIZE + 17];
+        new Random().nextBytes(expected);
+
+        MASCallbackFuture<Void> callbackFuture = new MASCallbackFuture<>();
+        storage.saveStream("stream", new ByteArrayInputStream(expected), "application/octet-stream", SEGMENT, callbackFuture);
+        callbackFuture.get();
+
+        MASCallbackFuture<InputStream> streamCallbackFuture = new MASCallbackFuture<>();
+        storage.openStream("stream", SEGMENT, streamCallbackFuture);
+        InputStream inputStream = streamCallbackFuture.get();
+        byte[] actual = new byte[expected.length];
+        int total = 0;
+        int count;
+        while ((count = inputStream.read(actual, total, actual.length - total)) > 0) {
+            total += count;
+        }
+        assertEquals(-1, inputStream.read());
+        inputStream.close();
+        assertEquals(expected.length, total);
+        assertTrue(Arrays.equals(expected, actual));
+
+        MASCallbackFuture<byte[]> findByKeyCallbackFuture = new MASCallbackFuture<>();
+        storage.findByKey("stream", SEGMENT, findByKeyCallbackFuture);
+        assertTrue(Arrays.equals(expected, findByKeyCallbackFuture.get()));
+
+        streamCallbackFuture = new MASCallbackFuture<>();
+        storage.openStream("doesNotExist", SEGMENT, streamCallbackFuture);
+        assertNull(streamCallbackFuture.get());
+    }
+
+    @Test
+    public void testBenchmark() throws Exception {
+        for (int size : PAYLOAD_SIZES) {
+            JSONObject value = createJson(size);
+            for (boolean largeValue : new boolean[]{false, true}) {
+                MASSecureLocalStorage storage = new MASSecureLocalStorage();
+                storage.setLargeValueThreshold(largeValue ? 64 * 1024 : 0);
+
+                long start = System.nanoTime();
+                MASCallbackFuture<Void> callbackFuture = new MASCallbackFuture<>();
+                storage.save("benchmark", value, SEGMENT, callbackFuture);
+                callbackFuture.get();
+                long save = (System.nanoTime() - start) / 1000000;
+
+                start = System.nanoTime();
+                MASCallbackFuture<JSONObject> findByKeyCallbackFuture = new MASCallbackFuture<>();
+                storage.findByKey("benchmark", SEGMENT, findByKeyCallbackFuture);
+                assertFalse(findByKeyCallbackFuture.get().length() == 0);
+                long find = (System.nanoTime() - start) / 1000000;
+
+                long stored = 0;
+                for (LocalStoreEntity entity : getRows()) {
+                    stored += entity.getData().length;
+                }
+                Log.i(TAG, String.format("%s, %d KB: stored %d KB, save %d ms, find %d ms",
+                        largeValue ? "Large value mode" : "Single blob", size / 1024, stored / 1024, save, find));
+
+                callbackFuture = new MASCallbackFuture<>();
+                storage.delete("benchmark", SEGMENT, callbackFuture);
+                callbackFuture.get();
+            }
+        }
+    }
+
+    private List<LocalStoreEntity> getRows() {
+        LocalStoreDataSource dataSource = new LocalStoreDataSource(getContext(), null, null);
+        List<LocalStoreKey> keys = dataSource.getKeys(new LocalStoreKey(null, SEGMENT, getContext().getPackageName()));
+        return dataSource.getAll(keys);
+    }
+
+    private static JSONObject createJson(int size) throws Exception {
+        JSONObject json = new JSONObject();
+        JSONArray items = new JSONArray();
+        Random random = new Random(size);
+        int length = 0;
+        for (int i = 0; length < size; i++) {
+            JSONObject item = new JSONObject();
+            item.put("id", i);
+            item.put("name", "Item " + i);
+            item.put("price", random.nextInt(10000) / 100.0);
+            items.put(item);
+            length += 48;
+        }
+        json.put("items", items);
+        return json;
+    }
+}
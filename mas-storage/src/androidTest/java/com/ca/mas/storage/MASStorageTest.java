@@ -16,8 +16,14 @@ import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNull;
@@ -146,4 +152,51 @@ public abstract class MASStorageTest extends MASLoginTestBase {
         getMASStorage().delete("doesNotExist", getMode(), callbackFuture);
         callbackFuture.get();
     }
+
+    @Test
+    public void testSaveAllFindByKeys() throws Exception {
+        if (!(getMASStorage() instanceof MASBatchStorage)) return;
+        MASBatchStorage storage = (MASBatchStorage) getMASStorage();
+
+        Map<String, Object> objects = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            objects.put("key" + i, "VALUE" + i);
+        }
+        MASCallbackFuture<Void> callbackFuture = new MASCallbackFuture<>();
+        storage.saveAll(objects, getMode(), callbackFuture);
+        callbackFuture.get();
+
+        List<String> keys = new ArrayList<>(objects.keySet());
+        keys.add("doesNotExist");
+        MASCallbackFuture<Map<String, Object>> findByKeysCallbackFuture = new MASCallbackFuture<>();
+        storage.findByKeys(keys, getMode(), findByKeysCallbackFuture);
+        Map<String, Object> result = findByKeysCallbackFuture.get();
+        assertEquals(objects, result);
+        assertEquals(new ArrayList<>(objects.keySet()), new ArrayList<>(result.keySet()));
+    }
+
+    @Test
+    public void testForEach() throws Exception {
+        if (!(getMASStorage() instanceof MASBatchStorage)) return;
+        MASBatchStorage storage = (MASBatchStorage) getMASStorage();
+
+        Map<String, Object> objects = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            objects.put("key" + i, "VALUE" + i);
+        }
+        MASCallbackFuture<Void> callbackFuture = new MASCallbackFuture<>();
+        storage.saveAll(objects, getMode(), callbackFuture);
+        callbackFuture.get();
+
+        final Map<String, Object> visited = new ConcurrentHashMap<>();
+        MASCallbackFuture<Void> forEachCallbackFuture = new MASCallbackFuture<>();
+        storage.forEach(getMode(), new MASBatchStorage.ItemVisitor() {
+            @Override
+            public void onItem(String key, Object value) {
+                visited.put(key, value);
+            }
+        }, forEachCallbackFuture);
+        forEachCallbackFuture.get();
+        assertEquals(objects, visited);
+    }
 }
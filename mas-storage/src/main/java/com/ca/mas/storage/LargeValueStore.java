@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.storage;
+
+import com.ca.mas.core.datasource.LocalStoreDataSource;
+import com.ca.mas.core.datasource.LocalStoreEntity;
+import com.ca.mas.core.datasource.LocalStoreKey;
+import com.ca.mas.core.io.Charsets;
+import com.ca.mas.core.security.EncryptionProvider;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stores large values as a sequence of compressed and encrypted chunks.
+ * <p>
+ * The value is deflated, split in chunks of {@link #CHUNK_SIZE} bytes and each chunk is encrypted
+ * separately and stored in its own row. The row of the value key holds an encrypted manifest which
+ * describes the chunks, it is written last so that a value is only visible once all its chunks are
+ * stored. Each write stores its chunks under a new generation, so that a failed write never alters the
+ * chunks of the value which is currently visible. Values are read with an InputStream which loads one chunk at a time, so that the memory used
+ * is proportional to the chunk size and not to the value size.
+ */
+class LargeValueStore {
+
+    /**
+     * The type of the manifest entity.
+     */
+    static final String CHUNKED_TYPE = "application/vnd.ca.mas.chunked";
+    static final String CHUNK_KEY_PREFIX = "__mas_chunk__/";
+    static final int CHUNK_SIZE = 256 * 1024;
+
+    private static final String TYPE = "type";
+    private static final String CHUNKS = "chunks";
+    private static final String SIZE = "size";
+    private static final String DEFLATE = "deflate";
+    private static final String GENERATION = "generation";
+
+    private final LocalStoreDataSource dataSource;
+    private final EncryptionProvider encProvider;
+
+    LargeValueStore(LocalStoreDataSource dataSource, EncryptionProvider encProvider) {
+        this.dataSource = dataSource;
+        this.encProvider = encProvider;
+    }
+
+    /**
+     * The manifest of a chunked value.
+     */
+    static class Manifest {
+        final String type;
+        final int chunks;
+        final long size;
+        final boolean deflate;
+        final long generation;
+
+        Manifest(String type, int chunks, long size, boolean deflate, long generation) {
+            this.type = type;
+            this.chunks = chunks;
+            this.size = size;
+            this.deflate = deflate;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * @return True if the keys are chunks of large values.
+     */
+    static boolean isChunkKey(String key) {
+        return key != null && key.startsWith(CHUNK_KEY_PREFIX);
+    }
+
+    static boolean isChunked(LocalStoreEntity entity) {
+        return entity != null && CHUNKED_TYPE.equals(entity.getType());
+    }
+
+    /**
+     * Store the content of the stream as a chunked value.
+     *
+     * @param key         The key of the value.
+     * @param inputStream The content of the value, the stream is not closed.
+     * @param type        The type of the value, as defined by {@link DataMarshaller#getTypeAsString()}.
+     * @param deflate     True to compress the content before encryption.
+     */
+    void write(LocalStoreKey key, InputStream inputStream, String type, boolean deflate) throws IOException, JSONException {
+        Manifest previous = readManifest(dataSource.get(key));
+        long generation = previous == null ? 1 : previous.generation + 1;
+        CountingInputStream counter = new CountingInputStream(inputStream);
+        Deflater deflater = null;
+        InputStream source = counter;
+        if (deflate) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            source = new DeflaterInputStream(counter, deflater, CHUNK_SIZE / 4);
+        }
+        int chunks = 0;
+        boolean committed = false;
+        try {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int count;
+            while ((count = readFully(source, buffer)) > 0) {
+                byte[] chunk = buffer;
+                if (count < buffer.length) {
+                    chunk = new byte[count];
+                    System.arraycopy(buffer, 0, chunk, 0, count);
+                }
+                //Increment before the put, a failed put may still have stored the chunk
+                chunks++;
+                dataSource.put(chunkKey(key, generation, chunks - 1), new LocalStoreEntity(CHUNKED_TYPE, encrypt(chunk)));
+            }
+            Manifest manifest = new Manifest(type, chunks, counter.count, deflate, generation);
+            dataSource.put(key, new LocalStoreEntity(CHUNKED_TYPE, encrypt(toJson(manifest).toString().getBytes(Charsets.UTF8))));
+            committed = true;
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            if (!committed) {
+                //The previous value is still visible, discard the chunks of the new generation
+                try {
+                    removeChunks(key, generation, chunks);
+                } catch (RuntimeException ignore) {
+                    //Keep the original failure, the chunks are unreachable and overwritten by the next write
+                }
+            }
+        }
+
+        //The manifest now refers to the new generation, the previous chunks are no longer reachable
+        removeChunks(key, previous);
+    }
+
+    /**
+     * @param key      The key of the value.
+     * @param manifest The manifest of the value.
+     * @return A stream of the value content, chunks are loaded as the stream is read.
+     */
+    InputStream open(LocalStoreKey key, Manifest manifest) {
+        InputStream inputStream = new ChunkInputStream(key, manifest.generation, manifest.chunks);
+        if (manifest.deflate) {
+            return new InflaterInputStream(inputStream);
+        }
+        return inputStream;
+    }
+
+    /**
+     * Remove the chunks of the value, the manifest row is not removed.
+     */
+    void removeChunks(LocalStoreKey key, Manifest manifest) {
+        if (manifest != null) {
+            removeChunks(key, manifest.generation, manifest.chunks);
+        }
+    }
+
+    private void removeChunks(LocalStoreKey key, long generation, int chunks) {
+        if (chunks == 0) {
+            return;
+        }
+        List<LocalStoreKey> keys = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            keys.add(chunkKey(key, generation, i));
+        }
+        dataSource.removeAll(keys);
+    }
+
+    /**
+     * @return The manifest stored in the entity, or null if the entity is not a chunked value.
+     */
+    Manifest readManifest(LocalStoreEntity entity) throws JSONException {
+        if (!isChunked(entity)) {
+            return null;
+        }
+        JSONObject json = new JSONObject(new String(decrypt(entity.getData()), Charsets.UTF8));
+        return new Manifest(json.getString(TYPE), json.getInt(CHUNKS), json.getLong(SIZE), json.getBoolean(DEFLATE),
+                json.optLong(GENERATION, 0));
+    }
+
+    private static JSONObject toJson(Manifest manifest) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put(TYPE, manifest.type);
+        json.put(CHUNKS, manifest.chunks);
+        json.put(SIZE, manifest.size);
+        json.put(DEFLATE, manifest.deflate);
+        json.put(GENERATION, manifest.generation);
+        return json;
+    }
+
+    /**
+     * @param generation The generation of the value, 0 for values stored before generations were introduced.
+     */
+    private static LocalStoreKey chunkKey(LocalStoreKey key, long generation, int index) {
+        String name = generation == 0 ? key.getKey() + "/" + index : key.getKey() + "/" + generation + "/" + index;
+        return new LocalStoreKey(CHUNK_KEY_PREFIX + name, key.getSegment(), key.getCreatedBy());
+    }
+
+    private byte[] encrypt(byte[] data) {
+        return encProvider == null ? data : encProvider.encrypt(data);
+    }
+
+    private byte[] decrypt(byte[] data) {
+        return encProvider == null ? data : encProvider.decrypt(data);
+    }
+
+    private static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int total = 0;
+        int count;
+        while (total < buffer.length && (count = inputStream.read(buffer, total, buffer.length - total)) != -1) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Loads and decrypts the chunks of a value one at a time.
+     */
+    private class ChunkInputStream extends InputStream {
+
+        private final LocalStoreKey key;
+        private final long generation;
+        private final int chunks;
+        private int next;
+        private byte[] current;
+        private int position;
+
+        ChunkInputStream(LocalStoreKey key, long generation, int chunks) {
+            this.key = key;
+            this.generation = generation;
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensure()) {
+                return -1;
+            }
+            return current[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!ensure()) {
+                return -1;
+            }
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return current == null ? 0 : current.length - position;
+        }
+
+        private boolean ensure() throws IOException {
+            while (current == null || position >= current.length) {
+                if (next >= chunks) {
+                    return false;
+                }
+                LocalStoreEntity entity = dataSource.get(chunkKey(key, generation, next++));
+                if (entity == null) {
+                    throw new IOException("Missing chunk " + (next - 1) + " of " + key.getKey());
+                }
+                current = decrypt(entity.getData());
+                position = 0;
+            }
+            return true;
+        }
+    }
+
+    private static class CountingInputStream extends InputStream {
+
+        private final InputStream inputStream;
+        private long count;
+
+        CountingInputStream(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = inputStream.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = inputStream.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
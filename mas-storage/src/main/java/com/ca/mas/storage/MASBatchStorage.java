@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2016 CA. All rights reserved.
+ *
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ */
+
+package com.ca.mas.storage;
+
+import com.ca.mas.foundation.MASCallback;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link MASStorage} which reads and writes many objects in a single operation.
+ */
+public interface MASBatchStorage extends MASStorage {
+
+    /**
+     * Receives the objects of a segment one at a time, see {@link #forEach(int, ItemVisitor, MASCallback)}.
+     */
+    interface ItemVisitor {
+
+        /**
+         * Invoked on a background thread for each object of the segment.
+         *
+         * @param key   The key of the object.
+         * @param value The object.
+         */
+        void onItem(String key, Object value);
+    }
+
+    /**
+     * Save the objects into Storage, either all the objects are saved or none of them.
+     *
+     * @param objects  The objects to be saved by key. The objects must conform to one of the types
+     *                 supported by {@link #save(String, Object, int, MASCallback)}.
+     * @param segment  The Storage segment {@link MASStorageSegment} to be used.
+     * @param callback Notifies the caller with the result of the operation.
+     *                 {@link MASCallback#onError(Throwable)} will be called in case of failure.
+     */
+    void saveAll(Map<String, Object> objects,
+                 @MASStorageSegment int segment,
+                 MASCallback<Void> callback);
+
+    /**
+     * Find the objects from Storage based on the keys.
+     *
+     * @param keys     The keys used to get the objects from storage.
+     * @param segment  The Storage segment {@link MASStorageSegment} to be used in the search.
+     * @param callback Notifies the caller with the objects found by key, in the order of the keys.
+     *                 Keys which are not found are not part of the result.
+     *                 {@link MASCallback#onError(Throwable)} will be called in case of failure.
+     */
+    void findByKeys(Collection<String> keys,
+                    @MASStorageSegment int segment,
+                    MASCallback<Map<String, Object>> callback);
+
+    /**
+     * Visit all the objects of a segment. The objects are read in pages, so that the segment does
+     * not have to fit in memory.
+     *
+     * @param segment  The Storage segment {@link MASStorageSegment} to be visited.
+     * @param visitor  Receives the objects of the segment.
+     * @param callback Notifies the caller when all the objects have been visited.
+     *                 {@link MASCallback#onError(Throwable)} will be called in case of failure.
+     */
+    void forEach(@MASStorageSegment int segment,
+                 ItemVisitor visitor,
+                 MASCallback<Void> callback);
+}
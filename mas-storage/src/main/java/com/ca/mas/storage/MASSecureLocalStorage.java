@@ -8,11 +8,9 @@
 
 package com.ca.mas.storage;
 
-import android.content.AsyncTaskLoader;
 import android.content.Context;
 import androidx.annotation.NonNull;
 
-import com.ca.mas.core.datasource.DataSource;
 import com.ca.mas.core.datasource.DataSourceFactory;
 import com.ca.mas.core.datasource.LocalStoreDataSource;
 import com.ca.mas.core.datasource.LocalStoreEntity;
@@ -28,14 +26,42 @@ import com.ca.mas.foundation.MASFoundationStrings;
 import com.ca.mas.foundation.MASUser;
 import com.ca.mas.foundation.notify.Callback;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
-public class MASSecureLocalStorage extends AbstractMASStorage {
-
-    private DataSource<LocalStoreKey, LocalStoreEntity> dataSource;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MASSecureLocalStorage extends AbstractMASStorage implements MASBatchStorage {
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int PAGE_SIZE = 64;
+    private static final int KEEP_ALIVE = 5;
+
+    //Shared by all the storage instances, executes the storage operations
+    private static final ThreadPoolExecutor executor = newExecutor(Math.max(2, CPU_COUNT), "MASStorage");
+    //Marshals and encrypts the objects of a batch operation in parallel, never blocks on other tasks
+    private static final ThreadPoolExecutor cryptoExecutor = newExecutor(CPU_COUNT, "MASStorageCrypto");
+
+    private LocalStoreDataSource dataSource;
+    private LargeValueStore largeValueStore;
     private Context context;
     private EncryptionProvider encProvider;
+    private volatile int largeValueThreshold;
 
     public MASSecureLocalStorage() {
         this(new DefaultEncryptionProvider(MAS.getContext()));
@@ -52,10 +78,92 @@ public class MASSecureLocalStorage extends AbstractMASStorage {
         setDefaultDataMarshallers();
 
         //Create/get the LocalStoreDataSource
-        dataSource = DataSourceFactory.getStorage(this.context, LocalStoreDataSource.class, null, null);
+        dataSource = (LocalStoreDataSource) DataSourceFactory.<LocalStoreKey, LocalStoreEntity>getStorage(this.context, LocalStoreDataSource.class, null, null);
+        largeValueStore = new LargeValueStore(dataSource, encProvider);
 
     }
 
+    /**
+     * Enable the large value mode. Objects which are marshalled to at least the threshold are
+     * compressed, split in chunks which are encrypted separately, and read back one chunk at a time.
+     * Objects saved with {@link #saveStream(String, InputStream, String, int, MASCallback)} are always
+     * stored in chunks.
+     *
+     * @param threshold The size in bytes from which objects are stored in chunks, 0 to disable.
+     */
+    public void setLargeValueThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold cannot be negative");
+        }
+        largeValueThreshold = threshold;
+    }
+
+    /**
+     * Save the content of a stream into Storage, the content is compressed and encrypted in chunks so
+     * that it never has to fit in memory.
+     *
+     * @param key         Key to be used when saving the content.
+     * @param inputStream The content to be saved, the stream is closed when the content is saved.
+     * @param type        The type of the content, used by {@link #findByKey(String, int, MASCallback)} to
+     *                    unmarshall the content, e.g. "application/octet-stream".
+     * @param segment     The Storage segment {@link MASStorageSegment} to be used.
+     * @param callback    Notifies the caller with the result of the operation.
+     */
+    public void saveStream(@NonNull final String key, @NonNull final InputStream inputStream, @NonNull final String type,
+                           @MASStorageSegment final int segment, final MASCallback<Void> callback) {
+        checkNull(key, inputStream);
+        findMarshaller(type);
+        execute(new Functions.UnaryVoid<String>() {
+            @Override
+            public void call(String s) {
+                try {
+                    largeValueStore.write(new Key(key, segment, getCreatedBy(s, segment)), inputStream, type, isCompressible(type));
+                    Callback.onSuccess(callback, null);
+                } catch (Exception e) {
+                    Callback.onError(callback, e);
+                } finally {
+                    try {
+                        inputStream.close();
+                    } catch (IOException ignore) {
+                    }
+                }
+            }
+        }, segment, callback);
+    }
+
+    /**
+     * Open a stream on an object from Storage, objects stored in chunks are read one chunk at a time.
+     *
+     * @param key      The key used to get the object from storage.
+     * @param segment  The Storage segment {@link MASStorageSegment} to be used in the search.
+     * @param callback Notifies the caller with the stream of the marshalled object, or null if the
+     *                 object is not found. The stream should be read on a background thread.
+     */
+    public void openStream(@NonNull final String key, @MASStorageSegment final int segment, final MASCallback<InputStream> callback) {
+        checkNull(key);
+        execute(new Functions.UnaryVoid<String>() {
+            @Override
+            public void call(String s) {
+                try {
+                    Key storeKey = new Key(key, segment, s);
+                    LocalStoreEntity result = dataSource.get(storeKey);
+                    InputStream inputStream = null;
+                    if (result != null) {
+                        LargeValueStore.Manifest manifest = largeValueStore.readManifest(result);
+                        if (manifest != null) {
+                            inputStream = largeValueStore.open(storeKey, manifest);
+                        } else {
+                            inputStream = new ByteArrayInputStream(decrypt(result.getData()));
+                        }
+                    }
+                    Callback.onSuccess(callback, inputStream);
+                } catch (Exception e) {
+                    Callback.onError(callback, e);
+                }
+            }
+        }, segment, callback);
+    }
+
     public void save(@NonNull final String key, @NonNull final Object value, @MASStorageSegment final int segment, final MASCallback<Void> callback) {
 
         checkNull(key, value);
@@ -63,18 +171,19 @@ public class MASSecureLocalStorage extends AbstractMASStorage {
             @Override
             public void call(String s) {
                 try {
-                    String createdBy = s;
+                    Key storeKey = new Key(key, segment, getCreatedBy(s, segment));
                     DataMarshaller relevantM = findMarshaller(value);
-                    byte[] data;
-                    data = relevantM.marshall(value);
-                    byte[] encryptedData = data;
-                    if (encProvider != null) {
-                        encryptedData = encProvider.encrypt(data);
+                    byte[] data = relevantM.marshall(value);
+                    int threshold = largeValueThreshold;
+                    if (threshold > 0 && data.length >= threshold) {
+                        largeValueStore.write(storeKey, new ByteArrayInputStream(data), relevantM.getTypeAsString(),
+                                isCompressible(relevantM.getTypeAsString()));
+                    } else {
+                        //Values saved with saveStream are chunked whatever the threshold
+                        LargeValueStore.Manifest previous = largeValueStore.readManifest(dataSource.get(storeKey));
+                        dataSource.put(storeKey, new LocalStoreEntity(relevantM.getTypeAsString(), encrypt(data)));
+                        largeValueStore.removeChunks(storeKey, previous);
                     }
-                    if (segment == MASConstants.MAS_APPLICATION) {
-                        createdBy = context.getPackageName();
-                    }
-                    dataSource.put(new Key(key, segment, createdBy), new LocalStoreEntity(relevantM.getTypeAsString(), encryptedData));
                     Callback.onSuccess(callback, null);
                 } catch (Exception e) {
                     Callback.onError(callback, e);
@@ -95,14 +204,10 @@ public class MASSecureLocalStorage extends AbstractMASStorage {
 
                 try {
                     Object value = null;
-                    LocalStoreEntity result = dataSource.get(new Key(key,segment, s));
+                    Key storeKey = new Key(key, segment, s);
+                    LocalStoreEntity result = dataSource.get(storeKey);
                     if (result != null) {
-                        byte[] decryptedData = result.getData();
-                        if (encProvider != null) {
-                            decryptedData = encProvider.decrypt(result.getData());
-                        }
-                        DataMarshaller relevantM = findMarshaller(result.getType());
-                        value = relevantM.unmarshall(decryptedData);
+                        value = decode(storeKey, result);
                     }
                     Callback.onSuccess(callback, value);
                 } catch (Exception e) {
@@ -119,7 +224,12 @@ public class MASSecureLocalStorage extends AbstractMASStorage {
             @Override
             public void call(String s) {
                 try {
-                    dataSource.remove(new Key(key,segment, s));
+                    Key storeKey = new Key(key, segment, s);
+                    LocalStoreEntity result = dataSource.get(storeKey);
+                    if (LargeValueStore.isChunked(result)) {
+                        largeValueStore.removeChunks(storeKey, largeValueStore.readManifest(result));
+                    }
+                    dataSource.remove(storeKey);
                     Callback.onSuccess(callback, null);
                 } catch (Exception e) {
                     Callback.onError(callback, e);
@@ -157,7 +267,9 @@ public class MASSecureLocalStorage extends AbstractMASStorage {
                     Set<LocalStoreKey> localStoreKeys = new HashSet<>(dataSource.getKeys(new Key(null, segment, s)));
                     Set<String> keys = new HashSet<>();
                     for (LocalStoreKey k : localStoreKeys) {
-                        keys.add(k.getKey());
+                        if (!LargeValueStore.isChunkKey(k.getKey())) {
+                            keys.add(k.getKey());
+                        }
                     }
                     Callback.onSuccess(callback, keys);
                 } catch (Exception e) {
@@ -167,6 +279,289 @@ public class MASSecureLocalStorage extends AbstractMASStorage {
         }, segment, callback);
     }
 
+    /**
+     * Save the objects into Storage in a single transaction. When the large value mode is enabled, the objects
+     * which are marshalled to at least the threshold are stored in chunks, each one after the transaction, so
+     * that they are not part of it.
+     *
+     * @see #setLargeValueThreshold(int)
+     */
+    @Override
+    public void saveAll(@NonNull final Map<String, Object> objects, @MASStorageSegment final int segment, final MASCallback<Void> callback) {
+        if (objects == null) {
+            throw new NullPointerException("Objects cannot be null");
+        }
+        for (Map.Entry<String, Object> entry : objects.entrySet()) {
+            checkNull(entry.getKey(), entry.getValue());
+        }
+        execute(new Functions.UnaryVoid<String>() {
+            @Override
+            public void call(String s) {
+                try {
+                    final int threshold = largeValueThreshold;
+                    final List<Map.Entry<String, Object>> entries = new ArrayList<>(objects.entrySet());
+                    List<Encoded> encoded = parallel(entries, new Transform<Map.Entry<String, Object>, Encoded>() {
+                        @Override
+                        public Encoded apply(Map.Entry<String, Object> entry) throws Exception {
+                            return encode(entry.getValue(), threshold);
+                        }
+                    });
+                    String createdBy = getCreatedBy(s, segment);
+                    Map<LocalStoreKey, LocalStoreEntity> items = new LinkedHashMap<>();
+                    List<Key> storeKeys = new ArrayList<>();
+                    Map<Key, Encoded> large = new LinkedHashMap<>();
+                    for (int i = 0; i < entries.size(); i++) {
+                        Key storeKey = new Key(entries.get(i).getKey(), segment, createdBy);
+                        if (encoded.get(i).entity == null) {
+                            large.put(storeKey, encoded.get(i));
+                        } else {
+                            storeKeys.add(storeKey);
+                            items.put(storeKey, encoded.get(i).entity);
+                        }
+                    }
+                    if (!items.isEmpty()) {
+                        //Values saved with saveStream are chunked whatever the threshold
+                        List<LocalStoreEntity> previous = dataSource.getAll(storeKeys);
+                        //Single transaction
+                        dataSource.putAll(items);
+                        for (int i = 0; i < previous.size(); i++) {
+                            largeValueStore.removeChunks(storeKeys.get(i), largeValueStore.readManifest(previous.get(i)));
+                        }
+                    }
+                    for (Map.Entry<Key, Encoded> entry : large.entrySet()) {
+                        Encoded value = entry.getValue();
+                        largeValueStore.write(entry.getKey(), new ByteArrayInputStream(value.data), value.type,
+                                isCompressible(value.type));
+                    }
+                    Callback.onSuccess(callback, null);
+                } catch (Exception e) {
+                    Callback.onError(callback, e);
+                }
+            }
+        }, segment, callback);
+    }
+
+    @Override
+    public void findByKeys(@NonNull final Collection<String> keys, @MASStorageSegment final int segment, final MASCallback<Map<String, Object>> callback) {
+        if (keys == null) {
+            throw new NullPointerException("Keys cannot be null");
+        }
+        for (String key : keys) {
+            checkNull(key);
+        }
+        execute(new Functions.UnaryVoid<String>() {
+            @Override
+            public void call(String s) {
+                try {
+                    Callback.onSuccess(callback, find(new ArrayList<>(keys), segment, s));
+                } catch (Exception e) {
+                    Callback.onError(callback, e);
+                }
+            }
+        }, segment, callback);
+    }
+
+    @Override
+    public void forEach(@MASStorageSegment final int segment, @NonNull final ItemVisitor visitor, final MASCallback<Void> callback) {
+        if (visitor == null) {
+            throw new NullPointerException("Visitor cannot be null");
+        }
+        execute(new Functions.UnaryVoid<String>() {
+            @Override
+            public void call(String s) {
+                try {
+                    List<String> keys = new ArrayList<>();
+                    for (LocalStoreKey k : dataSource.getKeys(new Key(null, segment, s))) {
+                        if (!LargeValueStore.isChunkKey(k.getKey())) {
+                            keys.add(k.getKey());
+                        }
+                    }
+                    for (int i = 0; i < keys.size(); i += PAGE_SIZE) {
+                        Map<String, Object> page = find(keys.subList(i, Math.min(keys.size(), i + PAGE_SIZE)), segment, s);
+                        for (Map.Entry<String, Object> entry : page.entrySet()) {
+                            visitor.onItem(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    Callback.onSuccess(callback, null);
+                } catch (Exception e) {
+                    Callback.onError(callback, e);
+                }
+            }
+        }, segment, callback);
+    }
+
+    /**
+     * Read the objects in a single query and decode them in parallel.
+     *
+     * @return The objects found by key, in the order of the keys.
+     */
+    private Map<String, Object> find(List<String> keys, @MASStorageSegment int segment, String username) throws Exception {
+        final List<Key> storeKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            storeKeys.add(new Key(key, segment, username));
+        }
+        final List<LocalStoreEntity> entities = dataSource.getAll(storeKeys);
+        List<Integer> positions = new ArrayList<>(entities.size());
+        for (int i = 0; i < entities.size(); i++) {
+            positions.add(i);
+        }
+        List<Object> values = parallel(positions, new Transform<Integer, Object>() {
+            @Override
+            public Object apply(Integer i) throws Exception {
+                LocalStoreEntity entity = entities.get(i);
+                return entity == null ? null : decode(storeKeys.get(i), entity);
+            }
+        });
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (entities.get(i) != null) {
+                result.put(keys.get(i), values.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A marshalled object, encrypted unless it is stored in chunks.
+     */
+    private static class Encoded {
+        final String type;
+        final byte[] data;
+        //Null if the object is stored in chunks
+        final LocalStoreEntity entity;
+
+        Encoded(String type, byte[] data, LocalStoreEntity entity) {
+            this.type = type;
+            this.data = data;
+            this.entity = entity;
+        }
+    }
+
+    /**
+     * @param threshold The size in bytes from which the object is stored in chunks, 0 if disabled.
+     */
+    private Encoded encode(Object value, int threshold) throws Exception {
+        DataMarshaller relevantM = findMarshaller(value);
+        byte[] data = relevantM.marshall(value);
+        if (threshold > 0 && data.length >= threshold) {
+            return new Encoded(relevantM.getTypeAsString(), data, null);
+        }
+        return new Encoded(relevantM.getTypeAsString(), null, new LocalStoreEntity(relevantM.getTypeAsString(), encrypt(data)));
+    }
+
+    private Object decode(LocalStoreKey key, LocalStoreEntity entity) throws Exception {
+        LargeValueStore.Manifest manifest = largeValueStore.readManifest(entity);
+        if (manifest != null) {
+            InputStream inputStream = largeValueStore.open(key, manifest);
+            try {
+                return findMarshaller(manifest.type).unmarshall(readAll(inputStream, manifest.size));
+            } finally {
+                inputStream.close();
+            }
+        }
+        DataMarshaller relevantM = findMarshaller(entity.getType());
+        return relevantM.unmarshall(decrypt(entity.getData()));
+    }
+
+    private byte[] encrypt(byte[] data) {
+        if (encProvider != null) {
+            return encProvider.encrypt(data);
+        }
+        return data;
+    }
+
+    private byte[] decrypt(byte[] data) {
+        if (encProvider != null) {
+            return encProvider.decrypt(data);
+        }
+        return data;
+    }
+
+    private static byte[] readAll(InputStream inputStream, long size) throws IOException {
+        byte[] data = new byte[(int) size];
+        int total = 0;
+        int count;
+        while (total < data.length && (count = inputStream.read(data, total, data.length - total)) != -1) {
+            total += count;
+        }
+        if (total != data.length) {
+            throw new IOException("Truncated value");
+        }
+        return data;
+    }
+
+    /**
+     * @return False for types which are already compressed.
+     */
+    private static boolean isCompressible(String type) {
+        return !"image/png".equals(type);
+    }
+
+    private String getCreatedBy(String username, @MASStorageSegment int segment) {
+        if (segment == MASConstants.MAS_APPLICATION) {
+            return context.getPackageName();
+        }
+        return username;
+    }
+
+    private interface Transform<A, R> {
+        R apply(A a) throws Exception;
+    }
+
+    /**
+     * Apply the transform to the items, the items are split in one chunk per core.
+     *
+     * @return The results in the order of the items.
+     */
+    private static <A, R> List<R> parallel(final List<A> items, final Transform<A, R> transform) throws Exception {
+        final List<R> results = new ArrayList<>(Collections.<R>nCopies(items.size(), null));
+        int chunks = Math.min(CPU_COUNT, items.size() / PAGE_SIZE + 1);
+        int chunkSize = (items.size() + chunks - 1) / Math.max(1, chunks);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int start = chunkSize; start < items.size(); start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(items.size(), start + chunkSize);
+            futures.add(cryptoExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int i = from; i < to; i++) {
+                        results.set(i, transform.apply(items.get(i)));
+                    }
+                    return null;
+                }
+            }));
+        }
+        //The first chunk runs on the calling thread
+        for (int i = 0; i < Math.min(chunkSize, items.size()); i++) {
+            results.set(i, transform.apply(items.get(i)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    private static ThreadPoolExecutor newExecutor(int threads, final String name) {
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                return new Thread(r, name + count.getAndIncrement());
+            }
+        });
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
     private void setEncryptionProvider(@NonNull EncryptionProvider provider) {
         encProvider = provider;
     }
@@ -215,20 +610,12 @@ public class MASSecureLocalStorage extends AbstractMASStorage {
      * Execute function asynchronously
      */
     private void execute(final Functions.UnaryVoid<String> function, final String username) {
-        new AsyncTaskLoader<Void>(context) {
+        executor.execute(new Runnable() {
             @Override
-            protected void onStartLoading() {
-                super.onStartLoading();
-                forceLoad();
-            }
-
-            @Override
-            public Void loadInBackground() {
+            public void run() {
                 function.call(username);
-                return null;
             }
-
-        }.startLoading();
+        });
     }
 
     private void setDefaultDataMarshallers() {
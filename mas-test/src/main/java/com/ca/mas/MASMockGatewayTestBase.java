@@ -55,6 +55,7 @@ public abstract class MASMockGatewayTestBase extends MASTestBase {
     private static MockWebServer ssg;
     private HashMap<String, RecordedRequest> recordedRequests = new HashMap<>();
     private HashMap<String, RecordedRequest> recordRequestWithQueryParameters = new HashMap<>();
+    private HashMap<String, Integer> recordedRequestCounts = new HashMap<>();
     private int requestTaken = 0;
     private GatewayDefaultDispatcher gatewayDefaultDispatcher;
 
@@ -149,6 +150,7 @@ public abstract class MASMockGatewayTestBase extends MASTestBase {
         }
         recordedRequests.clear();
         recordRequestWithQueryParameters.clear();
+        recordedRequestCounts.clear();
         requestTaken = 0;
     }
 
@@ -160,6 +162,8 @@ public abstract class MASMockGatewayTestBase extends MASTestBase {
             Uri uri = Uri.parse(rr.getPath());
             recordedRequests.put(uri.getPath(), rr);
             recordRequestWithQueryParameters.put(rr.getPath(), rr);
+            Integer recorded = recordedRequestCounts.get(uri.getPath());
+            recordedRequestCounts.put(uri.getPath(), recorded == null ? 1 : recorded + 1);
         }
         requestTaken = ssg.getRequestCount();
     }
@@ -169,6 +173,15 @@ public abstract class MASMockGatewayTestBase extends MASTestBase {
         return recordedRequests.get(path);
     }
 
+    /**
+     * @return The number of requests received by the mock server for the path.
+     */
+    protected int getRecordRequestCount(String path) throws InterruptedException {
+        flushRequest();
+        Integer count = recordedRequestCounts.get(path);
+        return count == null ? 0 : count;
+    }
+
     protected RecordedRequest getRecordRequestWithQueryParameter(String url) throws InterruptedException {
         flushRequest();
         return recordRequestWithQueryParameters.get(url);